@@ -0,0 +1,70 @@
+package org.threadly.load.gui;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.threadly.load.ExecutableScript.ExecutionItem.ChildItems;
+import org.threadly.load.ScriptGraphBuilder;
+
+/**
+ * <p>Benchmarks for producing a cleaned {@link Node} graph, both from script items (on one thread
+ * or with parallel branches expanded concurrently) and by cleaning an existing graph.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBuildBenchmark {
+  @Param({ "CHAIN", "FAN_OUT", "NESTED_FORK_JOIN" })
+  public GraphShape shape;
+  @Param({ "1000", "10000" })
+  public int stepCount;
+
+  private ChildItems childItems;
+  private Node uncleanedHead;
+
+  @Setup(Level.Trial)
+  public void setupItems() {
+    childItems = shape.makeChildItems(stepCount);
+  }
+
+  // cleaning modifies the graph, so each invocation needs a new one
+  @Setup(Level.Invocation)
+  public void setupGraph() {
+    uncleanedHead = shape.makeUncleanedGraph(stepCount);
+  }
+
+  @Benchmark
+  public Node makeGraph() {
+    return ScriptGraphBuilder.makeGraph(childItems);
+  }
+
+  @Benchmark
+  public Node makeGraphParallel() {
+    return ScriptGraphBuilder.makeGraph(childItems, null, null, ScriptGraphBuilder.DEFAULT_BATCH_SIZE, 
+                                        ForkJoinPool.commonPool());
+  }
+
+  @Benchmark
+  public Node cleanGraph() {
+    uncleanedHead.cleanGraph();
+    return uncleanedHead;
+  }
+}
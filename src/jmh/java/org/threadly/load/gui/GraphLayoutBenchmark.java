@@ -0,0 +1,80 @@
+package org.threadly.load.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.threadly.load.gui.AmbushGraph.GraphDataSet;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+/**
+ * <p>Benchmarks for laying out a cleaned graph, and for storing the points of a laid out graph
+ * into a {@link GraphDataSet}.  The layout is the same work {@link AmbushGraph#updateGraphModel(Node)}
+ * does in the background for {@link AmbushGraph.LayoutMode#LAYERED}, without needing a display.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphLayoutBenchmark {
+  private static final int X_SIZE = 1440;
+  private static final int Y_SIZE = 900;
+
+  @Param({ "CHAIN", "FAN_OUT", "NESTED_FORK_JOIN" })
+  public GraphShape shape;
+  @Param({ "1000", "10000" })
+  public int stepCount;
+
+  private Node head;
+  private CompactGraph graph;
+  private List<Node> nodesById;
+  private int[] modificationCounts;
+  private Map<Node, GuiPoint> guiNodeMap;
+  private GraphDataSet dataSet;
+
+  @Setup
+  public void setup() {
+    head = shape.makeUncleanedGraph(stepCount);
+    head.cleanGraph();
+    nodesById = new ArrayList<Node>();
+    graph = new CompactGraph(head, nodesById);
+    modificationCounts = new int[nodesById.size()];
+    for (int id = 0; id < modificationCounts.length; id++) {
+      modificationCounts[id] = nodesById.get(id).getModificationCount();
+    }
+    dataSet = layout();
+    guiNodeMap = dataSet.guiNodeMap;
+  }
+
+  @Benchmark
+  public GraphDataSet layout() {
+    LayeredLayout layout = new LayeredLayout(graph);
+    layout.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+    GraphDataSet result = new GraphDataSet(X_SIZE, Y_SIZE);
+    PointPlacer.setLayeredData(result, graph, nodesById, modificationCounts, layout);
+    return result;
+  }
+
+  @Benchmark
+  public GraphDataSet setData() {
+    dataSet.setData(guiNodeMap, head);
+    return dataSet;
+  }
+}
@@ -0,0 +1,151 @@
+package org.threadly.load.gui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.threadly.load.ExecutableScript.ExecutionItem;
+import org.threadly.load.ExecutableScript.ExecutionItem.ChildItems;
+
+/**
+ * <p>Shapes of synthetic graphs used for benchmarking.  Each shape can be produced either as
+ * script items (to benchmark graph building), or directly as an uncleaned {@link Node} graph
+ * (to benchmark cleaning and layout).</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public enum GraphShape {
+  /**
+   * Every step runs sequentially after the previous.
+   */
+  CHAIN,
+  /**
+   * Every step runs in parallel from a single fork point.
+   */
+  FAN_OUT,
+  /**
+   * Steps fork into groups which themselves fork, producing nested fork/join regions.
+   */
+  NESTED_FORK_JOIN;
+
+  private static final int NESTED_WIDTH = 4;
+
+  /**
+   * Makes script items of this shape.  Items are made with
+   * {@link SyntheticGraphGenerator#makeItem(String, ChildItems)}.
+   *
+   * @param stepCount Number of steps to produce
+   * @return Sequential items to start building from
+   */
+  public ChildItems makeChildItems(int stepCount) {
+    switch (this) {
+      case CHAIN:
+        return SyntheticGraphGenerator.makeChildItems(true, makeSteps(stepCount, 0));
+      case FAN_OUT:
+        ChildItems fanItems = SyntheticGraphGenerator.makeChildItems(false, makeSteps(stepCount, 0));
+        return SyntheticGraphGenerator.makeChildItems(true, Collections.singletonList(
+                                                        SyntheticGraphGenerator.makeItem("fan", fanItems)));
+      case NESTED_FORK_JOIN:
+        return SyntheticGraphGenerator.makeChildItems(true, Collections.singletonList(
+                                                        makeNestedItem(stepCount, new int[1])));
+      default:
+        throw new UnsupportedOperationException();
+    }
+  }
+
+  private static List<ExecutionItem> makeSteps(int stepCount, int startIndex) {
+    List<ExecutionItem> result = new ArrayList<ExecutionItem>(stepCount);
+    for (int i = 0; i < stepCount; i++) {
+      result.add(SyntheticGraphGenerator.makeItem("step" + (startIndex + i), null));
+    }
+    return result;
+  }
+
+  private static ExecutionItem makeNestedItem(int stepCount, int[] nextIndex) {
+    if (stepCount <= NESTED_WIDTH) {
+      List<ExecutionItem> steps = makeSteps(stepCount, nextIndex[0]);
+      nextIndex[0] += stepCount;
+      return SyntheticGraphGenerator.makeItem("group",
+                                              SyntheticGraphGenerator.makeChildItems(false, steps));
+    }
+    List<ExecutionItem> branches = new ArrayList<ExecutionItem>(NESTED_WIDTH);
+    int remaining = stepCount;
+    for (int i = 0; i < NESTED_WIDTH; i++) {
+      int branchSteps = remaining / (NESTED_WIDTH - i);
+      remaining -= branchSteps;
+      // each branch has a step before forking again
+      List<ExecutionItem> sequence = new ArrayList<ExecutionItem>(2);
+      sequence.add(SyntheticGraphGenerator.makeItem("step" + nextIndex[0]++, null));
+      if (branchSteps > 1) {
+        sequence.add(makeNestedItem(branchSteps - 1, nextIndex));
+      }
+      branches.add(SyntheticGraphGenerator.makeItem("branch",
+                                                    SyntheticGraphGenerator.makeChildItems(true, sequence)));
+    }
+    return SyntheticGraphGenerator.makeItem("fork",
+                                            SyntheticGraphGenerator.makeChildItems(false, branches));
+  }
+
+  /**
+   * Makes a {@link Node} graph of this shape which has not been cleaned.  Every step is followed
+   * by an extra join node, as well as a join node at the tail, all of which
+   * {@link Node#cleanGraph()} will remove.
+   *
+   * @param stepCount Number of steps to produce
+   * @return Head node of the graph
+   */
+  public Node makeUncleanedGraph(int stepCount) {
+    Node head = new Node("head");
+    Node end;
+    switch (this) {
+      case CHAIN:
+        end = head;
+        for (int i = 0; i < stepCount; i++) {
+          end = addStep(end, i);
+        }
+        break;
+      case FAN_OUT:
+        end = new Node();
+        for (int i = 0; i < stepCount; i++) {
+          addStep(head, i).addChildNode(end);
+        }
+        break;
+      case NESTED_FORK_JOIN:
+        end = addNested(head, stepCount, new int[1]);
+        break;
+      default:
+        throw new UnsupportedOperationException();
+    }
+    end.addChildNode(new Node());
+    return head;
+  }
+
+  private static Node addStep(Node parent, int index) {
+    Node step = new Node("step" + index);
+    Node redundantJoin = new Node();
+    parent.addChildNode(step);
+    step.addChildNode(redundantJoin);
+    return redundantJoin;
+  }
+
+  private static Node addNested(Node parent, int stepCount, int[] nextIndex) {
+    Node join = new Node();
+    if (stepCount <= NESTED_WIDTH) {
+      for (int i = 0; i < stepCount; i++) {
+        addStep(parent, nextIndex[0]++).addChildNode(join);
+      }
+      return join;
+    }
+    int remaining = stepCount;
+    for (int i = 0; i < NESTED_WIDTH; i++) {
+      int branchSteps = remaining / (NESTED_WIDTH - i);
+      remaining -= branchSteps;
+      Node branchEnd = addStep(parent, nextIndex[0]++);
+      if (branchSteps > 1) {
+        branchEnd = addNested(branchEnd, branchSteps - 1, nextIndex);
+      }
+      branchEnd.addChildNode(join);
+    }
+    return join;
+  }
+}
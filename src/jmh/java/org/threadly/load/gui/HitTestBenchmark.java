@@ -0,0 +1,71 @@
+package org.threadly.load.gui;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.threadly.load.gui.AmbushGraph.GraphDataSet;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+/**
+ * <p>Benchmark for finding the point under the mouse, as done for every mouse move over the main
+ * window.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitTestBenchmark {
+  private static final int X_SIZE = 1440;
+  private static final int Y_SIZE = 900;
+  private static final int SELECT_TOLERANCE = 25;
+  private static final int QUERY_COUNT = 1024;  // power of two
+
+  @Param({ "CHAIN", "FAN_OUT", "NESTED_FORK_JOIN" })
+  public GraphShape shape;
+  @Param({ "1000", "10000" })
+  public int stepCount;
+
+  private GraphDataSet dataSet;
+  private int[] queryX;
+  private int[] queryY;
+  private int nextQuery;
+
+  @Setup
+  public void setup() {
+    Node head = shape.makeUncleanedGraph(stepCount);
+    head.cleanGraph();
+    dataSet = new GraphExporter(head, X_SIZE, Y_SIZE).dataSet;
+    Random random = new Random(0);
+    queryX = new int[QUERY_COUNT];
+    queryY = new int[QUERY_COUNT];
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      queryX[i] = random.nextInt(X_SIZE);
+      queryY[i] = random.nextInt(Y_SIZE);
+    }
+    nextQuery = 0;
+  }
+
+  @Benchmark
+  public GuiPoint getClosestPoint() {
+    int query = nextQuery++ & (QUERY_COUNT - 1);
+    return dataSet.pointIndex.getClosestPoint(dataSet.zoomFactor, new Point(0, 0),
+                                              queryX[query], queryY[query], SELECT_TOLERANCE);
+  }
+}
@@ -1,13 +1,22 @@
 package org.threadly.load;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import org.threadly.load.ExecutableScript.ExecutionItem;
 import org.threadly.load.ExecutableScript.ExecutionItem.ChildItems;
+import org.threadly.load.gui.NameTable;
 import org.threadly.load.gui.Node;
+import org.threadly.util.ArgumentVerifier;
 
 /**
  * <p>Class which builds a graph of {@link Node}'s based off a script produced by a 
@@ -17,6 +26,14 @@ import org.threadly.load.gui.Node;
  * @author jent - Mike Jensen
  */
 public class ScriptGraphBuilder extends AbstractScriptFactoryInitializer {
+  /**
+   * Number of steps added to a graph between calls to a {@link BuildListener}.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 10000;
+  private static final int PARALLEL_MIN_BRANCHES = 2;  // composite branches needed to expand in parallel
+  private static final int BRANCH_CHUNKS_PER_THREAD = 4;  // chunks of branches per pool thread, to balance load
+  private static final int MAX_SURPLUS_QUEUED_TASKS = 2;  // queued work at which nested items are expanded in place
+  
   /**
    * Builds a graph from an array of arguments.  It is expected that the first argument is the 
    * {@link ScriptFactory} class.  The following arguments should be parameters for that factory 
@@ -26,7 +43,20 @@ public class ScriptGraphBuilder extends AbstractScriptFactoryInitializer {
    * @return The head node for the graph provided from the script
    */
   public static Node buildGraph(String[] args) {
-    return new ScriptGraphBuilder(args).makeGraph();
+    return buildGraph(args, null);
+  }
+  
+  /**
+   * Builds a graph from an array of arguments, providing the graph to a listener as it is built.  
+   * It is expected that the first argument is the {@link ScriptFactory} class.  The following 
+   * arguments should be parameters for that factory in the form of key=value.
+   * 
+   * @param args Arguments to construct {@link ScriptFactory} with
+   * @param listener Listener to be invoked as batches of steps are added, or {@code null}
+   * @return The head node for the graph provided from the script
+   */
+  public static Node buildGraph(String[] args, BuildListener listener) {
+    return new ScriptGraphBuilder(args).makeGraph(listener, ForkJoinPool.commonPool());
   }
   
   /**
@@ -38,10 +68,67 @@ public class ScriptGraphBuilder extends AbstractScriptFactoryInitializer {
    * @return Head node of a graph which matches the steps execution
    */
   public static Node makeGraph(ChildItems childItems) {
+    return makeGraph(childItems, null);
+  }
+  
+  /**
+   * Makes a {@link Node} graph from the list of provided steps.  Each step which is represented 
+   * by a node will be added to the provided map.  This allows the execution of the script to be 
+   * shown on the graph, for example with {@link org.threadly.load.gui.AmbushGraph#stepStarted(Node)}.
+   * 
+   * @param childItems Collection of sequential steps to start graph production from
+   * @param itemNodes Map to add steps and their representing node to, or {@code null}
+   * @return Head node of a graph which matches the steps execution
+   */
+  public static Node makeGraph(ChildItems childItems, Map<ExecutionItem, Node> itemNodes) {
+    return makeGraph(childItems, itemNodes, null, DEFAULT_BATCH_SIZE);
+  }
+  
+  /**
+   * Makes a {@link Node} graph from the list of provided steps, providing the graph to a listener 
+   * each time a batch of steps has been added.  This allows a graph to be shown while large 
+   * scripts are still being expanded, for example with 
+   * {@link org.threadly.load.gui.AmbushGraph#updatePartialGraphModel(Node)}.  The graph provided 
+   * to the listener has not been cleaned, and may have branches which are not yet joined.
+   * 
+   * @param childItems Collection of sequential steps to start graph production from
+   * @param itemNodes Map to add steps and their representing node to, or {@code null}
+   * @param listener Listener to be invoked as batches of steps are added, or {@code null}
+   * @param batchSize Number of steps to add between invocations of the listener
+   * @return Head node of a graph which matches the steps execution
+   */
+  public static Node makeGraph(ChildItems childItems, Map<ExecutionItem, Node> itemNodes, 
+                               BuildListener listener, int batchSize) {
+    return makeGraph(childItems, itemNodes, listener, batchSize, null);
+  }
+  
+  /**
+   * Makes a {@link Node} graph from the list of provided steps, expanding parallel branches 
+   * concurrently on a {@link ForkJoinPool}.  The branches of items whose children do not run 
+   * sequentially are independent, so chunks of them are expanded into detached subgraphs, then 
+   * attached in order on the invoking thread as each chunk completes.  The produced graph is the 
+   * same as if it were expanded on a single thread.  Items of the script will be read from 
+   * multiple threads.  The listener is invoked on the invoking thread only, as the chunks of 
+   * parallel branches are attached.  If the map of item nodes is a {@link ConcurrentMap} nodes 
+   * are added to it from multiple threads, otherwise they are added on the invoking thread.
+   * 
+   * @param childItems Collection of sequential steps to start graph production from
+   * @param itemNodes Map to add steps and their representing node to, or {@code null}
+   * @param listener Listener to be invoked as batches of steps are added, or {@code null}
+   * @param batchSize Number of steps to add between invocations of the listener
+   * @param pool Pool to expand parallel branches on, or {@code null} to expand on the invoking thread
+   * @return Head node of a graph which matches the steps execution
+   */
+  public static Node makeGraph(ChildItems childItems, Map<ExecutionItem, Node> itemNodes, 
+                               BuildListener listener, int batchSize, ForkJoinPool pool) {
+    ArgumentVerifier.assertGreaterThanZero(batchSize, "batchSize");
+    
     Node head = new Node("start");
     Node current = head;
+    ExpansionStack expansionStack = new ExpansionStack(itemNodes, new NameTable(), pool, 
+                                                       head, listener, batchSize);
     for (ExecutionItem step : childItems) {
-      current = expandNode(current, step, new AtomicInteger());
+      current = expansionStack.expandNode(current, step);
     }
     
     head.cleanGraph();
@@ -49,54 +136,307 @@ public class ScriptGraphBuilder extends AbstractScriptFactoryInitializer {
     return head;
   }
   
-  private static Node expandNode(Node previousNode, ExecutionItem item, AtomicInteger chainLength) {
-    ChildItems childItems = item.getChildItems();
-    if (! childItems.hasChildren()) {
-      Node result = new Node(item.toString());
-      previousNode.addChildNode(result);
-      chainLength.incrementAndGet();
+  /**
+   * <p>Expands {@link ExecutionItem}'s into the graph without recursion.  Each composite item 
+   * being expanded is represented as a frame in a set of parallel arrays, so that nesting depth 
+   * does not consume thread stack, and no objects (other than the child item iterator) need to 
+   * be allocated per composite item.  Step names are interned into a {@link NameTable}, so steps 
+   * with the same description share a single copy of the name.  If a {@link ForkJoinPool} is 
+   * provided, the branches of parallel items are expanded concurrently by their own stacks, 
+   * which only recurses once per nested parallel item.  Instances can be reused between 
+   * expansions, but are not thread safe.</p>
+   * 
+   * @author jent - Mike Jensen
+   */
+  private static class ExpansionStack {
+    private static final int INITIAL_SIZE = 16;
+    
+    private final Map<ExecutionItem, Node> itemNodes;
+    private final NameTable nameTable;
+    private final ForkJoinPool pool;
+    private final Node head;
+    private final BuildListener listener;
+    private final int batchSize;
+    private int stepCount = 0;
+    private int depth = 0;
+    private Iterator<?>[] iterators = new Iterator<?>[INITIAL_SIZE];
+    private boolean[] sequential = new boolean[INITIAL_SIZE];
+    private Node[] previousNodes = new Node[INITIAL_SIZE];
+    private Node[] longestNodes = new Node[INITIAL_SIZE];
+    private int[] maxLengths = new int[INITIAL_SIZE];
+    private int[] endNodesStart = new int[INITIAL_SIZE];
+    // end nodes of parallel frames, each frame owns the range from its start to the next frame's
+    private Node[] endNodes = new Node[INITIAL_SIZE];
+    private int endNodesSize = 0;
+    
+    /**
+     * Constructs a new stack.
+     * 
+     * @param itemNodes Map to record the node for each expanded step, or {@code null}
+     * @param nameTable Table to intern step names into
+     * @param pool Pool to expand parallel branches on, or {@code null}
+     * @param head Head node of the graph being built
+     * @param listener Listener to provide the graph to as it is built, or {@code null}
+     * @param batchSize Number of steps to add between invocations of the listener
+     */
+    public ExpansionStack(Map<ExecutionItem, Node> itemNodes, NameTable nameTable, ForkJoinPool pool, 
+                          Node head, BuildListener listener, int batchSize) {
+      this.itemNodes = itemNodes;
+      this.nameTable = nameTable;
+      this.pool = pool;
+      this.head = head;
+      this.listener = listener;
+      this.batchSize = batchSize;
+    }
+    
+    /**
+     * Expands an item and all of its children into the graph.
+     * 
+     * @param previousNode Node the item should be attached after
+     * @param item Item to expand
+     * @return Node which following sequential items should attach to
+     */
+    public Node expandNode(Node previousNode, ExecutionItem item) {
+      ChildItems childItems = item.getChildItems();
+      if (! childItems.hasChildren()) {
+        Node result = makeStepNode(item);
+        previousNode.addChildNode(result);
+        stepsAdded(1);
+        return result;
+      }
+      
+      final int startDepth = depth;
+      push(previousNode, childItems);
+      Node result = null;
+      int resultLength = 0;
+      while (depth > startDepth) {
+        int frame = depth - 1;
+        if (result != null) {
+          // child item of this frame finished expanding
+          childCompleted(frame, result, resultLength);
+          result = null;
+        }
+        Iterator<?> it = iterators[frame];
+        if (it.hasNext()) {
+          ExecutionItem childItem = (ExecutionItem)it.next();
+          ChildItems childsChildItems = childItem.getChildItems();
+          if (childsChildItems.hasChildren()) {
+            push(previousNodes[frame], childsChildItems);
+          } else {
+            result = makeStepNode(childItem);
+            previousNodes[frame].addChildNode(result);
+            resultLength = 1;
+            stepsAdded(1);
+          }
+        } else {
+          result = pop();
+          // composite items do not contribute to the chain length of their parent
+          resultLength = 0;
+        }
+      }
       return result;
-    } else {
-      int maxLength = -1;
-      List<Node> childNodes = new LinkedList<Node>();
-      Node longestNode = previousNode;
-      Iterator<ExecutionItem> it = childItems.iterator();
-      if (! childItems.itemsRunSequential()) {
+    }
+    
+    private Node makeStepNode(ExecutionItem item) {
+      Node result = new Node(nameTable.intern(item.toString()));
+      if (itemNodes != null) {
+        itemNodes.put(item, result);
+      }
+      return result;
+    }
+    
+    private void stepsAdded(int count) {
+      int previousCount = stepCount;
+      stepCount += count;
+      if (listener != null && stepCount / batchSize != previousCount / batchSize) {
+        listener.stepsAdded(head, stepCount);
+      }
+    }
+    
+    private void push(Node previousNode, ChildItems childItems) {
+      if (depth == iterators.length) {
+        int newSize = depth * 2;
+        iterators = Arrays.copyOf(iterators, newSize);
+        sequential = Arrays.copyOf(sequential, newSize);
+        previousNodes = Arrays.copyOf(previousNodes, newSize);
+        longestNodes = Arrays.copyOf(longestNodes, newSize);
+        maxLengths = Arrays.copyOf(maxLengths, newSize);
+        endNodesStart = Arrays.copyOf(endNodesStart, newSize);
+      }
+      longestNodes[depth] = previousNode;
+      maxLengths[depth] = -1;
+      endNodesStart[depth] = endNodesSize;
+      sequential[depth] = childItems.itemsRunSequential();
+      if (! sequential[depth]) {
         Node branchPoint = new Node();
         previousNode.addChildNode(branchPoint);
         previousNode = branchPoint;
       }
+      previousNodes[depth] = previousNode;
+      iterators[depth] = childItems.iterator();
+      depth++;
+      if (pool != null && ! sequential[depth - 1]) {
+        expandParallel(depth - 1);
+      }
+    }
+    
+    /**
+     * Expands the children of a parallel frame concurrently if enough of them are composite 
+     * items, and the pool is not already busy with other branches.  Otherwise the frame is left 
+     * to be expanded as normal.  Once done the frame has no remaining children, and will be 
+     * popped next.
+     * 
+     * @param frame Frame to expand the children of
+     */
+    private void expandParallel(int frame) {
+      if (ForkJoinTask.getPool() == pool && 
+          ForkJoinTask.getSurplusQueuedTaskCount() > MAX_SURPLUS_QUEUED_TASKS) {
+        // enough branches are already waiting to keep the pool busy, forking more is only overhead
+        return;
+      }
+      final List<ExecutionItem> items = new ArrayList<ExecutionItem>();
+      int compositeCount = 0;
+      Iterator<?> it = iterators[frame];
       while (it.hasNext()) {
-        ExecutionItem childItem = it.next();
-        AtomicInteger length = new AtomicInteger();
-        Node endNode = expandNode(previousNode, childItem, length);
-        if (childItems.itemsRunSequential()) {
-          previousNode = endNode;
+        ExecutionItem item = (ExecutionItem)it.next();
+        items.add(item);
+        if (item.getChildItems().hasChildren()) {
+          compositeCount++;
         }
-        if (length.get() >= maxLength) {
-          maxLength = length.get();
-          longestNode = endNode;
+      }
+      if (compositeCount < PARALLEL_MIN_BRANCHES) {
+        iterators[frame] = items.iterator();
+        return;
+      }
+      
+      Node[] branchStarts = new Node[items.size()];
+      Node[] branchEnds = new Node[items.size()];
+      int chunkCount = Math.min(compositeCount, pool.getParallelism() * BRANCH_CHUNKS_PER_THREAD);
+      // nodes are recorded into a concurrent map by every stack within a chunk, so that each is 
+      // only copied once into a map which is not thread safe
+      boolean copyItemNodes = itemNodes != null && ! (itemNodes instanceof ConcurrentMap);
+      List<BranchChunk> chunks = new ArrayList<BranchChunk>(chunkCount);
+      for (int c = 0; c < chunkCount; c++) {
+        Map<ExecutionItem, Node> chunkItemNodes = 
+            copyItemNodes ? new ConcurrentHashMap<ExecutionItem, Node>() : itemNodes;
+        BranchChunk chunk = new BranchChunk(this, chunkItemNodes, items, branchStarts, branchEnds, 
+                                            (int)((long)items.size() * c / chunkCount), 
+                                            (int)((long)items.size() * (c + 1) / chunkCount));
+        // only fork from a worker of our pool, forking elsewhere would queue into another pool
+        if (ForkJoinTask.getPool() == pool) {
+          chunk.fork();
+        } else {
+          pool.execute(chunk);
         }
-        childNodes.add(endNode);
+        chunks.add(chunk);
       }
-      if (childItems.itemsRunSequential() || maxLength < 1) {
-        return longestNode;
+      
+      // attach in item order so the graph matches one expanded on a single thread, attaching 
+      // each chunk as soon as it completes so listeners see the graph grow
+      Node branchPoint = previousNodes[frame];
+      for (BranchChunk chunk : chunks) {
+        chunk.join();
+        for (int i = chunk.start; i < chunk.end; i++) {
+          branchStarts[i].moveChildNodes(branchPoint);
+          Node endNode = branchEnds[i] == branchStarts[i] ? branchPoint : branchEnds[i];
+          // composite items do not contribute to the chain length of their parent
+          childCompleted(frame, endNode, items.get(i).getChildItems().hasChildren() ? 0 : 1);
+        }
+        if (copyItemNodes) {
+          itemNodes.putAll(chunk.itemNodes);
+        }
+        stepsAdded(chunk.stepCount);
+      }
+      iterators[frame] = Collections.emptyIterator();
+    }
+    
+    private void childCompleted(int frame, Node endNode, int length) {
+      if (sequential[frame]) {
+        previousNodes[frame] = endNode;
       } else {
-        Node joinPoint = new Node();
-        for (Node n : childNodes) {
-          n.addChildNode(joinPoint);
+        if (endNodesSize == endNodes.length) {
+          endNodes = Arrays.copyOf(endNodes, endNodesSize * 2);
         }
-        return joinPoint;
+        endNodes[endNodesSize++] = endNode;
+      }
+      if (length >= maxLengths[frame]) {
+        maxLengths[frame] = length;
+        longestNodes[frame] = endNode;
       }
     }
+    
+    private Node pop() {
+      int frame = --depth;
+      Node result;
+      if (sequential[frame] || maxLengths[frame] < 1) {
+        result = longestNodes[frame];
+      } else {
+        result = new Node();
+        for (int i = endNodesStart[frame]; i < endNodesSize; i++) {
+          endNodes[i].addChildNode(result);
+        }
+      }
+      // release references so they can be GC'ed
+      Arrays.fill(endNodes, endNodesStart[frame], endNodesSize, null);
+      endNodesSize = endNodesStart[frame];
+      iterators[frame] = null;
+      previousNodes[frame] = null;
+      longestNodes[frame] = null;
+      return result;
+    }
+  }
+
+  /**
+   * <p>Task which expands a range of the branches of a parallel item.  Each branch is expanded 
+   * under its own temporary start node, so that no node reachable from the graph is modified 
+   * until the branches are attached by the thread which forked them.</p>
+   * 
+   * @author jent - Mike Jensen
+   */
+  private static class BranchChunk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    
+    private final ExpansionStack parentStack;
+    private final Map<ExecutionItem, Node> itemNodes;  // thread safe, or null if not recorded
+    private final List<ExecutionItem> items;
+    private final Node[] branchStarts;  // indexed by item, set by this task for its range
+    private final Node[] branchEnds;  // indexed by item, set by this task for its range
+    private final int start;
+    private final int end;
+    private int stepCount;  // set once expanded, read after the task is joined
+    
+    public BranchChunk(ExpansionStack parentStack, Map<ExecutionItem, Node> itemNodes, 
+                       List<ExecutionItem> items, Node[] branchStarts, Node[] branchEnds, 
+                       int start, int end) {
+      this.parentStack = parentStack;
+      this.itemNodes = itemNodes;
+      this.items = items;
+      this.branchStarts = branchStarts;
+      this.branchEnds = branchEnds;
+      this.start = start;
+      this.end = end;
+      stepCount = 0;
+    }
+    
+    @Override
+    protected void compute() {
+      ExpansionStack stack = new ExpansionStack(itemNodes, parentStack.nameTable, parentStack.pool, 
+                                                null, null, DEFAULT_BATCH_SIZE);
+      for (int i = start; i < end; i++) {
+        branchStarts[i] = new Node();
+        branchEnds[i] = stack.expandNode(branchStarts[i], items.get(i));
+      }
+      stepCount = stack.stepCount;
+    }
   }
 
   protected ScriptGraphBuilder(String[] args) {
     super(args);
   }
   
-  protected Node makeGraph() {
-    return ScriptGraphBuilder.makeGraph(script.startExecutionItem.getChildItems());
+  protected Node makeGraph(BuildListener listener, ForkJoinPool pool) {
+    return ScriptGraphBuilder.makeGraph(script.startExecutionItem.getChildItems(), null, 
+                                        listener, DEFAULT_BATCH_SIZE, pool);
   }
 
   @Override
@@ -108,4 +448,22 @@ public class ScriptGraphBuilder extends AbstractScriptFactoryInitializer {
                          " " + buildingScript + " key1=value1 key2=value2....");
     System.exit(-1);
   }
+  
+  /**
+   * <p>Listener which is provided a graph while it is being built.</p>
+   * 
+   * @author jent - Mike Jensen
+   */
+  public interface BuildListener {
+    /**
+     * Invoked on the building thread each time a batch of steps has been added to the graph.  If a 
+     * chunk of parallel branches was attached at once, this may be invoked once for several 
+     * batches.  The graph will not change until this returns, but will afterwards, so it must be 
+     * copied rather than read from other threads.
+     * 
+     * @param head Head node of the graph being built
+     * @param stepCount Number of steps added to the graph so far
+     */
+    public void stepsAdded(Node head, int stepCount);
+  }
 }
@@ -1,23 +1,21 @@
 package org.threadly.load.gui;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.ControlEvent;
 import org.eclipse.swt.events.ControlListener;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.DragDetectEvent;
 import org.eclipse.swt.events.DragDetectListener;
 import org.eclipse.swt.events.MouseEvent;
@@ -26,6 +24,7 @@ import org.eclipse.swt.events.MouseMoveListener;
 import org.eclipse.swt.events.MouseWheelListener;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Display;
@@ -34,6 +33,12 @@ import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
 
 import org.threadly.concurrent.PrioritySchedulerService;
+import org.threadly.concurrent.future.ImmediateResultListenableFuture;
+import org.threadly.concurrent.future.ListenableFuture;
+import org.threadly.concurrent.future.SettableListenableFuture;
+import org.threadly.load.gui.PointPlacer.ForceLayoutTask;
+import org.threadly.load.gui.PointPlacer.Placement;
+import org.threadly.load.gui.PointPlacer.ProgressListener;
 import org.threadly.util.ArgumentVerifier;
 import org.threadly.util.Clock;
 
@@ -51,20 +56,56 @@ public class AmbushGraph {
   private static final int SELECT_TOLLERANCE = 25;  // distance to point till it could be considered selected
   private static final int HIGHLIGHT_DISAPEAR_DELAY = 2000;
   private static final int BACKGROUND_GRAY = 210;
+  protected static final int POINT_COLOR_COUNT = 64;
   private static final int GRID_SOFTNESS = 50;  // randomness for point placement
-  private static final int DISTANCE_FROM_EDGE = 50;  // dots wont be placed within this distance from the edge
-  private static final int SQUEEZE_FACTOR = 2;  // smaller numbers result in tighter plot groups
-  private static final int MAX_NODES_DRAW_ALL_NAMES = 20; // number of nodes till names are not automatically shown
-  private static final Random RANDOM = new Random(Clock.lastKnownTimeMillis());
+  protected static final int DISTANCE_FROM_EDGE = 50;  // dots wont be placed within this distance from the edge
+  protected static final int MAX_NODES_DRAW_ALL_NAMES = 20; // number of nodes till names are not automatically shown
+  private static final int INCREMENTAL_MIN_RETAINED_PERCENT = 50;  // kept nodes needed to avoid a full layout
+  private static final int STEP_EVENT_BUFFER_SIZE = 1 << 16;  // step events buffered before they are dropped
+  private static final int STEP_EVENT_BATCH_SIZE = 8192;  // max step events handled per display task
+  protected static final byte STEP_STATE_RUNNING = 1;
+  protected static final byte STEP_STATE_SUCCEEDED = 2;
+  protected static final byte STEP_STATE_FAILED = 3;
+  private static final int PROGRESS_REDRAW_INTERVAL = 10000;  // nodes laid out between progress redraws
+  private static final int METRICS_LINE_HEIGHT = 20;
+  private static final int COLLAPSE_NODE_COUNT = 5000;  // larger graphs open with fork/join regions collapsed
+  private static final int PARTIAL_UPDATE_MIN_INTERVAL_MILLIS = 250;  // min time between partial graph snapshots
+  private static final int PARTIAL_SNAPSHOT_DUTY_FACTOR = 3;  // builder time allowed per unit of snapshot time
+  private static final int VIEW_PORT_MARGIN = 5;  // natural distance outside the view port to still draw dots
+  private static final int DENSITY_CELL_SIZE = 8;  // pixel size of cells when drawing node density
+  private static final double DEFAULT_MIN_DETAIL_ZOOM_FACTOR = 0;  // zoom is not a factor by default
+  private static final double DEFAULT_MAX_DETAIL_DENSITY = 1;  // average nodes per density cell
+  protected static final long COLOR_PALETTE_SEED = 0x414D4253L;  // constant so colors match between launches
+  protected static final int LAYOUT_VERSION = 1;  // must be incremented when layouts place points differently
+  private static final int MOVED_POSITIONS_STORE_DELAY_MILLIS = 2000;  // moves are stored once this long idle
 
   private final PrioritySchedulerService scheduler;
+  private final ColorPalette colorPalette;
+  private final PointPlacer pointPlacer;
   private final Color backgroundColor;
   private final Shell mainShell;
   private final MainWindowListener mainWindowListener;
   private final Shell previewShell;
   private final PreviewWindowListener previewShellListener;
   private final Runnable redrawRunnable;
+  private final Runnable storeMovedPositionsRunnable;
+  private final GraphImageCache mainImageCache;
+  private final GraphImageCache previewImageCache;
+  private final AtomicInteger layoutGeneration;
+  private final StepEventBuffer stepEvents;
+  private final StepEventBuffer.EventHandler stepEventHandler;
+  private final GraphMetrics metrics;
+  private final ForkJoinRegions forkJoinRegions;
+  private volatile boolean showMetrics;
+  private volatile Node headNode;
+  private volatile LayoutProgress layoutProgress;
+  private volatile LayoutMode layoutMode;
+  private volatile int clusterIterations;
+  private volatile PositionCache positionCache;
+  private volatile LayoutTask partialTask;  // most recent layout of a partial graph
+  private volatile long nextPartialUpdateTime;  // only accessed by the thread building the graph
   private volatile GraphDataSet currentDataSet;
+  private GraphDataSet movedDataSet;  // data set with moved points not yet stored, only accessed on display thread
 
   /**
    * Constructs a new window which will display the graph of nodes.  Nodes will be provided via
@@ -105,12 +146,16 @@ public class AmbushGraph {
 
       @Override
       public void run() {
+        metrics.redrawRequested();
         if (! mainShell.isDisposed() && ! mainShell.getDisplay().isDisposed()) {
           if (displayTaskExeced.compareAndSet(false, true)) {
             mainShell.getDisplay().asyncExec(new Runnable() {
               @Override
               public void run() {
                 displayTaskExeced.set(false);
+                metrics.redrawn();
+                // drained here rather than when painting, so events are not dropped while hidden
+                drainStepEvents();
                 redraw();
               }
             });
@@ -121,8 +166,26 @@ public class AmbushGraph {
       }
     };
 
+    storeMovedPositionsRunnable = new Runnable() {
+      @Override
+      public void run() {
+        if (! mainShell.isDisposed() && ! mainShell.getDisplay().isDisposed()) {
+          mainShell.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+              storeMovedPositions();
+            }
+          });
+        }
+      }
+    };
+
     this.scheduler = scheduler;
-    backgroundColor = new Color(display, BACKGROUND_GRAY, BACKGROUND_GRAY, BACKGROUND_GRAY);
+    colorPalette = new ColorPalette(display, POINT_COLOR_COUNT, BACKGROUND_GRAY, 
+                                    new Random(COLOR_PALETTE_SEED));
+    backgroundColor = colorPalette.getBackgroundColor();
+    pointPlacer = new PointPlacer(scheduler, Runtime.getRuntime().availableProcessors(), 
+                                  colorPalette.getPointColorCount());
 
     mainShell = new Shell(display);
     mainShell.setText("Ambush execution graph");
@@ -152,9 +215,70 @@ public class AmbushGraph {
     previewShellListener = new PreviewWindowListener(); 
     previewShellListener.registerListener();
 
+    mainImageCache = new GraphImageCache(false);
+    previewImageCache = new GraphImageCache(true);
+
+    mainShell.addDisposeListener(new DisposeListener() {
+      @Override
+      public void widgetDisposed(DisposeEvent arg0) {
+        // preview is useless without the main window, and must be gone before colors are released
+        if (! previewShell.isDisposed()) {
+          previewShell.dispose();
+        }
+        // store points moved just before closing, rather than waiting for the delay
+        AmbushGraph.this.scheduler.remove(storeMovedPositionsRunnable);
+        storeMovedPositions();
+        mainImageCache.dispose();
+        previewImageCache.dispose();
+        colorPalette.dispose();
+        metrics.unregister();
+      }
+    });
+
+    layoutGeneration = new AtomicInteger();
+    stepEvents = new StepEventBuffer(STEP_EVENT_BUFFER_SIZE);
+    stepEventHandler = new StepEventBuffer.EventHandler() {
+      @Override
+      public void handleEvent(Node node, byte state) {
+        // events for nodes not in the displayed graph are ignored
+        currentDataSet.setStepState(node, state);
+      }
+    };
+    metrics = new GraphMetrics(stepEvents);
+    metrics.register();
+    forkJoinRegions = new ForkJoinRegions(COLLAPSE_NODE_COUNT);
+    showMetrics = false;
+    headNode = null;
+    layoutProgress = null;
+    layoutMode = LayoutMode.LAYERED;
+    clusterIterations = PointClusterer.DEFAULT_ITERATIONS;
+    positionCache = null;
+    partialTask = null;
+    nextPartialUpdateTime = 0;
     currentDataSet = new GraphDataSet(xSize, ySize);
   }
 
+  /**
+   * Returns the performance metrics for this window.  These are also registered with the platform 
+   * MBean server until the window is closed, and can be shown in an overlay on the main window.
+   * 
+   * @return Metrics of this window
+   */
+  public GraphMetricsMXBean getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets if the performance metrics overlay should be shown on the main window.  This can also be 
+   * toggled by clicking on the overlay's label in the main window.
+   * 
+   * @param showMetrics {@code true} to show the metrics overlay
+   */
+  public void setShowMetrics(boolean showMetrics) {
+    this.showMetrics = showMetrics;
+    redrawRunnable.run();
+  }
+
   /**
    * Opens the shell and handles doing the read and dispatch loop for the display.  This call will
    * block until the shell is closed.
@@ -172,190 +296,434 @@ public class AmbushGraph {
   }
 
   /**
-   * Updates the graph representation.  This call will start crawling from the head node provided
-   * to explore all child nodes.
-   *
-   * @param headNode Node to start building graph from
+   * Sets the thresholds at which the graph switches from drawing individual nodes to drawing 
+   * shaded cells which indicate how many nodes are in each area.  Edges are then drawn once 
+   * between cells rather than once per node pair.  By default only the density threshold is used.
+   * 
+   * @param minDetailZoomFactor Zoom factor below which the main window will always aggregate nodes
+   * @param maxDetailDensity Average number of nodes per density cell above which nodes are aggregated
    */
-  public void updateGraphModel(Node headNode) {
-    Map<Node, GuiPoint> buildingMap = new HashMap<Node, GuiPoint>();
-    Map<Integer, List<GuiPoint>> xRegionCountMap = new HashMap<Integer, List<GuiPoint>>();
-    GraphDataSet newDataSet = new GraphDataSet(currentDataSet.naturalBounds.x, currentDataSet.naturalBounds.y);
-    traverseNode(newDataSet, headNode, buildingMap, 1, 1, new AtomicInteger(), xRegionCountMap);
-
-    // cleanup xRegionCountMap, make it so in each x region, the y region starts at 1, and there are no missing values
-    int maxYCount = 0;
-    Iterator<List<GuiPoint>> it = xRegionCountMap.values().iterator();
-    while (it.hasNext()) {
-      List<GuiPoint> xRegion = it.next();
-      // sort first to maintain vertical order
-      Collections.sort(xRegion, new Comparator<GuiPoint>() {
-        @Override
-        public int compare(GuiPoint o1, GuiPoint o2) {
-          return o1.yRegion - o2.yRegion;
-        }
-      });
-      Iterator<GuiPoint> points = xRegion.iterator();
-      int currentPoint = 0;
-      while (points.hasNext()) {
-        points.next().yRegion = ++currentPoint;
-      }
-      if (currentPoint > maxYCount) {
-        maxYCount = currentPoint;
-      }
-    }
+  public void setLevelOfDetail(double minDetailZoomFactor, double maxDetailDensity) {
+    GraphDataSet dataSet = currentDataSet;
+    dataSet.minDetailZoomFactor = minDetailZoomFactor;
+    dataSet.maxDetailDensity = maxDetailDensity;
+    dataSet.layoutChanged();
+    redrawRunnable.run();
+  }
 
-    newDataSet.setData(buildingMap, headNode);
-    /*if (xRegionCountMap.size() > 20 || maxYCount > 20) {
-      newDataSet.zoomFactor += .5;
-    }*/
+  /**
+   * Sets how points will be positioned for future calls to {@link #updateGraphModel(Node)}.  The 
+   * currently displayed graph is not changed.  By default {@link LayoutMode#LAYERED} is used.
+   * 
+   * @param layoutMode Mode to lay out future graphs with
+   */
+  public void setLayoutMode(LayoutMode layoutMode) {
+    ArgumentVerifier.assertNotNull(layoutMode, "layoutMode");
+    
+    this.layoutMode = layoutMode;
+  }
 
-    synchronized (this) {
-      currentDataSet = newDataSet;
+  /**
+   * Sets how many clustering sweeps future calls to {@link #updateGraphModel(Node)} will run.  
+   * Each sweep moves points further towards the average position of their parents, tightening 
+   * groups in wide graphs at the cost of layout time.  The currently displayed graph is not 
+   * changed.  By default a single sweep is run.
+   * 
+   * @param clusterIterations Number of sweeps, {@code 0} to disable clustering
+   */
+  public void setClusterIterations(int clusterIterations) {
+    ArgumentVerifier.assertNotNegative(clusterIterations, "clusterIterations");
+    
+    this.clusterIterations = clusterIterations;
+  }
 
-      if (zoomedIn(currentDataSet)) {
-        int midY = (int)((newDataSet.naturalBounds.y * newDataSet.zoomFactor) - mainShell.getSize().y) / 2;
-        updateMainOrigin(currentDataSet, 0, midY);
-      }
+  /**
+   * Sets the cache used to remember point positions between launches.  Once a graph is laid out, 
+   * or the user finishes moving a point, the positions are stored.  Future calls to 
+   * {@link #updateGraphModel(Node)} for a graph with the same structure will show the stored 
+   * positions instead of laying the graph out again.  By default no cache is used.
+   * 
+   * @param positionCache Cache to load and store positions with, or {@code null} to disable
+   */
+  public void setPositionCache(PositionCache positionCache) {
+    this.positionCache = positionCache;
+  }
+
+  /**
+   * Indicates that the step represented by the provided node has started executing.  This is 
+   * safe to invoke from any thread, and will never block.  If the display is falling behind, the 
+   * event may be dropped.
+   * 
+   * @param node Node in the displayed graph which represents the step
+   */
+  public void stepStarted(Node node) {
+    offerStepEvent(node, STEP_STATE_RUNNING);
+  }
+  
+  /**
+   * Indicates that the step represented by the provided node has completed successfully.  This 
+   * is safe to invoke from any thread, and will never block.  If the display is falling behind, 
+   * the event may be dropped.
+   * 
+   * @param node Node in the displayed graph which represents the step
+   */
+  public void stepSucceeded(Node node) {
+    offerStepEvent(node, STEP_STATE_SUCCEEDED);
+  }
+  
+  /**
+   * Indicates that the step represented by the provided node has failed.  This is safe to invoke 
+   * from any thread, and will never block.  If the display is falling behind, the event may be 
+   * dropped.
+   * 
+   * @param node Node in the displayed graph which represents the step
+   */
+  public void stepFailed(Node node) {
+    offerStepEvent(node, STEP_STATE_FAILED);
+  }
+  
+  /**
+   * Clears the execution state of all steps in the displayed graph.  Step events which have not 
+   * been displayed yet will still be applied.
+   */
+  public void clearStepStates() {
+    GraphDataSet dataSet = currentDataSet;
+    dataSet.stepStates = new byte[dataSet.points.length];
+    redrawRunnable.run();
+  }
+  
+  private void offerStepEvent(Node node, byte state) {
+    ArgumentVerifier.assertNotNull(node, "node");
+    
+    if (stepEvents.offer(node, state)) {
+      // events are drained on the display thread, redraw runnable ensures only one task is queued
+      redrawRunnable.run();
+    }
+  }
+  
+  /**
+   * Applies buffered step events to the displayed data set.  This must be invoked on the display 
+   * thread.
+   */
+  private void drainStepEvents() {
+    if (mainShell.isDisposed()) {
+      return;
+    }
+    if (stepEvents.drain(stepEventHandler, STEP_EVENT_BATCH_SIZE) == STEP_EVENT_BATCH_SIZE) {
+      // more events remain, handle them in another task so the display stays responsive
       redrawRunnable.run();
     }
   }
 
-  private void traverseNode(GraphDataSet newDataSet,
-                            Node currentNode, Map<Node, GuiPoint> buildingMap,
-                            int xRegion, int yRegion, AtomicInteger maxYRegion,
-                            Map<Integer, List<GuiPoint>> xRegionCountMap) {
-    if (maxYRegion.get() < yRegion) {
-      maxYRegion.set(yRegion);
+  /**
+   * Updates the graph representation.  This call will start crawling from the head node provided to
+   * explore all child nodes.  The layout is done asynchronously on the scheduler, while progress is
+   * displayed in the main window.  Once the layout completes it will replace the currently
+   * displayed graph.  If this is invoked again before a previous layout completes, the previous
+   * layout will be abandoned.  When using the {@link LayoutMode#LAYERED} or
+   * {@link LayoutMode#FORCE_DIRECTED} layout, graphs with many nodes open with each fork/join
+   * region collapsed into a single node.  Double clicking a collapsed region expands it, and double
+   * clicking the fork of an expanded region collapses it again.
+   *
+   * @param headNode Node to start building graph from
+   * @return Future which completes with {@code true} once displayed, or {@code false} if superseded
+   */
+  public ListenableFuture<Boolean> updateGraphModel(Node headNode) {
+    ArgumentVerifier.assertNotNull(headNode, "headNode");
+    
+    this.headNode = headNode;
+    return startLayout(new LayoutTask(layoutGeneration.incrementAndGet(), headNode, layoutMode, false));
+  }
+  
+  /**
+   * Shows a graph which is still being built, so the graph can be seen taking shape before it 
+   * is complete.  The graph is copied on the invoking thread, so it may be modified again once 
+   * this returns.  Points which are already displayed keep their positions, and new nodes are 
+   * placed near their parents.  To limit how much this slows building, the graph is only copied 
+   * once the previous partial graph has been displayed, and not more often than a fraction of 
+   * the building time.  Otherwise this returns without doing anything.  Once the graph is 
+   * complete it should be provided to {@link #updateGraphModel(Node)}, which will lay it out in 
+   * full.  Until then regions can not be expanded or collapsed.
+   * 
+   * @param headNode Node of the partial graph to start building the display from
+   * @return Future which completes with {@code true} once displayed, or {@code false} if skipped or superseded
+   */
+  public ListenableFuture<Boolean> updatePartialGraphModel(Node headNode) {
+    ArgumentVerifier.assertNotNull(headNode, "headNode");
+    
+    LayoutTask previousTask = partialTask;
+    long startTime = Clock.accurateForwardProgressingMillis();
+    if ((previousTask != null && ! previousTask.resultFuture.isDone()) || 
+        startTime < nextPartialUpdateTime) {
+      return new ImmediateResultListenableFuture<Boolean>(false);
+    }
+    LayoutTask task = new LayoutTask(layoutGeneration.incrementAndGet(), headNode, layoutMode, true);
+    task.snapshot = new GraphSnapshot(task);
+    long snapshotMillis = Clock.accurateForwardProgressingMillis() - startTime;
+    nextPartialUpdateTime = startTime + snapshotMillis + 
+                              Math.max(PARTIAL_UPDATE_MIN_INTERVAL_MILLIS, 
+                                       snapshotMillis * PARTIAL_SNAPSHOT_DUTY_FACTOR);
+    partialTask = task;
+    return startLayout(task);
+  }
+  
+  private ListenableFuture<Boolean> startLayout(LayoutTask task) {
+    layoutProgress = task.progress;
+    scheduler.execute(task);
+    redrawRunnable.run();
+    return task.resultFuture;
+  }
+  
+  /**
+   * Builds a new data set for the graph starting at the provided head node.  Collapsed fork/join 
+   * regions are replaced with summary nodes before laying out.  If most of the nodes are already 
+   * displayed, their positions are kept and only the new nodes are placed.  If no node has 
+   * changed since the current data set was produced, the current data set is returned.
+   * 
+   * @param task Task the layout is being done for, used to check if the layout should be abandoned
+   * @return The newly produced data set, or {@code null} if the layout was superseded
+   */
+  private GraphDataSet layoutGraph(LayoutTask task) {
+    GraphDataSet previousDataSet = currentDataSet;
+    if (task.snapshot == null) {
+      task.snapshot = new GraphSnapshot(task);
     }
-    GuiPoint currentPoint = buildingMap.get(currentNode);
-    if (currentPoint == null) {
-      currentPoint = new GuiPoint(makeRandomColor(), newDataSet.naturalBounds,
-                                  xRegionCountMap, xRegion, yRegion);
-      buildingMap.put(currentNode, currentPoint);
-      add(currentPoint, xRegionCountMap);
-      int childNodeRegion = maxYRegion.get();
-      Iterator<Node> it = currentNode.getChildNodes().iterator();
-      while (it.hasNext()) {
-        traverseNode(newDataSet, it.next(), buildingMap,
-                     xRegion + 1, ++childNodeRegion, maxYRegion, xRegionCountMap);
+    CompactGraph graph = task.snapshot.graph;
+    List<Node> nodesById = task.snapshot.nodesById;
+    int[] modificationCounts = task.snapshot.modificationCounts;
+    // partial graphs are only placed incrementally, so the complete graph is laid out in full
+    boolean completesPartial = previousDataSet.partial && ! task.partial;
+    GuiPoint[] previousPoints = new GuiPoint[graph.getNodeCount()];
+    int retainedCount = 0;
+    boolean changed = completesPartial || graph.getNodeCount() != previousDataSet.points.length;
+    for (int id = 0; id < modificationCounts.length; id++) {
+      Node node = nodesById.get(id);
+      GuiPoint previousPoint = previousDataSet.guiNodeMap.get(node);
+      if (previousPoint == null) {
+        changed = true;
+      } else {
+        previousPoints[id] = previousPoint;
+        retainedCount++;
+        if (previousDataSet.modificationCounts[previousPoint.id] != modificationCounts[id]) {
+          changed = true;
+        }
       }
+    }
+    if (task.isCancelled()) {
+      return null;
+    } else if (! changed) {
+      return previousDataSet;
+    }
+    // seeded from the graph so the same graph is always laid out the same
+    long structureHash = graph.getStructureHash();
+    task.random = new Random(structureHash);
+    long positionKey = makePositionKey(structureHash, task.layoutMode);
+    GraphDataSet newDataSet;
+    if (! completesPartial && retainedCount > 0 && 
+        retainedCount * 100L >= graph.getNodeCount() * (long)INCREMENTAL_MIN_RETAINED_PERCENT) {
+      task.incremental = true;
+      newDataSet = pointPlacer.placeIncrementally(task, makeDataSet(), graph, nodesById, 
+                                                  modificationCounts, previousPoints, task.random);
+    } else if (task.partial) {
+      // the node graph is still changing, so can not be traversed, and is not worth converging
+      newDataSet = pointPlacer.placeLayered(task, makeDataSet(), graph, nodesById, modificationCounts);
     } else {
-      if (xRegion > currentPoint.xRegion) {
-        Set<Node> inspectedNodes = new HashSet<Node>();
-        inspectedNodes.add(currentNode);
-        shiftLeft(currentNode, currentPoint, buildingMap,
-                  xRegion - currentPoint.xRegion, xRegionCountMap, inspectedNodes);
+      newDataSet = pointPlacer.placeCached(task, makeDataSet(), graph, nodesById, modificationCounts, 
+                                           positionCache, positionKey);
+      if (newDataSet != null) {
+        task.positionsCached = true;
+      } else if (task.layoutMode == LayoutMode.LAYERED) {
+        newDataSet = pointPlacer.placeLayered(task, makeDataSet(), graph, nodesById, modificationCounts);
+      } else if (task.layoutMode == LayoutMode.FORCE_DIRECTED) {
+        newDataSet = makeDataSet();
+        // kept on the task, so that it can continue converging once the data set is displayed
+        task.forceLayout = pointPlacer.placeForceDirected(task, newDataSet, graph, nodesById, 
+                                                          modificationCounts, task.random);
+        if (task.forceLayout == null) {
+          newDataSet = null;
+        }
+      } else {
+        newDataSet = pointPlacer.placeSoftGrid(task, makeDataSet(), task.headNode, graph, 
+                                               nodesById, modificationCounts, task.random);
       }
     }
-  }
-
-  private static void add(GuiPoint point, Map<Integer, List<GuiPoint>> map) {
-    List<GuiPoint> currList = map.get(point.xRegion);
-    if (currList == null) {
-      currList = new LinkedList<GuiPoint>();
-      map.put(point.xRegion, currList);
-    }
-    if (! currList.contains(point)) {
-      currList.add(point);
+    if (newDataSet != null) {
+      newDataSet.positionKey = positionKey;
+      newDataSet.partial = task.partial;
     }
+    return newDataSet;
   }
-
-  private static void remove(GuiPoint point, Map<Integer, List<GuiPoint>> map) {
-    List<GuiPoint> currList = map.get(point.xRegion);
-    if (currList != null) {
-      currList.remove(point);
+  
+  /**
+   * Produces the key positions are stored in the {@link PositionCache} under.  The key changes 
+   * with the layout mode, and with {@link #LAYOUT_VERSION} and 
+   * {@link PositionCache#FORMAT_VERSION}, so positions from an older layout are not reused.
+   * 
+   * @param structureHash Hash of the graph from {@link CompactGraph#getStructureHash()}
+   * @param layoutMode Mode the graph is laid out with
+   * @return Key for the graph's positions
+   */
+  protected static long makePositionKey(long structureHash, LayoutMode layoutMode) {
+    long hash = CompactGraph.mixHash(structureHash, layoutMode.name().hashCode());
+    hash = CompactGraph.mixHash(hash, LAYOUT_VERSION);
+    return CompactGraph.mixHash(hash, PositionCache.FORMAT_VERSION);
+  }
+  
+  /**
+   * Stores the positions of a data set with points moved by the user, if it is still displayed.  
+   * This must be invoked on the display thread.
+   */
+  private void storeMovedPositions() {
+    GraphDataSet dataSet = movedDataSet;
+    movedDataSet = null;
+    // a replacement data set has its positions stored as it is displayed
+    if (dataSet != null && dataSet == currentDataSet) {
+      storePositions(dataSet);
     }
   }
-
-  private void shiftLeft(Node currNode, GuiPoint point,
-                         Map<Node, GuiPoint> buildingMap, int shiftAmount,
-                         Map<Integer, List<GuiPoint>> xRegionCountMap, Set<Node> shiftedNodes) {
-    remove(point, xRegionCountMap);
-    point.xRegion += shiftAmount;
-    add(point, xRegionCountMap);
-    Iterator<Node> it = currNode.getChildNodes().iterator();
-    while (it.hasNext()) {
-      Node child = it.next();
-      if (shiftedNodes.contains(child)) {
-        continue;
-      } else {
-        shiftedNodes.add(child);
-      }
-      GuiPoint childPoint = buildingMap.get(child);
-      if (childPoint != null) {
-        shiftLeft(child, childPoint, buildingMap, shiftAmount, xRegionCountMap, shiftedNodes);
+  
+  /**
+   * Stores the current positions of a displayed data set into the {@link PositionCache}.  The 
+   * positions are copied on the invoking thread, which must be the display thread, and written 
+   * on the scheduler.
+   * 
+   * @param dataSet Data set to store the positions of
+   */
+  private void storePositions(GraphDataSet dataSet) {
+    final PositionCache positionCache = this.positionCache;
+    GuiPoint[] points = dataSet.points;
+    if (positionCache == null || points.length == 0 || dataSet.partial) {
+      return;
+    }
+    final long positionKey = dataSet.positionKey;
+    final Point naturalBounds = new Point(dataSet.naturalBounds.x, dataSet.naturalBounds.y);
+    final int[] colors = new int[points.length];
+    final int[] xPositions = new int[points.length];
+    final int[] yPositions = new int[points.length];
+    for (int id = 0; id < points.length; id++) {
+      colors[id] = points[id].colorIndex;
+      xPositions[id] = points[id].getX();
+      yPositions[id] = points[id].getY();
+    }
+    scheduler.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          positionCache.store(positionKey, naturalBounds, colors, xPositions, yPositions);
+        } catch (IOException e) {
+          System.err.println("Failed to cache positions: " + e);
+        }
       }
+    });
+  }
+  
+  /**
+   * Constructs an empty data set of the current size, which will cluster points using the 
+   * current settings.
+   * 
+   * @return New data set
+   */
+  private GraphDataSet makeDataSet() {
+    GraphDataSet newDataSet = new GraphDataSet(currentDataSet.naturalBounds.x, currentDataSet.naturalBounds.y);
+    newDataSet.clusterIterations = clusterIterations;
+    newDataSet.clusterExecutor = scheduler;
+    return newDataSet;
+  }
+  
+  /**
+   * Replaces the displayed data set with a newly laid out one.  This must be invoked on the 
+   * display thread.
+   * 
+   * @param task Task which produced the data set
+   * @param newDataSet Data set to display
+   */
+  private void swapDataSet(final LayoutTask task, final GraphDataSet newDataSet) {
+    if (task.isCancelled() || mainShell.isDisposed()) {
+      task.resultFuture.setResult(false);
+      return;
+    }
+    GraphDataSet previousDataSet = currentDataSet;
+    layoutProgress = null;
+    if (newDataSet == previousDataSet) {
+      // nothing changed in the graph
+      redraw();
+      task.resultFuture.setResult(true);
+      return;
+    }
+    // carry over settings which may have changed while the layout was running
+    newDataSet.minDetailZoomFactor = previousDataSet.minDetailZoomFactor;
+    newDataSet.maxDetailDensity = previousDataSet.maxDetailDensity;
+    // step events are only applied on this thread, so none can be missed between copy and swap
+    newDataSet.copyStepStates(previousDataSet);
+    
+    currentDataSet = newDataSet;
+    if (task.incremental) {
+      // keep the user's view of the graph
+      newDataSet.zoomFactor = previousDataSet.zoomFactor;
+      newDataSet.mainOrigin = previousDataSet.mainOrigin;
+      newDataSet.drawAllNames = previousDataSet.drawAllNames;
+      redraw();
+    } else if (zoomedIn(newDataSet)) {
+      int midY = (int)((newDataSet.naturalBounds.y * newDataSet.zoomFactor) - mainShell.getSize().y) / 2;
+      updateMainOrigin(newDataSet, 0, midY);
+    } else {
+      redraw();
     }
+    if (task.forceLayout != null && ! task.forceLayout.isConverged()) {
+      // stored once converged
+      // iterating stops once a newer layout is requested, or the user moves a point
+      scheduler.execute(new ForceLayoutTask(scheduler, mainShell.getDisplay(), 
+                                            newDataSet, task.forceLayout) {
+        @Override
+        protected boolean isStopped() {
+          return task.isCancelled() || currentDataSet != newDataSet || mainShell.isDisposed();
+        }
+        
+        @Override
+        protected void positionsPublished(boolean converged) {
+          redraw();
+          if (converged) {
+            storePositions(newDataSet);
+          }
+        }
+      });
+    } else if (! task.positionsCached) {
+      storePositions(newDataSet);
+    }
+    task.resultFuture.setResult(true);
   }
 
   private void updateDisplay(GC gc, boolean preview) {
+    long startNanos = System.nanoTime();
     GraphDataSet dataSet = this.currentDataSet;
     //gc.setBackground(new Color(shell.getDisplay(), 230, 230, 230));
     //gc.fillRectangle(0, 0, XSIZE, YSIZE);
-    Iterator<Entry<Node, GuiPoint>> it = dataSet.guiNodeMap.entrySet().iterator();
-    while (it.hasNext()) {
-      Entry<Node, GuiPoint> entry = it.next();
-      // draw a dot to indicate node point
-      gc.setForeground(entry.getValue().color);
-      // times the zoomFactor to go from natural coordinates to absolute coordinates
-      int pointX = (int)(entry.getValue().getX() * dataSet.zoomFactor);
-      int pointY = (int)(entry.getValue().getY() * dataSet.zoomFactor);
-      int size;
-      if (preview) {
-        // convert from absolute coordinates to preview window coordinates
-        double xFactor = previewShell.getSize().x / (dataSet.naturalBounds.x * dataSet.zoomFactor);
-        double yFactor = previewShell.getSize().y / (dataSet.naturalBounds.y * dataSet.zoomFactor);
-        pointX = (int)(pointX * xFactor);
-        pointY = (int)(pointY * yFactor);
-        size = 2;
-      } else {
-        // shift coordinates based off view port
-        pointX -= dataSet.mainOrigin.x;
-        pointY -= dataSet.mainOrigin.y;
-        size = 5;
-      }
-      gc.setBackground(entry.getValue().color);
-      gc.fillOval(pointX, pointY, size, size);
-      gc.setBackground(backgroundColor);
-
-      // draw lines to peer nodes (which may or may not be drawn yet)
-      Iterator<Node> it2 = entry.getKey().getChildNodes().iterator();
-      while (it2.hasNext()) {
-        Node child = it2.next();
-        GuiPoint childPoint = dataSet.guiNodeMap.get(child);
-        if (childPoint == null) {
-          System.err.println("***** " + entry.getKey().getName() +
-                               " is connected to an unknown node: " + child.getName() + " *****");
-          continue;
-        }
-        // times the zoomFactor to go from natural coordinates to absolute coordinates
-        int childX = (int)(childPoint.getX() * dataSet.zoomFactor);
-        int childY = (int)(childPoint.getY() * dataSet.zoomFactor);
-        if (preview) {
-          // convert from absolute coordinates to preview window coordinates
-          double xFactor = previewShell.getSize().x / (dataSet.naturalBounds.x * dataSet.zoomFactor);
-          double yFactor = previewShell.getSize().y / (dataSet.naturalBounds.y * dataSet.zoomFactor);
-          childX = (int)(childX * xFactor);
-          childY = (int)(childY * yFactor);
-        } else {
-          // shift coordinates based off view port
-          childX -= dataSet.mainOrigin.x;
-          childY -= dataSet.mainOrigin.y;
-        }
-
-        gc.drawLine(pointX, pointY, childX, childY);
-      }
-
-      // Draw the label last
-      if (! preview && (dataSet.drawAllNames || dataSet.highlightedPoint == entry.getValue())) {
-        gc.setForeground(new Color(mainShell.getDisplay(), 0, 0, 0));
+    if (preview) {
+      previewImageCache.draw(gc, dataSet, new Rectangle(0, 0, previewShell.getSize().x, 
+                                                        previewShell.getSize().y));
+    } else {
+      Point origin = dataSet.mainOrigin;
+      Point shellSize = mainShell.getSize();
+      mainImageCache.draw(gc, dataSet, new Rectangle(origin.x, origin.y, shellSize.x, shellSize.y));
+      
+      // step states change constantly while executing, so are drawn on top of the cached image
+      Rectangle region = new Rectangle(origin.x, origin.y, shellSize.x, shellSize.y);
+      int[] visibleIds = findVisiblePoints(dataSet, region);
+      drawStepStates(gc, colorPalette, dataSet, region, visibleIds);
+      metrics.nodesPainted(visibleIds.length, dataSet.points.length);
+      
+      // highlighted label changes with mouse movement, so is drawn on top of the cached image
+      GuiPoint highlightedPoint = dataSet.highlightedPoint;
+      if (! dataSet.drawAllNames && highlightedPoint != null && highlightedPoint.index != null) {
+        gc.setForeground(colorPalette.getTextColor());
         gc.setBackground(backgroundColor);
-        gc.drawText(entry.getKey().getName(), pointX + 10, pointY - 5);
+        gc.drawText(dataSet.graph.getName(highlightedPoint.id), 
+                    (int)(highlightedPoint.getX() * dataSet.zoomFactor) - origin.x + 10, 
+                    (int)(highlightedPoint.getY() * dataSet.zoomFactor) - origin.y - 5);
       }
     }
 
-    gc.setForeground(new Color(mainShell.getDisplay(), 0, 0, 0));
+    gc.setForeground(colorPalette.getTextColor());
     if (preview) {
       if (zoomedIn(dataSet)) {
         double xFactor = previewShell.getSize().x / (dataSet.naturalBounds.x * dataSet.zoomFactor);
@@ -368,12 +736,314 @@ public class AmbushGraph {
                          translatedMainWidth, translatedMainHeight);
       }
     } else {
+      gc.setBackground(backgroundColor);
       if (dataSet.drawAllNames) {
         gc.drawText("Hide names", 10, 10);
       } else {
         gc.drawText("Show names", 10, 10);
       }
+      if (showMetrics) {
+        gc.drawText("Hide stats", 100, 10);
+      } else {
+        gc.drawText("Show stats", 100, 10);
+      }
+      LayoutProgress progress = layoutProgress;
+      if (progress != null) {
+        gc.drawText("Laying out graph: " + progress.phase + " (" + progress.nodeCount + " nodes)", 10, 30);
+      }
+      if (showMetrics) {
+        String[] lines = metrics.makeOverlayLines();
+        for (int i = 0; i < lines.length; i++) {
+          gc.drawText(lines[i], 10, 50 + (i * METRICS_LINE_HEIGHT));
+        }
+      }
+    }
+    metrics.paintFinished(preview, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Draws every node and edge for the preview window.
+   * 
+   * @param gc Graphics context to draw with
+   * @param colorPalette Palette to draw with
+   * @param dataSet Data to draw
+   * @param previewSize Size of the preview window
+   */
+  private static void drawPreviewGraph(GC gc, ColorPalette colorPalette, 
+                                       GraphDataSet dataSet, Point previewSize) {
+    CompactGraph graph = dataSet.graph;
+    GuiPoint[] points = dataSet.points;
+    // factors to convert from absolute coordinates to preview window coordinates
+    double xFactor = previewSize.x / (dataSet.naturalBounds.x * dataSet.zoomFactor);
+    double yFactor = previewSize.y / (dataSet.naturalBounds.y * dataSet.zoomFactor);
+    DensityGrid densityGrid = null;
+    EdgeBundles edgeBundles = null;
+    if (dataSet.exceedsDetailDensity(points.length, (long)previewSize.x * previewSize.y)) {
+      densityGrid = new DensityGrid(previewSize.x, previewSize.y, DENSITY_CELL_SIZE);
+    } else {
+      edgeBundles = getEdgeBundles(dataSet, points);
+    }
+    for (int id = 0; id < points.length; id++) {
+      GuiPoint point = points[id];
+      if (point == null) {
+        continue;
+      }
+      // times the zoomFactor to go from natural coordinates to absolute coordinates
+      int pointX = (int)((int)(point.getX() * dataSet.zoomFactor) * xFactor);
+      int pointY = (int)((int)(point.getY() * dataSet.zoomFactor) * yFactor);
+      if (densityGrid == null) {
+        drawPoint(gc, colorPalette, point, pointX, pointY, 2);
+      } else {
+        densityGrid.addPoint(pointX, pointY);
+      }
+
+      // draw lines to peer nodes (which may or may not be drawn yet)
+      int childEnd = graph.childOffsets[id + 1];
+      for (int i = graph.childOffsets[id]; i < childEnd; i++) {
+        GuiPoint childPoint = points[graph.childTargets[i]];
+        if (childPoint == null) {
+          reportUnknownChild(graph, id, graph.childTargets[i]);
+          continue;
+        } else if (edgeBundles != null && edgeBundles.isBundled(id, graph.childTargets[i])) {
+          continue;
+        }
+        int childX = (int)((int)(childPoint.getX() * dataSet.zoomFactor) * xFactor);
+        int childY = (int)((int)(childPoint.getY() * dataSet.zoomFactor) * yFactor);
+        if (densityGrid == null) {
+          gc.drawLine(pointX, pointY, childX, childY);
+        } else {
+          densityGrid.addEdge(pointX, pointY, childX, childY);
+        }
+      }
+    }
+    if (densityGrid != null) {
+      densityGrid.draw(gc, colorPalette);
+    } else if (edgeBundles != null) {
+      edgeBundles.draw(gc, colorPalette, dataSet.zoomFactor * xFactor, dataSet.zoomFactor * yFactor, 
+                       0, 0, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Draws the nodes and edges which are visible in a region of the main window's absolute 
+   * coordinates.  Nodes are found through the {@link GuiPointIndex}, so the cost of drawing 
+   * depends on what is in the region rather than the total graph size.  Labels are only drawn 
+   * if all names are to be shown.  If the zoom or density of nodes in the region is beyond the 
+   * data set's detail thresholds, nodes and edges are aggregated into a {@link DensityGrid}.  
+   * Otherwise edges of high fan-out forks and fan-in joins are drawn as {@link EdgeBundles}.
+   * 
+   * @param gc Graphics context to draw with, origin will be at the top left of the region
+   * @param colorPalette Palette to draw with
+   * @param dataSet Data to draw
+   * @param region Area in absolute coordinates to draw
+   */
+  private static void drawMainGraph(GC gc, ColorPalette colorPalette, 
+                                    GraphDataSet dataSet, Rectangle region) {
+    CompactGraph graph = dataSet.graph;
+    GuiPoint[] points = dataSet.points;
+    GuiPointIndex index = dataSet.pointIndex;
+    double zoomFactor = dataSet.zoomFactor;
+    Point origin = new Point(region.x, region.y);
+    // visible area in natural coordinates, padded so partially visible dots are still drawn
+    int minX = (int)(origin.x / zoomFactor) - VIEW_PORT_MARGIN;
+    int minY = (int)(origin.y / zoomFactor) - VIEW_PORT_MARGIN;
+    int maxX = (int)((origin.x + region.width) / zoomFactor) + VIEW_PORT_MARGIN;
+    int maxY = (int)((origin.y + region.height) / zoomFactor) + VIEW_PORT_MARGIN;
+    // short edges crossing the view port must have their parent within this expanded area
+    int edgeLength = index.getShortEdgeLength();
+    int[] nearbyIds = index.findPoints(minX - edgeLength, minY - edgeLength, 
+                                       maxX + edgeLength, maxY + edgeLength);
+    DensityGrid densityGrid = null;
+    if (zoomFactor < dataSet.minDetailZoomFactor || 
+        dataSet.exceedsDetailDensity(countVisible(points, nearbyIds, minX, minY, maxX, maxY), 
+                                     (long)region.width * region.height)) {
+      densityGrid = new DensityGrid(region.width, region.height, DENSITY_CELL_SIZE);
+    }
+    EdgeBundles edgeBundles = densityGrid == null ? getEdgeBundles(dataSet, points) : null;
+    for (int id : nearbyIds) {
+      GuiPoint point = points[id];
+      // times the zoomFactor to go from natural coordinates to absolute coordinates
+      // then shift coordinates based off view port
+      int pointX = (int)(point.getX() * zoomFactor) - origin.x;
+      int pointY = (int)(point.getY() * zoomFactor) - origin.y;
+      boolean pointVisible = point.getX() >= minX && point.getX() <= maxX && 
+                               point.getY() >= minY && point.getY() <= maxY;
+      if (densityGrid != null) {
+        if (pointVisible) {
+          densityGrid.addPoint(pointX, pointY);
+        }
+      } else if (pointVisible) {
+        drawPoint(gc, colorPalette, point, pointX, pointY, 5);
+      } else {
+        gc.setForeground(colorPalette.getPointColor(point.colorIndex));
+      }
+
+      // draw lines to peer nodes, long edges are drawn after
+      int childEnd = graph.childOffsets[id + 1];
+      for (int i = graph.childOffsets[id]; i < childEnd; i++) {
+        if (index.isLongEdge(i) || 
+            (edgeBundles != null && edgeBundles.isBundled(id, graph.childTargets[i]))) {
+          continue;
+        }
+        GuiPoint childPoint = points[graph.childTargets[i]];
+        if (childPoint == null) {
+          reportUnknownChild(graph, id, graph.childTargets[i]);
+          continue;
+        }
+        if (Math.max(point.getX(), childPoint.getX()) >= minX && 
+            Math.min(point.getX(), childPoint.getX()) <= maxX && 
+            Math.max(point.getY(), childPoint.getY()) >= minY && 
+            Math.min(point.getY(), childPoint.getY()) <= maxY) {
+          int childX = (int)(childPoint.getX() * zoomFactor) - origin.x;
+          int childY = (int)(childPoint.getY() * zoomFactor) - origin.y;
+          if (densityGrid == null) {
+            gc.drawLine(pointX, pointY, childX, childY);
+          } else {
+            densityGrid.addEdge(pointX, pointY, childX, childY);
+          }
+        }
+      }
+
+      // Draw the label last
+      if (pointVisible && densityGrid == null && dataSet.drawAllNames) {
+        gc.setForeground(colorPalette.getTextColor());
+        gc.setBackground(colorPalette.getBackgroundColor());
+        gc.drawText(graph.getName(id), pointX + 10, pointY - 5);
+      }
+    }
+    
+    int[] longEdges = index.findLongEdges(minX, minY, maxX, maxY);
+    for (int i = 0; i < longEdges.length; i += 2) {
+      if (edgeBundles != null && edgeBundles.isBundled(longEdges[i], longEdges[i + 1])) {
+        continue;
+      }
+      GuiPoint point = points[longEdges[i]];
+      GuiPoint childPoint = points[longEdges[i + 1]];
+      int pointX = (int)(point.getX() * zoomFactor) - origin.x;
+      int pointY = (int)(point.getY() * zoomFactor) - origin.y;
+      int childX = (int)(childPoint.getX() * zoomFactor) - origin.x;
+      int childY = (int)(childPoint.getY() * zoomFactor) - origin.y;
+      if (densityGrid == null) {
+        gc.setForeground(colorPalette.getPointColor(point.colorIndex));
+        gc.drawLine(pointX, pointY, childX, childY);
+      } else {
+        densityGrid.addEdge(pointX, pointY, childX, childY);
+      }
+    }
+    if (densityGrid != null) {
+      densityGrid.draw(gc, colorPalette);
+    } else if (edgeBundles != null) {
+      edgeBundles.draw(gc, colorPalette, zoomFactor, zoomFactor, origin.x, origin.y, 
+                       minX, minY, maxX, maxY);
+    }
+  }
+  
+  /**
+   * Returns the edge bundles of a data set with their geometry current for the layout.  Must be 
+   * invoked from the display thread.
+   * 
+   * @param dataSet Data set to get the bundles of
+   * @param points Points being drawn from the data set
+   * @return Bundles to draw, or {@code null} if the data set has changed since points were read
+   */
+  private static EdgeBundles getEdgeBundles(GraphDataSet dataSet, GuiPoint[] points) {
+    EdgeBundles edgeBundles = dataSet.edgeBundles;
+    if (! edgeBundles.isForPoints(points)) {
+      return null;
+    }
+    edgeBundles.updateGeometry(dataSet.getLayoutVersion());
+    return edgeBundles;
+  }
+  
+  /**
+   * Finds the points which are within a region of the main window's absolute coordinates.
+   * 
+   * @param dataSet Data set to search
+   * @param region Absolute region to search
+   * @return Ids of the points within the region
+   */
+  private static int[] findVisiblePoints(GraphDataSet dataSet, Rectangle region) {
+    double zoomFactor = dataSet.zoomFactor;
+    int minX = (int)(region.x / zoomFactor) - VIEW_PORT_MARGIN;
+    int minY = (int)(region.y / zoomFactor) - VIEW_PORT_MARGIN;
+    int maxX = (int)((region.x + region.width) / zoomFactor) + VIEW_PORT_MARGIN;
+    int maxY = (int)((region.y + region.height) / zoomFactor) + VIEW_PORT_MARGIN;
+    return dataSet.pointIndex.findPoints(minX, minY, maxX, maxY);
+  }
+  
+  /**
+   * Draws a ring around each visible point which has an execution state.
+   * 
+   * @param gc Graphics context to draw with
+   * @param colorPalette Palette to draw with
+   * @param dataSet Data set to draw the step states of
+   * @param region Absolute region to draw which will be translated to window position {@code 0, 0}
+   * @param visibleIds Ids of the points within the region
+   */
+  private static void drawStepStates(GC gc, ColorPalette colorPalette, 
+                                     GraphDataSet dataSet, Rectangle region, int[] visibleIds) {
+    byte[] stepStates = dataSet.stepStates;
+    double zoomFactor = dataSet.zoomFactor;
+    int originalLineWidth = gc.getLineWidth();
+    gc.setLineWidth(2);
+    for (int id : visibleIds) {
+      if (id >= stepStates.length) {
+        continue;
+      }
+      switch (stepStates[id]) {
+        case STEP_STATE_RUNNING:
+          gc.setForeground(colorPalette.getRunningColor());
+          break;
+        case STEP_STATE_SUCCEEDED:
+          gc.setForeground(colorPalette.getSucceededColor());
+          break;
+        case STEP_STATE_FAILED:
+          gc.setForeground(colorPalette.getFailedColor());
+          break;
+        default:
+          continue;
+      }
+      GuiPoint point = dataSet.points[id];
+      gc.drawOval((int)(point.getX() * zoomFactor) - region.x - 3, 
+                  (int)(point.getY() * zoomFactor) - region.y - 3, 11, 11);
+    }
+    gc.setLineWidth(originalLineWidth);
+  }
+  
+  private static int countVisible(GuiPoint[] points, int[] ids, int minX, int minY, int maxX, int maxY) {
+    int result = 0;
+    for (int id : ids) {
+      Point position = points[id].position;
+      if (position.x >= minX && position.x <= maxX && position.y >= minY && position.y <= maxY) {
+        result++;
+      }
     }
+    return result;
+  }
+  
+  /**
+   * Draws a dot to indicate a node point.  This will leave the foreground color set to the 
+   * point's color so that lines can be drawn from it.
+   * 
+   * @param gc Graphics context to draw with
+   * @param colorPalette Palette to draw with
+   * @param point Point to draw
+   * @param x X position in window coordinates
+   * @param y Y position in window coordinates
+   * @param size Size of the dot
+   */
+  private static void drawPoint(GC gc, ColorPalette colorPalette, 
+                                GuiPoint point, int x, int y, int size) {
+    Color color = colorPalette.getPointColor(point.colorIndex);
+    gc.setForeground(color);
+    gc.setBackground(color);
+    gc.fillOval(x, y, size, size);
+    gc.setBackground(colorPalette.getBackgroundColor());
+  }
+  
+  private static void reportUnknownChild(CompactGraph graph, int id, int childId) {
+    System.err.println("***** " + graph.getName(id) +
+                         " is connected to an unknown node: " + graph.getName(childId) + " *****");
   }
 
   /**
@@ -397,30 +1067,12 @@ public class AmbushGraph {
    * @return Closest point, or {@code null} if no points are close enough
    */
   private GuiPoint getClosestPoint(int x, int y) {
+    long startNanos = System.nanoTime();
     GraphDataSet dataSet = this.currentDataSet;
-    Iterator<GuiPoint> it = dataSet.guiNodeMap.values().iterator();
-    GuiPoint minEntry = null;
-    double minDistance = Double.MAX_VALUE;
-    while (it.hasNext()) {
-      GuiPoint point = it.next();
-      // shift point coordinates from natural to absolute
-      int pointX = (int)(point.getX() * dataSet.zoomFactor);
-      int pointY = (int)(point.getY() * dataSet.zoomFactor);
-      // shift from absolute to main window coordinates
-      pointX -= dataSet.mainOrigin.x;
-      pointY -= dataSet.mainOrigin.y;
-      // make sure point is close enough to even consider
-      if (Math.abs(pointX - x) <= SELECT_TOLLERANCE &&
-          Math.abs(pointY - y) <= SELECT_TOLLERANCE) {
-        double distance = Math.sqrt(Math.pow(Math.abs(pointX - x), 2) +
-                                      Math.pow(Math.abs(pointY - y), 2));
-        if (distance < minDistance) {
-          minDistance = distance;
-          minEntry = point;
-        }
-      }
-    }
-    return minEntry;
+    GuiPoint result = dataSet.pointIndex.getClosestPoint(dataSet.zoomFactor, dataSet.mainOrigin, 
+                                                         x, y, SELECT_TOLLERANCE);
+    metrics.hitTestFinished(System.nanoTime() - startNanos);
+    return result;
   }
 
   /**
@@ -465,19 +1117,17 @@ public class AmbushGraph {
   }
 
   /**
-   * Produces a semi-random (weighted on the dark side) color.
+   * Finds the position of a region on one axis of the soft grid.  The position is offset from 
+   * the center of the region by a pseudo-random amount, which only depends on the provided 
+   * arguments so the same grid is always placed the same.
    * 
-   * @return A semi-random darkish color
+   * @param region Region on the axis, starting at {@code 1}
+   * @param totalRegions Number of regions on the axis
+   * @param maxDimension Size of the axis
+   * @param salt Value to vary the offset by, so points sharing a region are offset differently
+   * @return Position on the axis
    */
-  private Color makeRandomColor() {
-    final int maxValue = 150;
-    int r = RANDOM.nextInt(maxValue);
-    int g = RANDOM.nextInt(maxValue);
-    int b = RANDOM.nextInt(maxValue);
-    return new Color(mainShell.getDisplay(), r, g, b);
-  }
-
-  private static int getSoftGridPoint(int region, int totalRegions, int maxDimension) {
+  protected static int getSoftGridPoint(int region, int totalRegions, int maxDimension, long salt) {
     if (region < 1) {
       throw new IllegalArgumentException("Region must be >= 1: " + region);
     } else if (region > totalRegions) {
@@ -486,13 +1136,14 @@ public class AmbushGraph {
     double spacePerRegion = (double)maxDimension / totalRegions;
     double pos = spacePerRegion / 2;
     pos += (region - 1) * spacePerRegion;
+    long hash = CompactGraph.mixHash(CompactGraph.mixHash(salt, region), totalRegions);
     int softness;
     if (spacePerRegion > 2) {
-      softness = RANDOM.nextInt((int)Math.min(GRID_SOFTNESS, spacePerRegion));
+      softness = (int)((hash >>> 1) % (int)Math.min(GRID_SOFTNESS, spacePerRegion));
     } else {
       softness = 2;
     }
-    if (pos < DISTANCE_FROM_EDGE || (pos < maxDimension - DISTANCE_FROM_EDGE && RANDOM.nextBoolean())) {
+    if (pos < DISTANCE_FROM_EDGE || (pos < maxDimension - DISTANCE_FROM_EDGE && (hash & 1) == 0)) {
       pos += softness;
     } else {
       pos -= softness;
@@ -536,7 +1187,21 @@ public class AmbushGraph {
 
     @Override
     public void mouseDoubleClick(MouseEvent me) {
-      // ignored
+      Node currentHeadNode = headNode;
+      if (me.button != 1 || currentHeadNode == null) {
+        return;
+      }
+
+      // expand a collapsed region, or collapse the region of a fork
+      GraphDataSet dataSet = AmbushGraph.this.currentDataSet;
+      GuiPoint point = getClosestPoint(me.x, me.y);
+      // the displayed data set may have been replaced since it was read
+      if (point == null || point.index != dataSet.pointIndex) {
+        return;
+      }
+      if (forkJoinRegions.toggle(dataSet.nodesById.get(point.id))) {
+        updateGraphModel(currentHeadNode);
+      }
     }
 
     @Override
@@ -545,20 +1210,29 @@ public class AmbushGraph {
         return;
       }
 
-      // check if top left button was clicked
-      if (me.x < 150 && me.y < 50) {
+      // check if top left buttons were clicked
+      if (me.x < 90 && me.y < 50) {
         GraphDataSet dataSet = AmbushGraph.this.currentDataSet;
         dataSet.drawAllNames = ! dataSet.drawAllNames;
         if (! dataSet.drawAllNames) {
           dataSet.highlightedPoint = null;
         }
         mainShell.redraw();
+      } else if (me.x < 180 && me.y < 30) {
+        showMetrics = ! showMetrics;
+        mainShell.redraw();
       }
     }
 
     @Override
     public void mouseUp(MouseEvent me) {
       GraphDataSet dataSet = AmbushGraph.this.currentDataSet;
+      if (dataSet.movingPoint != null) {
+        // remember where the user placed the point, once they stop moving points
+        movedDataSet = dataSet;
+        scheduler.remove(storeMovedPositionsRunnable);
+        scheduler.schedule(storeMovedPositionsRunnable, MOVED_POSITIONS_STORE_DELAY_MILLIS);
+      }
       dataSet.movingPoint = null;
       dataSet.dragPoint = null;
     }
@@ -580,6 +1254,7 @@ public class AmbushGraph {
         // we move to mouse position, but restrict to ensure it stays in view
         dataSet.movingPoint.setPosition(Math.max(Math.min(translatedX, dataSet.naturalBounds.x - 25), 10),
                                         Math.max(Math.min(translatedY, dataSet.naturalBounds.y - 45), 10));
+        dataSet.layoutChanged();
 
         redraw();
       } else if (! dataSet.drawAllNames) {
@@ -728,6 +1403,303 @@ public class AmbushGraph {
     }
   }
 
+  /**
+   * <p>Strategies for positioning the points of a graph.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  public enum LayoutMode {
+    /**
+     * Depth first traversal onto a randomized soft grid.  Nodes which are found again deeper in 
+     * the graph shift all of their descendants, which can be slow on large fork/join graphs.
+     */
+    SOFT_GRID, 
+    /**
+     * Longest path layering with barycenter ordering of each layer to reduce edge crossings.  
+     * Runs in time linear to the graph size for each ordering sweep.
+     */
+    LAYERED, 
+    /**
+     * Force directed placement, starting from the {@link #LAYERED} layout.  The graph is shown 
+     * once the starting positions are known, and positions are then updated as the layout 
+     * converges.  Converging stops early if the user moves a point.
+     */
+    FORCE_DIRECTED
+  }
+
+  /**
+   * <p>Task which lays out a graph on the scheduler, and then hands the result to the display 
+   * thread to be shown.  A task is abandoned once a newer layout has been requested.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  private class LayoutTask implements Runnable, Placement {
+    private final int generation;
+    private final Node headNode;
+    private final LayoutMode layoutMode;
+    private final boolean partial;  // graph is still being built
+    private final LayoutProgress progress;
+    private final SettableListenableFuture<Boolean> resultFuture;
+    // set if the layout kept positions from the current data set, read on the display thread
+    private boolean incremental;
+    // set if the layout continues converging once displayed, read on the display thread
+    private ForceDirectedLayout forceLayout;
+    // set if the positions were loaded from the position cache, read on the display thread
+    private boolean positionsCached;
+    // seeded from the graph once it is snapshotted, only used by the layout thread
+    private Random random;
+    // set before running if the graph was copied on the thread requesting the layout
+    private GraphSnapshot snapshot;
+    
+    public LayoutTask(int generation, Node headNode, LayoutMode layoutMode, boolean partial) {
+      this.generation = generation;
+      this.headNode = headNode;
+      this.layoutMode = layoutMode;
+      this.partial = partial;
+      progress = new LayoutProgress();
+      resultFuture = new SettableListenableFuture<Boolean>(false);
+      incremental = false;
+      forceLayout = null;
+      positionsCached = false;
+      random = null;
+      snapshot = null;
+    }
+    
+    @Override
+    public ProgressListener getProgress() {
+      return progress;
+    }
+    
+    @Override
+    public boolean isCancelled() {
+      return generation != layoutGeneration.get();
+    }
+    
+    @Override
+    public void run() {
+      try {
+        final GraphDataSet newDataSet = layoutGraph(this);
+        if (newDataSet == null || mainShell.isDisposed() || mainShell.getDisplay().isDisposed()) {
+          resultFuture.setResult(false);
+          return;
+        }
+        progress.finish();
+        mainShell.getDisplay().asyncExec(new Runnable() {
+          @Override
+          public void run() {
+            swapDataSet(LayoutTask.this, newDataSet);
+          }
+        });
+      } catch (Throwable t) {
+        if (layoutProgress == progress) {
+          layoutProgress = null;
+        }
+        resultFuture.setFailure(t);
+      }
+    }
+  }
+  
+  /**
+   * <p>Copy of the graph reachable from a layout task's head node, with collapsed regions 
+   * replaced by summary nodes.  Once produced the layout does not need to read the source 
+   * nodes, other than as keys.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  private class GraphSnapshot {
+    private final CompactGraph graph;
+    private final List<Node> nodesById;
+    private final int[] modificationCounts;  // indexed by id
+    
+    public GraphSnapshot(LayoutTask task) {
+      task.progress.setPhase("snapshotting");
+      List<Node> nodesById = new ArrayList<Node>();
+      CompactGraph graph = new CompactGraph(task.headNode, nodesById);
+      if (task.layoutMode != LayoutMode.SOFT_GRID) {
+        // soft grid layout traverses the node graph, so can only show the full graph
+        task.progress.setPhase("collapsing");
+        List<Node> viewNodesById = new ArrayList<Node>();
+        graph = forkJoinRegions.makeView(task.headNode, graph, nodesById, viewNodesById, task.partial);
+        nodesById = viewNodesById;
+      }
+      modificationCounts = new int[graph.getNodeCount()];
+      for (int id = 0; id < modificationCounts.length; id++) {
+        modificationCounts[id] = nodesById.get(id).getModificationCount();
+      }
+      this.graph = graph;
+      this.nodesById = nodesById;
+    }
+  }
+  
+  /**
+   * <p>Progress of a running layout, used to show status while the layout is computed.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  private class LayoutProgress implements ProgressListener {
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+    private long phaseStartNanos = startNanos;
+    // only modified by the thread doing the layout
+    private volatile String phase = "starting";
+    private volatile int nodeCount = 0;
+    
+    @Override
+    public void setPhase(String phase) {
+      recordPhaseTime();
+      this.phase = phase;
+      redrawRunnable.run();
+    }
+    
+    private void recordPhaseTime() {
+      long now = System.nanoTime();
+      Long previous = phaseMillis.get(phase);
+      long millis = (now - phaseStartNanos) / 1000000;
+      // a phase entered more than once reports its combined time
+      phaseMillis.put(phase, previous == null ? millis : previous + millis);
+      phaseStartNanos = now;
+    }
+    
+    /**
+     * Records the phase times of the completed layout into the window's metrics.
+     */
+    public void finish() {
+      recordPhaseTime();
+      metrics.layoutFinished((System.nanoTime() - startNanos) / 1000000, phaseMillis);
+    }
+    
+    @Override
+    public void nodeAdded() {
+      if (++nodeCount % PROGRESS_REDRAW_INTERVAL == 0) {
+        redrawRunnable.run();
+      }
+    }
+  }
+
+  /**
+   * <p>Holds an offscreen image of the rendered graph, so that repaints which only shift the 
+   * view port can be done by copying from the image rather than drawing every node and edge.  
+   * The image is re-rendered only when the data set, layout, zoom or shown names change, or when 
+   * the requested area moves beyond what was rendered.  For the main window the image covers 
+   * the view port plus a margin on each side so small pans stay within it.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  private class GraphImageCache {
+    private final boolean preview;
+    private Image image;
+    private Rectangle imageRegion;
+    private GraphDataSet dataSet;
+    private int layoutVersion;
+    private double zoomFactor;
+    private boolean drawAllNames;
+    
+    public GraphImageCache(boolean preview) {
+      this.preview = preview;
+      image = null;
+      imageRegion = null;
+      dataSet = null;
+    }
+    
+    /**
+     * Copies the requested area onto the provided graphics context, rendering the image first if 
+     * the cached image is not valid for the request.
+     * 
+     * @param gc Graphics context to draw into
+     * @param dataSet Data to be drawn
+     * @param region Area (in absolute coordinates for the main window) to copy
+     */
+    public void draw(GC gc, GraphDataSet dataSet, Rectangle region) {
+      if (region.width < 1 || region.height < 1) {
+        return;
+      }
+      if (this.dataSet != dataSet || layoutVersion != dataSet.getLayoutVersion() || 
+          zoomFactor != dataSet.zoomFactor || drawAllNames != dataSet.drawAllNames || 
+          ! contains(dataSet, imageRegion, region)) {
+        render(dataSet, region);
+      }
+      int width = Math.min(region.width, imageRegion.x + imageRegion.width - region.x);
+      int height = Math.min(region.height, imageRegion.y + imageRegion.height - region.y);
+      gc.drawImage(image, region.x - imageRegion.x, region.y - imageRegion.y, width, height, 
+                   0, 0, width, height);
+    }
+    
+    private boolean contains(GraphDataSet dataSet, Rectangle outer, Rectangle inner) {
+      if (outer == null) {
+        return false;
+      } else if (preview) {
+        return outer.width == inner.width && outer.height == inner.height;
+      } else {
+        // the view port may extend past the graph if the window is larger, so only check in bounds
+        Rectangle bounds = getAbsoluteBounds(dataSet);
+        return inner.x >= outer.x && inner.y >= outer.y && 
+                 Math.min(inner.x + inner.width, bounds.width) <= outer.x + outer.width && 
+                 Math.min(inner.y + inner.height, bounds.height) <= outer.y + outer.height;
+      }
+    }
+    
+    private Rectangle getAbsoluteBounds(GraphDataSet dataSet) {
+      return new Rectangle(0, 0, 
+                           (int)Math.ceil(dataSet.naturalBounds.x * dataSet.zoomFactor), 
+                           (int)Math.ceil(dataSet.naturalBounds.y * dataSet.zoomFactor));
+    }
+    
+    private void render(GraphDataSet dataSet, Rectangle region) {
+      this.dataSet = dataSet;
+      layoutVersion = dataSet.getLayoutVersion();
+      zoomFactor = dataSet.zoomFactor;
+      drawAllNames = dataSet.drawAllNames;
+      
+      Rectangle newRegion;
+      if (preview) {
+        newRegion = region;
+      } else {
+        // expand by half the view port in every direction, restricted to the graph bounds
+        Rectangle bounds = getAbsoluteBounds(dataSet);
+        int x = Math.max(0, region.x - (region.width / 2));
+        int y = Math.max(0, region.y - (region.height / 2));
+        int width = Math.max(region.width, 
+                             Math.min(region.x + region.width + (region.width / 2), bounds.width) - x);
+        int height = Math.max(region.height, 
+                              Math.min(region.y + region.height + (region.height / 2), bounds.height) - y);
+        newRegion = new Rectangle(x, y, width, height);
+      }
+      if (image == null || imageRegion.width != newRegion.width || 
+          imageRegion.height != newRegion.height) {
+        if (image != null) {
+          image.dispose();
+        }
+        image = new Image(mainShell.getDisplay(), newRegion.width, newRegion.height);
+      }
+      imageRegion = newRegion;
+      
+      GC imageGc = new GC(image);
+      try {
+        imageGc.setBackground(colorPalette.getBackgroundColor());
+        imageGc.fillRectangle(0, 0, newRegion.width, newRegion.height);
+        if (preview) {
+          drawPreviewGraph(imageGc, colorPalette, dataSet, new Point(newRegion.width, newRegion.height));
+        } else {
+          drawMainGraph(imageGc, colorPalette, dataSet, newRegion);
+        }
+      } finally {
+        imageGc.dispose();
+      }
+    }
+    
+    /**
+     * Releases the cached image.
+     */
+    public void dispose() {
+      if (image != null) {
+        image.dispose();
+        image = null;
+        imageRegion = null;
+        dataSet = null;
+      }
+    }
+  }
+
   /**
    * <p>Container of data which represents the state of the graph.</p>
    *
@@ -737,80 +1709,171 @@ public class AmbushGraph {
     protected final Point naturalBounds;
     protected volatile double zoomFactor;
     protected volatile Map<Node, GuiPoint> guiNodeMap;
+    protected volatile CompactGraph graph;
+    protected volatile List<Node> nodesById;  // source nodes, indexed by graph node id
+    protected volatile GuiPoint[] points;  // indexed by graph node id
+    protected volatile int[] modificationCounts;  // node modification counts, indexed by graph node id
+    protected volatile byte[] stepStates;  // execution state of each node, indexed by graph node id
+    protected volatile GuiPointIndex pointIndex;
+    protected volatile EdgeBundles edgeBundles;
     protected volatile boolean drawAllNames;
     protected volatile Point mainOrigin;
+    protected volatile double minDetailZoomFactor;
+    protected volatile double maxDetailDensity;
+    protected volatile int clusterIterations;
+    protected volatile Executor clusterExecutor;  // executor to cluster wide graphs in parallel on
+    protected volatile long positionKey;  // key for the PositionCache, from the graph and layout mode
+    protected volatile boolean partial;  // graph was still being built when laid out
     private GuiPoint movingPoint;
     private Point dragPoint;
     private GuiPoint highlightedPoint;
+    private final AtomicInteger layoutVersion;
 
     public GraphDataSet(int xSize, int ySize) {
       naturalBounds = new Point(xSize, ySize);
       zoomFactor = 1;
       guiNodeMap = Collections.emptyMap();
+      graph = new CompactGraph();
+      nodesById = Collections.emptyList();
+      points = new GuiPoint[0];
+      modificationCounts = new int[0];
+      stepStates = new byte[0];
+      pointIndex = new GuiPointIndex(naturalBounds, graph, points);
+      edgeBundles = new EdgeBundles(graph, points);
       drawAllNames = true;
       mainOrigin = new Point(0, 0);
+      minDetailZoomFactor = DEFAULT_MIN_DETAIL_ZOOM_FACTOR;
+      maxDetailDensity = DEFAULT_MAX_DETAIL_DENSITY;
+      clusterIterations = PointClusterer.DEFAULT_ITERATIONS;
+      clusterExecutor = null;
+      positionKey = 0;
+      partial = false;
       movingPoint = null;
       dragPoint = null;
       highlightedPoint = null;
+      layoutVersion = new AtomicInteger();
+    }
+    
+    /**
+     * Must be invoked any time point positions change outside of {@link #setData(Map, Node)}.  
+     * This invalidates any rendering which was cached from the previous positions.
+     */
+    public void layoutChanged() {
+      layoutVersion.incrementAndGet();
+    }
+    
+    /**
+     * Checks if drawing the given number of points into an area would be too dense to show 
+     * individual nodes.
+     * 
+     * @param pointCount Number of points which would be drawn
+     * @param pixelArea Area in pixels the points would be drawn into
+     * @return {@code true} if points should be aggregated into density cells
+     */
+    public boolean exceedsDetailDensity(int pointCount, long pixelArea) {
+      double cellCount = Math.max(1, pixelArea / (double)(DENSITY_CELL_SIZE * DENSITY_CELL_SIZE));
+      return pointCount / cellCount > maxDetailDensity;
+    }
+    
+    /**
+     * Returns a value which changes every time the layout of the points changes.
+     * 
+     * @return Current layout version
+     */
+    public int getLayoutVersion() {
+      return layoutVersion.get();
+    }
+    
+    /**
+     * Checks if the user is currently moving a point.  This must be invoked on the display thread.
+     * 
+     * @return {@code true} if a point is grabbed
+     */
+    public boolean isMovingPoint() {
+      return movingPoint != null;
+    }
+    
+    /**
+     * Records the execution state of the step represented by a node.  Nodes which are not in this 
+     * data set are ignored.  This must only be invoked on the display thread.
+     * 
+     * @param node Node which represents the step
+     * @param state New execution state of the step
+     * @return {@code true} if the node is in this data set
+     */
+    public boolean setStepState(Node node, byte state) {
+      GuiPoint point = guiNodeMap.get(node);
+      if (point == null || point.index != pointIndex) {
+        return false;
+      }
+      stepStates[point.id] = state;
+      return true;
+    }
+    
+    /**
+     * Copies the execution state of each step which is also in a previous data set.  This is used 
+     * so that progress is kept when the graph is laid out again, however it was laid out.  This 
+     * must only be invoked on the display thread.
+     * 
+     * @param previous Data set to copy the execution states from
+     */
+    public void copyStepStates(GraphDataSet previous) {
+      byte[] previousStepStates = previous.stepStates;
+      List<Node> previousNodes = previous.nodesById;
+      int count = Math.min(previousStepStates.length, previousNodes.size());
+      for (int id = 0; id < count; id++) {
+        // most steps have not started, only those that have need to be found in this graph
+        if (previousStepStates[id] != 0) {
+          setStepState(previousNodes.get(id), previousStepStates[id]);
+        }
+      }
     }
 
     /**
-     * Updates the stored data with the provided guiNodeMap.
+     * Updates the stored data with the provided guiNodeMap.  This will also produce a 
+     * {@link CompactGraph} from the head node which is used for rendering.
      * 
      * @param guiNodeMap New map of nodes and points to store
      * @param headNode Node that the graph starts from
      */
     public void setData(Map<Node, GuiPoint> guiNodeMap, Node headNode) {
+      List<Node> nodesById = new ArrayList<Node>(guiNodeMap.size());
+      CompactGraph graph = new CompactGraph(headNode, nodesById);
+      GuiPoint[] points = new GuiPoint[nodesById.size()];
+      int[] modificationCounts = new int[nodesById.size()];
+      for (int id = 0; id < points.length; id++) {
+        Node node = nodesById.get(id);
+        points[id] = guiNodeMap.get(node);
+        modificationCounts[id] = node.getModificationCount();
+      }
+      setData(guiNodeMap, graph, nodesById, points, modificationCounts, null);
+    }
+    
+    /**
+     * Updates the stored data with the provided graph and points.
+     * 
+     * @param guiNodeMap New map of nodes and points to store
+     * @param graph Graph structure to render
+     * @param nodesById Source nodes for the graph, in id order
+     * @param points Points indexed by node id in {@code graph}
+     * @param modificationCounts Modification counts of the source nodes, indexed by node id
+     * @param keptPositions Points which should not be moved when clustering, or {@code null}
+     */
+    protected void setData(Map<Node, GuiPoint> guiNodeMap, CompactGraph graph, List<Node> nodesById, 
+                           GuiPoint[] points, int[] modificationCounts, boolean[] keptPositions) {
       this.guiNodeMap = guiNodeMap;
+      this.graph = graph;
+      this.nodesById = nodesById;
+      this.points = points;
+      this.modificationCounts = modificationCounts;
+      stepStates = new byte[points.length];
       drawAllNames = guiNodeMap.size() <= MAX_NODES_DRAW_ALL_NAMES;
-      
-      // cluster the dots better
-      List<Node> childNodes = new ArrayList<Node>();
-      for (Node n: headNode.getChildNodes()) {
-        childNodes.addAll(n.getChildNodes());
-      }
-      while (! childNodes.isEmpty()) {
-        List<Node> newChildNodes = new ArrayList<Node>();
-        Iterator<Node> it = childNodes.iterator();
-        while (it.hasNext()) {
-          Node childNode = it.next();
-          GuiPoint childGp = guiNodeMap.get(childNode);
-          if (childGp == null) {
-            System.err.println("***** unknown node: " + childNode.getName() + " *****");
-            continue;
-          }
-          int sampleSize = 0;
-          int totalParentPos = 0;
-          Iterator<Node> pIt = childNode.getParentNodes().iterator();
-          List<Node> toRemoveParents = new ArrayList<Node>();
-          while (pIt.hasNext()) {
-            Node pNode = pIt.next();
-            GuiPoint gp = guiNodeMap.get(pNode);
-            if (gp == null) {
-              /* This is rather common from node deletions which result in no way to get to them 
-               * via child chains, for now we just clean this up as we find it.
-               */
-              toRemoveParents.add(pNode);
-              continue;
-            }
-            sampleSize++;
-            totalParentPos += gp.getY();
-          }
-          for (Node pNode: toRemoveParents) {
-            childNode.removeParentNode(pNode);
-          }
-          if (sampleSize > 0) {
-            int moveDistance = ((totalParentPos / sampleSize) - childGp.getY()) / SQUEEZE_FACTOR;
-            childGp.position.y += moveDistance;
-          }
-          for (Node n: childNode.getChildNodes()) {
-            if (! newChildNodes.contains(n)) {
-              newChildNodes.add(n);
-            }
-          }
-        }
-        childNodes = newChildNodes;
-      }
+      new PointClusterer(graph, points, keptPositions, clusterExecutor, 
+                         Runtime.getRuntime().availableProcessors()).cluster(clusterIterations);
+      // index must be built once point positions are settled
+      pointIndex = new GuiPointIndex(naturalBounds, graph, points);
+      edgeBundles = new EdgeBundles(graph, points);
+      layoutChanged();
     }
   }
 
@@ -820,17 +1883,25 @@ public class AmbushGraph {
    * @author jent - Mike Jensen
    */
   protected static class GuiPoint {
-    protected final Color color;
+    protected final int colorIndex;  // index into the ColorPalette
     protected final Point mainBounds;
     protected Map<Integer, List<GuiPoint>> xRegionCountMap;
     protected int xRegion;
     protected int yRegion;
     protected boolean coordiantesSet;
     protected Point position;
+    protected GuiPointIndex index;
+    protected int id;  // id within the graph of the index
+
+    public GuiPoint(int colorIndex, Point mainBounds, Point position) {
+      this(colorIndex, mainBounds, null, 0, 0);
+      coordiantesSet = true;
+      this.position = position;
+    }
 
-    public GuiPoint(Color color, Point mainBounds,
+    public GuiPoint(int colorIndex, Point mainBounds,
                     Map<Integer, List<GuiPoint>> xRegionCountMap, int xRegion, int yRegion) {
-      this.color = color;
+      this.colorIndex = colorIndex;
       this.mainBounds = mainBounds;
       this.xRegionCountMap = xRegionCountMap;
       this.xRegion = xRegion;
@@ -846,9 +1917,9 @@ public class AmbushGraph {
         if (xRegion == 1) {
           x = DISTANCE_FROM_EDGE;
         } else {
-          x = getSoftGridPoint(xRegion, xRegionCountMap.size(), mainBounds.x);
+          x = getSoftGridPoint(xRegion, xRegionCountMap.size(), mainBounds.x, yRegion);
         }
-        y = getSoftGridPoint(yRegion, xRegionCountMap.get(xRegion).size(), mainBounds.y);
+        y = getSoftGridPoint(yRegion, xRegionCountMap.get(xRegion).size(), mainBounds.y, -xRegion);
         position = new Point(x, y);
         xRegionCountMap = null; // no longer needed, allow GC
       }
@@ -865,8 +1936,12 @@ public class AmbushGraph {
     }
 
     public void setPosition(int x, int y) {
+      Point oldPosition = position;
       coordiantesSet = true;
       position = new Point(x, y);
+      if (index != null) {
+        index.pointMoved(this, oldPosition.x, oldPosition.y);
+      }
     }
   }
 }
@@ -1,9 +1,11 @@
 package org.threadly.load.gui;
 
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
 
 import org.threadly.concurrent.PriorityScheduler;
 import org.threadly.load.ScriptGraphBuilder;
+import org.threadly.util.ExceptionUtils;
 
 /**
  * <p>Class which is responsible for starting up the gui to display ambush scripts.</p>
@@ -16,7 +18,7 @@ public class AmbushGui {
    * 
    * @param args String array representing arguments for execution
    */
-  public static void main(String[] args) {
+  public static void main(final String[] args) {
     Display display = null;
     try {
       display = new Display();
@@ -30,7 +32,8 @@ public class AmbushGui {
     try {
       //Instantiate the GUI part
       try {
-        AmbushGraph gui = new AmbushGraph(scheduler, display);
+        final Display guiDisplay = display;
+        final AmbushGraph gui = new AmbushGraph(scheduler, display);
         
         /* Test graph:
         Node head = new Node("head");
@@ -73,7 +76,41 @@ public class AmbushGui {
         
         gui.updateGraphModel(head);*/
         
-        gui.updateGraphModel(ScriptGraphBuilder.buildGraph(args));
+        // show the arrangement from a previous launch of the same script, if there was one
+        gui.setPositionCache(new PositionCache());
+        // build on its own thread so the window opens immediately, and shows the graph taking shape
+        Thread builderThread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            Node head;
+            try {
+              // building large scripts can be slow, so reuse the graph from a previous launch if possible
+              head = new GraphCache().loadOrBuild(args, new ScriptGraphBuilder.BuildListener() {
+                @Override
+                public void stepsAdded(Node head, int stepCount) {
+                  gui.updatePartialGraphModel(head);
+                }
+              });
+            } catch (Throwable t) {
+              ExceptionUtils.handleException(t);
+              // there is no graph to show, so close the window rather than leave it blank
+              if (! guiDisplay.isDisposed()) {
+                guiDisplay.asyncExec(new Runnable() {
+                  @Override
+                  public void run() {
+                    for (Shell shell : guiDisplay.getShells()) {
+                      shell.dispose();
+                    }
+                  }
+                });
+              }
+              return;
+            }
+            gui.updateGraphModel(head);
+          }
+        }, "Ambush graph builder");
+        builderThread.setDaemon(true);
+        builderThread.start();
         
         gui.runGuiLoop();
       } finally {
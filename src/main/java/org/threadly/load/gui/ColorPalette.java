@@ -0,0 +1,184 @@
+package org.threadly.load.gui;
+
+import java.util.Random;
+
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * <p>Owns a fixed set of native colors used for drawing the graph.  Points reference their color
+ * by index into the palette, so no matter how many points or graph updates there are, only the
+ * colors allocated at construction are held.  All colors are released by {@link #dispose()}.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class ColorPalette {
+  private static final int MAX_POINT_COLOR_VALUE = 150;  // keeps point colors on the dark side
+  private static final int DENSITY_COLOR_COUNT = 8;
+  private static final int[] LIGHTEST_DENSITY_RGB = new int[] { 170, 170, 190 };
+  private static final int[] DARKEST_DENSITY_RGB = new int[] { 20, 20, 80 };
+  private static final int[] RUNNING_RGB = new int[] { 230, 160, 0 };
+  private static final int[] SUCCEEDED_RGB = new int[] { 0, 170, 0 };
+  private static final int[] FAILED_RGB = new int[] { 220, 0, 0 };
+
+  private final Color backgroundColor;
+  private final Color textColor;
+  private final Color[] pointColors;
+  private final Color[] densityColors;
+  private final Color runningColor;
+  private final Color succeededColor;
+  private final Color failedColor;
+
+  /**
+   * Constructs a new palette, allocating all colors from the display.
+   *
+   * @param display Display to allocate colors on
+   * @param pointColorCount Number of different colors to be used for points
+   * @param backgroundGray Gray value (0 - 255) for the background color
+   * @param random Random used to produce the point colors
+   */
+  public ColorPalette(Display display, int pointColorCount, int backgroundGray, Random random) {
+    backgroundColor = new Color(display, backgroundGray, backgroundGray, backgroundGray);
+    textColor = new Color(display, 0, 0, 0);
+    int[] pointRgbs = makePointRgbs(pointColorCount, random);
+    pointColors = new Color[pointColorCount];
+    for (int i = 0; i < pointColorCount; i++) {
+      pointColors[i] = new Color(display, (pointRgbs[i] >> 16) & 0xFF, 
+                                 (pointRgbs[i] >> 8) & 0xFF, pointRgbs[i] & 0xFF);
+    }
+    densityColors = new Color[DENSITY_COLOR_COUNT];
+    for (int i = 0; i < DENSITY_COLOR_COUNT; i++) {
+      int[] rgb = new int[3];
+      for (int c = 0; c < rgb.length; c++) {
+        rgb[c] = LIGHTEST_DENSITY_RGB[c] + 
+                   (((DARKEST_DENSITY_RGB[c] - LIGHTEST_DENSITY_RGB[c]) * i) / (DENSITY_COLOR_COUNT - 1));
+      }
+      densityColors[i] = new Color(display, rgb[0], rgb[1], rgb[2]);
+    }
+    runningColor = new Color(display, RUNNING_RGB[0], RUNNING_RGB[1], RUNNING_RGB[2]);
+    succeededColor = new Color(display, SUCCEEDED_RGB[0], SUCCEEDED_RGB[1], SUCCEEDED_RGB[2]);
+    failedColor = new Color(display, FAILED_RGB[0], FAILED_RGB[1], FAILED_RGB[2]);
+  }
+
+  /**
+   * Produces the values for point colors without allocating any native resources.  This allows 
+   * rendering with the same style of colors when there is no display.
+   *
+   * @param pointColorCount Number of different colors to produce
+   * @param random Random used to produce the colors
+   * @return Array of colors packed as {@code 0xRRGGBB}
+   */
+  public static int[] makePointRgbs(int pointColorCount, Random random) {
+    int[] result = new int[pointColorCount];
+    for (int i = 0; i < pointColorCount; i++) {
+      int r = random.nextInt(MAX_POINT_COLOR_VALUE);
+      int g = random.nextInt(MAX_POINT_COLOR_VALUE);
+      int b = random.nextInt(MAX_POINT_COLOR_VALUE);
+      result[i] = (r << 16) | (g << 8) | b;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the color windows should use for their background.
+   *
+   * @return Background color
+   */
+  public Color getBackgroundColor() {
+    return backgroundColor;
+  }
+
+  /**
+   * Returns the color to use for drawing text.
+   *
+   * @return Text color
+   */
+  public Color getTextColor() {
+    return textColor;
+  }
+
+  /**
+   * Returns the number of point colors, valid indexes for {@link #getPointColor(int)} are from
+   * {@code 0} to one less than this value.
+   *
+   * @return Number of point colors
+   */
+  public int getPointColorCount() {
+    return pointColors.length;
+  }
+
+  /**
+   * Gets a point color by its index.
+   *
+   * @param index Index of the color
+   * @return Color for the index
+   */
+  public Color getPointColor(int index) {
+    return pointColors[index];
+  }
+
+  /**
+   * Returns the number of density shades, valid indexes for {@link #getDensityColor(int)} are 
+   * from {@code 0} to one less than this value.
+   *
+   * @return Number of density shades
+   */
+  public int getDensityColorCount() {
+    return densityColors.length;
+  }
+
+  /**
+   * Gets a shade used to indicate how many points are drawn in an area.  Higher indexes are 
+   * darker and indicate more points.
+   *
+   * @param level Density level of the shade
+   * @return Color for the density level
+   */
+  public Color getDensityColor(int level) {
+    return densityColors[level];
+  }
+
+  /**
+   * Returns the color used to mark steps which are currently executing.
+   *
+   * @return Running step color
+   */
+  public Color getRunningColor() {
+    return runningColor;
+  }
+
+  /**
+   * Returns the color used to mark steps which completed successfully.
+   *
+   * @return Succeeded step color
+   */
+  public Color getSucceededColor() {
+    return succeededColor;
+  }
+
+  /**
+   * Returns the color used to mark steps which failed.
+   *
+   * @return Failed step color
+   */
+  public Color getFailedColor() {
+    return failedColor;
+  }
+
+  /**
+   * Releases all native colors held by this palette.  The palette must not be used after this.
+   */
+  public void dispose() {
+    backgroundColor.dispose();
+    textColor.dispose();
+    for (Color c : pointColors) {
+      c.dispose();
+    }
+    for (Color c : densityColors) {
+      c.dispose();
+    }
+    runningColor.dispose();
+    succeededColor.dispose();
+    failedColor.dispose();
+  }
+}
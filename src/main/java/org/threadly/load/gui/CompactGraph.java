@@ -0,0 +1,270 @@
+package org.threadly.load.gui;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Frozen, array backed snapshot of a {@link Node} graph.  Every node reachable from the head
+ * node is assigned a dense integer id (the head node is always id {@code 0}, with the rest
+ * assigned in breadth first order).  Child and parent relationships are stored in compressed
+ * sparse row form, so that the children of node {@code id} are
+ * {@code childTargets[childOffsets[id]]} through {@code childTargets[childOffsets[id + 1] - 1]}.
+ * Parents are stored the same way in {@code parentOffsets} and {@code parentTargets}.</p>
+ *
+ * <p>Only nodes reachable from the head are included, so parent references left behind by node
+ * removals in the {@link Node} graph are not present in the snapshot.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public class CompactGraph {
+  private static final int[] EMPTY_OFFSETS = new int[] { 0 };
+  private static final int[] EMPTY_TARGETS = new int[0];
+
+  protected final String[] names;  // null entries indicate join nodes
+  protected final int[] childOffsets;
+  protected final int[] childTargets;
+  protected final int[] parentOffsets;
+  protected final int[] parentTargets;
+
+  /**
+   * Constructs a new empty graph.
+   */
+  public CompactGraph() {
+    names = new String[0];
+    childOffsets = EMPTY_OFFSETS;
+    childTargets = EMPTY_TARGETS;
+    parentOffsets = EMPTY_OFFSETS;
+    parentTargets = EMPTY_TARGETS;
+  }
+
+  /**
+   * Constructs a new snapshot of the graph reachable from the provided head node.
+   *
+   * @param headNode Node to start the graph from
+   */
+  public CompactGraph(Node headNode) {
+    this(headNode, null);
+  }
+
+  /**
+   * Constructs a new snapshot of the graph reachable from the provided head node.  If an empty 
+   * list is provided, the source nodes will be added to it in id order.  This can be used to 
+   * associate additional data with the ids of the produced graph.
+   *
+   * @param headNode Node to start the graph from
+   * @param nodesById Empty list to add source nodes to in id order, or {@code null} if not needed
+   */
+  public CompactGraph(Node headNode, List<Node> nodesById) {
+    if (nodesById == null) {
+      nodesById = new ArrayList<Node>();
+    }
+    Map<Node, Integer> ids = new IdentityHashMap<Node, Integer>();
+
+    // assign ids in breadth first order, counting edges as we go
+    ids.put(headNode, 0);
+    nodesById.add(headNode);
+    int edgeCount = 0;
+    for (int i = 0; i < nodesById.size(); i++) {
+      List<Node> children = nodesById.get(i).getChildNodes();
+      edgeCount += children.size();
+      for (int c = 0; c < children.size(); c++) {
+        Node child = children.get(c);
+        if (! ids.containsKey(child)) {
+          ids.put(child, nodesById.size());
+          nodesById.add(child);
+        }
+      }
+    }
+
+    int nodeCount = nodesById.size();
+    names = new String[nodeCount];
+    childOffsets = new int[nodeCount + 1];
+    childTargets = new int[edgeCount];
+    parentOffsets = new int[nodeCount + 1];
+    parentTargets = new int[edgeCount];
+    int edge = 0;
+    for (int id = 0; id < nodeCount; id++) {
+      Node node = nodesById.get(id);
+      names[id] = node.isJoinNode() ? null : node.getName();
+      childOffsets[id] = edge;
+      List<Node> children = node.getChildNodes();
+      for (int c = 0; c < children.size(); c++) {
+        int childId = ids.get(children.get(c));
+        childTargets[edge++] = childId;
+        parentOffsets[childId + 1]++;
+      }
+    }
+    childOffsets[nodeCount] = edge;
+
+    setParents(childOffsets, childTargets, parentOffsets, parentTargets);
+  }
+
+  /**
+   * Constructs a graph from already produced child relationships.  The arrays are used directly, 
+   * so must not be modified after this call.  Parents are computed from the children.
+   *
+   * @param names Name of each node, with {@code null} entries for join nodes
+   * @param childOffsets Offsets into {@code childTargets} for each node, plus a final end offset
+   * @param childTargets Child ids of each node
+   */
+  protected CompactGraph(String[] names, int[] childOffsets, int[] childTargets) {
+    this.names = names;
+    this.childOffsets = childOffsets;
+    this.childTargets = childTargets;
+    parentOffsets = new int[names.length + 1];
+    parentTargets = new int[childTargets.length];
+    for (int i = 0; i < childTargets.length; i++) {
+      parentOffsets[childTargets[i] + 1]++;
+    }
+    setParents(childOffsets, childTargets, parentOffsets, parentTargets);
+  }
+
+  private static void setParents(int[] childOffsets, int[] childTargets, 
+                                 int[] parentOffsets, int[] parentTargets) {
+    int nodeCount = parentOffsets.length - 1;
+    // parent counts were recorded one slot ahead, accumulate them into offsets
+    for (int id = 0; id < nodeCount; id++) {
+      parentOffsets[id + 1] += parentOffsets[id];
+    }
+    int[] parentInsert = new int[nodeCount];
+    for (int id = 0; id < nodeCount; id++) {
+      for (int i = childOffsets[id]; i < childOffsets[id + 1]; i++) {
+        int childId = childTargets[i];
+        parentTargets[parentOffsets[childId] + parentInsert[childId]++] = id;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of nodes in the graph.
+   *
+   * @return Node count
+   */
+  public int getNodeCount() {
+    return names.length;
+  }
+
+  /**
+   * Returns the number of edges (parent to child connections) in the graph.
+   *
+   * @return Edge count
+   */
+  public int getEdgeCount() {
+    return childTargets.length;
+  }
+
+  /**
+   * Gets the name for a given node id.  Join nodes will return an empty string to match
+   * {@link Node#getName()}.
+   *
+   * @param id Id of the node
+   * @return Name of the node
+   */
+  public String getName(int id) {
+    String name = names[id];
+    return name == null ? "" : name;
+  }
+
+  /**
+   * Indicates if the given node is a join node.  See {@link Node#isJoinNode()}.
+   *
+   * @param id Id of the node
+   * @return {@code true} if the node is a join node
+   */
+  public boolean isJoinNode(int id) {
+    return names[id] == null;
+  }
+
+  /**
+   * Returns the number of children the given node has.
+   *
+   * @param id Id of the node
+   * @return Child count
+   */
+  public int getChildCount(int id) {
+    return childOffsets[id + 1] - childOffsets[id];
+  }
+
+  /**
+   * Gets the id of a child node.
+   *
+   * @param id Id of the node
+   * @param index Index of the child, must be less than {@link #getChildCount(int)}
+   * @return Id of the child node
+   */
+  public int getChild(int id, int index) {
+    return childTargets[childOffsets[id] + index];
+  }
+
+  /**
+   * Returns the number of parents the given node has.
+   *
+   * @param id Id of the node
+   * @return Parent count
+   */
+  public int getParentCount(int id) {
+    return parentOffsets[id + 1] - parentOffsets[id];
+  }
+
+  /**
+   * Gets the id of a parent node.
+   *
+   * @param id Id of the node
+   * @param index Index of the parent, must be less than {@link #getParentCount(int)}
+   * @return Id of the parent node
+   */
+  public int getParent(int id, int index) {
+    return parentTargets[parentOffsets[id] + index];
+  }
+
+  /**
+   * Estimates the heap used by the arrays backing this graph, not including the name strings
+   * themselves (since those are shared with the source nodes).  Assumes 4 byte references and
+   * a 16 byte array header.
+   *
+   * @return Estimated size in bytes
+   */
+  public long estimateMemoryUsage() {
+    final int arrayHeader = 16;
+    return (arrayHeader * 5L) +
+             (4L * (names.length + childOffsets.length + childTargets.length +
+                      parentOffsets.length + parentTargets.length));
+  }
+
+  /**
+   * Produces a hash of the graph's names and structure.  Graphs with the same names and edges,
+   * snapshotted from the same head node, will produce the same hash in any JVM, so the hash can
+   * be used to seed layouts or key data stored between launches.
+   *
+   * @return 64 bit hash of the graph
+   */
+  public long getStructureHash() {
+    long hash = mixHash(names.length, childTargets.length);
+    for (int id = 0; id < names.length; id++) {
+      // String.hashCode is specified, so is stable between JVMs
+      hash = mixHash(hash, names[id] == null ? -1 : names[id].hashCode());
+      hash = mixHash(hash, childOffsets[id + 1] - childOffsets[id]);
+    }
+    for (int target : childTargets) {
+      hash = mixHash(hash, target);
+    }
+    return hash;
+  }
+
+  /**
+   * Mixes a value into a hash, such that small changes in either produce unrelated results.
+   *
+   * @param hash Hash to mix into
+   * @param value Value to mix in
+   * @return Resulting hash
+   */
+  protected static long mixHash(long hash, int value) {
+    // SplitMix64 finalizer over the combined value
+    long z = (hash + value) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
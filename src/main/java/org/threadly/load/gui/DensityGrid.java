@@ -0,0 +1,155 @@
+package org.threadly.load.gui;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.graphics.GC;
+
+/**
+ * <p>Buckets points into fixed size cells of window space so that dense areas of a graph can be
+ * drawn as one shaded cell rather than one dot per node.  Edges are aggregated in the same way,
+ * so only one line is drawn between any two cells no matter how many edges connect them.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class DensityGrid {
+  private static final int CELL_COORDINATE_MASK = 0xFFFF;
+
+  private final int cellSize;
+  private final int columns;
+  private final int rows;
+  private final int[] counts;
+  private long[] edgeKeys;
+  private int edgeCount;
+
+  /**
+   * Constructs a new grid to cover a window area.
+   *
+   * @param width Width in pixels of the area to cover
+   * @param height Height in pixels of the area to cover
+   * @param cellSize Size in pixels of each cell
+   */
+  public DensityGrid(int width, int height, int cellSize) {
+    this.cellSize = cellSize;
+    columns = Math.max(1, width / cellSize + 1);
+    rows = Math.max(1, height / cellSize + 1);
+    counts = new int[columns * rows];
+    edgeKeys = new long[64];
+    edgeCount = 0;
+  }
+
+  /**
+   * Records a point in the grid.  Points outside the covered area are ignored.
+   *
+   * @param x X position in window coordinates
+   * @param y Y position in window coordinates
+   */
+  public void addPoint(int x, int y) {
+    if (x >= 0 && y >= 0) {
+      int column = x / cellSize;
+      int row = y / cellSize;
+      if (column < columns && row < rows) {
+        counts[(row * columns) + column]++;
+      }
+    }
+  }
+
+  /**
+   * Records an edge between two positions.  Edges which start and end within the same cell are
+   * ignored.  Either end may be outside of the covered area.
+   *
+   * @param x1 X position of the source in window coordinates
+   * @param y1 Y position of the source in window coordinates
+   * @param x2 X position of the target in window coordinates
+   * @param y2 Y position of the target in window coordinates
+   */
+  public void addEdge(int x1, int y1, int x2, int y2) {
+    int column1 = Math.floorDiv(x1, cellSize);
+    int row1 = Math.floorDiv(y1, cellSize);
+    int column2 = Math.floorDiv(x2, cellSize);
+    int row2 = Math.floorDiv(y2, cellSize);
+    if (column1 == column2 && row1 == row2) {
+      return;
+    }
+    if (edgeCount == edgeKeys.length) {
+      // remove duplicates before growing
+      compactEdges();
+      if (edgeCount > edgeKeys.length / 2) {
+        edgeKeys = Arrays.copyOf(edgeKeys, edgeKeys.length * 2);
+      }
+    }
+    edgeKeys[edgeCount++] = (((long)(column1 & CELL_COORDINATE_MASK)) << 48) |
+                              (((long)(row1 & CELL_COORDINATE_MASK)) << 32) |
+                              (((long)(column2 & CELL_COORDINATE_MASK)) << 16) |
+                              (row2 & CELL_COORDINATE_MASK);
+  }
+
+  private void compactEdges() {
+    Arrays.sort(edgeKeys, 0, edgeCount);
+    int unique = 0;
+    for (int i = 0; i < edgeCount; i++) {
+      if (unique == 0 || edgeKeys[unique - 1] != edgeKeys[i]) {
+        edgeKeys[unique++] = edgeKeys[i];
+      }
+    }
+    edgeCount = unique;
+  }
+
+  /**
+   * Returns the number of points recorded in a cell.
+   *
+   * @param column Column of the cell
+   * @param row Row of the cell
+   * @return Number of points in the cell
+   */
+  public int getCellCount(int column, int row) {
+    return counts[(row * columns) + column];
+  }
+
+  /**
+   * Returns the number of distinct cell to cell edges recorded.
+   *
+   * @return Number of aggregated edges
+   */
+  public int getEdgeCount() {
+    compactEdges();
+    return edgeCount;
+  }
+
+  /**
+   * Draws the aggregated edges, followed by each non-empty cell shaded by how many points it
+   * holds relative to the most populated cell.
+   *
+   * @param gc Graphics context to draw with
+   * @param colorPalette Palette to draw with
+   */
+  public void draw(GC gc, ColorPalette colorPalette) {
+    int half = cellSize / 2;
+    compactEdges();
+    gc.setForeground(colorPalette.getDensityColor(colorPalette.getDensityColorCount() / 2));
+    for (int i = 0; i < edgeCount; i++) {
+      long key = edgeKeys[i];
+      gc.drawLine((((short)(key >>> 48)) * cellSize) + half, (((short)(key >>> 32)) * cellSize) + half,
+                  (((short)(key >>> 16)) * cellSize) + half, (((short)key) * cellSize) + half);
+    }
+
+    int maxCount = 0;
+    for (int count : counts) {
+      maxCount = Math.max(maxCount, count);
+    }
+    if (maxCount == 0) {
+      return;
+    }
+    // log scale so sparse cells remain visible next to very dense ones
+    double levelFactor = (colorPalette.getDensityColorCount() - 1) / Math.log(maxCount + 1);
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        int count = counts[(row * columns) + column];
+        if (count > 0) {
+          gc.setBackground(colorPalette.getDensityColor((int)(Math.log(count + 1) * levelFactor)));
+          gc.fillRectangle(column * cellSize, row * cellSize, cellSize, cellSize);
+        }
+      }
+    }
+    gc.setBackground(colorPalette.getBackgroundColor());
+  }
+}
@@ -0,0 +1,302 @@
+package org.threadly.load.gui;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Path;
+
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+/**
+ * <p>Groups the edges of high fan-out forks and high fan-in joins into bundles, so that they can
+ * be drawn as a single trunk which fans out near the other ends of the edges, rather than as a
+ * wedge of individual lines.  Each bundle is drawn with a single {@link Path}, which avoids one
+ * native line call per edge.</p>
+ *
+ * <p>Which edges are bundled is decided once when the bundles are constructed for a layout.
+ * Edges from a fork are bundled first, the remaining edges into a join are bundled if there are
+ * still enough of them.  The trunk positions are computed from the point positions, and are
+ * recomputed only when the layout version of the points changes (for example from a point being
+ * moved).  Geometry is only updated and drawn from the display thread.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class EdgeBundles {
+  /**
+   * Minimum edges sharing a fork or join before they are bundled.
+   */
+  protected static final int MIN_BUNDLE_EDGES = 8;
+  private static final float TRUNK_FRACTION = .7f;  // portion of the distance to the other ends covered by the trunk
+  private static final float CURVE_FRACTION = .15f;  // how far past the trunk the fan curves are pulled
+
+  private final GuiPoint[] points;
+  private final boolean[] fanOutHubs;  // indexed by node id
+  private final boolean[] fanInHubs;  // indexed by node id
+  private final int[] hubs;
+  private final boolean[] fanOut;  // indexed by bundle
+  private final int[] memberOffsets;
+  private final int[] members;
+  // geometry in natural coordinates, indexed by bundle
+  private final float[] splitX;
+  private final float[] splitY;
+  private final float[] curveDX;
+  private final float[] curveDY;
+  private final int[] bounds;  // min x, min y, max x, max y for each bundle
+  private int geometryVersion;
+
+  /**
+   * Constructs bundles for the edges of a graph.
+   *
+   * @param graph Graph to bundle the edges of
+   * @param points Points indexed by node id in {@code graph}
+   */
+  public EdgeBundles(CompactGraph graph, GuiPoint[] points) {
+    this.points = points;
+    int nodeCount = graph.getNodeCount();
+    fanOutHubs = new boolean[nodeCount];
+    fanInHubs = new boolean[nodeCount];
+    int[] bundleHubs = new int[16];
+    boolean[] bundleFanOut = new boolean[bundleHubs.length];
+    int[] bundleMemberOffsets = new int[bundleHubs.length + 1];
+    int[] bundleMembers = new int[64];
+    int bundleCount = 0;
+    int memberCount = 0;
+    for (int id = 0; id < nodeCount; id++) {
+      if (graph.getChildCount(id) >= MIN_BUNDLE_EDGES) {
+        fanOutHubs[id] = true;
+      }
+    }
+    for (int id = 0; id < nodeCount; id++) {
+      boolean hubFanOut = fanOutHubs[id];
+      if (! hubFanOut) {
+        int remainingParents = 0;
+        for (int i = 0; i < graph.getParentCount(id); i++) {
+          if (! fanOutHubs[graph.getParent(id, i)]) {
+            remainingParents++;
+          }
+        }
+        if (remainingParents < MIN_BUNDLE_EDGES) {
+          continue;
+        }
+        fanInHubs[id] = true;
+      }
+      int edgeCount = hubFanOut ? graph.getChildCount(id) : graph.getParentCount(id);
+      if (bundleCount == bundleHubs.length) {
+        bundleHubs = Arrays.copyOf(bundleHubs, bundleCount * 2);
+        bundleFanOut = Arrays.copyOf(bundleFanOut, bundleCount * 2);
+        bundleMemberOffsets = Arrays.copyOf(bundleMemberOffsets, (bundleCount * 2) + 1);
+      }
+      if (memberCount + edgeCount > bundleMembers.length) {
+        bundleMembers = Arrays.copyOf(bundleMembers, Math.max(bundleMembers.length * 2,
+                                                               memberCount + edgeCount));
+      }
+      bundleHubs[bundleCount] = id;
+      bundleFanOut[bundleCount] = hubFanOut;
+      bundleMemberOffsets[bundleCount] = memberCount;
+      for (int i = 0; i < edgeCount; i++) {
+        if (hubFanOut) {
+          bundleMembers[memberCount++] = graph.getChild(id, i);
+        } else if (! fanOutHubs[graph.getParent(id, i)]) {
+          bundleMembers[memberCount++] = graph.getParent(id, i);
+        }
+      }
+      bundleCount++;
+    }
+    bundleMemberOffsets[bundleCount] = memberCount;
+
+    hubs = Arrays.copyOf(bundleHubs, bundleCount);
+    fanOut = Arrays.copyOf(bundleFanOut, bundleCount);
+    memberOffsets = Arrays.copyOf(bundleMemberOffsets, bundleCount + 1);
+    members = Arrays.copyOf(bundleMembers, memberCount);
+    splitX = new float[bundleCount];
+    splitY = new float[bundleCount];
+    curveDX = new float[bundleCount];
+    curveDY = new float[bundleCount];
+    bounds = new int[bundleCount * 4];
+    geometryVersion = Integer.MIN_VALUE;
+  }
+
+  /**
+   * Returns the number of bundles.
+   *
+   * @return Bundle count
+   */
+  public int getBundleCount() {
+    return hubs.length;
+  }
+
+  /**
+   * Checks if these bundles were constructed for the provided points.
+   *
+   * @param points Points to check against
+   * @return {@code true} if the bundles are for the same points
+   */
+  public boolean isForPoints(GuiPoint[] points) {
+    return this.points == points;
+  }
+
+  /**
+   * Checks if an edge is drawn as part of a bundle, and so should not be drawn on its own.
+   *
+   * @param parent Id of the parent node of the edge
+   * @param child Id of the child node of the edge
+   * @return {@code true} if the edge is bundled
+   */
+  public boolean isBundled(int parent, int child) {
+    return fanOutHubs[parent] || fanInHubs[child];
+  }
+
+  /**
+   * Recomputes the trunk positions if the layout has changed since they were last computed.
+   *
+   * @param layoutVersion Current layout version of the points
+   */
+  public void updateGeometry(int layoutVersion) {
+    if (layoutVersion == geometryVersion) {
+      return;
+    }
+    geometryVersion = layoutVersion;
+    for (int b = 0; b < hubs.length; b++) {
+      GuiPoint hub = points[hubs[b]];
+      int minX = Integer.MAX_VALUE;
+      int minY = Integer.MAX_VALUE;
+      int maxX = Integer.MIN_VALUE;
+      int maxY = Integer.MIN_VALUE;
+      long sumX = 0;
+      long sumY = 0;
+      int count = 0;
+      for (int i = memberOffsets[b]; i < memberOffsets[b + 1]; i++) {
+        GuiPoint member = points[members[i]];
+        if (member != null) {
+          sumX += member.getX();
+          sumY += member.getY();
+          count++;
+          minX = Math.min(minX, member.getX());
+          minY = Math.min(minY, member.getY());
+          maxX = Math.max(maxX, member.getX());
+          maxY = Math.max(maxY, member.getY());
+        }
+      }
+      if (hub == null || count == 0) {
+        // empty bounds so the bundle is never drawn
+        bounds[b * 4] = Integer.MAX_VALUE;
+        bounds[(b * 4) + 2] = Integer.MIN_VALUE;
+        continue;
+      }
+      float towardsX = ((float)sumX / count) - hub.getX();
+      float towardsY = ((float)sumY / count) - hub.getY();
+      splitX[b] = hub.getX() + (towardsX * TRUNK_FRACTION);
+      splitY[b] = hub.getY() + (towardsY * TRUNK_FRACTION);
+      curveDX[b] = towardsX * CURVE_FRACTION;
+      curveDY[b] = towardsY * CURVE_FRACTION;
+      bounds[b * 4] = Math.min(minX, hub.getX());
+      bounds[(b * 4) + 1] = Math.min(minY, hub.getY());
+      bounds[(b * 4) + 2] = Math.max(maxX, hub.getX());
+      bounds[(b * 4) + 3] = Math.max(maxY, hub.getY());
+    }
+  }
+
+  /**
+   * Draws the bundles which cross an area.  {@link #updateGeometry(int)} must have been invoked
+   * first.  Natural coordinates are translated to window coordinates by multiplying by the scale
+   * then subtracting the offset.
+   *
+   * @param gc Graphics context to draw with
+   * @param colorPalette Palette to draw with
+   * @param xScale Scale from natural x coordinates to window coordinates
+   * @param yScale Scale from natural y coordinates to window coordinates
+   * @param xOffset Window x offset to subtract
+   * @param yOffset Window y offset to subtract
+   * @param minX Minimum x of the area to draw in natural coordinates
+   * @param minY Minimum y of the area to draw in natural coordinates
+   * @param maxX Maximum x of the area to draw in natural coordinates
+   * @param maxY Maximum y of the area to draw in natural coordinates
+   */
+  public void draw(GC gc, ColorPalette colorPalette, double xScale, double yScale,
+                   int xOffset, int yOffset, int minX, int minY, int maxX, int maxY) {
+    for (int b = 0; b < hubs.length; b++) {
+      if (bounds[b * 4] > bounds[(b * 4) + 2] || 
+          bounds[b * 4] > maxX || bounds[(b * 4) + 1] > maxY ||
+          bounds[(b * 4) + 2] < minX || bounds[(b * 4) + 3] < minY) {
+        continue;
+      }
+      GuiPoint hub = points[hubs[b]];
+      gc.setForeground(colorPalette.getPointColor(hub.colorIndex));
+      float hubX = (float)(hub.getX() * xScale) - xOffset;
+      float hubY = (float)(hub.getY() * yScale) - yOffset;
+      float trunkX = (float)(splitX[b] * xScale) - xOffset;
+      float trunkY = (float)(splitY[b] * yScale) - yOffset;
+      float curveX = trunkX + (float)(curveDX[b] * xScale);
+      float curveY = trunkY + (float)(curveDY[b] * yScale);
+      Path path;
+      try {
+        path = new Path(gc.getDevice());
+      } catch (SWTException e) {
+        // advanced graphics are not available, draw straight lines instead
+        drawLines(gc, b, xScale, yScale, xOffset, yOffset, hubX, hubY, trunkX, trunkY);
+        continue;
+      }
+      try {
+        path.moveTo(hubX, hubY);
+        path.lineTo(trunkX, trunkY);
+        for (int i = memberOffsets[b]; i < memberOffsets[b + 1]; i++) {
+          GuiPoint member = points[members[i]];
+          if (member == null) {
+            continue;
+          }
+          float memberX = (float)(member.getX() * xScale) - xOffset;
+          float memberY = (float)(member.getY() * yScale) - yOffset;
+          // direction does not change how the curve looks, so fan ins are drawn the same way
+          path.moveTo(trunkX, trunkY);
+          path.quadTo(curveX, curveY, memberX, memberY);
+        }
+        gc.drawPath(path);
+      } finally {
+        path.dispose();
+      }
+    }
+  }
+
+  private void drawLines(GC gc, int bundle, double xScale, double yScale, int xOffset, int yOffset,
+                         float hubX, float hubY, float trunkX, float trunkY) {
+    gc.drawLine((int)hubX, (int)hubY, (int)trunkX, (int)trunkY);
+    for (int i = memberOffsets[bundle]; i < memberOffsets[bundle + 1]; i++) {
+      GuiPoint member = points[members[i]];
+      if (member != null) {
+        gc.drawLine((int)trunkX, (int)trunkY,
+                    (int)(member.getX() * xScale) - xOffset, (int)(member.getY() * yScale) - yOffset);
+      }
+    }
+  }
+
+  /**
+   * Returns the ids of the nodes at the other end of a bundle's edges from its hub.
+   *
+   * @param bundle Index of the bundle
+   * @return Member node ids
+   */
+  protected int[] getMembers(int bundle) {
+    return Arrays.copyOfRange(members, memberOffsets[bundle], memberOffsets[bundle + 1]);
+  }
+
+  /**
+   * Returns the id of the fork or join node a bundle's edges share.
+   *
+   * @param bundle Index of the bundle
+   * @return Hub node id
+   */
+  protected int getHub(int bundle) {
+    return hubs[bundle];
+  }
+
+  /**
+   * Checks if a bundle is made of the edges from a fork, rather than the edges into a join.
+   *
+   * @param bundle Index of the bundle
+   * @return {@code true} if the hub is the parent of the bundled edges
+   */
+  protected boolean isFanOut(int bundle) {
+    return fanOut[bundle];
+  }
+}
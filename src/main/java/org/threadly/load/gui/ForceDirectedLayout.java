@@ -0,0 +1,430 @@
+package org.threadly.load.gui;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Force directed (Fruchterman-Reingold style) layout of a {@link CompactGraph}.  Every pair
+ * of nodes repels each other, while nodes connected by an edge attract each other.  Each
+ * {@link #iterate()} moves nodes along their net force, limited by a temperature which cools
+ * every iteration so the layout settles.</p>
+ *
+ * <p>Repulsion between all pairs would be quadratic, so it is approximated with a Barnes-Hut
+ * quadtree which is rebuilt each iteration.  Distant cells are treated as a single mass at
+ * their center, making each iteration {@code O(n log n)}.  When an {@link Executor} is provided,
+ * forces and moves are computed in parallel chunks, the invoking thread will also process
+ * chunks.  The tree itself is built on the invoking thread.</p>
+ *
+ * <p>Positions are in units of the ideal edge length, and are initially seeded from a
+ * {@link LayeredLayout} so that the layout starts untangled.  Use
+ * {@link #getPositions(int, int, int, int[], int[])} to scale them into display coordinates.
+ * This class is not thread safe, it must be iterated from one thread at a time.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class ForceDirectedLayout {
+  protected static final int MAX_ITERATIONS = 300;
+  private static final double THETA = 1.2;  // larger approximates more cells, faster but less accurate
+  private static final double INITIAL_TEMPERATURE_FACTOR = .1;  // of the square root of the node count
+  private static final double MIN_INITIAL_TEMPERATURE = 1;
+  private static final double COOLING_FACTOR = .96;
+  private static final double MIN_TEMPERATURE = .01;  // layout is considered converged below this
+  private static final double MIN_DISTANCE_SQUARED = 1e-6;  // coincident nodes are nudged apart
+  private static final int MAX_TREE_DEPTH = 32;
+  private static final long Z_ORDER_RESOLUTION = 1 << 16;  // cells per axis when ordering nodes
+  private static final int PARALLEL_CHUNK_SIZE = 2048;  // min nodes per parallel chunk
+  private static final int DATA_STRIDE = 4;
+  private static final int LINK_STRIDE = 2;
+  private static final int EMPTY = -1;  // cell body when no node is in the cell, or it is split
+  private static final int MULTIPLE = -2;  // cell body when several nodes are in a cell at max depth
+
+  private final CompactGraph graph;
+  private final Executor executor;
+  private final int parallelism;
+  private final double[] x;  // indexed by node id
+  private final double[] y;  // indexed by node id
+  private final double[] dispX;  // indexed by node id
+  private final double[] dispY;  // indexed by node id
+  private final long[] sortKeys;
+  private final int[] order;  // node ids in z-order, so consecutive nodes are near each other
+  // quadtree cells, children of a split cell are four consecutive cells
+  private int cellCount;
+  private double[] cellCenterX;
+  private double[] cellCenterY;
+  private double[] cellHalfSize;
+  private double[] cellMassX;  // sum of positions, divided by mass once the tree is built
+  private double[] cellMassY;
+  private int[] cellMass;
+  private int[] cellFirstChild;
+  private int[] cellBody;
+  // cells packed for traversal when computing forces, cell index times the stride
+  private double[] traversalData;  // center of mass x, y, mass, and distance squared to approximate at
+  private int[] traversalLinks;  // first child and body
+  private double temperature;
+  private int iterationCount;
+
+  /**
+   * Constructs a new layout which will be computed on the invoking thread only.
+   *
+   * @param graph Graph to lay out
+   * @param seed Layout to take initial positions from
+   */
+  public ForceDirectedLayout(CompactGraph graph, LayeredLayout seed) {
+    this(graph, seed, null, 1);
+  }
+
+  /**
+   * Constructs a new layout.  Nodes will initially be placed one unit apart by their layer and
+   * position within the layer, centered vertically.
+   *
+   * @param graph Graph to lay out
+   * @param seed Layout to take initial positions from
+   * @param executor Executor to compute forces in parallel on, or {@code null}
+   * @param parallelism Maximum number of executor threads to use at once
+   */
+  public ForceDirectedLayout(CompactGraph graph, LayeredLayout seed,
+                             Executor executor, int parallelism) {
+    this.graph = graph;
+    this.executor = executor;
+    this.parallelism = Math.max(1, parallelism);
+    int nodeCount = graph.getNodeCount();
+    x = new double[nodeCount];
+    y = new double[nodeCount];
+    dispX = new double[nodeCount];
+    dispY = new double[nodeCount];
+    sortKeys = new long[nodeCount];
+    order = new int[nodeCount];
+    for (int id = 0; id < nodeCount; id++) {
+      x[id] = seed.getLayer(id);
+      y[id] = seed.getPosition(id) - (seed.getLayerSize(seed.getLayer(id)) / 2.);
+    }
+    allocateCells(Math.max(16, nodeCount * 2));
+    traversalData = new double[cellCenterX.length * DATA_STRIDE];
+    traversalLinks = new int[cellCenterX.length * LINK_STRIDE];
+    temperature = Math.max(MIN_INITIAL_TEMPERATURE,
+                           Math.sqrt(nodeCount) * INITIAL_TEMPERATURE_FACTOR);
+    iterationCount = 0;
+  }
+
+  private void allocateCells(int size) {
+    cellCenterX = new double[size];
+    cellCenterY = new double[size];
+    cellHalfSize = new double[size];
+    cellMassX = new double[size];
+    cellMassY = new double[size];
+    cellMass = new int[size];
+    cellFirstChild = new int[size];
+    cellBody = new int[size];
+  }
+
+  private void growCells() {
+    int size = cellCenterX.length * 2;
+    cellCenterX = Arrays.copyOf(cellCenterX, size);
+    cellCenterY = Arrays.copyOf(cellCenterY, size);
+    cellHalfSize = Arrays.copyOf(cellHalfSize, size);
+    cellMassX = Arrays.copyOf(cellMassX, size);
+    cellMassY = Arrays.copyOf(cellMassY, size);
+    cellMass = Arrays.copyOf(cellMass, size);
+    cellFirstChild = Arrays.copyOf(cellFirstChild, size);
+    cellBody = Arrays.copyOf(cellBody, size);
+  }
+
+  /**
+   * Returns the number of iterations which have been run.
+   *
+   * @return Iteration count
+   */
+  public int getIterationCount() {
+    return iterationCount;
+  }
+
+  /**
+   * Checks if the layout has settled, in which case further iterations will not move nodes
+   * noticeably.
+   *
+   * @return {@code true} if no further iterations should be run
+   */
+  public boolean isConverged() {
+    return temperature < MIN_TEMPERATURE || iterationCount >= MAX_ITERATIONS ||
+             graph.getNodeCount() < 2;
+  }
+
+  /**
+   * Runs a single iteration, moving every node along the forces acting on it.
+   */
+  public void iterate() {
+    if (graph.getNodeCount() == 0) {
+      return;
+    }
+    buildTree();
+    final double maxMove = temperature;
+    ParallelChunks.run(executor, parallelism, graph.getNodeCount(), PARALLEL_CHUNK_SIZE,
+                       new ParallelChunks.ChunkTask() {
+      @Override
+      public void run(int start, int end) {
+        computeForces(start, end);
+      }
+    });
+    // positions are only moved once every force is computed from the previous positions
+    ParallelChunks.run(executor, parallelism, graph.getNodeCount(), PARALLEL_CHUNK_SIZE,
+                       new ParallelChunks.ChunkTask() {
+      @Override
+      public void run(int start, int end) {
+        move(start, end, maxMove);
+      }
+    });
+    temperature *= COOLING_FACTOR;
+    iterationCount++;
+  }
+
+  private void buildTree() {
+    double minX = Double.MAX_VALUE;
+    double minY = Double.MAX_VALUE;
+    double maxX = -Double.MAX_VALUE;
+    double maxY = -Double.MAX_VALUE;
+    for (int id = 0; id < x.length; id++) {
+      minX = Math.min(minX, x[id]);
+      minY = Math.min(minY, y[id]);
+      maxX = Math.max(maxX, x[id]);
+      maxY = Math.max(maxY, y[id]);
+    }
+    double size = Math.max(1, Math.max(maxX - minX, maxY - minY));
+    sortNodes(minX, minY, size);
+    cellCount = 0;
+    makeCell(minX + (size / 2), minY + (size / 2), size / 2);
+    for (int id : order) {
+      insert(id);
+    }
+    if (traversalLinks.length < cellCount * LINK_STRIDE) {
+      traversalData = new double[cellCenterX.length * DATA_STRIDE];
+      traversalLinks = new int[cellCenterX.length * LINK_STRIDE];
+    }
+    double thetaSquared = THETA * THETA;
+    for (int c = 0; c < cellCount; c++) {
+      int data = c * DATA_STRIDE;
+      if (cellMass[c] > 0) {
+        traversalData[data] = cellMassX[c] / cellMass[c];
+        traversalData[data + 1] = cellMassY[c] / cellMass[c];
+      }
+      traversalData[data + 2] = cellMass[c];
+      if (cellFirstChild[c] == EMPTY) {
+        // leaves are always used directly
+        traversalData[data + 3] = -1;
+      } else {
+        double cellSize = cellHalfSize[c] * 2;
+        traversalData[data + 3] = cellSize * cellSize / thetaSquared;
+      }
+      traversalLinks[c * LINK_STRIDE] = cellFirstChild[c];
+      traversalLinks[(c * LINK_STRIDE) + 1] = cellBody[c];
+    }
+  }
+
+  /**
+   * Orders nodes along a z-order curve.  Nearby nodes traverse mostly the same cells of the
+   * tree, so processing them consecutively keeps those cells in the processor cache.
+   */
+  private void sortNodes(double minX, double minY, double size) {
+    double scale = Z_ORDER_RESOLUTION / size;
+    for (int id = 0; id < x.length; id++) {
+      long cellX = Math.min(Z_ORDER_RESOLUTION - 1, (long)((x[id] - minX) * scale));
+      long cellY = Math.min(Z_ORDER_RESOLUTION - 1, (long)((y[id] - minY) * scale));
+      sortKeys[id] = (interleaveBits(cellX) | (interleaveBits(cellY) << 1)) << 32 | id;
+    }
+    Arrays.sort(sortKeys);
+    for (int i = 0; i < sortKeys.length; i++) {
+      order[i] = (int)sortKeys[i];
+    }
+  }
+
+  private static long interleaveBits(long value) {
+    // spread the low 16 bits so there is a zero bit between each
+    value = (value | (value << 8)) & 0x00FF00FFL;
+    value = (value | (value << 4)) & 0x0F0F0F0FL;
+    value = (value | (value << 2)) & 0x33333333L;
+    return (value | (value << 1)) & 0x55555555L;
+  }
+
+  private int makeCell(double centerX, double centerY, double halfSize) {
+    if (cellCount == cellCenterX.length) {
+      growCells();
+    }
+    int c = cellCount++;
+    cellCenterX[c] = centerX;
+    cellCenterY[c] = centerY;
+    cellHalfSize[c] = halfSize;
+    cellMassX[c] = 0;
+    cellMassY[c] = 0;
+    cellMass[c] = 0;
+    cellFirstChild[c] = EMPTY;
+    cellBody[c] = EMPTY;
+    return c;
+  }
+
+  private int childCell(int cell, double px, double py) {
+    return cellFirstChild[cell] + (px < cellCenterX[cell] ? 0 : 1) + (py < cellCenterY[cell] ? 0 : 2);
+  }
+
+  private void insert(int id) {
+    int cell = 0;
+    int depth = 0;
+    while (true) {
+      cellMass[cell]++;
+      cellMassX[cell] += x[id];
+      cellMassY[cell] += y[id];
+      if (cellFirstChild[cell] != EMPTY) {
+        cell = childCell(cell, x[id], y[id]);
+        depth++;
+      } else if (cellBody[cell] == EMPTY && cellMass[cell] == 1) {
+        cellBody[cell] = id;
+        return;
+      } else if (depth >= MAX_TREE_DEPTH) {
+        cellBody[cell] = MULTIPLE;
+        return;
+      } else {
+        // split the leaf, moving the node already in it down a level
+        int existing = cellBody[cell];
+        double quarter = cellHalfSize[cell] / 2;
+        int firstChild = makeCell(cellCenterX[cell] - quarter, cellCenterY[cell] - quarter, quarter);
+        makeCell(cellCenterX[cell] + quarter, cellCenterY[cell] - quarter, quarter);
+        makeCell(cellCenterX[cell] - quarter, cellCenterY[cell] + quarter, quarter);
+        makeCell(cellCenterX[cell] + quarter, cellCenterY[cell] + quarter, quarter);
+        cellFirstChild[cell] = firstChild;
+        cellBody[cell] = EMPTY;
+        int existingCell = childCell(cell, x[existing], y[existing]);
+        cellMass[existingCell] = 1;
+        cellMassX[existingCell] = x[existing];
+        cellMassY[existingCell] = y[existing];
+        cellBody[existingCell] = existing;
+        cell = childCell(cell, x[id], y[id]);
+        depth++;
+      }
+    }
+  }
+
+  /**
+   * Computes the net force on a range of nodes.  The tree and positions are only read, so ranges
+   * can be computed concurrently.
+   */
+  private void computeForces(int start, int end) {
+    int[] stack = new int[(MAX_TREE_DEPTH * 3) + 4];
+    double[] data = traversalData;
+    int[] links = traversalLinks;
+    for (int i = start; i < end; i++) {
+      int id = order[i];
+      double px = x[id];
+      double py = y[id];
+      double fx = 0;
+      double fy = 0;
+      // repulsion, k^2 / d with an ideal edge length of 1
+      int stackSize = 0;
+      stack[stackSize++] = 0;
+      while (stackSize > 0) {
+        int cell = stack[--stackSize];
+        int dataIndex = cell * DATA_STRIDE;
+        double mass = data[dataIndex + 2];
+        if (mass == 0 || links[(cell * LINK_STRIDE) + 1] == id) {
+          continue;
+        }
+        double dx = px - data[dataIndex];
+        double dy = py - data[dataIndex + 1];
+        double distanceSquared = (dx * dx) + (dy * dy);
+        if (distanceSquared > data[dataIndex + 3]) {
+          if (distanceSquared < MIN_DISTANCE_SQUARED) {
+            // push coincident nodes apart in a direction unique to the node
+            dx = Math.cos(id) * 1e-3;
+            dy = Math.sin(id) * 1e-3;
+            distanceSquared = MIN_DISTANCE_SQUARED;
+          }
+          double force = mass / distanceSquared;
+          fx += dx * force;
+          fy += dy * force;
+        } else {
+          int firstChild = links[cell * LINK_STRIDE];
+          stack[stackSize++] = firstChild;
+          stack[stackSize++] = firstChild + 1;
+          stack[stackSize++] = firstChild + 2;
+          stack[stackSize++] = firstChild + 3;
+        }
+      }
+      // attraction, d^2 / k along each edge in either direction
+      for (int e = graph.childOffsets[id]; e < graph.childOffsets[id + 1]; e++) {
+        int other = graph.childTargets[e];
+        double dx = px - x[other];
+        double dy = py - y[other];
+        double distance = Math.sqrt((dx * dx) + (dy * dy));
+        fx -= dx * distance;
+        fy -= dy * distance;
+      }
+      for (int e = graph.parentOffsets[id]; e < graph.parentOffsets[id + 1]; e++) {
+        int other = graph.parentTargets[e];
+        double dx = px - x[other];
+        double dy = py - y[other];
+        double distance = Math.sqrt((dx * dx) + (dy * dy));
+        fx -= dx * distance;
+        fy -= dy * distance;
+      }
+      dispX[id] = fx;
+      dispY[id] = fy;
+    }
+  }
+
+  private void move(int start, int end, double maxMove) {
+    for (int id = start; id < end; id++) {
+      double length = Math.sqrt((dispX[id] * dispX[id]) + (dispY[id] * dispY[id]));
+      if (length > 0) {
+        double scale = Math.min(length, maxMove) / length;
+        x[id] += dispX[id] * scale;
+        y[id] += dispY[id] * scale;
+      }
+    }
+  }
+
+  /**
+   * Gets the x position of a node, in units of the ideal edge length.
+   *
+   * @param id Id of the node
+   * @return Current x position
+   */
+  public double getX(int id) {
+    return x[id];
+  }
+
+  /**
+   * Gets the y position of a node, in units of the ideal edge length.
+   *
+   * @param id Id of the node
+   * @return Current y position
+   */
+  public double getY(int id) {
+    return y[id];
+  }
+
+  /**
+   * Scales the current positions so they fill an area, and copies them into the provided arrays.
+   * Each axis is scaled independently.
+   *
+   * @param width Width of the area to fill
+   * @param height Height of the area to fill
+   * @param margin Distance from each edge of the area which positions will not be placed in
+   * @param resultX Array to store x positions into, indexed by node id
+   * @param resultY Array to store y positions into, indexed by node id
+   */
+  public void getPositions(int width, int height, int margin, int[] resultX, int[] resultY) {
+    double minX = Double.MAX_VALUE;
+    double minY = Double.MAX_VALUE;
+    double maxX = -Double.MAX_VALUE;
+    double maxY = -Double.MAX_VALUE;
+    for (int id = 0; id < x.length; id++) {
+      minX = Math.min(minX, x[id]);
+      minY = Math.min(minY, y[id]);
+      maxX = Math.max(maxX, x[id]);
+      maxY = Math.max(maxY, y[id]);
+    }
+    double scaleX = (width - (margin * 2)) / Math.max(1, maxX - minX);
+    double scaleY = (height - (margin * 2)) / Math.max(1, maxY - minY);
+    for (int id = 0; id < x.length; id++) {
+      resultX[id] = margin + (int)((x[id] - minX) * scaleX);
+      resultY[id] = margin + (int)((y[id] - minY) * scaleY);
+    }
+  }
+}
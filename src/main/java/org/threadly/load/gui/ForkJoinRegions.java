@@ -0,0 +1,373 @@
+package org.threadly.load.gui;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Tracks which fork/join regions of a graph are collapsed, and produces a view of the graph
+ * where each collapsed region is replaced by a single summary node.  A region starts at a node
+ * with multiple children (the fork), and ends at the first node every path from the fork passes
+ * through (the join).  The summary node is placed between the fork and the join, and is named
+ * with the number of steps within the region.</p>
+ *
+ * <p>Regions are found lazily while producing a view, and a region nested within a collapsed
+ * region is never searched.  Producing a view is still linear in the size of the full graph, since
+ * it works from a snapshot of the full graph which is ordered topologically before any region is
+ * searched.  Only the layout and rendering of the view scale with what has been expanded.  Forks
+ * where paths leave the region without reaching a join, or where nodes within the region are
+ * reachable from outside of it, are not collapsible and are always shown expanded.</p>
+ *
+ * <p>Expanded state is toggled from the display thread, while views are produced by the thread
+ * doing the layout.  Toggles replace the set of toggled forks rather than modifying it, so a
+ * view is always produced from a consistent state.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class ForkJoinRegions {
+  private final int collapseNodeCount;
+  // summary nodes are kept so that their position can be retained between views
+  private final Map<Node, Node> forkSummaries;
+  private final Map<Node, Node> summaryForks;
+  private volatile Node headNode;
+  private volatile boolean collapseByDefault;
+  private volatile boolean decidedFromPartial;  // collapseByDefault decided from a graph still being built
+  private volatile Set<Node> toggledForks;
+
+  /**
+   * Constructs a new region tracker.
+   *
+   * @param collapseNodeCount Graphs with more nodes than this start with every region collapsed
+   */
+  public ForkJoinRegions(int collapseNodeCount) {
+    this.collapseNodeCount = collapseNodeCount;
+    forkSummaries = new ConcurrentHashMap<Node, Node>();
+    summaryForks = new ConcurrentHashMap<Node, Node>();
+    headNode = null;
+    collapseByDefault = false;
+    decidedFromPartial = false;
+    toggledForks = Collections.emptySet();
+  }
+
+  /**
+   * Checks if the region starting at the provided fork is currently collapsed.
+   *
+   * @param fork Fork node of the region
+   * @return {@code true} if the region should be shown as a summary node
+   */
+  public boolean isCollapsed(Node fork) {
+    return collapseByDefault != toggledForks.contains(fork);
+  }
+
+  /**
+   * Checks if the provided node is a summary node produced for a collapsed region.
+   *
+   * @param node Node to check
+   * @return {@code true} if the node represents a collapsed region
+   */
+  public boolean isSummaryNode(Node node) {
+    return summaryForks.containsKey(node);
+  }
+
+  /**
+   * Toggles the region represented by the provided node.  If the node is a summary node, its
+   * region will be expanded.  If the node is the fork of an expanded region, the region will be
+   * collapsed.  Must only be invoked from one thread (typically the display thread).
+   *
+   * @param node Summary or fork node which was selected
+   * @return {@code true} if the state changed and the view should be produced again
+   */
+  public boolean toggle(Node node) {
+    Node fork = summaryForks.get(node);
+    if (fork == null) {
+      if (node.getChildNodes().size() < 2 || isCollapsed(node)) {
+        return false;
+      }
+      fork = node;
+    }
+    Set<Node> newToggledForks = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    newToggledForks.addAll(toggledForks);
+    if (! newToggledForks.remove(fork)) {
+      newToggledForks.add(fork);
+    }
+    toggledForks = newToggledForks;
+    return true;
+  }
+
+  /**
+   * Produces a view of the graph with each collapsed region replaced by a summary node.  If the
+   * head node is different from the last view produced, the expanded state is reset, and whether
+   * regions start collapsed is decided from the size of the new graph.  While the graph is still
+   * being built that decision is made again for each view, until the first view of the complete
+   * graph.  If the decision changes the expanded state is also reset.
+   *
+   * @param headNode Head node the graph was produced from
+   * @param graph Snapshot of the full graph
+   * @param nodesById Source nodes for the full graph, in id order
+   * @param viewNodesById Empty list to add the nodes of the view to in id order
+   * @param partial {@code true} if the graph is still being built
+   * @return Snapshot of the view, which may be the provided graph if nothing is collapsed
+   */
+  public CompactGraph makeView(Node headNode, CompactGraph graph,
+                               List<Node> nodesById, List<Node> viewNodesById, boolean partial) {
+    synchronized (this) {
+      boolean newHead = this.headNode != headNode;
+      if (newHead || decidedFromPartial) {
+        boolean collapse = graph.getNodeCount() > collapseNodeCount;
+        if (newHead || collapse != collapseByDefault) {
+          // toggles are relative to the default, so do not carry over a changed default
+          toggledForks = Collections.emptySet();
+          forkSummaries.clear();
+          summaryForks.clear();
+        }
+        this.headNode = headNode;
+        collapseByDefault = collapse;
+        decidedFromPartial = partial;
+      }
+    }
+    if (! collapseByDefault && toggledForks.isEmpty()) {
+      viewNodesById.addAll(nodesById);
+      return graph;
+    }
+    return new ViewBuilder(graph, nodesById, viewNodesById).build();
+  }
+
+  private Node getSummaryNode(Node fork, int stepCount) {
+    String name = "[+" + stepCount + " steps]";
+    Node result = forkSummaries.get(fork);
+    if (result == null || ! result.getName().equals(name)) {
+      if (result != null) {
+        summaryForks.remove(result);
+      }
+      result = new Node(name);
+      forkSummaries.put(fork, result);
+      summaryForks.put(result, fork);
+    }
+    return result;
+  }
+
+  /**
+   * <p>Produces a single view of a graph.  View ids are assigned in breadth first order, matching
+   * {@link CompactGraph}, so children are known by the time each view node is processed.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  private class ViewBuilder {
+    private final CompactGraph graph;
+    private final List<Node> nodesById;
+    private final List<Node> viewNodesById;
+    private final Set<Node> toggledForks;
+    private final boolean collapseByDefault;
+    private final int[] viewIds;  // indexed by full graph id, -1 if not in the view
+    private int[] sourceIds;  // indexed by view id, the full graph id or the join id (or -1) for summaries
+    private boolean[] summaries;  // indexed by view id
+    private String[] names;
+    private int[] childOffsets;
+    private int[] childTargets;
+    private int viewCount;
+    private int edgeCount;
+    // used while searching for regions, stamps avoid clearing between searches
+    private boolean orderChecked;
+    private boolean acyclic;
+    private int[] topologicalIndexes;
+    private int[] topologicalOrder;
+    private int[] searchStamps;
+    private int[] regionParentCounts;
+    private int searchStamp;
+    private int regionJoin;
+    private int regionStepCount;
+
+    private ViewBuilder(CompactGraph graph, List<Node> nodesById, List<Node> viewNodesById) {
+      this.graph = graph;
+      this.nodesById = nodesById;
+      this.viewNodesById = viewNodesById;
+      this.toggledForks = ForkJoinRegions.this.toggledForks;
+      this.collapseByDefault = ForkJoinRegions.this.collapseByDefault;
+      int nodeCount = graph.getNodeCount();
+      viewIds = new int[nodeCount];
+      Arrays.fill(viewIds, -1);
+      sourceIds = new int[Math.min(nodeCount, 16)];
+      summaries = new boolean[sourceIds.length];
+      names = new String[sourceIds.length];
+      childOffsets = new int[sourceIds.length + 1];
+      childTargets = new int[sourceIds.length];
+      viewCount = 0;
+      edgeCount = 0;
+      orderChecked = false;
+      acyclic = false;
+    }
+
+    private CompactGraph build() {
+      if (graph.getNodeCount() == 0) {
+        return graph;
+      }
+      addViewNode(nodesById.get(0), 0, false, graph.names[0]);
+      for (int viewId = 0; viewId < viewCount; viewId++) {
+        childOffsets[viewId] = edgeCount;
+        int id = sourceIds[viewId];
+        if (summaries[viewId]) {
+          if (id >= 0) {
+            addEdge(getViewId(id));
+          }
+        } else if (graph.getChildCount(id) > 1 &&
+                   collapseByDefault != toggledForks.contains(nodesById.get(id)) &&
+                   findRegion(id)) {
+          int join = regionJoin;
+          Node summary = getSummaryNode(nodesById.get(id), regionStepCount);
+          addEdge(addViewNode(summary, join, true, summary.getName()));
+        } else {
+          int childEnd = graph.childOffsets[id + 1];
+          for (int i = graph.childOffsets[id]; i < childEnd; i++) {
+            addEdge(getViewId(graph.childTargets[i]));
+          }
+        }
+      }
+      childOffsets[viewCount] = edgeCount;
+
+      return new CompactGraph(Arrays.copyOf(names, viewCount), 
+                              Arrays.copyOf(childOffsets, viewCount + 1), 
+                              Arrays.copyOf(childTargets, edgeCount));
+    }
+
+    private int getViewId(int id) {
+      int viewId = viewIds[id];
+      if (viewId < 0) {
+        viewId = addViewNode(nodesById.get(id), id, false, graph.names[id]);
+      }
+      return viewId;
+    }
+
+    private int addViewNode(Node node, int sourceId, boolean summary, String name) {
+      if (viewCount == sourceIds.length) {
+        int newLength = sourceIds.length * 2;
+        sourceIds = Arrays.copyOf(sourceIds, newLength);
+        summaries = Arrays.copyOf(summaries, newLength);
+        names = Arrays.copyOf(names, newLength);
+        childOffsets = Arrays.copyOf(childOffsets, newLength + 1);
+      }
+      if (! summary) {
+        viewIds[sourceId] = viewCount;
+      }
+      sourceIds[viewCount] = sourceId;
+      summaries[viewCount] = summary;
+      names[viewCount] = name;
+      viewNodesById.add(node);
+      return viewCount++;
+    }
+
+    private void addEdge(int viewId) {
+      if (edgeCount == childTargets.length) {
+        childTargets = Arrays.copyOf(childTargets, childTargets.length * 2);
+      }
+      childTargets[edgeCount++] = viewId;
+    }
+
+    /**
+     * Searches for the join of the region starting at the provided fork.  Nodes are visited in
+     * topological order, so once every path which has been followed has converged on a single
+     * node, that node is the join.  If instead every path ends within the region (as happens
+     * when a script ends with parallel steps), the region has no join and includes everything
+     * after the fork.  If found, the join (or {@code -1}) and the number of steps within the
+     * region are recorded in {@code regionJoin} and {@code regionStepCount}.
+     *
+     * @param fork Id of the fork node
+     * @return {@code true} if the region is collapsible
+     */
+    private boolean findRegion(int fork) {
+      if (! orderChecked) {
+        orderChecked = true;
+        acyclic = setTopologicalOrder();
+      }
+      if (! acyclic) {
+        return false;
+      }
+      searchStamp++;
+      // topological indexes are queued, so nodes are visited in topological order
+      PriorityQueue<Integer> frontier = new PriorityQueue<Integer>();
+      int stepCount = 0;
+      boolean pathEnded = false;
+      queueChildren(fork, frontier);
+      while (true) {
+        int id = topologicalOrder[frontier.poll()];
+        if (frontier.isEmpty() && ! pathEnded) {
+          regionJoin = id;
+          regionStepCount = stepCount;
+          return true;
+        } else if (regionParentCounts[id] != graph.getParentCount(id)) {
+          // reachable from outside the region
+          return false;
+        }
+        if (! graph.isJoinNode(id)) {
+          stepCount++;
+        }
+        if (graph.getChildCount(id) == 0) {
+          pathEnded = true;
+          if (frontier.isEmpty()) {
+            regionJoin = -1;
+            regionStepCount = stepCount;
+            return true;
+          }
+        } else if (frontier.isEmpty()) {
+          // paths converged after one had already ended, so this is not a join of every path
+          return false;
+        }
+        queueChildren(id, frontier);
+      }
+    }
+
+    private void queueChildren(int id, PriorityQueue<Integer> frontier) {
+      int childEnd = graph.childOffsets[id + 1];
+      for (int i = graph.childOffsets[id]; i < childEnd; i++) {
+        int child = graph.childTargets[i];
+        if (searchStamps[child] != searchStamp) {
+          searchStamps[child] = searchStamp;
+          regionParentCounts[child] = 0;
+          frontier.add(topologicalIndexes[child]);
+        }
+        regionParentCounts[child]++;
+      }
+    }
+
+    /**
+     * Orders the full graph topologically so that regions can be searched.
+     *
+     * @return {@code false} if the graph has a cycle and can not be ordered
+     */
+    private boolean setTopologicalOrder() {
+      int nodeCount = graph.getNodeCount();
+      topologicalIndexes = new int[nodeCount];
+      topologicalOrder = new int[nodeCount];
+      searchStamps = new int[nodeCount];
+      regionParentCounts = new int[nodeCount];
+      int[] remainingParents = new int[nodeCount];
+      int orderedCount = 0;
+      for (int id = 0; id < nodeCount; id++) {
+        remainingParents[id] = graph.getParentCount(id);
+        if (remainingParents[id] == 0) {
+          topologicalOrder[orderedCount++] = id;
+        }
+      }
+      for (int i = 0; i < orderedCount; i++) {
+        int id = topologicalOrder[i];
+        topologicalIndexes[id] = i;
+        int childEnd = graph.childOffsets[id + 1];
+        for (int c = graph.childOffsets[id]; c < childEnd; c++) {
+          int child = graph.childTargets[c];
+          if (--remainingParents[child] == 0) {
+            topologicalOrder[orderedCount++] = child;
+          }
+        }
+      }
+      if (orderedCount != nodeCount) {
+        System.err.println("Graph contains a cycle, regions can not be collapsed");
+        return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package org.threadly.load.gui;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.threadly.load.ScriptGraphBuilder;
+import org.threadly.util.ArgumentVerifier;
+import org.threadly.util.ExceptionUtils;
+
+/**
+ * <p>Stores built {@link Node} graphs on disk so that a script does not need to be built and
+ * walked every time it is displayed.  Cache entries are keyed by the script factory arguments,
+ * as well as the modification time of the factory class.  Changes to other classes used by the
+ * factory are not detected, so the cache directory should be cleared if those change.</p>
+ *
+ * <p>Graphs are stored in a versioned binary format.  A table of distinct names is followed by
+ * the graph adjacency in the same compressed form as {@link CompactGraph}.  Files are read
+ * through a memory map, and nodes which share a name share a single {@link String}
+ * instance.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public class GraphCache {
+  /**
+   * System property which can be used to set the directory cached graphs are stored in.
+   */
+  public static final String CACHE_DIRECTORY_PROPERTY = "ambush.graph.cache.dir";
+  protected static final int MAGIC = 0x414D4247;  // "AMBG"
+  protected static final int FORMAT_VERSION = 1;
+  private static final int HEADER_INTS = 5;
+  private static final int KEY_BYTES = 16;
+
+  protected final File directory;
+
+  /**
+   * Constructs a new cache in the directory set by {@link #CACHE_DIRECTORY_PROPERTY}, or in a
+   * directory under the system temp directory if the property is not set.
+   */
+  public GraphCache() {
+    this(getDefaultDirectory());
+  }
+
+  /**
+   * Constructs a new cache which stores graphs in the provided directory.  The directory will be
+   * created when the first graph is stored.
+   *
+   * @param directory Directory to store graphs in
+   */
+  public GraphCache(File directory) {
+    ArgumentVerifier.assertNotNull(directory, "directory");
+
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the directory set by {@link #CACHE_DIRECTORY_PROPERTY}, or a directory under the
+   * system temp directory if the property is not set.
+   *
+   * @return Default cache directory
+   */
+  protected static File getDefaultDirectory() {
+    return new File(System.getProperty(CACHE_DIRECTORY_PROPERTY,
+                                       System.getProperty("java.io.tmpdir") + File.separator +
+                                         "ambush-graph-cache"));
+  }
+
+  /**
+   * Loads the graph for the provided script arguments from the cache.  If the graph is not
+   * cached (or can not be read), it will be built with {@link ScriptGraphBuilder#buildGraph(String[])}
+   * and then stored for future loads.
+   *
+   * @param args Script factory class followed by its parameters
+   * @return The head node for the graph of the script
+   */
+  public Node loadOrBuild(String[] args) {
+    return loadOrBuild(args, null);
+  }
+
+  /**
+   * Loads the graph for the provided script arguments from the cache.  If the graph is not
+   * cached (or can not be read), it will be built with
+   * {@link ScriptGraphBuilder#buildGraph(String[], ScriptGraphBuilder.BuildListener)} and then
+   * stored for future loads.  The listener is only invoked if the graph has to be built.
+   *
+   * @param args Script factory class followed by its parameters
+   * @param listener Listener to provide the graph to while it is built, or {@code null}
+   * @return The head node for the graph of the script
+   */
+  public Node loadOrBuild(String[] args, ScriptGraphBuilder.BuildListener listener) {
+    Node result = load(args);
+    if (result == null) {
+      result = ScriptGraphBuilder.buildGraph(args, listener);
+      try {
+        store(args, result);
+      } catch (IOException e) {
+        System.err.println("Failed to cache graph in " + directory + ": " + e);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Loads the graph for the provided script arguments.
+   *
+   * @param args Script factory class followed by its parameters
+   * @return The head node of the cached graph, or {@code null} if no usable graph is cached
+   */
+  public Node load(String[] args) {
+    File file = getCacheFile(args);
+    if (! file.isFile()) {
+      return null;
+    }
+    try {
+      return read(file);
+    } catch (IOException e) {
+      System.err.println("Ignoring unreadable cached graph " + file + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores the graph for the provided script arguments, replacing any existing entry.
+   *
+   * @param args Script factory class followed by its parameters
+   * @param headNode Head node of a cleaned graph to store
+   * @throws IOException Thrown if the graph could not be written
+   */
+  public void store(String[] args, Node headNode) throws IOException {
+    if (! directory.isDirectory() && ! directory.mkdirs() && ! directory.isDirectory()) {
+      throw new IOException("Could not create directory: " + directory);
+    }
+    File file = getCacheFile(args);
+    // write to a temp file first so readers never see a partial graph
+    File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      write(headNode, tempFile);
+      try {
+        Files.move(tempFile.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Returns the file a graph for the given arguments would be stored in.
+   *
+   * @param args Script factory class followed by its parameters
+   * @return File for the cache entry
+   */
+  protected File getCacheFile(String[] args) {
+    return new File(directory, makeKey(args) + ".graph");
+  }
+
+  /**
+   * Produces a key for the provided arguments.  The key includes the format version and the
+   * modification time of the factory class, so that changes to either produce a new key.
+   *
+   * @param args Script factory class followed by its parameters
+   * @return Hex string key
+   */
+  protected static String makeKey(String[] args) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw ExceptionUtils.makeRuntime(e);
+    }
+    digest.update(Integer.toString(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+    for (String arg : args) {
+      digest.update((byte)0);
+      digest.update(arg.getBytes(StandardCharsets.UTF_8));
+    }
+    if (args.length > 0) {
+      digest.update((byte)0);
+      digest.update(Long.toString(getClassModifiedTime(args[0])).getBytes(StandardCharsets.UTF_8));
+    }
+    byte[] hash = digest.digest();
+    StringBuilder sb = new StringBuilder(KEY_BYTES * 2);
+    for (int i = 0; i < KEY_BYTES; i++) {
+      sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(hash[i] & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  private static long getClassModifiedTime(String className) {
+    try {
+      Class<?> factoryClass = Class.forName(className, false, GraphCache.class.getClassLoader());
+      URL classUrl = factoryClass.getResource('/' + className.replace('.', '/') + ".class");
+      return classUrl == null ? 0 : classUrl.openConnection().getLastModified();
+    } catch (ClassNotFoundException | IOException e) {
+      // building will report the failure, the key just will not reflect class changes
+      return 0;
+    }
+  }
+
+  /**
+   * Writes the graph reachable from the head node to a file.
+   *
+   * @param headNode Head node of the graph
+   * @param file File to write to, will be replaced if it exists
+   * @throws IOException Thrown if the graph could not be written
+   */
+  public static void write(Node headNode, File file) throws IOException {
+    CompactGraph graph = new CompactGraph(headNode);
+    int nodeCount = graph.getNodeCount();
+    Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+    int[] nodeNames = new int[nodeCount];
+    for (int id = 0; id < nodeCount; id++) {
+      String name = graph.names[id];
+      if (name == null) {
+        nodeNames[id] = -1;
+      } else {
+        Integer index = nameIndexes.get(name);
+        if (index == null) {
+          index = nameIndexes.size();
+          nameIndexes.put(name, index);
+        }
+        nodeNames[id] = index;
+      }
+    }
+    String[] names = new String[nameIndexes.size()];
+    for (Map.Entry<String, Integer> e : nameIndexes.entrySet()) {
+      names[e.getValue()] = e.getKey();
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(names.length);
+      out.writeInt(nodeCount);
+      out.writeInt(graph.getEdgeCount());
+      writeInts(out, nodeNames);
+      writeInts(out, graph.childOffsets);
+      writeInts(out, graph.childTargets);
+      for (String name : names) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  /**
+   * Reads a graph which was written with {@link #write(Node, File)}.
+   *
+   * @param file File to read from
+   * @return Head node of the graph
+   * @throws IOException Thrown if the file could not be read or is not a valid graph
+   */
+  public static Node read(File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Reads a graph from a buffer holding data written with {@link #write(Node, File)}.
+   *
+   * @param buffer Buffer positioned at the start of the graph
+   * @return Head node of the graph
+   * @throws IOException Thrown if the buffer does not hold a valid graph
+   */
+  protected static Node read(ByteBuffer buffer) throws IOException {
+    try {
+      if (buffer.remaining() < HEADER_INTS * 4 || buffer.getInt() != MAGIC) {
+        throw new IOException("Not a graph file");
+      }
+      int version = buffer.getInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported graph version: " + version);
+      }
+      int nameCount = buffer.getInt();
+      int nodeCount = buffer.getInt();
+      int edgeCount = buffer.getInt();
+      if (nameCount < 0 || nodeCount < 1 || edgeCount < 0 ||
+          ((long)nodeCount * 2 + 1 + edgeCount) * 4 > buffer.remaining()) {
+        throw new IOException("Invalid graph sizes");
+      }
+      int[] nodeNames = new int[nodeCount];
+      int[] childOffsets = new int[nodeCount + 1];
+      int[] childTargets = new int[edgeCount];
+      IntBuffer ints = buffer.asIntBuffer();
+      ints.get(nodeNames);
+      ints.get(childOffsets);
+      ints.get(childTargets);
+      buffer.position(buffer.position() + (ints.position() * 4));
+      String[] names = new String[nameCount];
+      byte[] nameBytes = new byte[0];
+      for (int i = 0; i < nameCount; i++) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+          throw new IOException("Invalid name length: " + length);
+        }
+        if (nameBytes.length < length) {
+          nameBytes = new byte[length];
+        }
+        buffer.get(nameBytes, 0, length);
+        names[i] = new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+      }
+
+      Node[] nodes = new Node[nodeCount];
+      for (int id = 0; id < nodeCount; id++) {
+        int nameIndex = nodeNames[id];
+        if (nameIndex < -1 || nameIndex >= nameCount) {
+          throw new IOException("Invalid name index: " + nameIndex);
+        }
+        nodes[id] = nameIndex < 0 ? new Node() : new Node(names[nameIndex]);
+      }
+      Node[] children = new Node[edgeCount];
+      for (int i = 0; i < edgeCount; i++) {
+        if (childTargets[i] < 0 || childTargets[i] >= nodeCount) {
+          throw new IOException("Invalid child: " + childTargets[i]);
+        }
+        children[i] = nodes[childTargets[i]];
+      }
+      for (int id = 0; id < nodeCount; id++) {
+        if (childOffsets[id] < 0 || childOffsets[id] > childOffsets[id + 1] ||
+            childOffsets[id + 1] > edgeCount) {
+          throw new IOException("Invalid child offsets for node: " + id);
+        }
+        nodes[id].addDistinctChildNodes(children, childOffsets[id], childOffsets[id + 1]);
+      }
+      return nodes[0];
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated graph", e);
+    }
+  }
+}
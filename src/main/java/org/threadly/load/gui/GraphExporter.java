@@ -0,0 +1,323 @@
+package org.threadly.load.gui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+import org.threadly.load.ScriptGraphBuilder;
+import org.threadly.load.gui.AmbushGraph.GraphDataSet;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+import org.threadly.load.gui.AmbushGraph.LayoutMode;
+import org.threadly.util.ArgumentVerifier;
+
+/**
+ * <p>Renders a graph to an SVG or PNG file without needing a display.  The graph is laid out in the
+ * same way as {@link AmbushGraph.LayoutMode#LAYERED} by default, or
+ * {@link AmbushGraph.LayoutMode#FORCE_DIRECTED} run until it converges.
+ * {@link AmbushGraph.LayoutMode#SOFT_GRID} is not supported, since it is only laid out by the
+ * window.  SVG output is written to the stream as each node and edge is visited, so beyond the laid
+ * out graph itself memory use is constant regardless of graph size.  PNG output is drawn into an
+ * image the size of the graph bounds.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public class GraphExporter {
+  private static final int DEFAULT_X_SIZE = 1440;
+  private static final int DEFAULT_Y_SIZE = 900;
+  private static final int BACKGROUND_GRAY = 210;
+  private static final int DOT_SIZE = 5;
+  private static final String LAYOUT_ARG_PREFIX = "layout=";
+
+  protected final GraphDataSet dataSet;
+  protected final int[] pointRgbs;
+
+  /**
+   * Constructs a new exporter, laying out the graph from the provided head node with
+   * {@link LayoutMode#LAYERED}.
+   *
+   * @param headNode Head node of the graph to export
+   * @param xSize Width of the exported graph
+   * @param ySize Height of the exported graph
+   */
+  public GraphExporter(Node headNode, int xSize, int ySize) {
+    this(headNode, xSize, ySize, LayoutMode.LAYERED);
+  }
+
+  /**
+   * Constructs a new exporter, laying out the graph from the provided head node.
+   *
+   * @param headNode Head node of the graph to export
+   * @param xSize Width of the exported graph
+   * @param ySize Height of the exported graph
+   * @param layoutMode Either {@link LayoutMode#LAYERED} or {@link LayoutMode#FORCE_DIRECTED}
+   * @throws IllegalArgumentException Thrown if {@link LayoutMode#SOFT_GRID} is requested
+   */
+  public GraphExporter(Node headNode, int xSize, int ySize, LayoutMode layoutMode) {
+    this(makeDataSet(headNode, xSize, ySize, layoutMode));
+  }
+
+  /**
+   * Constructs a new exporter for a graph which has already been laid out.
+   *
+   * @param dataSet Data set with the graph and its point positions
+   */
+  protected GraphExporter(GraphDataSet dataSet) {
+    this.dataSet = dataSet;
+    this.pointRgbs = ColorPalette.makePointRgbs(AmbushGraph.POINT_COLOR_COUNT,
+                                                new Random(AmbushGraph.COLOR_PALETTE_SEED));
+  }
+
+  private static GraphDataSet makeDataSet(Node headNode, int xSize, int ySize, LayoutMode layoutMode) {
+    ArgumentVerifier.assertNotNull(headNode, "headNode");
+    ArgumentVerifier.assertGreaterThanZero(xSize, "xSize");
+    ArgumentVerifier.assertGreaterThanZero(ySize, "ySize");
+    ArgumentVerifier.assertNotNull(layoutMode, "layoutMode");
+    if (layoutMode == LayoutMode.SOFT_GRID) {
+      throw new IllegalArgumentException("Soft grid layout can not be exported");
+    }
+
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(headNode, nodesById);
+    int[] modificationCounts = new int[nodesById.size()];
+    for (int id = 0; id < modificationCounts.length; id++) {
+      modificationCounts[id] = nodesById.get(id).getModificationCount();
+    }
+    LayeredLayout layout = new LayeredLayout(graph);
+    layout.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+    GraphDataSet result = new GraphDataSet(xSize, ySize);
+    if (layoutMode == LayoutMode.FORCE_DIRECTED) {
+      ForceDirectedLayout forceLayout = new ForceDirectedLayout(graph, layout);
+      while (! forceLayout.isConverged()) {
+        forceLayout.iterate();
+      }
+      // forces decide the positions, clustering would only be undone by them
+      result.clusterIterations = 0;
+      PointPlacer.setForceDirectedData(result, graph, nodesById, modificationCounts, forceLayout,
+                                      new Random(graph.getStructureHash()), null);
+    } else {
+      PointPlacer.setLayeredData(result, graph, nodesById, modificationCounts, layout);
+    }
+    return result;
+  }
+
+  /**
+   * Writes the graph as an SVG document to a file.
+   *
+   * @param file File to write to, will be replaced if it exists
+   * @throws IOException Thrown if there is a failure writing to the file
+   */
+  public void writeSvg(File file) throws IOException {
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                                                           StandardCharsets.UTF_8));
+    try {
+      writeSvg(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes the graph as an SVG document.  The writer is not closed, and should be buffered for
+   * large graphs.
+   *
+   * @param out Writer to write the document to
+   * @throws IOException Thrown if there is a failure writing to the writer
+   */
+  public void writeSvg(Writer out) throws IOException {
+    CompactGraph graph = dataSet.graph;
+    GuiPoint[] points = dataSet.points;
+    String width = Integer.toString(dataSet.naturalBounds.x);
+    String height = Integer.toString(dataSet.naturalBounds.y);
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height +
+                "\" viewBox=\"0 0 " + width + ' ' + height + "\">\n");
+    // one class per color keeps each element small
+    out.write("<style>text{font:10px sans-serif;fill:#000}");
+    for (int i = 0; i < pointRgbs.length; i++) {
+      String color = toHexColor(pointRgbs[i]);
+      out.write(".c" + i + "{stroke:" + color + ";fill:" + color + '}');
+    }
+    out.write("</style>\n");
+    out.write("<rect width=\"100%\" height=\"100%\" fill=\"" +
+                toHexColor((BACKGROUND_GRAY << 16) | (BACKGROUND_GRAY << 8) | BACKGROUND_GRAY) + "\"/>\n");
+
+    out.write("<g>\n");
+    for (int id = 0; id < points.length; id++) {
+      GuiPoint point = points[id];
+      for (int e = graph.childOffsets[id]; e < graph.childOffsets[id + 1]; e++) {
+        GuiPoint childPoint = points[graph.childTargets[e]];
+        out.write("<line class=\"c");
+        out.write(Integer.toString(point.colorIndex));
+        out.write("\" x1=\"");
+        out.write(Integer.toString(point.getX()));
+        out.write("\" y1=\"");
+        out.write(Integer.toString(point.getY()));
+        out.write("\" x2=\"");
+        out.write(Integer.toString(childPoint.getX()));
+        out.write("\" y2=\"");
+        out.write(Integer.toString(childPoint.getY()));
+        out.write("\"/>\n");
+      }
+    }
+    out.write("</g>\n<g>\n");
+    for (int id = 0; id < points.length; id++) {
+      GuiPoint point = points[id];
+      int x = point.getX();
+      int y = point.getY();
+      out.write("<circle class=\"c");
+      out.write(Integer.toString(point.colorIndex));
+      out.write("\" cx=\"");
+      out.write(Integer.toString(x));
+      out.write("\" cy=\"");
+      out.write(Integer.toString(y));
+      out.write("\" r=\"2.5\"><title>");
+      writeEscaped(out, graph.getName(id));
+      out.write("</title></circle>\n");
+      if (dataSet.drawAllNames) {
+        out.write("<text x=\"");
+        out.write(Integer.toString(x + 10));
+        out.write("\" y=\"");
+        out.write(Integer.toString(y + 5));
+        out.write("\">");
+        writeEscaped(out, graph.getName(id));
+        out.write("</text>\n");
+      }
+    }
+    out.write("</g>\n</svg>\n");
+  }
+
+  private static String toHexColor(int rgb) {
+    String hex = Integer.toHexString(rgb & 0xFFFFFF);
+    StringBuilder sb = new StringBuilder(7);
+    sb.append('#');
+    for (int i = hex.length(); i < 6; i++) {
+      sb.append('0');
+    }
+    sb.append(hex);
+    return sb.toString();
+  }
+
+  private static void writeEscaped(Writer out, String text) throws IOException {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          out.write("&amp;");
+          break;
+        case '<':
+          out.write("&lt;");
+          break;
+        case '>':
+          out.write("&gt;");
+          break;
+        case '"':
+          out.write("&quot;");
+          break;
+        default:
+          out.write(c);
+      }
+    }
+  }
+
+  /**
+   * Draws the graph into a new image the size of the graph bounds.
+   *
+   * @return Image with the graph drawn in it
+   */
+  public BufferedImage renderImage() {
+    CompactGraph graph = dataSet.graph;
+    GuiPoint[] points = dataSet.points;
+    BufferedImage image = new BufferedImage(dataSet.naturalBounds.x, dataSet.naturalBounds.y,
+                                            BufferedImage.TYPE_INT_RGB);
+    java.awt.Color[] colors = new java.awt.Color[pointRgbs.length];
+    for (int i = 0; i < colors.length; i++) {
+      colors[i] = new java.awt.Color(pointRgbs[i]);
+    }
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setColor(new java.awt.Color(BACKGROUND_GRAY, BACKGROUND_GRAY, BACKGROUND_GRAY));
+      g.fillRect(0, 0, image.getWidth(), image.getHeight());
+      for (int id = 0; id < points.length; id++) {
+        GuiPoint point = points[id];
+        g.setColor(colors[point.colorIndex]);
+        for (int e = graph.childOffsets[id]; e < graph.childOffsets[id + 1]; e++) {
+          GuiPoint childPoint = points[graph.childTargets[e]];
+          g.drawLine(point.getX(), point.getY(), childPoint.getX(), childPoint.getY());
+        }
+      }
+      for (GuiPoint point : points) {
+        g.setColor(colors[point.colorIndex]);
+        // match the gui, where the position is the top left of the dot
+        g.fillOval(point.getX(), point.getY(), DOT_SIZE, DOT_SIZE);
+      }
+      if (dataSet.drawAllNames) {
+        g.setColor(java.awt.Color.BLACK);
+        for (int id = 0; id < points.length; id++) {
+          g.drawString(graph.getName(id), points[id].getX() + 10, points[id].getY() + 5);
+        }
+      }
+    } finally {
+      g.dispose();
+    }
+    return image;
+  }
+
+  /**
+   * Writes the graph as a PNG image to a file.
+   *
+   * @param file File to write to, will be replaced if it exists
+   * @throws IOException Thrown if there is a failure writing to the file
+   */
+  public void writePng(File file) throws IOException {
+    ImageIO.write(renderImage(), "png", file);
+  }
+
+  /**
+   * Builds the graph for a script and exports it.  The first argument is the file to write to,
+   * ending in either {@code .svg} or {@code .png}.  It may be followed by {@code layout=LAYERED}
+   * (the default) or {@code layout=FORCE_DIRECTED}, the soft grid layout can not be exported.  The
+   * remaining arguments are the {@link org.threadly.load.ScriptFactory} class followed by its
+   * parameters in the form of key=value.
+   *
+   * @param args Output file followed by script arguments
+   * @throws IOException Thrown if there is a failure writing the file
+   */
+  public static void main(String[] args) throws IOException {
+    LayoutMode layoutMode = LayoutMode.LAYERED;
+    int scriptArgsStart = 1;
+    if (args.length > 1 && args[1].startsWith(LAYOUT_ARG_PREFIX)) {
+      try {
+        layoutMode = LayoutMode.valueOf(args[1].substring(LAYOUT_ARG_PREFIX.length()));
+      } catch (IllegalArgumentException e) {
+        layoutMode = null;
+      }
+      scriptArgsStart++;
+    }
+    if (args.length < 1 || layoutMode == null || layoutMode == LayoutMode.SOFT_GRID ||
+        ! (args[0].endsWith(".svg") || args[0].endsWith(".png"))) {
+      System.err.println("java " + GraphExporter.class.getName() +
+                           " output.svg|output.png [layout=LAYERED|FORCE_DIRECTED]" +
+                           " script.factory.to.call key1=value1 key2=value2....");
+      System.exit(-1);
+    }
+    File outputFile = new File(args[0]);
+    Node head = ScriptGraphBuilder.buildGraph(Arrays.copyOfRange(args, scriptArgsStart, args.length));
+    GraphExporter exporter = new GraphExporter(head, DEFAULT_X_SIZE, DEFAULT_Y_SIZE, layoutMode);
+    if (args[0].endsWith(".svg")) {
+      exporter.writeSvg(outputFile);
+    } else {
+      exporter.writePng(outputFile);
+    }
+  }
+}
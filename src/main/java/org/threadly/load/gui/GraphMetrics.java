@@ -0,0 +1,290 @@
+package org.threadly.load.gui;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Records the performance metrics of an {@link AmbushGraph} window.  Paints and hit tests are
+ * only recorded from the display thread, so their times are plain volatile fields.  Counters
+ * which may be updated from other threads are atomic.  Recording is cheap enough to always be
+ * enabled, the overlay and JMX only read what has been recorded.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class GraphMetrics implements GraphMetricsMXBean {
+  /**
+   * Domain and type of the names metrics are registered under, an instance id is appended.
+   */
+  protected static final String OBJECT_NAME_PREFIX = "org.threadly.load.gui:type=AmbushGraph,id=";
+  private static final AtomicInteger NEXT_INSTANCE_ID = new AtomicInteger();
+  private static final double AVERAGE_WEIGHT = .1;  // weight of the newest sample in moving averages
+  private static final double NANOS_PER_MILLI = 1000000;
+
+  private final StepEventBuffer stepEvents;
+  private final AtomicLong paintCount;
+  private final AtomicLong previewPaintCount;
+  private final AtomicLong redrawRequestCount;
+  private final AtomicLong redrawCount;
+  private final AtomicLong hitTestCount;
+  private final AtomicLong layoutCount;
+  // only modified on the display thread
+  private volatile double lastFrameMillis;
+  private volatile double averageFrameMillis;
+  private volatile double maxFrameMillis;
+  private volatile double averageHitTestMillis;
+  private volatile int visibleNodeCount;
+  private volatile int totalNodeCount;
+  // only modified by the thread completing a layout
+  private volatile long lastLayoutMillis;
+  private volatile Map<String, Long> lastLayoutPhaseMillis;
+  private ObjectName registeredName;
+
+  /**
+   * Constructs a new metrics recorder.
+   *
+   * @param stepEvents Buffer to report dropped step events from
+   */
+  public GraphMetrics(StepEventBuffer stepEvents) {
+    this.stepEvents = stepEvents;
+    paintCount = new AtomicLong();
+    previewPaintCount = new AtomicLong();
+    redrawRequestCount = new AtomicLong();
+    redrawCount = new AtomicLong();
+    hitTestCount = new AtomicLong();
+    layoutCount = new AtomicLong();
+    lastFrameMillis = 0;
+    averageFrameMillis = 0;
+    maxFrameMillis = 0;
+    averageHitTestMillis = 0;
+    visibleNodeCount = 0;
+    totalNodeCount = 0;
+    lastLayoutMillis = 0;
+    lastLayoutPhaseMillis = Collections.emptyMap();
+    registeredName = null;
+  }
+
+  private static double updateAverage(double average, double sample, long sampleCount) {
+    return sampleCount == 1 ? sample : average + ((sample - average) * AVERAGE_WEIGHT);
+  }
+
+  /**
+   * Records a completed paint of either window.  Must be invoked from the display thread.
+   *
+   * @param preview {@code true} if the preview window was painted
+   * @param durationNanos Time the paint took in nanoseconds
+   */
+  public void paintFinished(boolean preview, long durationNanos) {
+    if (preview) {
+      previewPaintCount.incrementAndGet();
+      return;
+    }
+    long count = paintCount.incrementAndGet();
+    double millis = durationNanos / NANOS_PER_MILLI;
+    lastFrameMillis = millis;
+    averageFrameMillis = updateAverage(averageFrameMillis, millis, count);
+    if (millis > maxFrameMillis) {
+      maxFrameMillis = millis;
+    }
+  }
+
+  /**
+   * Records how many nodes were painted in the main window.  Must be invoked from the display
+   * thread.
+   *
+   * @param visibleNodeCount Nodes within the view port
+   * @param totalNodeCount Nodes in the displayed graph
+   */
+  public void nodesPainted(int visibleNodeCount, int totalNodeCount) {
+    this.visibleNodeCount = visibleNodeCount;
+    this.totalNodeCount = totalNodeCount;
+  }
+
+  /**
+   * Records that a redraw was requested.  This is safe to invoke from any thread.
+   */
+  public void redrawRequested() {
+    redrawRequestCount.incrementAndGet();
+  }
+
+  /**
+   * Records that a requested redraw was done.
+   */
+  public void redrawn() {
+    redrawCount.incrementAndGet();
+  }
+
+  /**
+   * Records a search for the closest point.  Must be invoked from the display thread.
+   *
+   * @param durationNanos Time the search took in nanoseconds
+   */
+  public void hitTestFinished(long durationNanos) {
+    long count = hitTestCount.incrementAndGet();
+    averageHitTestMillis = updateAverage(averageHitTestMillis, durationNanos / NANOS_PER_MILLI, count);
+  }
+
+  /**
+   * Records a completed layout.
+   *
+   * @param totalMillis Total time the layout took
+   * @param phaseMillis Time of each phase in the order they ran, will not be modified after this call
+   */
+  public void layoutFinished(long totalMillis, Map<String, Long> phaseMillis) {
+    lastLayoutMillis = totalMillis;
+    lastLayoutPhaseMillis = Collections.unmodifiableMap(phaseMillis);
+    layoutCount.incrementAndGet();
+  }
+
+  @Override
+  public long getPaintCount() {
+    return paintCount.get();
+  }
+
+  @Override
+  public long getPreviewPaintCount() {
+    return previewPaintCount.get();
+  }
+
+  @Override
+  public double getLastFrameMillis() {
+    return lastFrameMillis;
+  }
+
+  @Override
+  public double getAverageFrameMillis() {
+    return averageFrameMillis;
+  }
+
+  @Override
+  public double getMaxFrameMillis() {
+    return maxFrameMillis;
+  }
+
+  @Override
+  public long getRedrawRequestCount() {
+    return redrawRequestCount.get();
+  }
+
+  @Override
+  public long getRedrawCount() {
+    return redrawCount.get();
+  }
+
+  @Override
+  public int getVisibleNodeCount() {
+    return visibleNodeCount;
+  }
+
+  @Override
+  public int getTotalNodeCount() {
+    return totalNodeCount;
+  }
+
+  @Override
+  public long getHitTestCount() {
+    return hitTestCount.get();
+  }
+
+  @Override
+  public double getAverageHitTestMillis() {
+    return averageHitTestMillis;
+  }
+
+  @Override
+  public long getLayoutCount() {
+    return layoutCount.get();
+  }
+
+  @Override
+  public long getLastLayoutMillis() {
+    return lastLayoutMillis;
+  }
+
+  @Override
+  public Map<String, Long> getLastLayoutPhaseMillis() {
+    return lastLayoutPhaseMillis;
+  }
+
+  @Override
+  public long getDroppedStepEventCount() {
+    return stepEvents.getDroppedCount();
+  }
+
+  @Override
+  public void reset() {
+    maxFrameMillis = 0;
+  }
+
+  /**
+   * Produces the lines of text shown in the metrics overlay.
+   *
+   * @return Lines to display, in order
+   */
+  public String[] makeOverlayLines() {
+    StringBuilder phases = new StringBuilder();
+    for (Map.Entry<String, Long> e : lastLayoutPhaseMillis.entrySet()) {
+      phases.append(phases.length() == 0 ? " (" : ", ");
+      phases.append(e.getKey()).append(' ').append(e.getValue()).append("ms");
+    }
+    if (phases.length() > 0) {
+      phases.append(')');
+    }
+    return new String[] {
+      String.format("Frame: %.1fms last, %.1fms avg, %.1fms max",
+                    lastFrameMillis, averageFrameMillis, maxFrameMillis),
+      "Paints: " + paintCount.get() + " main, " + previewPaintCount.get() + " preview, " +
+        redrawCount.get() + " of " + redrawRequestCount.get() + " redraw requests",
+      "Nodes: " + visibleNodeCount + " visible of " + totalNodeCount,
+      String.format("Hit tests: %d, %.3fms avg", hitTestCount.get(), averageHitTestMillis),
+      "Layout: " + lastLayoutMillis + "ms" + phases,
+      "Dropped step events: " + stepEvents.getDroppedCount()
+    };
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server under a name unique to this instance.
+   * Failures are reported but otherwise ignored, as metrics are not required for the graph to
+   * be displayed.
+   */
+  public void register() {
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME_PREFIX + NEXT_INSTANCE_ID.incrementAndGet());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      registeredName = name;
+    } catch (JMException e) {
+      System.err.println("Could not register graph metrics: " + e);
+    }
+  }
+
+  /**
+   * Removes these metrics from the platform MBean server if they were registered.
+   */
+  public void unregister() {
+    ObjectName name = registeredName;
+    if (name == null) {
+      return;
+    }
+    registeredName = null;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(name);
+    } catch (JMException e) {
+      System.err.println("Could not unregister graph metrics: " + e);
+    }
+  }
+
+  /**
+   * Returns the name these metrics are registered under.
+   *
+   * @return Registered name, or {@code null} if not registered
+   */
+  protected ObjectName getRegisteredName() {
+    return registeredName;
+  }
+}
@@ -0,0 +1,127 @@
+package org.threadly.load.gui;
+
+import java.util.Map;
+
+/**
+ * <p>Performance metrics of an {@link AmbushGraph} window.  These are registered with the
+ * platform MBean server while the window is open, and can also be shown in an overlay on the
+ * main window.  Times are in milliseconds.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public interface GraphMetricsMXBean {
+  /**
+   * Returns the number of times the main window has been painted.
+   *
+   * @return Main window paint count
+   */
+  public long getPaintCount();
+
+  /**
+   * Returns the number of times the preview window has been painted.
+   *
+   * @return Preview window paint count
+   */
+  public long getPreviewPaintCount();
+
+  /**
+   * Returns how long the most recent paint of the main window took.
+   *
+   * @return Time in milliseconds
+   */
+  public double getLastFrameMillis();
+
+  /**
+   * Returns a moving average of how long the main window takes to paint, weighted towards recent
+   * paints.
+   *
+   * @return Time in milliseconds
+   */
+  public double getAverageFrameMillis();
+
+  /**
+   * Returns the longest time the main window has taken to paint since the last {@link #reset()}.
+   *
+   * @return Time in milliseconds
+   */
+  public double getMaxFrameMillis();
+
+  /**
+   * Returns the number of times a redraw has been requested.  Requests made while a redraw is
+   * already pending are merged, so this may be higher than {@link #getRedrawCount()}.
+   *
+   * @return Redraw request count
+   */
+  public long getRedrawRequestCount();
+
+  /**
+   * Returns the number of redraws which have been done from requests.
+   *
+   * @return Redraw count
+   */
+  public long getRedrawCount();
+
+  /**
+   * Returns the number of nodes which were within the main window's view port on the last paint.
+   *
+   * @return Visible node count
+   */
+  public int getVisibleNodeCount();
+
+  /**
+   * Returns the number of nodes in the displayed graph.
+   *
+   * @return Total node count
+   */
+  public int getTotalNodeCount();
+
+  /**
+   * Returns the number of times the closest point to the mouse has been searched for.
+   *
+   * @return Hit test count
+   */
+  public long getHitTestCount();
+
+  /**
+   * Returns a moving average of how long finding the closest point takes.
+   *
+   * @return Time in milliseconds
+   */
+  public double getAverageHitTestMillis();
+
+  /**
+   * Returns the number of layouts which have completed.  Layouts which are superseded by a newer
+   * graph are not counted.
+   *
+   * @return Layout count
+   */
+  public long getLayoutCount();
+
+  /**
+   * Returns the total time the most recently completed layout took.
+   *
+   * @return Time in milliseconds
+   */
+  public long getLastLayoutMillis();
+
+  /**
+   * Returns the time taken by each phase of the most recently completed layout, in the order the
+   * phases ran.
+   *
+   * @return Map of phase name to time in milliseconds
+   */
+  public Map<String, Long> getLastLayoutPhaseMillis();
+
+  /**
+   * Returns the number of step state changes which were dropped because the display could not
+   * keep up.
+   *
+   * @return Dropped event count
+   */
+  public long getDroppedStepEventCount();
+
+  /**
+   * Resets the maximum frame time so that a new maximum can be observed.
+   */
+  public void reset();
+}
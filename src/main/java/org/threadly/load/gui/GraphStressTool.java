@@ -0,0 +1,234 @@
+package org.threadly.load.gui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.threadly.load.ExecutableScript.ExecutionItem.ChildItems;
+import org.threadly.load.ScriptGraphBuilder;
+import org.threadly.load.gui.AmbushGraph.GraphDataSet;
+import org.threadly.util.StringUtils;
+
+/**
+ * <p>Command line tool which pushes graphs from {@link SyntheticGraphGenerator} through each
+ * phase of building and laying out a graph, reporting the time and retained heap of each phase.
+ * By running several rounds with growing graphs the size where a phase becomes too slow, or runs
+ * out of memory, can be found without needing a production script.</p>
+ *
+ * <p>The phases are generating the script items, building them with
+ * {@link ScriptGraphBuilder#makeGraph(ChildItems)} (which includes cleaning), making a node per
+ * step with repeated names both copied and shared through a {@link NameTable}, generating an
+ * uncleaned graph directly, {@link Node#cleanGraph()} on that graph, taking a
+ * {@link CompactGraph} snapshot, layering, ordering and placing the points the same way
+ * {@link AmbushGraph} does, and finally running the first iterations of a
+ * {@link ForceDirectedLayout}.  Heap is measured after requesting a garbage collection, so it
+ * reflects what each phase retains rather than what it allocates.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public class GraphStressTool {
+  private static final int DEFAULT_DEPTH = 3;
+  private static final int DEFAULT_FAN_OUT = 10;
+  private static final int DEFAULT_STEPS_PER_BRANCH = 10;
+  private static final double DEFAULT_JOIN_DENSITY = .5;
+  private static final int DEFAULT_NAME_LENGTH = 20;
+  private static final int DEFAULT_ROUNDS = 1;
+  private static final int X_SIZE = 1024;
+  private static final int Y_SIZE = 768;
+  private static final int FORCE_ITERATIONS = 10;
+  private static final long BYTES_PER_MB = 1024 * 1024;
+  private static final int DISTINCT_STEP_NAMES = 100;  // distinct descriptions in the name phases
+
+  /**
+   * Main function, usually executed by the JVM on startup.  Arguments are optional, and are in
+   * the form of key=value.  Each round after the first doubles {@code stepsPerBranch}.
+   *
+   * @param args Arguments for the generator and the number of rounds to run
+   */
+  public static void main(String[] args) {
+    Map<String, String> params = new HashMap<String, String>();
+    for (String arg : args) {
+      int delim = arg.indexOf('=');
+      if (delim < 1) {
+        System.err.println("java " + GraphStressTool.class.getName() +
+                             " [depth=" + DEFAULT_DEPTH + "] [fanOut=" + DEFAULT_FAN_OUT +
+                             "] [stepsPerBranch=" + DEFAULT_STEPS_PER_BRANCH +
+                             "] [joinDensity=" + DEFAULT_JOIN_DENSITY +
+                             "] [nameLength=" + DEFAULT_NAME_LENGTH + "] [seed=0] [rounds=" +
+                             DEFAULT_ROUNDS + "]");
+        System.exit(-1);
+      }
+      params.put(arg.substring(0, delim), arg.substring(delim + 1));
+    }
+
+    int depth = getInt(params, "depth", DEFAULT_DEPTH);
+    int fanOut = getInt(params, "fanOut", DEFAULT_FAN_OUT);
+    int stepsPerBranch = getInt(params, "stepsPerBranch", DEFAULT_STEPS_PER_BRANCH);
+    double joinDensity = params.containsKey("joinDensity") ?
+      Double.parseDouble(params.get("joinDensity")) : DEFAULT_JOIN_DENSITY;
+    int nameLength = getInt(params, "nameLength", DEFAULT_NAME_LENGTH);
+    long seed = params.containsKey("seed") ? Long.parseLong(params.get("seed")) : 0;
+    int rounds = getInt(params, "rounds", DEFAULT_ROUNDS);
+
+    for (int round = 0; round < rounds; round++) {
+      SyntheticGraphGenerator generator =
+          new SyntheticGraphGenerator(depth, fanOut, stepsPerBranch << round,
+                                      joinDensity, nameLength, seed);
+      System.out.println("Round " + (round + 1) + ": " + generator.getStepCount() + " steps" +
+                           " (depth=" + depth + ", fanOut=" + fanOut +
+                           ", stepsPerBranch=" + generator.stepsPerBranch + ")");
+      if (! runRound(generator)) {
+        break;
+      }
+    }
+  }
+
+  private static int getInt(Map<String, String> params, String key, int defaultValue) {
+    String value = params.get(key);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /**
+   * Runs each phase for a graph from the provided generator, printing the results as they
+   * complete.
+   *
+   * @param generator Generator to produce the graph from
+   * @return {@code true} if every phase completed, {@code false} if memory ran out
+   */
+  protected static boolean runRound(SyntheticGraphGenerator generator) {
+    PhaseTimer timer = new PhaseTimer();
+    try {
+      timer.start("generateItems");
+      ChildItems items = generator.makeChildItems();
+      timer.finish(-1, items);
+
+      timer.start("makeGraph");
+      timer.finish(-1, ScriptGraphBuilder.makeGraph(items));
+      items = null;
+      // the built graph is not used further, measure the rest without it
+      timer.releaseResults();
+
+      // same baseline for both, so the difference is the heap saved by sharing names
+      timer.start("copiedNames");
+      timer.finish(-1, makeNamedNodes(generator, null));
+      timer.releaseResults();
+
+      timer.start("internedNames");
+      timer.finish(-1, makeNamedNodes(generator, new NameTable()));
+      timer.releaseResults();
+
+      timer.start("generateNodes");
+      Node head = generator.makeNodeGraph();
+      timer.finish(-1, head);
+
+      timer.start("cleanGraph");
+      head.cleanGraph();
+      timer.finish(-1, head);
+
+      timer.start("snapshot");
+      List<Node> nodesById = new ArrayList<Node>();
+      CompactGraph graph = new CompactGraph(head, nodesById);
+      int[] modificationCounts = new int[nodesById.size()];
+      for (int id = 0; id < modificationCounts.length; id++) {
+        modificationCounts[id] = nodesById.get(id).getModificationCount();
+      }
+      timer.finish(graph.getNodeCount(), graph);
+
+      timer.start("layering");
+      LayeredLayout layout = new LayeredLayout(graph);
+      timer.finish(graph.getNodeCount(), layout);
+
+      timer.start("ordering");
+      layout.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+      timer.finish(graph.getNodeCount(), layout);
+
+      timer.start("placing");
+      GraphDataSet dataSet = new GraphDataSet(X_SIZE, Y_SIZE);
+      PointPlacer.setLayeredData(dataSet, graph, nodesById, modificationCounts, layout);
+      timer.finish(graph.getNodeCount(), dataSet);
+
+      timer.start("force x" + FORCE_ITERATIONS);
+      ForceDirectedLayout forceLayout = new ForceDirectedLayout(graph, layout);
+      for (int i = 0; i < FORCE_ITERATIONS; i++) {
+        forceLayout.iterate();
+      }
+      timer.finish(graph.getNodeCount(), forceLayout);
+      return true;
+    } catch (OutOfMemoryError e) {
+      timer.releaseResults();
+      System.out.println("  " + timer.phase + " ran out of memory");
+      return false;
+    }
+  }
+
+  /**
+   * Makes a node for each step, with the same few names repeated the way step descriptions are in
+   * large scripts.  Each name is first produced as a new {@link String}, as
+   * {@code ExecutionItem.toString()} would.
+   *
+   * @param generator Generator to get the step count and name length from
+   * @param nameTable Table to intern the names into, or {@code null} to keep each copy
+   * @return Nodes which were made
+   */
+  protected static Node[] makeNamedNodes(SyntheticGraphGenerator generator, NameTable nameTable) {
+    String[] names = new String[DISTINCT_STEP_NAMES];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = StringUtils.makeRandomString(generator.nameLength);
+    }
+    Node[] nodes = new Node[(int)Math.min(Integer.MAX_VALUE - 8, generator.getStepCount())];
+    for (int i = 0; i < nodes.length; i++) {
+      // copy the characters, a String copy constructor would share them
+      String name = new String(names[i % names.length].toCharArray());
+      nodes[i] = new Node(nameTable == null ? name : nameTable.intern(name));
+    }
+    return nodes;
+  }
+
+  /**
+   * <p>Class which tracks and prints the time and heap use of a single phase at a time.  The
+   * result of each phase is held until released, so that the reported heap includes it even if
+   * the caller no longer references it.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  protected static class PhaseTimer {
+    protected final List<Object> results = new ArrayList<Object>();
+    protected String phase = null;
+    protected long startNanos = 0;
+
+    /**
+     * Starts timing a new phase.
+     *
+     * @param phase Name of the phase
+     */
+    public void start(String phase) {
+      this.phase = phase;
+      this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Finishes the current phase and prints its results.
+     *
+     * @param nodeCount Number of nodes the phase worked on, or {@code -1} if unknown
+     * @param result Result of the phase to hold until {@link #releaseResults()} is invoked
+     */
+    public void finish(int nodeCount, Object result) {
+      long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+      results.add(result);
+      Runtime runtime = Runtime.getRuntime();
+      System.gc();
+      long usedMb = (runtime.totalMemory() - runtime.freeMemory()) / BYTES_PER_MB;
+      System.out.println(String.format("  %-14s %10s nodes %8d ms %8d MB heap", phase,
+                                       nodeCount < 0 ? "-" : Integer.toString(nodeCount),
+                                       elapsedMillis, usedMb));
+    }
+
+    /**
+     * Releases the results held from previously finished phases.
+     */
+    public void releaseResults() {
+      results.clear();
+    }
+  }
+}
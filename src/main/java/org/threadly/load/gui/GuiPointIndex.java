@@ -0,0 +1,294 @@
+package org.threadly.load.gui;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.graphics.Point;
+
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+/**
+ * <p>Uniform grid over the natural coordinates of a set of {@link GuiPoint}'s.  This allows
+ * finding points near a position, or within an area, by inspecting only the grid cells which
+ * cover the search area rather than every point in the graph.  Once a point is added its index
+ * reference is set, so that {@link GuiPoint#setPosition(int, int)} will keep the index up to
+ * date.</p>
+ *
+ * <p>In order to find edges which cross an area, edges are classified as short or long.  Short
+ * edges always have their parent within {@link #getShortEdgeLength()} of the area, so they can
+ * be found from the points around the area.  Long edges are tracked separately and checked
+ * against the area directly.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class GuiPointIndex {
+  private static final int MIN_CELL_SIZE = 4;
+  private static final int MAX_CELL_SIZE = 32;
+  private static final int TARGET_POINTS_PER_CELL = 4;
+  private static final int SHORT_EDGE_DIVISOR = 8;  // fraction of the natural bounds an edge is short within
+
+  private final CompactGraph graph;
+  private final GuiPoint[] points;
+  private final int cellSize;
+  private final int columns;
+  private final int rows;
+  private final int[][] cells;
+  private final int[] cellCounts;
+  private final int shortEdgeLength;
+  private final boolean[] longEdges;  // indexed by edge index in the graph child arrays
+  private int[] longEdgeSources;
+  private int[] longEdgeTargets;
+  private int longEdgeCount;
+
+  /**
+   * Constructs a new index for the provided points.  Points which are {@code null} are ignored.
+   *
+   * @param naturalBounds Natural size of the graph, points outside will be put in edge cells
+   * @param graph Graph structure of the points
+   * @param points Points to index, indexed by node id in {@code graph}
+   */
+  public GuiPointIndex(Point naturalBounds, CompactGraph graph, GuiPoint[] points) {
+    this.graph = graph;
+    this.points = points;
+    // size cells so the average cell has only a few points in it
+    double area = Math.max(1, naturalBounds.x) * (double)Math.max(1, naturalBounds.y);
+    int idealSize = (int)Math.sqrt(area * TARGET_POINTS_PER_CELL / Math.max(1, points.length));
+    cellSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, idealSize));
+    columns = Math.max(1, naturalBounds.x) / cellSize + 1;
+    rows = Math.max(1, naturalBounds.y) / cellSize + 1;
+    cells = new int[columns * rows][];
+    cellCounts = new int[columns * rows];
+    shortEdgeLength = Math.max(cellSize, Math.max(naturalBounds.x, naturalBounds.y) / SHORT_EDGE_DIVISOR);
+    longEdges = new boolean[graph.getEdgeCount()];
+    longEdgeSources = new int[0];
+    longEdgeTargets = new int[0];
+    longEdgeCount = 0;
+
+    for (int id = 0; id < points.length; id++) {
+      GuiPoint point = points[id];
+      if (point != null) {
+        add(id, point.getX(), point.getY());
+        point.id = id;
+        point.index = this;
+      }
+    }
+    for (int id = 0; id < points.length; id++) {
+      for (int e = graph.childOffsets[id]; e < graph.childOffsets[id + 1]; e++) {
+        checkEdgeLength(id, e);
+      }
+    }
+  }
+
+  private int cellIndex(int x, int y) {
+    int column = Math.max(0, Math.min(columns - 1, x / cellSize));
+    int row = Math.max(0, Math.min(rows - 1, y / cellSize));
+    return (row * columns) + column;
+  }
+
+  private void add(int id, int x, int y) {
+    int cell = cellIndex(x, y);
+    int[] cellIds = cells[cell];
+    if (cellIds == null) {
+      cellIds = new int[TARGET_POINTS_PER_CELL];
+      cells[cell] = cellIds;
+    } else if (cellCounts[cell] == cellIds.length) {
+      cellIds = Arrays.copyOf(cellIds, cellIds.length * 2);
+      cells[cell] = cellIds;
+    }
+    cellIds[cellCounts[cell]++] = id;
+  }
+
+  private void remove(int id, int cell) {
+    int[] cellIds = cells[cell];
+    for (int i = 0; i < cellCounts[cell]; i++) {
+      if (cellIds[i] == id) {
+        // order within a cell does not matter, so move the last entry into the gap
+        cellIds[i] = cellIds[--cellCounts[cell]];
+        return;
+      }
+    }
+  }
+
+  private void checkEdgeLength(int sourceId, int edge) {
+    if (longEdges[edge]) {
+      return;
+    }
+    GuiPoint source = points[sourceId];
+    GuiPoint target = points[graph.childTargets[edge]];
+    if (source == null || target == null) {
+      return;
+    }
+    if (Math.abs(source.position.x - target.position.x) > shortEdgeLength ||
+        Math.abs(source.position.y - target.position.y) > shortEdgeLength) {
+      longEdges[edge] = true;
+      if (longEdgeCount == longEdgeSources.length) {
+        int newSize = Math.max(16, longEdgeCount * 2);
+        longEdgeSources = Arrays.copyOf(longEdgeSources, newSize);
+        longEdgeTargets = Arrays.copyOf(longEdgeTargets, newSize);
+      }
+      longEdgeSources[longEdgeCount] = sourceId;
+      longEdgeTargets[longEdgeCount] = graph.childTargets[edge];
+      longEdgeCount++;
+    }
+  }
+
+  /**
+   * Updates the cell a point is stored in after its position has changed.  Any edges which
+   * became long as a result of the move will be recorded as long edges.
+   *
+   * @param point Point which moved
+   * @param oldX Natural x coordinate the point was indexed at
+   * @param oldY Natural y coordinate the point was indexed at
+   */
+  protected void pointMoved(GuiPoint point, int oldX, int oldY) {
+    int oldCell = cellIndex(oldX, oldY);
+    int newCell = cellIndex(point.position.x, point.position.y);
+    if (oldCell != newCell) {
+      remove(point.id, oldCell);
+      add(point.id, point.position.x, point.position.y);
+    }
+    for (int e = graph.childOffsets[point.id]; e < graph.childOffsets[point.id + 1]; e++) {
+      checkEdgeLength(point.id, e);
+    }
+    for (int p = graph.parentOffsets[point.id]; p < graph.parentOffsets[point.id + 1]; p++) {
+      int parentId = graph.parentTargets[p];
+      for (int e = graph.childOffsets[parentId]; e < graph.childOffsets[parentId + 1]; e++) {
+        if (graph.childTargets[e] == point.id) {
+          checkEdgeLength(parentId, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the maximum length (on either axis) an edge can have without being considered long.
+   *
+   * @return Maximum short edge length in natural coordinates
+   */
+  public int getShortEdgeLength() {
+    return shortEdgeLength;
+  }
+
+  /**
+   * Checks if an edge is tracked as a long edge.  Long edges are returned from
+   * {@link #findLongEdges(int, int, int, int)} rather than being found from nearby points.
+   *
+   * @param edge Index of the edge in the graph child arrays
+   * @return {@code true} if the edge is long
+   */
+  public boolean isLongEdge(int edge) {
+    return longEdges[edge];
+  }
+
+  /**
+   * Finds the ids of all points which are within the provided area (in natural coordinates).
+   *
+   * @param minX Minimum x coordinate, inclusive
+   * @param minY Minimum y coordinate, inclusive
+   * @param maxX Maximum x coordinate, inclusive
+   * @param maxY Maximum y coordinate, inclusive
+   * @return Array of point ids within the area
+   */
+  public int[] findPoints(int minX, int minY, int maxX, int maxY) {
+    int minColumn = Math.max(0, Math.min(columns - 1, minX / cellSize));
+    int maxColumn = Math.max(0, Math.min(columns - 1, maxX / cellSize));
+    int minRow = Math.max(0, Math.min(rows - 1, minY / cellSize));
+    int maxRow = Math.max(0, Math.min(rows - 1, maxY / cellSize));
+
+    int[] result = new int[TARGET_POINTS_PER_CELL * 16];
+    int resultCount = 0;
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int column = minColumn; column <= maxColumn; column++) {
+        int cell = (row * columns) + column;
+        int[] cellIds = cells[cell];
+        for (int i = 0; i < cellCounts[cell]; i++) {
+          Point position = points[cellIds[i]].position;
+          if (position.x >= minX && position.x <= maxX && position.y >= minY && position.y <= maxY) {
+            if (resultCount == result.length) {
+              result = Arrays.copyOf(result, resultCount * 2);
+            }
+            result[resultCount++] = cellIds[i];
+          }
+        }
+      }
+    }
+    return Arrays.copyOf(result, resultCount);
+  }
+
+  /**
+   * Finds the long edges which have a bounding box overlapping the provided area (in natural
+   * coordinates).  The result is pairs of source and target ids, so the source for edge
+   * {@code n} is at index {@code n * 2}, and the target is at {@code (n * 2) + 1}.
+   *
+   * @param minX Minimum x coordinate, inclusive
+   * @param minY Minimum y coordinate, inclusive
+   * @param maxX Maximum x coordinate, inclusive
+   * @param maxY Maximum y coordinate, inclusive
+   * @return Array of source and target id pairs
+   */
+  public int[] findLongEdges(int minX, int minY, int maxX, int maxY) {
+    int[] result = new int[16];
+    int resultCount = 0;
+    for (int i = 0; i < longEdgeCount; i++) {
+      Point source = points[longEdgeSources[i]].position;
+      Point target = points[longEdgeTargets[i]].position;
+      if (Math.max(source.x, target.x) >= minX && Math.min(source.x, target.x) <= maxX &&
+          Math.max(source.y, target.y) >= minY && Math.min(source.y, target.y) <= maxY) {
+        if (resultCount + 2 > result.length) {
+          result = Arrays.copyOf(result, result.length * 2);
+        }
+        result[resultCount++] = longEdgeSources[i];
+        result[resultCount++] = longEdgeTargets[i];
+      }
+    }
+    return Arrays.copyOf(result, resultCount);
+  }
+
+  /**
+   * Finds the closest point to some given coordinates.  The x/y coordinates should be in respect
+   * to the main shell's view.  Only points within {@code tolerance} pixels on both axis will be
+   * considered.
+   *
+   * @param zoomFactor Zoom factor to convert natural coordinates to absolute coordinates
+   * @param mainOrigin Origin of the main shell's view port in absolute coordinates
+   * @param x X position
+   * @param y Y position
+   * @param tolerance Maximum distance in view pixels on each axis
+   * @return Closest point, or {@code null} if no points are close enough
+   */
+  public GuiPoint getClosestPoint(double zoomFactor, Point mainOrigin, int x, int y, int tolerance) {
+    // convert search area into natural coordinates, padded to account for rounding
+    int minX = (int)((x + mainOrigin.x - tolerance) / zoomFactor) - 1;
+    int maxX = (int)((x + mainOrigin.x + tolerance) / zoomFactor) + 1;
+    int minY = (int)((y + mainOrigin.y - tolerance) / zoomFactor) - 1;
+    int maxY = (int)((y + mainOrigin.y + tolerance) / zoomFactor) + 1;
+    int minColumn = Math.max(0, Math.min(columns - 1, minX / cellSize));
+    int maxColumn = Math.max(0, Math.min(columns - 1, maxX / cellSize));
+    int minRow = Math.max(0, Math.min(rows - 1, minY / cellSize));
+    int maxRow = Math.max(0, Math.min(rows - 1, maxY / cellSize));
+
+    GuiPoint minEntry = null;
+    long minDistance = Long.MAX_VALUE;
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int column = minColumn; column <= maxColumn; column++) {
+        int cell = (row * columns) + column;
+        int[] cellIds = cells[cell];
+        for (int i = 0; i < cellCounts[cell]; i++) {
+          GuiPoint point = points[cellIds[i]];
+          // shift point coordinates from natural to absolute, then to main window coordinates
+          int xDelta = (int)(point.position.x * zoomFactor) - mainOrigin.x - x;
+          int yDelta = (int)(point.position.y * zoomFactor) - mainOrigin.y - y;
+          // make sure point is close enough to even consider
+          if (Math.abs(xDelta) <= tolerance && Math.abs(yDelta) <= tolerance) {
+            // squared distance is sufficient for comparison
+            long distance = ((long)xDelta * xDelta) + ((long)yDelta * yDelta);
+            if (distance < minDistance) {
+              minDistance = distance;
+              minEntry = point;
+            }
+          }
+        }
+      }
+    }
+    return minEntry;
+  }
+}
@@ -0,0 +1,220 @@
+package org.threadly.load.gui;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Layered (Sugiyama style) layout of a {@link CompactGraph}.  Each node is assigned to a
+ * layer by the longest path from the head node, computed in a single pass over a topological
+ * ordering of the graph.  Nodes within each layer are then ordered by repeated barycenter sweeps
+ * in order to reduce the number of edge crossings.</p>
+ *
+ * <p>Layers and positions within a layer are both 1 based, so they can be used directly as the
+ * x and y regions for a {@link AmbushGraph.GuiPoint}.</p>
+ *
+ * <p>Since each layer is ordered based off the layer before it, sweeps must visit layers in
+ * order.  When an {@link Executor} is provided, wide layers have their barycenters computed in
+ * parallel chunks.  The thread invoking {@link #orderLayers(int)} will also process chunks, so
+ * this will make progress even if the executor has no free threads.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class LayeredLayout {
+  protected static final int DEFAULT_SWEEP_COUNT = 4;
+  private static final int PARALLEL_CHUNK_SIZE = 4096;  // min nodes per parallel chunk
+
+  private final CompactGraph graph;
+  private final Executor executor;
+  private final int parallelism;
+  private final int[] layers;       // indexed by node id
+  private final int[] positions;    // indexed by node id, 0 based within layer
+  private final int[][] layerNodes; // indexed by layer - 1, node ids in position order
+
+  /**
+   * Constructs a new layout which will be computed on the invoking thread only.
+   *
+   * @param graph Graph to lay out
+   */
+  public LayeredLayout(CompactGraph graph) {
+    this(graph, null, 1);
+  }
+
+  /**
+   * Constructs a new layout.  Layers will be assigned immediately, and nodes in each layer will
+   * initially be ordered by their id.  Use {@link #orderLayers(int)} to reduce edge crossings.
+   *
+   * @param graph Graph to lay out
+   * @param executor Executor to compute wide layers in parallel on, or {@code null}
+   * @param parallelism Maximum number of executor threads to use at once
+   */
+  public LayeredLayout(CompactGraph graph, Executor executor, int parallelism) {
+    this.graph = graph;
+    this.executor = executor;
+    this.parallelism = Math.max(1, parallelism);
+    int nodeCount = graph.getNodeCount();
+    layers = new int[nodeCount];
+    positions = new int[nodeCount];
+    layerNodes = assignLayers();
+  }
+
+  private int[][] assignLayers() {
+    int nodeCount = graph.getNodeCount();
+    if (nodeCount == 0) {
+      return new int[0][];
+    }
+    // Kahn's algorithm, a node is visited once all its parents are, so its layer is final
+    int[] remainingParents = new int[nodeCount];
+    for (int id = 0; id < nodeCount; id++) {
+      remainingParents[id] = graph.getParentCount(id);
+      layers[id] = 1;
+    }
+    int[] queue = new int[nodeCount];
+    int queueEnd = 0;
+    queue[queueEnd++] = 0;
+    remainingParents[0] = 0;
+    int layerCount = 1;
+    for (int i = 0; i < queueEnd; i++) {
+      int id = queue[i];
+      int childLayer = layers[id] + 1;
+      for (int e = graph.childOffsets[id]; e < graph.childOffsets[id + 1]; e++) {
+        int child = graph.childTargets[e];
+        if (layers[child] < childLayer) {
+          layers[child] = childLayer;
+        }
+        if (--remainingParents[child] == 0) {
+          queue[queueEnd++] = child;
+          if (layers[child] > layerCount) {
+            layerCount = layers[child];
+          }
+        }
+      }
+    }
+    // nodes only reachable through a cycle were never queued, keep the layer their parents gave them
+    for (int id = 0; id < nodeCount; id++) {
+      if (remainingParents[id] > 0 && layers[id] > layerCount) {
+        layerCount = layers[id];
+      }
+    }
+
+    int[] layerSizes = new int[layerCount];
+    for (int id = 0; id < nodeCount; id++) {
+      positions[id] = layerSizes[layers[id] - 1]++;
+    }
+    int[][] result = new int[layerCount][];
+    for (int l = 0; l < layerCount; l++) {
+      result[l] = new int[layerSizes[l]];
+    }
+    for (int id = 0; id < nodeCount; id++) {
+      result[layers[id] - 1][positions[id]] = id;
+    }
+    return result;
+  }
+
+  /**
+   * Reorders nodes within each layer to reduce edge crossings.  Sweeps alternate between moving
+   * down the layers ordering by parent positions, and moving back up ordering by child positions.
+   *
+   * @param sweepCount Number of sweeps to perform
+   */
+  public void orderLayers(int sweepCount) {
+    int maxLayerSize = 0;
+    for (int[] layer : layerNodes) {
+      maxLayerSize = Math.max(maxLayerSize, layer.length);
+    }
+    long[] sortKeys = new long[maxLayerSize];
+    for (int s = 0; s < sweepCount; s++) {
+      boolean down = s % 2 == 0;
+      if (down) {
+        for (int l = 1; l < layerNodes.length; l++) {
+          orderLayer(layerNodes[l], true, sortKeys);
+        }
+      } else {
+        for (int l = layerNodes.length - 2; l >= 0; l--) {
+          orderLayer(layerNodes[l], false, sortKeys);
+        }
+      }
+    }
+  }
+
+  private void orderLayer(final int[] layer, final boolean useParents, final long[] sortKeys) {
+    ParallelChunks.run(executor, parallelism, layer.length, PARALLEL_CHUNK_SIZE,
+                       new ParallelChunks.ChunkTask() {
+      @Override
+      public void run(int start, int end) {
+        computeSortKeys(layer, useParents, sortKeys, start, end);
+      }
+    });
+    Arrays.sort(sortKeys, 0, layer.length);
+    for (int i = 0; i < layer.length; i++) {
+      int id = layer[(int)sortKeys[i]];
+      sortKeys[i] = id;
+    }
+    for (int i = 0; i < layer.length; i++) {
+      layer[i] = (int)sortKeys[i];
+      positions[layer[i]] = i;
+    }
+  }
+
+  /**
+   * Computes the sort key for a range of a layer.  The key holds the barycenter in the upper 32
+   * bits, with the current position in the lower bits so ties keep their existing order.
+   */
+  private void computeSortKeys(int[] layer, boolean useParents, long[] sortKeys, int start, int end) {
+    int[] offsets = useParents ? graph.parentOffsets : graph.childOffsets;
+    int[] targets = useParents ? graph.parentTargets : graph.childTargets;
+    for (int i = start; i < end; i++) {
+      int id = layer[i];
+      double total = 0;
+      int count = 0;
+      for (int e = offsets[id]; e < offsets[id + 1]; e++) {
+        int neighbor = targets[e];
+        total += (positions[neighbor] + .5) / layerNodes[layers[neighbor] - 1].length;
+        count++;
+      }
+      // nodes without neighbors in the sweep direction hold their current relative position
+      float barycenter = (float)(count == 0 ? (i + .5) / layer.length : total / count);
+      // non-negative float bits sort in the same order as their values
+      sortKeys[i] = (((long)Float.floatToIntBits(barycenter)) << 32) | i;
+    }
+  }
+
+  /**
+   * Returns the number of layers in the layout.
+   *
+   * @return Layer count
+   */
+  public int getLayerCount() {
+    return layerNodes.length;
+  }
+
+  /**
+   * Returns the number of nodes in a given layer.
+   *
+   * @param layer Layer, starting at {@code 1}
+   * @return Number of nodes in the layer
+   */
+  public int getLayerSize(int layer) {
+    return layerNodes[layer - 1].length;
+  }
+
+  /**
+   * Gets the layer for a node.  The head node is always in layer {@code 1}, and every other node
+   * is one layer past its deepest parent.
+   *
+   * @param id Id of the node
+   * @return Layer of the node, starting at {@code 1}
+   */
+  public int getLayer(int id) {
+    return layers[id];
+  }
+
+  /**
+   * Gets the position of a node within its layer.
+   *
+   * @param id Id of the node
+   * @return Position in the layer, starting at {@code 1}
+   */
+  public int getPosition(int id) {
+    return positions[id] + 1;
+  }
+}
@@ -0,0 +1,57 @@
+package org.threadly.load.gui;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.threadly.util.ArgumentVerifier;
+
+/**
+ * <p>Table of node names, where each distinct name is stored once.  Large scripts repeat the same
+ * few step descriptions a huge number of times, and each description is usually produced as a
+ * new {@link String}.  By constructing nodes with the name returned from
+ * {@link #intern(String)}, every node with the same name shares a single copy of it.</p>
+ *
+ * <p>Names can be interned from any thread.  Looking up a name which is already in the table
+ * does not block, and adding distinct names from several threads does not serialize on a single
+ * lock.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public class NameTable {
+  private final ConcurrentHashMap<String, String> names;
+
+  /**
+   * Constructs a new empty table.
+   */
+  public NameTable() {
+    names = new ConcurrentHashMap<String, String>();
+  }
+
+  /**
+   * Returns the stored copy of a name, adding the provided name to the table if an equal name is
+   * not already stored.  Equal names always return the same instance.
+   *
+   * @param name Name to look up
+   * @return Name equal to the provided name which is shared by all callers
+   */
+  public String intern(String name) {
+    ArgumentVerifier.assertNotNull(name, "name");
+
+    String result = names.get(name);
+    if (result == null) {
+      result = names.putIfAbsent(name, name);
+      if (result == null) {
+        result = name;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of distinct names stored in the table.
+   *
+   * @return Number of names
+   */
+  public int size() {
+    return names.size();
+  }
+}
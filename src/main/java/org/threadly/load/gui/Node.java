@@ -1,10 +1,13 @@
 package org.threadly.load.gui;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.threadly.util.Clock;
 import org.threadly.util.StringUtils;
 
 /**
@@ -65,6 +68,16 @@ public class Node {
     return JOIN_NAME == name;
   }
   
+  /**
+   * Returns a count which changes every time the children or parents of this node change.  This 
+   * can be compared with a previously recorded value to detect if the node has been modified.
+   * 
+   * @return Current modification count
+   */
+  protected int getModificationCount() {
+    return modificationCount;
+  }
+  
   @Override
   public String toString() {
     return "node:" + name;
@@ -83,6 +96,48 @@ public class Node {
     }
   }
   
+  /**
+   * Adds a range of nodes as children without checking if they are already attached.  This is 
+   * only safe when the nodes are distinct and not yet attached to this node, such as when 
+   * reconstructing a graph which was previously built with {@link #addChildNode(Node)}.
+   * 
+   * @param nodes Array holding the nodes to add as children
+   * @param start Index of the first node to add
+   * @param end Index after the last node to add
+   */
+  protected void addDistinctChildNodes(Node[] nodes, int start, int end) {
+    children.ensureCapacity(children.size() + (end - start));
+    for (int i = start; i < end; i++) {
+      Node node = nodes[i];
+      node.parents.add(this);
+      node.modificationCount++;
+      children.add(node);
+    }
+    modificationCount++;
+  }
+  
+  /**
+   * Moves all of the children of this node to instead be children of another node.  They are 
+   * added to the other node in the order they were added to this node.  This allows part of a 
+   * graph to be built under a temporary node, for example on another thread, and then attached.  
+   * As with {@link #addDistinctChildNodes(Node[], int, int)} the children are appended without 
+   * checking if they are already attached, so none of them may already be a child of the other 
+   * node.
+   * 
+   * @param newParent Node to move the children to
+   */
+  public void moveChildNodes(Node newParent) {
+    newParent.children.ensureCapacity(newParent.children.size() + children.size());
+    for (Node child : children) {
+      child.removeParentNode(this);
+      child.parents.add(newParent);
+      newParent.children.add(child);
+    }
+    newParent.modificationCount++;
+    children.clear();
+    modificationCount++;
+  }
+  
   protected void addParent(Node node) {
     if (! parents.contains(node)) {
       parents.add(node);
@@ -142,105 +197,343 @@ public class Node {
    * Traverses and cleans the graph.  This cleans up duplicate information like multiple join points.
    */
   public void cleanGraph() {
-    long startTime = Clock.lastKnownForwardProgressingMillis();
-    while (true) {
-      try {
-        doCleanGraph();
-        break;
-      } catch (StackOverflowError e) {
-        System.err.println("Attempting to clean graph..." + 
-                             (Clock.lastKnownForwardProgressingMillis() - startTime) / 1000 + "seconds");
-      }
-    }
+    new GraphCleaner().clean(this);
   }
   
-  private void doCleanGraph() {
-    if (lastCleanChangeCount != modificationCount) {
-      if (! isJoinNode()) {
+  /**
+   * <p>State for a single {@link Node#cleanGraph()} pass.  The graph is walked depth first with an 
+   * explicit stack rather than recursion, so that long chains can not overflow the thread stack.  
+   * Nodes are only expanded when they are dirty (their modificationCount differs from the count 
+   * they were last cleaned at), and each frame continues from where it left off when its node is 
+   * modified, since children are only ever appended.  A node which was already cleaned and is 
+   * then modified by a later clean operation is re-queued on its own if it is a child of an 
+   * active frame, rather than rescanning every child of that frame.</p>
+   * 
+   * <p>Join nodes which are collapsed out of the graph are not removed from the child lists which 
+   * hold them right away, as each removal would search and shift the list.  Instead they are 
+   * recorded as removed and skipped, and each list is compacted once when its node finishes 
+   * being cleaned.  Edges are added by checking the smaller of the parent's child list and the 
+   * child's parent list.  Together this keeps a pass linear in the nodes and edges which need to 
+   * be cleaned, even for forks with many branches.  The collapsing rules are the same as when 
+   * the graph was cleaned recursively.</p>
+   * 
+   * @author jent - Mike Jensen
+   */
+  private static class GraphCleaner {
+    private final ArrayDeque<CleanFrame> stack;
+    private final Map<Node, CleanFrame> activeFrames;
+    private final Set<Node> removedNodes;
+    private final Map<Node, int[]> removedChildCounts;
+    // non-join children are never removed, so once one is found it does not need to be searched for
+    private final Set<Node> nonJoinParents;
+    private final ArrayList<Node> modifiedCleanNodes;
+    
+    private GraphCleaner() {
+      stack = new ArrayDeque<CleanFrame>();
+      activeFrames = new IdentityHashMap<Node, CleanFrame>();
+      removedNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+      removedChildCounts = new IdentityHashMap<Node, int[]>();
+      nonJoinParents = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+      modifiedCleanNodes = new ArrayList<Node>();
+    }
+    
+    /**
+     * Cleans the graph reachable from the provided node.
+     * 
+     * @param head Node to start cleaning from
+     */
+    private void clean(Node head) {
+      visitAndPush(head);
+      while (! stack.isEmpty()) {
+        CleanFrame frame = stack.peek();
+        Node node = frame.node;
+        if (frame.childIndex < 0) {
+          // re-queued node, clean it again unless it is being expanded or was removed
+          stack.pop();
+          if (! activeFrames.containsKey(node) && ! removedNodes.contains(node)) {
+            visitAndPush(node);
+          }
+        } else if (frame.startChangeCount != node.modificationCount) {
+          // node changed from a child clean, re-inspect children which were modified since cleaned
+          frame.startChangeCount = node.modificationCount;
+          requeuePendingNodes(frame);
+        } else if (frame.childIndex < node.children.size()) {
+          Node child = node.children.get(frame.childIndex++);
+          if (! removedNodes.contains(child)) {
+            visitAndPush(child);
+          }
+        } else {
+          stack.pop();
+          activeFrames.remove(node);
+          node.lastCleanChangeCount = node.modificationCount;
+          
+          // cleanup memory if possible
+          compactChildren(node);
+          node.children.trimToSize();
+          node.parents.trimToSize();
+        }
+      }
+      // compact lists which had children removed after their node finished
+      for (Node node : removedChildCounts.keySet()) {
+        compactChildren(node);
+      }
+    }
+    
+    /**
+     * Cleans a node, and if it remains in the graph and is not already being expanded pushes a 
+     * frame so that its children will be inspected.
+     * 
+     * @param node Node to inspect and clean
+     */
+    private void visitAndPush(Node node) {
+      Node expandNode = visit(node);
+      recordModifiedNodes();
+      if (expandNode != null) {
+        CleanFrame frame = new CleanFrame(expandNode, 0);
+        activeFrames.put(expandNode, frame);
+        stack.push(frame);
+      }
+    }
+    
+    /**
+     * Cleans a node, and any parent nodes which must be inspected as a result.
+     * 
+     * @param node Node to inspect and clean
+     * @return Node whose children must be inspected, or {@code null} if none need to be
+     */
+    private Node visit(Node node) {
+      while (node != null && node.lastCleanChangeCount != node.modificationCount) {
+        Node next = cleanSelf(node);
+        if (next == node) {
+          node.lastCleanChangeCount = node.modificationCount;
+          return activeFrames.containsKey(node) ? null : node;
+        }
+        node = next;
+      }
+      return null;
+    }
+    
+    /**
+     * Records nodes which were modified after being cleaned with the active frames they are a 
+     * child of.  Those frames clean them again once the frame's own node is modified, which is 
+     * when restarting the inspection of that frame's children would have found them.
+     */
+    private void recordModifiedNodes() {
+      for (Node node : modifiedCleanNodes) {
+        if (node.lastCleanChangeCount == node.modificationCount || 
+            activeFrames.containsKey(node) || removedNodes.contains(node)) {
+          continue;
+        }
+        for (Node parent : node.parents) {
+          CleanFrame frame = activeFrames.get(parent);
+          if (frame != null && ! removedNodes.contains(parent)) {
+            if (frame.modifiedChildren == null) {
+              frame.modifiedChildren = new ArrayList<Node>(2);
+            }
+            frame.modifiedChildren.add(node);
+          }
+        }
+      }
+      modifiedCleanNodes.clear();
+    }
+    
+    private void requeuePendingNodes(CleanFrame frame) {
+      if (frame.modifiedChildren != null) {
+        for (int i = frame.modifiedChildren.size() - 1; i >= 0; i--) {
+          Node node = frame.modifiedChildren.get(i);
+          if (node.lastCleanChangeCount != node.modificationCount) {
+            stack.push(new CleanFrame(node, -1));
+          }
+        }
+        frame.modifiedChildren = null;
+      }
+    }
+    
+    /**
+     * Records that a node was modified during the clean.
+     * 
+     * @param node Node which was modified
+     */
+    private void modified(Node node) {
+      if (node.lastCleanChangeCount == node.modificationCount) {
+        modifiedCleanNodes.add(node);
+      }
+      node.modificationCount++;
+    }
+    
+    private int childCount(Node node) {
+      int[] removedCount = removedChildCounts.get(node);
+      return removedCount == null ? node.children.size() : node.children.size() - removedCount[0];
+    }
+    
+    private boolean hasOnlyJoinChildren(Node node) {
+      if (childCount(node) == 0 || nonJoinParents.contains(node)) {
+        return false;
+      }
+      for (Node n : node.children) {
+        if (! n.isJoinNode()) {
+          nonJoinParents.add(node);
+          return false;
+        }
+      }
+      return true;
+    }
+    
+    /**
+     * Adds a child to a node if it is not already a child.
+     * 
+     * @param parent Node to add the child to
+     * @param child Node to add as a child
+     */
+    private void addChild(Node parent, Node child) {
+      boolean attached;
+      if (parent.children.size() <= child.parents.size()) {
+        attached = parent.children.contains(child);
+      } else {
+        attached = child.parents.contains(parent);
+      }
+      if (! attached) {
+        child.parents.add(parent);
+        modified(child);
+        parent.children.add(child);
+        modified(parent);
+      }
+    }
+    
+    /**
+     * Records a child as removed from a node.  The child must currently be attached to the node, 
+     * and is left in the list until the list is compacted.
+     * 
+     * @param parent Node to remove the child from
+     * @param child Node being removed from the graph
+     */
+    private void removeChild(Node parent, Node child) {
+      removedNodes.add(child);
+      int[] removedCount = removedChildCounts.get(parent);
+      if (removedCount == null) {
+        removedChildCounts.put(parent, new int[] { 1 });
+      } else {
+        removedCount[0]++;
+      }
+      modified(parent);
+    }
+    
+    private void compactChildren(Node node) {
+      int[] removedCount = removedChildCounts.get(node);
+      if (removedCount != null && removedCount[0] > 0) {
+        ArrayList<Node> children = node.children;
+        int size = 0;
+        for (int i = 0; i < children.size(); i++) {
+          Node child = children.get(i);
+          if (! removedNodes.contains(child)) {
+            children.set(size++, child);
+          }
+        }
+        children.subList(size, children.size()).clear();
+        removedCount[0] = 0;
+      }
+    }
+    
+    /**
+     * Applies the join node collapsing rules to a node only.
+     * 
+     * @param node Node to clean
+     * @return {@code node} if children should be inspected, a parent node which must be inspected, 
+     *           or {@code null} if no further inspection is needed
+     */
+    private Node cleanSelf(Node node) {
+      if (! node.isJoinNode()) {
         // removes parent node if our node can function as join node
-        if (parents.size() == 1) {
-          Node parentNode = parents.get(0);
-          if (parentNode.isJoinNode() && parentNode.children.size() < 2) {
+        if (node.parents.size() == 1) {
+          Node parentNode = node.parents.get(0);
+          if (parentNode.isJoinNode() && childCount(parentNode) < 2) {
             for (Node n : parentNode.parents) {
-              n.removeChildNode(parentNode);
-              n.addChildNode(this);
+              removeChild(n, parentNode);
+              addChild(n, node);
+            }
+            removedNodes.add(parentNode);
+            if (node.parents.remove(parentNode)) {
+              modified(node);
             }
-            parentNode.deleteFromGraph();
           }
         }
       } else {
         // loops till consistent state, break at bottom
         while (true) {
           // removes tail node on graph that has no children and is a synthetic join node
-          if (children.isEmpty()) {
-            deleteFromGraph();
-            lastCleanChangeCount = modificationCount;
-            return;
-          } else if (parents.size() == 1) {
+          if (childCount(node) == 0) {
+            for (Node n : node.parents) {
+              removeChild(n, node);
+            }
+            removedNodes.add(node);
+            node.lastCleanChangeCount = node.modificationCount;
+            return null;
+          } else if (node.parents.size() == 1) {
             // remove this node and instead connect parent node to our children
-            Node parentNode = parents.get(0);
-            for (Node childNode : children) {
-              parentNode.addChildNode(childNode);
+            Node parentNode = node.parents.get(0);
+            for (Node childNode : node.children) {
+              if (! removedNodes.contains(childNode)) {
+                addChild(parentNode, childNode);
+              }
             }
-            parentNode.removeChildNode(this);
-            lastCleanChangeCount = modificationCount;
-            parentNode.doCleanGraph();
-            return;
+            removeChild(parentNode, node);
+            node.lastCleanChangeCount = node.modificationCount;
+            return parentNode;
           }
           // if all child nodes are join nodes, make this node function as the join node
           boolean modifiedNodes = false;
-          List<Node> originalNodes;
+          boolean allChildrenAreJoinNodes;
           int startChangeCount;
           do {
-            startChangeCount = modificationCount;
-            boolean allChildrenAreJoinNodes = ! children.isEmpty();
-            for (Node n : children) {
-              if (! n.isJoinNode()) {
-                allChildrenAreJoinNodes = false;
-                break;
-              }
-            }
+            startChangeCount = node.modificationCount;
+            allChildrenAreJoinNodes = hasOnlyJoinChildren(node);
             if (allChildrenAreJoinNodes) {
-              originalNodes = new ArrayList<Node>(children);
+              List<Node> originalNodes = new ArrayList<Node>(childCount(node));
+              for (Node childNode : node.children) {
+                if (! removedNodes.contains(childNode)) {
+                  originalNodes.add(childNode);
+                }
+              }
               for (Node childNode: originalNodes) {
                 if (childNode.parents.size() == 1) {
                   for (Node childsChild : childNode.children) {
-                    addChildNode(childsChild);
+                    if (! removedNodes.contains(childsChild)) {
+                      addChild(node, childsChild);
+                    }
                   }
-                  modifiedNodes = removeChildNode(childNode) || 
-                                    modifiedNodes || ! childNode.children.isEmpty();
+                  removeChild(node, childNode);
+                  modifiedNodes = true;
                 }
               }
-            } else {
-              originalNodes = null;
             }
-          } while (originalNodes != null && startChangeCount != modificationCount);  // loop through all join only nodes
-          if (modifiedNodes) {
-            continue; // restart check if children change
-          } else {
+          } while (allChildrenAreJoinNodes && startChangeCount != node.modificationCount);  // till consistent
+          if (! modifiedNodes) {
             break;
           }
+          // restart check if children change
         }
       }
-      lastCleanChangeCount = modificationCount;
-      
-      // traverse to all child nodes to allow them to inspect themselves
-      tillConsistent: while (true) {
-        int startChangeCount = modificationCount;
-        for (Node childNode: children) {
-          childNode.doCleanGraph();
-          if (startChangeCount != modificationCount) {
-            continue tillConsistent;
-          }
-        }
-        break;
-      }
-
-      lastCleanChangeCount = modificationCount;
-      
-      // cleanup memory if possible
-      children.trimToSize();
-      parents.trimToSize();
+      return node;
+    }
+  }
+  
+  /**
+   * <p>Stack frame for a node which is having its children cleaned, or with a negative child 
+   * index a node which was modified after it was cleaned and needs to be cleaned again.</p>
+   * 
+   * @author jent - Mike Jensen
+   */
+  private static class CleanFrame {
+    private final Node node;
+    private int startChangeCount;
+    private int childIndex;
+    private List<Node> modifiedChildren;  // children modified after they were cleaned, or null
+    
+    private CleanFrame(Node node, int childIndex) {
+      this.node = node;
+      this.startChangeCount = node.modificationCount;
+      this.childIndex = childIndex;
+      this.modifiedChildren = null;
     }
   }
 }
@@ -0,0 +1,100 @@
+package org.threadly.load.gui;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.threadly.util.ExceptionUtils;
+
+/**
+ * <p>Splits a range of indexes into chunks which are processed in parallel.  The invoking thread
+ * also processes chunks, and only waits for chunks which a helper has started.  This allows the
+ * work to complete even if the executor has no free threads, such as when invoked from a task
+ * which is already running on the same executor.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class ParallelChunks {
+  /**
+   * <p>Work to be done for a chunk of a range.  Chunks must be safe to process concurrently.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  protected interface ChunkTask {
+    /**
+     * Processes a chunk of the range.
+     *
+     * @param start First index of the chunk, inclusive
+     * @param end Last index of the chunk, exclusive
+     */
+    public void run(int start, int end);
+  }
+
+  private ParallelChunks() {
+    // only static functions
+  }
+
+  /**
+   * Processes the range {@code 0} to {@code length} in chunks.  If there is no executor, or the
+   * range is not at least two chunks long, the whole range is processed on the invoking thread.
+   * This will not return until every chunk has been processed, a failure from any chunk is
+   * thrown once all chunks complete.
+   *
+   * @param executor Executor to run helpers on, or {@code null}
+   * @param parallelism Maximum number of executor threads to use at once
+   * @param length Length of the range to process
+   * @param minChunkSize Minimum number of indexes in each chunk
+   * @param task Task to process each chunk with
+   */
+  public static void run(Executor executor, int parallelism, final int length, int minChunkSize,
+                         final ChunkTask task) {
+    final int chunkCount = length / minChunkSize;
+    if (executor == null || parallelism < 2 || chunkCount < 2) {
+      task.run(0, length);
+      return;
+    }
+    final int chunkSize = (length + chunkCount - 1) / chunkCount;
+    final AtomicInteger nextChunk = new AtomicInteger();
+    final CountDownLatch completedChunks = new CountDownLatch(chunkCount);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Runnable chunkRunner = new Runnable() {
+      @Override
+      public void run() {
+        int chunk;
+        while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+          try {
+            int start = chunk * chunkSize;
+            task.run(start, Math.min(length, start + chunkSize));
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          } finally {
+            completedChunks.countDown();
+          }
+        }
+      }
+    };
+    int helperCount = Math.min(parallelism, chunkCount) - 1;
+    for (int i = 0; i < helperCount; i++) {
+      executor.execute(chunkRunner);
+    }
+    // any chunks not picked up by a helper are run here, so only started chunks are waited on
+    chunkRunner.run();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        completedChunks.await();
+        break;
+      } catch (InterruptedException e) {
+        // helpers are still writing into the caller's arrays, so we must wait for them
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure.get() != null) {
+      throw ExceptionUtils.makeRuntime(failure.get());
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package org.threadly.load.gui;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+/**
+ * <p>Shifts points vertically towards the average position of their parents so the dots are
+ * better clustered.  Each sweep walks the graph breadth first from the grandchildren of the head
+ * node, moving every point in a frontier part of the way towards its parents.  Running more
+ * sweeps pulls points further towards their parents, which tightens groups in wide graphs.</p>
+ *
+ * <p>Within a frontier every move is computed from the positions at the start of that frontier,
+ * then applied.  This makes the result independent of the order nodes are visited in, so wide
+ * frontiers can have their moves computed in parallel chunks when an {@link Executor} is
+ * provided.  Frontiers are de-duplicated with marks indexed by node id, so building each
+ * frontier is linear in the number of edges.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class PointClusterer {
+  protected static final int DEFAULT_ITERATIONS = 1;
+  private static final int SQUEEZE_FACTOR = 2;  // smaller numbers result in tighter plot groups
+  private static final int PARALLEL_CHUNK_SIZE = 4096;  // min nodes per parallel chunk
+
+  private final CompactGraph graph;
+  private final GuiPoint[] points;
+  private final boolean[] keptPositions;
+  private final Executor executor;
+  private final int parallelism;
+  private final int[] frontierMarks;  // indexed by node id, frontier a node was last added to
+  private int frontierCount;  // total frontiers built, across all sweeps
+  private int[] frontier;
+  private int[] nextFrontier;
+  private int[] moves;  // indexed by position in frontier
+
+  /**
+   * Constructs a new clusterer which will run on the invoking thread only.
+   *
+   * @param graph Graph structure of the points
+   * @param points Points indexed by node id in {@code graph}
+   * @param keptPositions Points which should not be moved, or {@code null} to move any point
+   */
+  public PointClusterer(CompactGraph graph, GuiPoint[] points, boolean[] keptPositions) {
+    this(graph, points, keptPositions, null, 1);
+  }
+
+  /**
+   * Constructs a new clusterer.
+   *
+   * @param graph Graph structure of the points
+   * @param points Points indexed by node id in {@code graph}
+   * @param keptPositions Points which should not be moved, or {@code null} to move any point
+   * @param executor Executor to compute wide frontiers in parallel on, or {@code null}
+   * @param parallelism Maximum number of executor threads to use at once
+   */
+  public PointClusterer(CompactGraph graph, GuiPoint[] points, boolean[] keptPositions,
+                        Executor executor, int parallelism) {
+    this.graph = graph;
+    this.points = points;
+    this.keptPositions = keptPositions;
+    this.executor = executor;
+    this.parallelism = Math.max(1, parallelism);
+    frontierMarks = new int[graph.getNodeCount()];
+    frontierCount = 0;
+    frontier = new int[graph.getNodeCount()];
+    nextFrontier = new int[graph.getNodeCount()];
+    moves = new int[graph.getNodeCount()];
+  }
+
+  /**
+   * Moves the points towards their parents.
+   *
+   * @param iterations Number of sweeps over the graph, {@code 0} will leave points unchanged
+   */
+  public void cluster(int iterations) {
+    if (graph.getNodeCount() == 0 || iterations < 1) {
+      return;
+    }
+    // resolve lazily computed coordinates before any may be read concurrently
+    for (GuiPoint point : points) {
+      if (point != null) {
+        point.getY();
+      }
+    }
+    for (int i = 0; i < iterations; i++) {
+      sweep();
+    }
+  }
+
+  private void sweep() {
+    int count = 0;
+    // initial grandchildren are not de-duplicated, matching original Node based behavior
+    for (int i = graph.childOffsets[0]; i < graph.childOffsets[1]; i++) {
+      int n = graph.childTargets[i];
+      int grandchildCount = graph.getChildCount(n);
+      if (count + grandchildCount > frontier.length) {
+        frontier = Arrays.copyOf(frontier, Math.max(frontier.length * 2, count + grandchildCount));
+        moves = new int[frontier.length];
+      }
+      for (int c = graph.childOffsets[n]; c < graph.childOffsets[n + 1]; c++) {
+        frontier[count++] = graph.childTargets[c];
+      }
+    }
+    while (count > 0) {
+      frontierCount++;
+      ParallelChunks.run(executor, parallelism, count, PARALLEL_CHUNK_SIZE,
+                         new ParallelChunks.ChunkTask() {
+        @Override
+        public void run(int start, int end) {
+          computeMoves(start, end);
+        }
+      });
+      int nextCount = 0;
+      for (int i = 0; i < count; i++) {
+        int childNode = frontier[i];
+        GuiPoint childGp = points[childNode];
+        if (childGp == null) {
+          System.err.println("***** unknown node: " + graph.getName(childNode) + " *****");
+          continue;
+        }
+        childGp.position.y += moves[i];
+        for (int c = graph.childOffsets[childNode]; c < graph.childOffsets[childNode + 1]; c++) {
+          int n = graph.childTargets[c];
+          if (frontierMarks[n] != frontierCount) {
+            frontierMarks[n] = frontierCount;
+            nextFrontier[nextCount++] = n;
+          }
+        }
+      }
+      int[] swap = frontier;
+      frontier = nextFrontier;
+      nextFrontier = swap.length >= graph.getNodeCount() ? swap : new int[graph.getNodeCount()];
+      if (moves.length < frontier.length) {
+        moves = new int[frontier.length];
+      }
+      count = nextCount;
+    }
+  }
+
+  /**
+   * Computes the move for a range of the current frontier.  This only reads point positions, so
+   * ranges can be computed concurrently.
+   */
+  private void computeMoves(int start, int end) {
+    for (int i = start; i < end; i++) {
+      int childNode = frontier[i];
+      GuiPoint childGp = points[childNode];
+      moves[i] = 0;
+      if (childGp == null || (keptPositions != null && keptPositions[childNode])) {
+        continue;
+      }
+      int sampleSize = 0;
+      long totalParentPos = 0;
+      for (int p = graph.parentOffsets[childNode]; p < graph.parentOffsets[childNode + 1]; p++) {
+        GuiPoint gp = points[graph.parentTargets[p]];
+        if (gp != null) {
+          sampleSize++;
+          totalParentPos += gp.getY();
+        }
+      }
+      if (sampleSize > 0) {
+        moves[i] = (int)((totalParentPos / sampleSize) - childGp.getY()) / SQUEEZE_FACTOR;
+      }
+    }
+  }
+}
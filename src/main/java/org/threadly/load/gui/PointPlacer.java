@@ -0,0 +1,600 @@
+package org.threadly.load.gui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.widgets.Display;
+
+import org.threadly.load.gui.AmbushGraph.GraphDataSet;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+import org.threadly.util.Clock;
+
+/**
+ * <p>Places the points of a graph for each {@link AmbushGraph.LayoutMode}.  The positions come
+ * from {@link LayeredLayout}, {@link ForceDirectedLayout}, or a traversal onto a soft grid, and
+ * are turned into {@link GuiPoint}s which are set into a {@link GraphDataSet}.  The static
+ * methods do not require a display, so they can also be used for headless rendering.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class PointPlacer {
+  private static final int NEW_NODE_SPACING = 30;  // natural distance new nodes are placed from their parents
+  private static final int FORCE_PUBLISH_INTERVAL_MILLIS = 100;  // force iterations run between position updates
+
+  private final Executor executor;
+  private final int parallelism;
+  private final int colorCount;
+
+  /**
+   * Constructs a new placer.
+   *
+   * @param executor Executor to run parallel parts of the layouts on
+   * @param parallelism Maximum number of tasks to split the layouts into
+   * @param colorCount Number of point colors to pick from
+   */
+  public PointPlacer(Executor executor, int parallelism, int colorCount) {
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.colorCount = colorCount;
+  }
+
+  /**
+   * Places points at positions stored by the {@link PositionCache}, if any are stored for the
+   * graph.
+   *
+   * @param placement Layout the points are placed for
+   * @param newDataSet Empty data set to set the points into
+   * @param graph Snapshot of the graph to place
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @param positionCache Cache to load the positions from, or {@code null} if none is used
+   * @param positionKey Key the positions would be stored under
+   * @return The provided data set, or {@code null} if no positions are cached
+   */
+  public GraphDataSet placeCached(Placement placement, GraphDataSet newDataSet, CompactGraph graph,
+                                  List<Node> nodesById, int[] modificationCounts,
+                                  PositionCache positionCache, long positionKey) {
+    if (positionCache == null || graph.getNodeCount() == 0) {
+      return null;
+    }
+    placement.getProgress().setPhase("loading positions");
+    int[] colors = new int[graph.getNodeCount()];
+    int[] xPositions = new int[graph.getNodeCount()];
+    int[] yPositions = new int[graph.getNodeCount()];
+    if (! positionCache.load(positionKey, newDataSet.naturalBounds, colors, xPositions, yPositions)) {
+      return null;
+    }
+    // stored positions were already clustered, and may include points moved by the user
+    newDataSet.clusterIterations = 0;
+    Map<Node, GuiPoint> guiNodeMap = new HashMap<Node, GuiPoint>();
+    GuiPoint[] points = new GuiPoint[graph.getNodeCount()];
+    for (int id = 0; id < points.length; id++) {
+      points[id] = new GuiPoint(colors[id] % AmbushGraph.POINT_COLOR_COUNT, newDataSet.naturalBounds,
+                                new Point(xPositions[id], yPositions[id]));
+      guiNodeMap.put(nodesById.get(id), points[id]);
+    }
+    newDataSet.setData(guiNodeMap, graph, nodesById, points, modificationCounts, null);
+
+    return placement.isCancelled() ? null : newDataSet;
+  }
+
+  /**
+   * Places points by depth first traversal of the graph onto a soft grid.
+   *
+   * @param placement Layout the points are placed for
+   * @param newDataSet Empty data set to set the points into
+   * @param headNode Node the graph was produced from
+   * @param graph Snapshot of the graph reachable from the head node
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @param random Random to pick point colors from
+   * @return The provided data set, or {@code null} if the layout was superseded
+   */
+  public GraphDataSet placeSoftGrid(Placement placement, GraphDataSet newDataSet, Node headNode,
+                                    CompactGraph graph, List<Node> nodesById,
+                                    int[] modificationCounts, Random random) {
+    ProgressListener progress = placement.getProgress();
+    Map<Node, GuiPoint> buildingMap = new HashMap<Node, GuiPoint>();
+    Map<Integer, List<GuiPoint>> xRegionCountMap = new HashMap<Integer, List<GuiPoint>>();
+    progress.setPhase("traversing");
+    traverseNode(placement, newDataSet, headNode, buildingMap, 1, 1, new AtomicInteger(),
+                 xRegionCountMap, random);
+    if (placement.isCancelled()) {
+      return null;
+    }
+
+    // cleanup xRegionCountMap, make it so in each x region, the y region starts at 1, and there are no missing values
+    progress.setPhase("ordering");
+    Iterator<List<GuiPoint>> it = xRegionCountMap.values().iterator();
+    while (it.hasNext()) {
+      if (placement.isCancelled()) {
+        return null;
+      }
+      List<GuiPoint> xRegion = it.next();
+      // sort first to maintain vertical order
+      Collections.sort(xRegion, new Comparator<GuiPoint>() {
+        @Override
+        public int compare(GuiPoint o1, GuiPoint o2) {
+          return o1.yRegion - o2.yRegion;
+        }
+      });
+      Iterator<GuiPoint> points = xRegion.iterator();
+      int currentPoint = 0;
+      while (points.hasNext()) {
+        points.next().yRegion = ++currentPoint;
+      }
+    }
+
+    progress.setPhase("clustering");
+    GuiPoint[] points = new GuiPoint[graph.getNodeCount()];
+    for (int id = 0; id < points.length; id++) {
+      points[id] = buildingMap.get(nodesById.get(id));
+    }
+    newDataSet.setData(buildingMap, graph, nodesById, points, modificationCounts, null);
+
+    return placement.isCancelled() ? null : newDataSet;
+  }
+
+  private void traverseNode(Placement placement, GraphDataSet newDataSet,
+                            Node currentNode, Map<Node, GuiPoint> buildingMap,
+                            int xRegion, int yRegion, AtomicInteger maxYRegion,
+                            Map<Integer, List<GuiPoint>> xRegionCountMap, Random random) {
+    if (placement.isCancelled()) {
+      return;
+    }
+    if (maxYRegion.get() < yRegion) {
+      maxYRegion.set(yRegion);
+    }
+    GuiPoint currentPoint = buildingMap.get(currentNode);
+    if (currentPoint == null) {
+      currentPoint = new GuiPoint(makeRandomColor(random), newDataSet.naturalBounds,
+                                  xRegionCountMap, xRegion, yRegion);
+      buildingMap.put(currentNode, currentPoint);
+      add(currentPoint, xRegionCountMap);
+      placement.getProgress().nodeAdded();
+      int childNodeRegion = maxYRegion.get();
+      Iterator<Node> it = currentNode.getChildNodes().iterator();
+      while (it.hasNext()) {
+        traverseNode(placement, newDataSet, it.next(), buildingMap,
+                     xRegion + 1, ++childNodeRegion, maxYRegion, xRegionCountMap, random);
+      }
+    } else {
+      if (xRegion > currentPoint.xRegion) {
+        Set<Node> inspectedNodes = new HashSet<Node>();
+        inspectedNodes.add(currentNode);
+        shiftLeft(currentNode, currentPoint, buildingMap,
+                  xRegion - currentPoint.xRegion, xRegionCountMap, inspectedNodes);
+      }
+    }
+  }
+
+  private static void add(GuiPoint point, Map<Integer, List<GuiPoint>> map) {
+    List<GuiPoint> currList = map.get(point.xRegion);
+    if (currList == null) {
+      currList = new LinkedList<GuiPoint>();
+      map.put(point.xRegion, currList);
+    }
+    if (! currList.contains(point)) {
+      currList.add(point);
+    }
+  }
+
+  private static void remove(GuiPoint point, Map<Integer, List<GuiPoint>> map) {
+    List<GuiPoint> currList = map.get(point.xRegion);
+    if (currList != null) {
+      currList.remove(point);
+    }
+  }
+
+  private static void shiftLeft(Node currNode, GuiPoint point,
+                                Map<Node, GuiPoint> buildingMap, int shiftAmount,
+                                Map<Integer, List<GuiPoint>> xRegionCountMap, Set<Node> shiftedNodes) {
+    remove(point, xRegionCountMap);
+    point.xRegion += shiftAmount;
+    add(point, xRegionCountMap);
+    Iterator<Node> it = currNode.getChildNodes().iterator();
+    while (it.hasNext()) {
+      Node child = it.next();
+      if (shiftedNodes.contains(child)) {
+        continue;
+      } else {
+        shiftedNodes.add(child);
+      }
+      GuiPoint childPoint = buildingMap.get(child);
+      if (childPoint != null) {
+        shiftLeft(child, childPoint, buildingMap, shiftAmount, xRegionCountMap, shiftedNodes);
+      }
+    }
+  }
+
+  /**
+   * Places points by assigning each node a layer with {@link LayeredLayout}.  Layers become the
+   * x regions, and the order within each layer becomes the y regions.
+   *
+   * @param placement Layout the points are placed for
+   * @param newDataSet Empty data set to set the points into
+   * @param graph Snapshot of the graph to place
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @return The provided data set, or {@code null} if the layout was superseded
+   */
+  public GraphDataSet placeLayered(Placement placement, GraphDataSet newDataSet, CompactGraph graph,
+                                   List<Node> nodesById, int[] modificationCounts) {
+    LayeredLayout layout = makeOrderedLayout(placement, graph);
+    if (layout == null) {
+      return null;
+    }
+
+    placement.getProgress().setPhase("placing");
+    setLayeredData(newDataSet, graph, nodesById, modificationCounts, layout, placement.getProgress());
+
+    return placement.isCancelled() ? null : newDataSet;
+  }
+
+  /**
+   * Places points at the starting positions of a {@link ForceDirectedLayout}.  The layout is
+   * returned so that it can continue converging once the data set is displayed, for example
+   * with a {@link ForceLayoutTask}.
+   *
+   * @param placement Layout the points are placed for
+   * @param newDataSet Empty data set to set the points into
+   * @param graph Snapshot of the graph to place
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @param random Random to pick point colors from
+   * @return The layout the points were placed from, or {@code null} if the layout was superseded
+   */
+  public ForceDirectedLayout placeForceDirected(Placement placement, GraphDataSet newDataSet,
+                                                CompactGraph graph, List<Node> nodesById,
+                                                int[] modificationCounts, Random random) {
+    // forces decide the positions, clustering would only be undone by them
+    newDataSet.clusterIterations = 0;
+    LayeredLayout layout = makeOrderedLayout(placement, graph);
+    if (layout == null) {
+      return null;
+    }
+
+    placement.getProgress().setPhase("placing");
+    ForceDirectedLayout forceLayout = new ForceDirectedLayout(graph, layout, executor, parallelism);
+    setForceDirectedData(newDataSet, graph, nodesById, modificationCounts, forceLayout,
+                         random, placement.getProgress());
+
+    return placement.isCancelled() ? null : forceLayout;
+  }
+
+  private LayeredLayout makeOrderedLayout(Placement placement, CompactGraph graph) {
+    placement.getProgress().setPhase("layering");
+    LayeredLayout layout = new LayeredLayout(graph, executor, parallelism);
+    if (placement.isCancelled()) {
+      return null;
+    }
+
+    placement.getProgress().setPhase("ordering");
+    layout.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+    return placement.isCancelled() ? null : layout;
+  }
+
+  /**
+   * Creates points positioned by an ordered {@link LayeredLayout} and sets them into the data set.
+   *
+   * @param dataSet Data set to set the points into
+   * @param graph Graph which was laid out
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @param layout Layout of the graph
+   */
+  protected static void setLayeredData(GraphDataSet dataSet, CompactGraph graph, List<Node> nodesById,
+                                       int[] modificationCounts, LayeredLayout layout) {
+    setLayeredData(dataSet, graph, nodesById, modificationCounts, layout, null);
+  }
+
+  /**
+   * Creates points positioned by an ordered {@link LayeredLayout} and sets them into the data set,
+   * reporting each placed node to the provided listener.
+   *
+   * @param dataSet Data set to set the points into
+   * @param graph Graph which was laid out
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @param layout Layout of the graph
+   * @param progress Listener to report progress to, or {@code null}
+   */
+  protected static void setLayeredData(GraphDataSet dataSet, CompactGraph graph, List<Node> nodesById,
+                                       int[] modificationCounts, LayeredLayout layout,
+                                       ProgressListener progress) {
+    // soft grid placement reads the region counts from this map
+    Map<Integer, List<GuiPoint>> xRegionCountMap = new HashMap<Integer, List<GuiPoint>>();
+    for (int l = 1; l <= layout.getLayerCount(); l++) {
+      xRegionCountMap.put(l, new ArrayList<GuiPoint>(layout.getLayerSize(l)));
+    }
+    Map<Node, GuiPoint> guiNodeMap = new HashMap<Node, GuiPoint>();
+    GuiPoint[] points = new GuiPoint[graph.getNodeCount()];
+    Random random = new Random(graph.getStructureHash());
+    for (int id = 0; id < points.length; id++) {
+      GuiPoint point = new GuiPoint(random.nextInt(AmbushGraph.POINT_COLOR_COUNT), dataSet.naturalBounds,
+                                    xRegionCountMap, layout.getLayer(id), layout.getPosition(id));
+      xRegionCountMap.get(point.xRegion).add(point);
+      guiNodeMap.put(nodesById.get(id), point);
+      points[id] = point;
+      if (progress != null) {
+        progress.nodeAdded();
+      }
+    }
+    if (progress != null) {
+      progress.setPhase("clustering");
+    }
+    dataSet.setData(guiNodeMap, graph, nodesById, points, modificationCounts, null);
+  }
+
+  /**
+   * Creates points at the current positions of a {@link ForceDirectedLayout} and sets them into
+   * the data set.
+   *
+   * @param dataSet Data set to set the points into
+   * @param graph Graph which was laid out
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @param forceLayout Layout of the graph
+   * @param random Random to pick point colors from
+   * @param progress Listener to report progress to, or {@code null}
+   */
+  protected static void setForceDirectedData(GraphDataSet dataSet, CompactGraph graph,
+                                             List<Node> nodesById, int[] modificationCounts,
+                                             ForceDirectedLayout forceLayout, Random random,
+                                             ProgressListener progress) {
+    int[] xPositions = new int[graph.getNodeCount()];
+    int[] yPositions = new int[graph.getNodeCount()];
+    forceLayout.getPositions(dataSet.naturalBounds.x, dataSet.naturalBounds.y,
+                             AmbushGraph.DISTANCE_FROM_EDGE, xPositions, yPositions);
+    Map<Node, GuiPoint> guiNodeMap = new HashMap<Node, GuiPoint>();
+    GuiPoint[] points = new GuiPoint[graph.getNodeCount()];
+    for (int id = 0; id < points.length; id++) {
+      points[id] = new GuiPoint(random.nextInt(AmbushGraph.POINT_COLOR_COUNT), dataSet.naturalBounds,
+                                new Point(xPositions[id], yPositions[id]));
+      guiNodeMap.put(nodesById.get(id), points[id]);
+      if (progress != null) {
+        progress.nodeAdded();
+      }
+    }
+    dataSet.setData(guiNodeMap, graph, nodesById, points, modificationCounts, null);
+  }
+
+  /**
+   * Places points keeping the color and position of every node which is already displayed.
+   * Nodes which are new are placed to the right of their parents, with siblings fanned out
+   * vertically around them.
+   *
+   * @param placement Layout the points are placed for
+   * @param newDataSet Empty data set to set the points into
+   * @param graph Snapshot of the graph to place
+   * @param nodesById Source nodes for the graph, in id order
+   * @param modificationCounts Modification counts of the source nodes, indexed by id
+   * @param previousPoints Currently displayed points, indexed by id, {@code null} for new nodes
+   * @param random Random to pick point colors from
+   * @return The provided data set, or {@code null} if the layout was superseded
+   */
+  public GraphDataSet placeIncrementally(Placement placement, GraphDataSet newDataSet,
+                                         CompactGraph graph, List<Node> nodesById,
+                                         int[] modificationCounts, GuiPoint[] previousPoints,
+                                         Random random) {
+    ProgressListener progress = placement.getProgress();
+    progress.setPhase("updating");
+    Map<Node, GuiPoint> guiNodeMap = new HashMap<Node, GuiPoint>();
+    GuiPoint[] points = new GuiPoint[graph.getNodeCount()];
+    boolean[] keptPositions = new boolean[points.length];
+    int[] newChildCounts = new int[points.length];
+    // ids are breadth first, so a new node always has at least one parent placed before it
+    for (int id = 0; id < points.length; id++) {
+      GuiPoint previousPoint = previousPoints[id];
+      GuiPoint point;
+      if (previousPoint != null) {
+        // displayed points belong to the current index, so copy rather than share them
+        point = new GuiPoint(previousPoint.colorIndex, newDataSet.naturalBounds,
+                             new Point(previousPoint.getX(), previousPoint.getY()));
+        keptPositions[id] = true;
+      } else {
+        point = new GuiPoint(makeRandomColor(random), newDataSet.naturalBounds,
+                             placeNearParents(graph, points, newDataSet.naturalBounds, id, newChildCounts));
+        progress.nodeAdded();
+      }
+      guiNodeMap.put(nodesById.get(id), point);
+      points[id] = point;
+    }
+    if (placement.isCancelled()) {
+      return null;
+    }
+
+    progress.setPhase("clustering");
+    newDataSet.setData(guiNodeMap, graph, nodesById, points, modificationCounts, keptPositions);
+
+    return placement.isCancelled() ? null : newDataSet;
+  }
+
+  private static Point placeNearParents(CompactGraph graph, GuiPoint[] points, Point naturalBounds,
+                                        int id, int[] newChildCounts) {
+    int maxParentX = AmbushGraph.DISTANCE_FROM_EDGE - NEW_NODE_SPACING;
+    long totalParentY = 0;
+    int placedParentCount = 0;
+    int firstParent = -1;
+    for (int p = graph.parentOffsets[id]; p < graph.parentOffsets[id + 1]; p++) {
+      GuiPoint parent = points[graph.parentTargets[p]];
+      if (parent != null) {
+        maxParentX = Math.max(maxParentX, parent.getX());
+        totalParentY += parent.getY();
+        placedParentCount++;
+        if (firstParent < 0) {
+          firstParent = graph.parentTargets[p];
+        }
+      }
+    }
+    int y;
+    if (placedParentCount == 0) {
+      y = naturalBounds.y / 2;
+    } else {
+      y = (int)(totalParentY / placedParentCount);
+      // alternate new siblings above and below their parent
+      int sibling = newChildCounts[firstParent]++;
+      y += (sibling % 2 == 0 ? 1 : -1) * ((sibling + 1) / 2) * NEW_NODE_SPACING;
+    }
+    int edge = AmbushGraph.DISTANCE_FROM_EDGE;
+    int x = Math.max(edge, Math.min(naturalBounds.x - edge, maxParentX + NEW_NODE_SPACING));
+    y = Math.max(edge, Math.min(naturalBounds.y - edge, y));
+    return new Point(x, y);
+  }
+
+  /**
+   * Picks a semi-random (weighted on the dark side) color from the palette.
+   *
+   * @param random Source of randomness for the layout
+   * @return Index of a semi-random darkish color in the {@link ColorPalette}
+   */
+  private int makeRandomColor(Random random) {
+    return random.nextInt(colorCount);
+  }
+
+  /**
+   * <p>Receives the progress of a layout as it places points.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  protected interface ProgressListener {
+    /**
+     * Invoked when the layout moves on to a new phase.
+     *
+     * @param phase Name of the phase
+     */
+    public void setPhase(String phase);
+
+    /**
+     * Invoked each time a point has been placed.
+     */
+    public void nodeAdded();
+  }
+
+  /**
+   * <p>Layout which points are being placed for.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  protected interface Placement {
+    /**
+     * Gets the listener progress of the placement should be reported to.
+     *
+     * @return Listener to report progress to
+     */
+    public ProgressListener getProgress();
+
+    /**
+     * Checks if a newer layout has been requested.
+     *
+     * @return {@code true} if placing should be abandoned
+     */
+    public boolean isCancelled();
+  }
+
+  /**
+   * <p>Task which continues a {@link ForceDirectedLayout} after its data set is displayed.  Each
+   * run iterates on the executor for a limited time, then hands the positions to the display
+   * thread.  The next run is only scheduled once those positions are applied, so a slow display
+   * never has more than one update queued.  Iterating stops once the layout converges, the task
+   * is stopped, or the user moves a point.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  protected abstract static class ForceLayoutTask implements Runnable {
+    private final Executor executor;
+    private final Display display;
+    private final GraphDataSet dataSet;
+    private final ForceDirectedLayout forceLayout;
+    private int publishedLayoutVersion;  // only accessed on the display thread
+
+    /**
+     * Constructs a new task, which is started by executing it.
+     *
+     * @param executor Executor to iterate the layout on
+     * @param display Display the data set is shown on
+     * @param dataSet Displayed data set to update the points of
+     * @param forceLayout Layout the data set was placed from
+     */
+    public ForceLayoutTask(Executor executor, Display display,
+                           GraphDataSet dataSet, ForceDirectedLayout forceLayout) {
+      this.executor = executor;
+      this.display = display;
+      this.dataSet = dataSet;
+      this.forceLayout = forceLayout;
+      publishedLayoutVersion = dataSet.getLayoutVersion();
+    }
+
+    /**
+     * Checks if the layout has been replaced, or the data set is no longer displayed.  This may be
+     * invoked on either the executor or the display thread.
+     *
+     * @return {@code true} if iterating should stop
+     */
+    protected abstract boolean isStopped();
+
+    /**
+     * Invoked on the display thread once new positions have been set into the data set.
+     *
+     * @param converged {@code true} if the layout has converged and no further updates will follow
+     */
+    protected abstract void positionsPublished(boolean converged);
+
+    @Override
+    public void run() {
+      if (isStopped()) {
+        return;
+      }
+      long endTime = Clock.accurateForwardProgressingMillis() + FORCE_PUBLISH_INTERVAL_MILLIS;
+      do {
+        forceLayout.iterate();
+      } while (! forceLayout.isConverged() && ! isStopped() &&
+               Clock.accurateForwardProgressingMillis() < endTime);
+      final int[] xPositions = new int[dataSet.points.length];
+      final int[] yPositions = new int[dataSet.points.length];
+      forceLayout.getPositions(dataSet.naturalBounds.x, dataSet.naturalBounds.y,
+                               AmbushGraph.DISTANCE_FROM_EDGE, xPositions, yPositions);
+      if (! display.isDisposed()) {
+        display.asyncExec(new Runnable() {
+          @Override
+          public void run() {
+            publish(xPositions, yPositions);
+          }
+        });
+      }
+    }
+
+    private void publish(int[] xPositions, int[] yPositions) {
+      if (isStopped() || dataSet.isMovingPoint() ||
+          dataSet.getLayoutVersion() != publishedLayoutVersion) {
+        // replaced by a newer layout, or the user has moved points which should not be overridden
+        return;
+      }
+      GuiPoint[] points = dataSet.points;
+      for (int id = 0; id < points.length; id++) {
+        points[id].position.x = xPositions[id];
+        points[id].position.y = yPositions[id];
+      }
+      dataSet.pointIndex = new GuiPointIndex(dataSet.naturalBounds, dataSet.graph, points);
+      dataSet.layoutChanged();
+      publishedLayoutVersion = dataSet.getLayoutVersion();
+      boolean converged = forceLayout.isConverged();
+      positionsPublished(converged);
+      if (! converged) {
+        executor.execute(this);
+      }
+    }
+  }
+}
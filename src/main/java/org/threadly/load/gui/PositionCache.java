@@ -0,0 +1,198 @@
+package org.threadly.load.gui;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.swt.graphics.Point;
+
+import org.threadly.util.ArgumentVerifier;
+
+/**
+ * <p>Stores the point positions and colors of a displayed graph on disk, so that reopening the
+ * same graph can show the same arrangement without laying it out again.  This includes any
+ * positions the user has adjusted.  Entries are keyed by a hash of the graph, usually
+ * {@link CompactGraph#getStructureHash()} combined with how the graph was laid out.</p>
+ *
+ * <p>Entries are small versioned binary files next to the {@link GraphCache} entries.  Colors
+ * are stored as one byte per node, followed by the x and y positions.  Positions are stored with
+ * the natural bounds they were laid out in, and are scaled if loaded into different bounds.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public class PositionCache {
+  protected static final int MAGIC = 0x414D4250;  // "AMBP"
+  protected static final int FORMAT_VERSION = 1;
+  private static final int HEADER_INTS = 5;
+
+  protected final File directory;
+
+  /**
+   * Constructs a new cache in the same directory as a default {@link GraphCache}.
+   */
+  public PositionCache() {
+    this(GraphCache.getDefaultDirectory());
+  }
+
+  /**
+   * Constructs a new cache which stores positions in the provided directory.  The directory will
+   * be created when the first positions are stored.
+   *
+   * @param directory Directory to store positions in
+   */
+  public PositionCache(File directory) {
+    ArgumentVerifier.assertNotNull(directory, "directory");
+
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the file positions for the given key would be stored in.
+   *
+   * @param key Key of the graph
+   * @return File for the cache entry
+   */
+  protected File getCacheFile(long key) {
+    return new File(directory, String.format("%016x.positions", key));
+  }
+
+  /**
+   * Loads the positions stored for a key.  If nothing usable is stored, or it was stored for a
+   * different number of nodes, the provided arrays are not modified.
+   *
+   * @param key Key of the graph
+   * @param naturalBounds Bounds to scale the positions into
+   * @param colors Array to store color indexes into, indexed by node id
+   * @param xPositions Array to store x positions into, indexed by node id
+   * @param yPositions Array to store y positions into, indexed by node id
+   * @return {@code true} if positions were loaded
+   */
+  public boolean load(long key, Point naturalBounds,
+                      int[] colors, int[] xPositions, int[] yPositions) {
+    File file = getCacheFile(key);
+    if (! file.isFile()) {
+      return false;
+    }
+    try {
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      try {
+        return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    naturalBounds, colors, xPositions, yPositions);
+      } finally {
+        channel.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Ignoring unreadable cached positions " + file + ": " + e);
+      return false;
+    }
+  }
+
+  /**
+   * Reads positions from a buffer holding data written by
+   * {@link #store(long, Point, int[], int[], int[])}.
+   *
+   * @param buffer Buffer positioned at the start of the positions
+   * @param naturalBounds Bounds to scale the positions into
+   * @param colors Array to store color indexes into, indexed by node id
+   * @param xPositions Array to store x positions into, indexed by node id
+   * @param yPositions Array to store y positions into, indexed by node id
+   * @return {@code true} if positions were read, {@code false} if stored for a different node count
+   * @throws IOException Thrown if the buffer does not hold valid positions
+   */
+  protected static boolean read(ByteBuffer buffer, Point naturalBounds,
+                                int[] colors, int[] xPositions, int[] yPositions) throws IOException {
+    try {
+      if (buffer.remaining() < HEADER_INTS * 4 || buffer.getInt() != MAGIC) {
+        throw new IOException("Not a positions file");
+      }
+      int version = buffer.getInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported positions version: " + version);
+      }
+      int nodeCount = buffer.getInt();
+      int width = buffer.getInt();
+      int height = buffer.getInt();
+      if (nodeCount != colors.length) {
+        return false;
+      } else if (width < 1 || height < 1 || nodeCount * 9L > buffer.remaining()) {
+        throw new IOException("Invalid positions sizes");
+      }
+      int[] storedX = new int[nodeCount];
+      int[] storedY = new int[nodeCount];
+      byte[] storedColors = new byte[nodeCount];
+      buffer.get(storedColors);
+      IntBuffer ints = buffer.asIntBuffer();
+      ints.get(storedX);
+      ints.get(storedY);
+      double xScale = naturalBounds.x / (double)width;
+      double yScale = naturalBounds.y / (double)height;
+      for (int id = 0; id < nodeCount; id++) {
+        colors[id] = storedColors[id] & 0xFF;
+        xPositions[id] = (int)(storedX[id] * xScale);
+        yPositions[id] = (int)(storedY[id] * yScale);
+      }
+      return true;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated positions", e);
+    }
+  }
+
+  /**
+   * Stores positions for a key, replacing any existing entry.
+   *
+   * @param key Key of the graph
+   * @param naturalBounds Bounds the positions were laid out in
+   * @param colors Color index of each node, indexed by node id, must be less than {@code 256}
+   * @param xPositions X position of each node, indexed by node id
+   * @param yPositions Y position of each node, indexed by node id
+   * @throws IOException Thrown if the positions could not be written
+   */
+  public void store(long key, Point naturalBounds,
+                    int[] colors, int[] xPositions, int[] yPositions) throws IOException {
+    if (! directory.isDirectory() && ! directory.mkdirs() && ! directory.isDirectory()) {
+      throw new IOException("Could not create directory: " + directory);
+    }
+    File file = getCacheFile(key);
+    // write to a temp file first so readers never see partial positions
+    File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(colors.length);
+        out.writeInt(naturalBounds.x);
+        out.writeInt(naturalBounds.y);
+        for (int color : colors) {
+          out.writeByte(color);
+        }
+        for (int x : xPositions) {
+          out.writeInt(x);
+        }
+        for (int y : yPositions) {
+          out.writeInt(y);
+        }
+      } finally {
+        out.close();
+      }
+      try {
+        Files.move(tempFile.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      tempFile.delete();
+    }
+  }
+}
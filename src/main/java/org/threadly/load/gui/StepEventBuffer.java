@@ -0,0 +1,127 @@
+package org.threadly.load.gui;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Bounded, lock-free, multi-producer single-consumer ring buffer of step state changes.  Any
+ * number of threads may {@link #offer(Node, byte)} events, while a single thread (the display
+ * thread) drains them with {@link #drain(EventHandler, int)}.</p>
+ *
+ * <p>Producers never block or allocate.  If the consumer falls behind and the buffer is full, the
+ * event is dropped and counted, so that a load test is never slowed down by the gui watching
+ * it.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+class StepEventBuffer {
+  private final int mask;
+  private final Node[] nodes;
+  private final byte[] states;
+  // slot is readable once its sequence is one past the position which was written to it
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail;  // next position producers will claim
+  private final AtomicLong head;  // next position the consumer will read
+  private final AtomicLong droppedCount;
+
+  /**
+   * Constructs a new buffer.
+   *
+   * @param capacity Maximum events to buffer, will be rounded up to a power of two
+   */
+  public StepEventBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    mask = size - 1;
+    nodes = new Node[size];
+    states = new byte[size];
+    sequences = new AtomicLongArray(size);
+    tail = new AtomicLong();
+    head = new AtomicLong();
+    droppedCount = new AtomicLong();
+  }
+
+  /**
+   * Adds an event to the buffer.  This is safe to invoke from any thread.
+   *
+   * @param node Node the event is for
+   * @param state New state of the node
+   * @return {@code true} if the event was added, {@code false} if it was dropped due to a full buffer
+   */
+  public boolean offer(Node node, byte state) {
+    long position;
+    do {
+      position = tail.get();
+      if (position - head.get() > mask) {
+        droppedCount.incrementAndGet();
+        return false;
+      }
+    } while (! tail.compareAndSet(position, position + 1));
+    int slot = (int)position & mask;
+    nodes[slot] = node;
+    states[slot] = state;
+    // ordered write publishes the slot contents above
+    sequences.lazySet(slot, position + 1);
+    return true;
+  }
+
+  /**
+   * Handles events from the buffer.  Must only be invoked by a single thread at a time.
+   *
+   * @param handler Handler to provide events to
+   * @param maxEvents Maximum number of events to handle in this call
+   * @return Number of events handled
+   */
+  public int drain(EventHandler handler, int maxEvents) {
+    long position = head.get();
+    int handled = 0;
+    while (handled < maxEvents) {
+      int slot = (int)position & mask;
+      if (sequences.get(slot) != position + 1) {
+        // empty, or producer has claimed the slot but not finished writing it
+        break;
+      }
+      Node node = nodes[slot];
+      byte state = states[slot];
+      nodes[slot] = null;
+      position++;
+      handled++;
+      // slot may be reused by producers once head passes it
+      head.lazySet(position);
+      handler.handleEvent(node, state);
+    }
+    return handled;
+  }
+
+  /**
+   * Checks if there are events which have been claimed by producers but not yet drained.
+   *
+   * @return {@code true} if the buffer has events in it
+   */
+  public boolean hasEvents() {
+    return tail.get() != head.get();
+  }
+
+  /**
+   * Returns the number of events which have been dropped because the buffer was full.
+   *
+   * @return Dropped event count
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * <p>Receives events drained from a {@link StepEventBuffer}.</p>
+   *
+   * @author jent - Mike Jensen
+   */
+  public interface EventHandler {
+    /**
+     * Invoked for each event drained.
+     *
+     * @param node Node the event is for
+     * @param state New state of the node
+     */
+    public void handleEvent(Node node, byte state);
+  }
+}
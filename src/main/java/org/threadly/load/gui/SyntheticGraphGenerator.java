@@ -0,0 +1,231 @@
+package org.threadly.load.gui;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.threadly.load.ExecutableScript.ExecutionItem;
+import org.threadly.load.ExecutableScript.ExecutionItem.ChildItems;
+import org.threadly.util.ArgumentVerifier;
+
+/**
+ * <p>Produces synthetic scripts of a controllable size and shape, so that production sized graphs
+ * can be reproduced without the scripts that produced them.  Scripts can be produced either as
+ * {@link ChildItems} to be built by {@link org.threadly.load.ScriptGraphBuilder}, or directly as
+ * an uncleaned {@link Node} graph.</p>
+ *
+ * <p>A script is made of nested groups.  Each group has {@code fanOut} branches, and each branch
+ * is {@code stepsPerBranch} sequential steps followed by a nested group, until {@code depth}
+ * groups have been nested.  With a probability of {@code joinDensity} a group runs its branches
+ * in parallel (forking, and joining once all branches complete), otherwise the branches run
+ * sequentially.  Generation is deterministic for a given seed.</p>
+ *
+ * <p>Script items are dynamic proxies, and only support the methods needed to build a graph.</p>
+ *
+ * @author jent - Mike Jensen
+ */
+public class SyntheticGraphGenerator {
+  private static final char[] NAME_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+  protected final int depth;
+  protected final int fanOut;
+  protected final int stepsPerBranch;
+  protected final double joinDensity;
+  protected final int nameLength;
+  protected final long seed;
+
+  /**
+   * Constructs a new generator.
+   *
+   * @param depth Number of nested groups, at least {@code 1}
+   * @param fanOut Number of branches in each group, at least {@code 1}
+   * @param stepsPerBranch Number of sequential steps at the start of each branch
+   * @param joinDensity Probability from {@code 0} to {@code 1} that a group runs in parallel
+   * @param nameLength Minimum length of step names
+   * @param seed Seed so that the same script is produced each time
+   */
+  public SyntheticGraphGenerator(int depth, int fanOut, int stepsPerBranch,
+                                 double joinDensity, int nameLength, long seed) {
+    ArgumentVerifier.assertGreaterThanZero(depth, "depth");
+    ArgumentVerifier.assertGreaterThanZero(fanOut, "fanOut");
+    ArgumentVerifier.assertNotNegative(stepsPerBranch, "stepsPerBranch");
+    ArgumentVerifier.assertNotNegative(nameLength, "nameLength");
+    if (joinDensity < 0 || joinDensity > 1) {
+      throw new IllegalArgumentException("joinDensity must be between 0 and 1: " + joinDensity);
+    }
+
+    this.depth = depth;
+    this.fanOut = fanOut;
+    this.stepsPerBranch = stepsPerBranch;
+    this.joinDensity = joinDensity;
+    this.nameLength = nameLength;
+    this.seed = seed;
+  }
+
+  /**
+   * Returns the number of steps (leaf items) a script from this generator will have.
+   *
+   * @return Number of steps
+   */
+  public long getStepCount() {
+    long groups = 0;
+    long groupsAtLevel = 1;
+    for (int level = 0; level < depth; level++) {
+      groups += groupsAtLevel;
+      groupsAtLevel *= fanOut;
+    }
+    return groups * fanOut * stepsPerBranch;
+  }
+
+  private String makeName(Random random, int index) {
+    StringBuilder sb = new StringBuilder(Math.max(nameLength, 16));
+    sb.append("step").append(index);
+    if (sb.length() < nameLength) {
+      sb.append('-');
+      while (sb.length() < nameLength) {
+        sb.append(NAME_CHARS[random.nextInt(NAME_CHARS.length)]);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Produces the script as items which can be built with
+   * {@link org.threadly.load.ScriptGraphBuilder#makeGraph(ChildItems)}.
+   *
+   * @return Sequential items to start building from
+   */
+  public ChildItems makeChildItems() {
+    Random random = new Random(seed);
+    int[] nextIndex = new int[1];
+    return makeChildItems(true, Collections.singletonList(makeGroupItem(random, nextIndex, 1)));
+  }
+
+  private ExecutionItem makeGroupItem(Random random, int[] nextIndex, int level) {
+    boolean parallel = random.nextDouble() < joinDensity;
+    List<ExecutionItem> branches = new ArrayList<ExecutionItem>(fanOut);
+    for (int b = 0; b < fanOut; b++) {
+      List<ExecutionItem> sequence = new ArrayList<ExecutionItem>(stepsPerBranch + 1);
+      for (int s = 0; s < stepsPerBranch; s++) {
+        sequence.add(makeItem(makeName(random, nextIndex[0]++), null));
+      }
+      if (level < depth) {
+        sequence.add(makeGroupItem(random, nextIndex, level + 1));
+      }
+      branches.add(makeItem("branch", makeChildItems(true, sequence)));
+    }
+    return makeItem("group", makeChildItems(! parallel, branches));
+  }
+
+  /**
+   * Produces the script directly as a {@link Node} graph, in the form
+   * {@link org.threadly.load.ScriptGraphBuilder} would produce before cleaning.  Every group has a
+   * join node before and after it, even if it runs sequentially, so that
+   * {@link Node#cleanGraph()} has work to do.
+   *
+   * @return Head node of the graph
+   */
+  public Node makeNodeGraph() {
+    Random random = new Random(seed);
+    Node head = new Node("start");
+    Node end = addGroup(head, random, new int[1], 1);
+    end.addChildNode(new Node());
+    return head;
+  }
+
+  private Node addGroup(Node previous, Random random, int[] nextIndex, int level) {
+    boolean parallel = random.nextDouble() < joinDensity;
+    Node start = new Node();
+    previous.addChildNode(start);
+    Node join = new Node();
+    Node current = start;
+    for (int b = 0; b < fanOut; b++) {
+      Node branch = parallel ? start : current;
+      for (int s = 0; s < stepsPerBranch; s++) {
+        Node step = new Node(makeName(random, nextIndex[0]++));
+        branch.addChildNode(step);
+        branch = step;
+      }
+      if (level < depth) {
+        branch = addGroup(branch, random, nextIndex, level + 1);
+      }
+      if (parallel) {
+        branch.addChildNode(join);
+      } else {
+        current = branch;
+      }
+    }
+    if (! parallel) {
+      current.addChildNode(join);
+    }
+    return join;
+  }
+
+  /**
+   * Makes a script item.  The item is a dynamic proxy which only supports
+   * {@link ExecutionItem#getChildItems()}, {@link Object#toString()} (returning the name),
+   * {@link Object#equals(Object)} and {@link Object#hashCode()}.
+   *
+   * @param name Name of the item
+   * @param childItems Children of the item, or {@code null} for a step without children
+   * @return A new item
+   */
+  public static ExecutionItem makeItem(final String name, ChildItems childItems) {
+    final ChildItems children = childItems == null ?
+      makeChildItems(true, Collections.<ExecutionItem>emptyList()) : childItems;
+    return (ExecutionItem)Proxy.newProxyInstance(SyntheticGraphGenerator.class.getClassLoader(),
+                                                 new Class<?>[] { ExecutionItem.class },
+                                                 new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("getChildItems")) {
+          return children;
+        }
+        return invokeObjectMethod(proxy, method, args, name);
+      }
+    });
+  }
+
+  /**
+   * Makes a collection of script items.  The result is a dynamic proxy which only supports
+   * {@link ChildItems#itemsRunSequential()}, {@link ChildItems#hasChildren()},
+   * {@link ChildItems#iterator()}, and the methods from {@link Object}.
+   *
+   * @param sequential {@code true} if the items run one after another
+   * @param items Items in the collection
+   * @return A new collection of items
+   */
+  public static ChildItems makeChildItems(final boolean sequential, final List<ExecutionItem> items) {
+    return (ChildItems)Proxy.newProxyInstance(SyntheticGraphGenerator.class.getClassLoader(),
+                                              new Class<?>[] { ChildItems.class },
+                                              new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("itemsRunSequential")) {
+          return sequential;
+        } else if (method.getName().equals("hasChildren")) {
+          return ! items.isEmpty();
+        } else if (method.getName().equals("iterator")) {
+          return items.iterator();
+        }
+        return invokeObjectMethod(proxy, method, args, "childItems");
+      }
+    });
+  }
+
+  private static Object invokeObjectMethod(Object proxy, Method method, Object[] args, String name) {
+    if (method.getName().equals("toString")) {
+      return name;
+    } else if (method.getName().equals("hashCode")) {
+      return System.identityHashCode(proxy);
+    } else if (method.getName().equals("equals")) {
+      return proxy == args[0];
+    } else {
+      throw new UnsupportedOperationException(method.getName());
+    }
+  }
+}
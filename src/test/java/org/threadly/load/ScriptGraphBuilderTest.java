@@ -0,0 +1,420 @@
+package org.threadly.load;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.load.ExecutableScript.ExecutionItem;
+import org.threadly.load.ExecutableScript.ExecutionItem.ChildItems;
+import org.threadly.load.gui.CompactGraph;
+import org.threadly.load.gui.Node;
+import org.threadly.load.gui.SyntheticGraphGenerator;
+
+@SuppressWarnings("javadoc")
+public class ScriptGraphBuilderTest {
+  private ForkJoinPool pool;
+
+  @Before
+  public void setup() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @After
+  public void cleanup() {
+    pool.shutdownNow();
+    pool = null;
+  }
+
+  private static void assertSameGraph(CompactGraph expected, CompactGraph actual) {
+    assertEquals(expected.getNodeCount(), actual.getNodeCount());
+    assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+    for (int id = 0; id < expected.getNodeCount(); id++) {
+      assertEquals(expected.getName(id), actual.getName(id));
+      assertEquals(expected.isJoinNode(id), actual.isJoinNode(id));
+      assertEquals(expected.getChildCount(id), actual.getChildCount(id));
+      for (int i = 0; i < expected.getChildCount(id); i++) {
+        assertEquals(expected.getChild(id, i), actual.getChild(id, i));
+      }
+    }
+    assertEquals(expected.getStructureHash(), actual.getStructureHash());
+  }
+
+  private static void assertSameAsRecursive(ChildItems childItems) {
+    assertSameGraph(new CompactGraph(makeRecursiveGraph(childItems)), 
+                    new CompactGraph(ScriptGraphBuilder.makeGraph(childItems)));
+  }
+
+  /**
+   * Graph production as originally implemented with recursion, to verify the stack based 
+   * expansion produces the same graphs.
+   */
+  private static Node makeRecursiveGraph(ChildItems childItems) {
+    Node head = new Node("start");
+    Node current = head;
+    for (ExecutionItem step : childItems) {
+      current = expandRecursively(current, step, new int[1]);
+    }
+    head.cleanGraph();
+    return head;
+  }
+
+  private static Node expandRecursively(Node previousNode, ExecutionItem item, int[] chainLength) {
+    ChildItems childItems = item.getChildItems();
+    if (! childItems.hasChildren()) {
+      Node result = new Node(item.toString());
+      previousNode.addChildNode(result);
+      chainLength[0]++;
+      return result;
+    }
+    int maxLength = -1;
+    List<Node> childNodes = new LinkedList<Node>();
+    Node longestNode = previousNode;
+    Iterator<ExecutionItem> it = childItems.iterator();
+    if (! childItems.itemsRunSequential()) {
+      Node branchPoint = new Node();
+      previousNode.addChildNode(branchPoint);
+      previousNode = branchPoint;
+    }
+    while (it.hasNext()) {
+      int[] length = new int[1];
+      Node endNode = expandRecursively(previousNode, it.next(), length);
+      if (childItems.itemsRunSequential()) {
+        previousNode = endNode;
+      }
+      if (length[0] >= maxLength) {
+        maxLength = length[0];
+        longestNode = endNode;
+      }
+      childNodes.add(endNode);
+    }
+    if (childItems.itemsRunSequential() || maxLength < 1) {
+      return longestNode;
+    }
+    Node joinPoint = new Node();
+    for (Node n : childNodes) {
+      n.addChildNode(joinPoint);
+    }
+    return joinPoint;
+  }
+
+  private static ExecutionItem step(String name) {
+    return SyntheticGraphGenerator.makeItem(name, null);
+  }
+
+  private static ExecutionItem group(boolean sequential, ExecutionItem ... items) {
+    return SyntheticGraphGenerator.makeItem("group", 
+                                            SyntheticGraphGenerator.makeChildItems(sequential, 
+                                                                                  Arrays.asList(items)));
+  }
+
+  private static ChildItems script(ExecutionItem ... items) {
+    return SyntheticGraphGenerator.makeChildItems(true, Arrays.asList(items));
+  }
+
+  @Test
+  public void nestedSequentialSameAsRecursiveTest() {
+    assertSameAsRecursive(script(step("a"), 
+                                 group(true, step("b"), group(true, step("c"), step("d"))), 
+                                 step("e")));
+  }
+
+  @Test
+  public void nestedParallelSameAsRecursiveTest() {
+    assertSameAsRecursive(script(step("a"), 
+                                 group(false, step("b"), group(false, step("c"), step("d")), step("e")), 
+                                 step("f")));
+  }
+
+  @Test
+  public void mixedSameAsRecursiveTest() {
+    assertSameAsRecursive(script(step("a"), 
+                                 group(false, 
+                                       group(true, step("b1"), step("b2"), step("b3")), 
+                                       group(true, step("c1"), group(false, step("c2"), step("c3"))), 
+                                       step("d")), 
+                                 group(true, group(false), step("e")), 
+                                 step("f")));
+  }
+
+  @Test
+  public void syntheticSameAsRecursiveTest() {
+    for (double joinDensity : new double[] { 0, .5, 1 }) {
+      assertSameAsRecursive(new SyntheticGraphGenerator(4, 3, 2, joinDensity, 0, 7).makeChildItems());
+    }
+  }
+
+  @Test
+  public void longestChainSelectedTest() {
+    // parallel children are all composite, so no join is added, and the longest chain continues
+    ChildItems childItems = 
+        script(group(false, 
+                     group(true, step("short1")), 
+                     group(true, step("long1"), step("long2"), step("long3"))), 
+               step("after"));
+    assertSameAsRecursive(childItems);
+
+    CompactGraph graph = new CompactGraph(ScriptGraphBuilder.makeGraph(childItems));
+    int afterId = -1;
+    int long3Id = -1;
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      if ("after".equals(graph.getName(id))) {
+        afterId = id;
+      } else if ("long3".equals(graph.getName(id))) {
+        long3Id = id;
+      }
+    }
+    assertEquals(1, graph.getChildCount(long3Id));
+    assertEquals(afterId, graph.getChild(long3Id, 0));
+  }
+
+  private static ExecutionItem makeNestedItem(int depth, boolean alternateParallel) {
+    ExecutionItem item = step("leaf");
+    for (int i = 0; i < depth; i++) {
+      boolean sequential = ! alternateParallel || i % 2 == 0;
+      item = SyntheticGraphGenerator.makeItem("group", 
+                                              SyntheticGraphGenerator.makeChildItems(sequential, 
+                                                                                    Collections.singletonList(item)));
+    }
+    return item;
+  }
+
+  @Test
+  public void deepSequentialNestingTest() {
+    // deep enough that expanding with recursion would overflow the stack
+    CompactGraph graph = 
+        new CompactGraph(ScriptGraphBuilder.makeGraph(script(step("first"), makeNestedItem(100000, false))));
+
+    assertEquals(3, graph.getNodeCount());
+    assertEquals("first", graph.getName(1));
+    assertEquals("leaf", graph.getName(2));
+  }
+
+  @Test
+  public void mixedNestingSameAsRecursiveTest() {
+    assertSameAsRecursive(script(step("first"), makeNestedItem(500, true), step("last")));
+  }
+
+  @Test
+  public void deepMixedNestingTest() {
+    CompactGraph graph = 
+        new CompactGraph(ScriptGraphBuilder.makeGraph(script(step("first"), makeNestedItem(100000, true), 
+                                                             step("last"))));
+
+    boolean foundLeaf = false;
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      foundLeaf |= "leaf".equals(graph.getName(id));
+    }
+    assertTrue(foundLeaf);
+    assertEquals("last", graph.getName(graph.getNodeCount() - 1));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void makeGraphInvalidBatchSizeFail() {
+    ScriptGraphBuilder.makeGraph(new SyntheticGraphGenerator(1, 1, 1, 0, 0, 0).makeChildItems(), 
+                                 null, null, 0);
+  }
+
+  @Test
+  public void makeGraphListenerTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 3, 2, .5, 0, 0);
+    final int batchSize = 7;
+    final List<Node> heads = new ArrayList<Node>();
+    final List<Integer> stepCounts = new ArrayList<Integer>();
+    final List<Integer> nodeCounts = new ArrayList<Integer>();
+    Node head = ScriptGraphBuilder.makeGraph(generator.makeChildItems(), null, 
+                                             new ScriptGraphBuilder.BuildListener() {
+      @Override
+      public void stepsAdded(Node head, int stepCount) {
+        heads.add(head);
+        stepCounts.add(stepCount);
+        // partial graph must be in a consistent state to be copied
+        nodeCounts.add(new CompactGraph(head).getNodeCount());
+      }
+    }, batchSize);
+
+    assertEquals(generator.getStepCount() / batchSize, stepCounts.size());
+    for (int i = 0; i < stepCounts.size(); i++) {
+      assertSame(head, heads.get(i));
+      assertEquals((i + 1) * batchSize, (int)stepCounts.get(i));
+      if (i > 0) {
+        assertTrue(nodeCounts.get(i) > nodeCounts.get(i - 1));
+      }
+    }
+  }
+
+  @Test
+  public void makeGraphListenerSameGraphTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 3, 2, .5, 0, 0);
+    CompactGraph expected = new CompactGraph(ScriptGraphBuilder.makeGraph(generator.makeChildItems()));
+    CompactGraph actual = 
+        new CompactGraph(ScriptGraphBuilder.makeGraph(generator.makeChildItems(), null, 
+                                                      new ScriptGraphBuilder.BuildListener() {
+          @Override
+          public void stepsAdded(Node head, int stepCount) {
+            new CompactGraph(head);
+          }
+        }, 1));
+
+    assertSameGraph(expected, actual);
+  }
+
+  @Test
+  public void makeGraphParallelSameGraphTest() {
+    for (double joinDensity : new double[] { 0, .5, 1 }) {
+      SyntheticGraphGenerator generator = new SyntheticGraphGenerator(4, 4, 3, joinDensity, 0, 0);
+      CompactGraph expected = new CompactGraph(ScriptGraphBuilder.makeGraph(generator.makeChildItems()));
+      CompactGraph actual = 
+          new CompactGraph(ScriptGraphBuilder.makeGraph(generator.makeChildItems(), null, null, 
+                                                        ScriptGraphBuilder.DEFAULT_BATCH_SIZE, pool));
+
+      assertSameGraph(expected, actual);
+    }
+  }
+
+  @Test
+  public void makeGraphParallelItemNodesTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 4, 2, 1, 0, 0);
+    Map<ExecutionItem, Node> itemNodes = new HashMap<ExecutionItem, Node>();
+    Node head = ScriptGraphBuilder.makeGraph(generator.makeChildItems(), itemNodes, null, 
+                                             ScriptGraphBuilder.DEFAULT_BATCH_SIZE, pool);
+
+    assertEquals(generator.getStepCount(), itemNodes.size());
+    CompactGraph graph = new CompactGraph(head);
+    for (Map.Entry<ExecutionItem, Node> e : itemNodes.entrySet()) {
+      assertEquals(e.getKey().toString(), e.getValue().getName());
+    }
+    assertEquals(generator.getStepCount() + 1, graph.getNodeCount() - countJoinNodes(graph));
+  }
+
+  @Test
+  public void makeGraphParallelListenerTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 4, 2, 1, 0, 0);
+    final List<Integer> stepCounts = new ArrayList<Integer>();
+    ScriptGraphBuilder.makeGraph(generator.makeChildItems(), null, 
+                                 new ScriptGraphBuilder.BuildListener() {
+      @Override
+      public void stepsAdded(Node head, int stepCount) {
+        stepCounts.add(stepCount);
+      }
+    }, 5, pool);
+
+    // branches are reported as chunks of them complete, not once all are expanded
+    assertTrue(stepCounts.size() > 1);
+    for (int i = 1; i < stepCounts.size(); i++) {
+      assertTrue(stepCounts.get(i) - stepCounts.get(i - 1) >= 5);
+    }
+    assertTrue(stepCounts.get(stepCounts.size() - 1) <= generator.getStepCount());
+  }
+
+  @Test
+  public void makeGraphParallelStreamsChunksTest() throws InterruptedException {
+    final CountDownLatch listenerCalled = new CountDownLatch(1);
+    final AtomicBoolean waitedForListener = new AtomicBoolean();
+    // last branch can not be expanded until the listener has seen the first branches
+    List<ExecutionItem> blockingSteps = new ArrayList<ExecutionItem>(Arrays.asList(step("d1"), step("d2"))) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public Iterator<ExecutionItem> iterator() {
+        try {
+          waitedForListener.set(listenerCalled.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.iterator();
+      }
+    };
+    ExecutionItem blockingBranch = 
+        SyntheticGraphGenerator.makeItem("d", SyntheticGraphGenerator.makeChildItems(true, blockingSteps));
+    ChildItems items = script(group(false, group(true, step("a1"), step("a2")), 
+                                    group(true, step("b1"), step("b2")), 
+                                    group(true, step("c1"), step("c2")), 
+                                    blockingBranch));
+    ScriptGraphBuilder.makeGraph(items, null, new ScriptGraphBuilder.BuildListener() {
+      @Override
+      public void stepsAdded(Node head, int stepCount) {
+        listenerCalled.countDown();
+      }
+    }, 1, pool);
+
+    assertTrue(waitedForListener.get());
+  }
+
+  @Test
+  public void makeGraphParallelConcurrentItemNodesTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 4, 2, 1, 0, 0);
+    Map<ExecutionItem, Node> itemNodes = new ConcurrentHashMap<ExecutionItem, Node>();
+    ScriptGraphBuilder.makeGraph(generator.makeChildItems(), itemNodes, null, 
+                                 ScriptGraphBuilder.DEFAULT_BATCH_SIZE, pool);
+
+    assertEquals(generator.getStepCount(), itemNodes.size());
+    for (Map.Entry<ExecutionItem, Node> e : itemNodes.entrySet()) {
+      assertEquals(e.getKey().toString(), e.getValue().getName());
+    }
+  }
+
+  @Test
+  public void makeGraphParallelFromOtherPoolTest() throws Exception {
+    final SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 4, 2, 1, 0, 0);
+    final Set<Thread> expandingThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    final Map<ExecutionItem, Node> itemNodes = new ConcurrentHashMap<ExecutionItem, Node>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public Node put(ExecutionItem key, Node value) {
+        expandingThreads.add(Thread.currentThread());
+        return super.put(key, value);
+      }
+    };
+    ForkJoinPool otherPool = new ForkJoinPool(4);
+    try {
+      final Thread[] callingThread = new Thread[1];
+      Node head = otherPool.submit(new Callable<Node>() {
+        @Override
+        public Node call() {
+          callingThread[0] = Thread.currentThread();
+          return ScriptGraphBuilder.makeGraph(generator.makeChildItems(), itemNodes, null,
+                                              ScriptGraphBuilder.DEFAULT_BATCH_SIZE, pool);
+        }
+      }).get();
+
+      assertSameGraph(new CompactGraph(ScriptGraphBuilder.makeGraph(generator.makeChildItems())),
+                      new CompactGraph(head));
+      // branches are expanded by the provided pool, not forked into the pool of the caller
+      for (Thread t : expandingThreads) {
+        assertTrue(t == callingThread[0] ||
+                   (t instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)t).getPool() == pool));
+      }
+    } finally {
+      otherPool.shutdownNow();
+    }
+  }
+
+  private static int countJoinNodes(CompactGraph graph) {
+    int result = 0;
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      if (graph.isJoinNode(id)) {
+        result++;
+      }
+    }
+    return result;
+  }
+}
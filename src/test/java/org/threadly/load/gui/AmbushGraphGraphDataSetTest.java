@@ -2,11 +2,20 @@ package org.threadly.load.gui;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.eclipse.swt.graphics.Point;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.threadly.load.ExecutableScript.ExecutionItem;
+import org.threadly.load.ExecutableScript.ExecutionItem.ChildItems;
+import org.threadly.load.ScriptGraphBuilder;
 import org.threadly.load.gui.AmbushGraph.GraphDataSet;
 import org.threadly.load.gui.AmbushGraph.GuiPoint;
 
@@ -26,6 +35,28 @@ public class AmbushGraphGraphDataSetTest {
     dataSet = null;
   }
   
+  private static GraphDataSet makeLayeredDataSet(Node head) {
+    GraphDataSet result = new GraphDataSet(X_SIZE, Y_SIZE);
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(head, nodesById);
+    PointPlacer.setLayeredData(result, graph, nodesById, new int[nodesById.size()], 
+                              new LayeredLayout(graph));
+    return result;
+  }
+  
+  private static byte getStepState(GraphDataSet dataSet, Node node) {
+    return dataSet.stepStates[dataSet.guiNodeMap.get(node).id];
+  }
+  
+  private static void applyEvents(StepEventBuffer events, final GraphDataSet dataSet) {
+    events.drain(new StepEventBuffer.EventHandler() {
+      @Override
+      public void handleEvent(Node node, byte state) {
+        dataSet.setStepState(node, state);
+      }
+    }, Integer.MAX_VALUE);
+  }
+  
   @Test
   public void constructorTest() {
     assertEquals(X_SIZE, dataSet.naturalBounds.x);
@@ -40,4 +71,113 @@ public class AmbushGraphGraphDataSetTest {
     dataSet.setData(Collections.<Node, GuiPoint>emptyMap(), new Node());
     // no exception should throw
   }
+  
+  @Test
+  public void setDataRecordsModificationCountsTest() {
+    Node head = new Node("head");
+    Node child = new Node("child");
+    head.addChildNode(child);
+    Map<Node, GuiPoint> guiNodeMap = new HashMap<Node, GuiPoint>();
+    guiNodeMap.put(head, new GuiPoint(0, dataSet.naturalBounds, new Point(10, 10)));
+    guiNodeMap.put(child, new GuiPoint(0, dataSet.naturalBounds, new Point(20, 20)));
+    dataSet.setData(guiNodeMap, head);
+    
+    assertEquals(2, dataSet.modificationCounts.length);
+    assertEquals(head.getModificationCount(), dataSet.modificationCounts[0]);
+    assertEquals(child.getModificationCount(), dataSet.modificationCounts[1]);
+  }
+  
+  @Test
+  public void setDataNodesByIdTest() {
+    Node head = new Node("head");
+    Node child = new Node("child");
+    head.addChildNode(child);
+    Map<Node, GuiPoint> guiNodeMap = new HashMap<Node, GuiPoint>();
+    guiNodeMap.put(head, new GuiPoint(0, dataSet.naturalBounds, new Point(10, 10)));
+    guiNodeMap.put(child, new GuiPoint(0, dataSet.naturalBounds, new Point(20, 20)));
+    dataSet.setData(guiNodeMap, head);
+    
+    for (Map.Entry<Node, GuiPoint> e : guiNodeMap.entrySet()) {
+      assertTrue(e.getKey() == dataSet.nodesById.get(e.getValue().id));
+    }
+  }
+  
+  @Test
+  public void setDataKeptPositionsNotClusteredTest() {
+    Node head = new Node("head");
+    Node child = new Node("child");
+    Node grandchild1 = new Node("grandchild1");
+    Node grandchild2 = new Node("grandchild2");
+    head.addChildNode(child);
+    child.addChildNode(grandchild1);
+    child.addChildNode(grandchild2);
+    CompactGraph graph = new CompactGraph(head);
+    GuiPoint[] points = new GuiPoint[graph.getNodeCount()];
+    Map<Node, GuiPoint> guiNodeMap = new HashMap<Node, GuiPoint>();
+    for (int id = 0; id < points.length; id++) {
+      points[id] = new GuiPoint(0, dataSet.naturalBounds, new Point(100 * (id + 1), 100 * (id + 1)));
+    }
+    guiNodeMap.put(head, points[0]);
+    guiNodeMap.put(child, points[1]);
+    guiNodeMap.put(grandchild1, points[2]);
+    guiNodeMap.put(grandchild2, points[3]);
+    boolean[] keptPositions = new boolean[] { true, true, true, false };
+    dataSet.setData(guiNodeMap, graph, Arrays.asList(head, child, grandchild1, grandchild2), 
+                    points, new int[points.length], keptPositions);
+    
+    assertEquals(300, points[2].getY());
+    // not kept, so moved towards its parent
+    assertTrue(points[3].getY() < 400);
+  }
+  
+  @Test
+  public void builtGraphStepStatesTest() {
+    ExecutionItem first = SyntheticGraphGenerator.makeItem("first", null);
+    ExecutionItem parallel1 = SyntheticGraphGenerator.makeItem("parallel1", null);
+    ExecutionItem parallel2 = SyntheticGraphGenerator.makeItem("parallel2", null);
+    ExecutionItem last = SyntheticGraphGenerator.makeItem("last", null);
+    ChildItems parallelItems = SyntheticGraphGenerator.makeChildItems(false, Arrays.asList(parallel1, parallel2));
+    ExecutionItem group = SyntheticGraphGenerator.makeItem("group", parallelItems);
+    ChildItems items = SyntheticGraphGenerator.makeChildItems(true, Arrays.asList(first, group, last));
+    Map<ExecutionItem, Node> itemNodes = new HashMap<ExecutionItem, Node>();
+    dataSet = makeLayeredDataSet(ScriptGraphBuilder.makeGraph(items, itemNodes));
+    // same path stepStarted, stepSucceeded and stepFailed take to the displayed data set
+    StepEventBuffer events = new StepEventBuffer(16);
+    events.offer(itemNodes.get(first), AmbushGraph.STEP_STATE_RUNNING);
+    events.offer(itemNodes.get(first), AmbushGraph.STEP_STATE_SUCCEEDED);
+    events.offer(itemNodes.get(parallel1), AmbushGraph.STEP_STATE_FAILED);
+    events.offer(itemNodes.get(parallel2), AmbushGraph.STEP_STATE_RUNNING);
+    events.offer(new Node("unknown"), AmbushGraph.STEP_STATE_RUNNING);
+    applyEvents(events, dataSet);
+    
+    assertEquals(AmbushGraph.STEP_STATE_SUCCEEDED, getStepState(dataSet, itemNodes.get(first)));
+    assertEquals(AmbushGraph.STEP_STATE_FAILED, getStepState(dataSet, itemNodes.get(parallel1)));
+    assertEquals(AmbushGraph.STEP_STATE_RUNNING, getStepState(dataSet, itemNodes.get(parallel2)));
+    assertEquals(0, getStepState(dataSet, itemNodes.get(last)));
+  }
+  
+  @Test
+  public void copyStepStatesTest() {
+    ExecutionItem first = SyntheticGraphGenerator.makeItem("first", null);
+    ExecutionItem second = SyntheticGraphGenerator.makeItem("second", null);
+    Map<ExecutionItem, Node> itemNodes = new HashMap<ExecutionItem, Node>();
+    ChildItems items = SyntheticGraphGenerator.makeChildItems(true, Arrays.asList(first, second));
+    Node head = ScriptGraphBuilder.makeGraph(items, itemNodes);
+    dataSet = makeLayeredDataSet(head);
+    StepEventBuffer events = new StepEventBuffer(16);
+    events.offer(itemNodes.get(first), AmbushGraph.STEP_STATE_SUCCEEDED);
+    events.offer(itemNodes.get(second), AmbushGraph.STEP_STATE_FAILED);
+    applyEvents(events, dataSet);
+    // graph grows and is laid out again, which assigns different ids
+    Node added = new Node("added");
+    Node newHead = new Node("newHead");
+    newHead.addChildNode(added);
+    newHead.addChildNode(head);
+    GraphDataSet newDataSet = makeLayeredDataSet(newHead);
+    newDataSet.copyStepStates(dataSet);
+    
+    assertEquals(AmbushGraph.STEP_STATE_SUCCEEDED, getStepState(newDataSet, itemNodes.get(first)));
+    assertEquals(AmbushGraph.STEP_STATE_FAILED, getStepState(newDataSet, itemNodes.get(second)));
+    assertEquals(0, getStepState(newDataSet, added));
+  }
 }
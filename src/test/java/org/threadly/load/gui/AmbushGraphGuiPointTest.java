@@ -21,7 +21,7 @@ public class AmbushGraphGuiPointTest {
   
   @Before
   public void setup() {
-    guiPoint = new GuiPoint(null, new Point(X_SIZE, Y_SIZE), 
+    guiPoint = new GuiPoint(0, new Point(X_SIZE, Y_SIZE), 
                             new HashMap<Integer, List<GuiPoint>>(), 1, 1);
     guiPoint.xRegionCountMap.put(1, Collections.singletonList(guiPoint));
   }
@@ -36,6 +36,15 @@ public class AmbushGraphGuiPointTest {
     assertFalse(guiPoint.coordiantesSet);
   }
   
+  @Test
+  public void positionConstructorTest() {
+    GuiPoint point = new GuiPoint(0, new Point(X_SIZE, Y_SIZE), new Point(10, 20));
+    
+    assertTrue(point.coordiantesSet);
+    assertEquals(10, point.getX());
+    assertEquals(20, point.getY());
+  }
+  
   @Test
   public void getXTest() {
     int x = guiPoint.getX();
@@ -61,4 +70,14 @@ public class AmbushGraphGuiPointTest {
     assertEquals(pos, guiPoint.getX());
     assertEquals(pos, guiPoint.getY());
   }
+  
+  @Test
+  public void softGridDeterministicTest() {
+    GuiPoint otherPoint = new GuiPoint(0, new Point(X_SIZE, Y_SIZE), 
+                                       new HashMap<Integer, List<GuiPoint>>(), 1, 1);
+    otherPoint.xRegionCountMap.put(1, Collections.singletonList(otherPoint));
+    
+    assertEquals(guiPoint.getX(), otherPoint.getX());
+    assertEquals(guiPoint.getY(), otherPoint.getY());
+  }
 }
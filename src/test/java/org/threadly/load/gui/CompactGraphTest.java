@@ -0,0 +1,157 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class CompactGraphTest {
+  private Node head;
+  private Node child1;
+  private Node child2;
+  private Node join;
+  
+  @Before
+  public void setup() {
+    head = new Node("head");
+    child1 = new Node("child1");
+    child2 = new Node("child2");
+    join = new Node();
+    head.addChildNode(child1);
+    head.addChildNode(child2);
+    child1.addChildNode(join);
+    child2.addChildNode(join);
+  }
+  
+  @After
+  public void cleanup() {
+    head = null;
+    child1 = null;
+    child2 = null;
+    join = null;
+  }
+  
+  @Test
+  public void emptyConstructorTest() {
+    CompactGraph graph = new CompactGraph();
+    assertEquals(0, graph.getNodeCount());
+    assertEquals(0, graph.getEdgeCount());
+  }
+  
+  @Test
+  public void constructorTest() {
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(head, nodesById);
+    
+    assertEquals(4, graph.getNodeCount());
+    assertEquals(4, graph.getEdgeCount());
+    assertEquals(4, nodesById.size());
+    assertTrue(head == nodesById.get(0));
+    for (int id = 0; id < nodesById.size(); id++) {
+      Node node = nodesById.get(id);
+      assertEquals(node.getName(), graph.getName(id));
+      assertEquals(node.isJoinNode(), graph.isJoinNode(id));
+      assertEquals(node.getChildNodes().size(), graph.getChildCount(id));
+      for (int i = 0; i < graph.getChildCount(id); i++) {
+        assertTrue(node.getChildNodes().get(i) == nodesById.get(graph.getChild(id, i)));
+      }
+      assertEquals(node.getParentNodes().size(), graph.getParentCount(id));
+      for (int i = 0; i < graph.getParentCount(id); i++) {
+        assertTrue(node.getParentNodes().contains(nodesById.get(graph.getParent(id, i))));
+      }
+    }
+  }
+  
+  @Test
+  public void arrayConstructorTest() {
+    CompactGraph graph = new CompactGraph(new String[] { "head", "child1", "child2", null }, 
+                                          new int[] { 0, 2, 3, 4, 4 }, new int[] { 1, 2, 3, 3 });
+    
+    assertEquals(4, graph.getNodeCount());
+    assertEquals(4, graph.getEdgeCount());
+    assertTrue(graph.isJoinNode(3));
+    assertEquals(2, graph.getParentCount(3));
+    assertEquals(1, graph.getParent(3, 0));
+    assertEquals(2, graph.getParent(3, 1));
+    assertEquals(0, graph.getParentCount(0));
+  }
+  
+  @Test
+  public void unreachableParentIgnoredTest() {
+    Node unreachable = new Node("unreachable");
+    unreachable.addChildNode(child1);
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(head, nodesById);
+    
+    assertFalse(nodesById.contains(unreachable));
+    assertEquals(1, graph.getParentCount(nodesById.indexOf(child1)));
+  }
+  
+  @Test
+  public void estimateMemoryUsageTest() {
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(head, nodesById);
+    int nodeCount = nodesById.size();
+    int edgeCount = 4;
+    
+    assertEquals(nodeCount, graph.names.length);
+    assertEquals(nodeCount + 1, graph.childOffsets.length);
+    assertEquals(edgeCount, graph.childTargets.length);
+    assertEquals(nodeCount + 1, graph.parentOffsets.length);
+    assertEquals(edgeCount, graph.parentTargets.length);
+    assertEquals((16 * 5) + (4 * ((nodeCount * 3) + 2 + (edgeCount * 2))), 
+                 graph.estimateMemoryUsage());
+  }
+  
+  @Test
+  public void memoryPerNodeTest() {
+    final int nodeCount = 200000;
+    Node head = new Node("head");
+    Node current = head;
+    for (int i = 0; i < nodeCount; i++) {
+      Node next = new Node("node");
+      current.addChildNode(next);
+      current = next;
+    }
+    CompactGraph graph = new CompactGraph(head);
+    
+    assertEquals(nodeCount + 1, graph.getNodeCount());
+    // one name reference, two offsets, and a child and parent target per node in a chain
+    assertTrue(graph.estimateMemoryUsage() / graph.getNodeCount() <= 4 * 5);
+  }
+  
+  @Test
+  public void structureHashStableTest() {
+    Node otherHead = new Node("head");
+    Node otherChild1 = new Node("child1");
+    Node otherChild2 = new Node("child2");
+    Node otherJoin = new Node();
+    otherHead.addChildNode(otherChild1);
+    otherHead.addChildNode(otherChild2);
+    otherChild1.addChildNode(otherJoin);
+    otherChild2.addChildNode(otherJoin);
+    
+    assertEquals(new CompactGraph(head).getStructureHash(), 
+                 new CompactGraph(otherHead).getStructureHash());
+  }
+  
+  @Test
+  public void structureHashChangesTest() {
+    long hash = new CompactGraph(head).getStructureHash();
+    child1.addChildNode(child2);
+    long edgeHash = new CompactGraph(head).getStructureHash();
+    Node renamedHead = new Node("renamed");
+    renamedHead.addChildNode(child1);
+    renamedHead.addChildNode(child2);
+    long nameHash = new CompactGraph(renamedHead).getStructureHash();
+    
+    assertTrue(hash != edgeHash);
+    assertTrue(hash != nameHash);
+    assertTrue(edgeHash != nameHash);
+  }
+}
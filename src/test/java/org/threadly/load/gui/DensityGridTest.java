@@ -0,0 +1,55 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class DensityGridTest {
+  private static final int CELL_SIZE = 8;
+  
+  private DensityGrid grid;
+  
+  @Before
+  public void setup() {
+    grid = new DensityGrid(100, 100, CELL_SIZE);
+  }
+  
+  @After
+  public void cleanup() {
+    grid = null;
+  }
+  
+  @Test
+  public void addPointTest() {
+    grid.addPoint(1, 1);
+    grid.addPoint(7, 7);
+    grid.addPoint(8, 0);
+    
+    assertEquals(2, grid.getCellCount(0, 0));
+    assertEquals(1, grid.getCellCount(1, 0));
+    assertEquals(0, grid.getCellCount(0, 1));
+  }
+  
+  @Test
+  public void addPointOutsideIgnoredTest() {
+    grid.addPoint(-1, 5);
+    grid.addPoint(5, 1000);
+    
+    assertEquals(0, grid.getCellCount(0, 0));
+  }
+  
+  @Test
+  public void addEdgeAggregatesTest() {
+    for (int i = 0; i < 100; i++) {
+      grid.addEdge(i % CELL_SIZE, 0, 48 + (i % CELL_SIZE), 48);
+    }
+    grid.addEdge(0, 0, -50, -50);
+    // same cell edges are not recorded
+    grid.addEdge(0, 0, 1, 1);
+    
+    assertEquals(2, grid.getEdgeCount());
+  }
+}
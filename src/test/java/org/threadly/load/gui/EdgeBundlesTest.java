@@ -0,0 +1,112 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+@SuppressWarnings("javadoc")
+public class EdgeBundlesTest {
+  private Node head;
+  private List<Node> nodesById;
+
+  @Before
+  public void setup() {
+    head = new Node("head");
+    nodesById = new ArrayList<Node>();
+  }
+
+  @After
+  public void cleanup() {
+    head = null;
+    nodesById = null;
+  }
+
+  private EdgeBundles makeBundles() {
+    CompactGraph graph = new CompactGraph(head, nodesById);
+    return new EdgeBundles(graph, new GuiPoint[graph.getNodeCount()]);
+  }
+
+  private int idOf(Node node) {
+    return nodesById.indexOf(node);
+  }
+
+  private Node[] addForkJoin(int width, Node join) {
+    Node[] branches = new Node[width];
+    for (int i = 0; i < width; i++) {
+      branches[i] = new Node("branch" + i);
+      head.addChildNode(branches[i]);
+      branches[i].addChildNode(join);
+    }
+    return branches;
+  }
+
+  @Test
+  public void belowThresholdTest() {
+    Node join = new Node("join");
+    Node[] branches = addForkJoin(EdgeBundles.MIN_BUNDLE_EDGES - 1, join);
+    EdgeBundles bundles = makeBundles();
+
+    assertEquals(0, bundles.getBundleCount());
+    assertFalse(bundles.isBundled(idOf(head), idOf(branches[0])));
+    assertFalse(bundles.isBundled(idOf(branches[0]), idOf(join)));
+  }
+
+  @Test
+  public void forkAndJoinBundledTest() {
+    Node join = new Node("join");
+    Node[] branches = addForkJoin(EdgeBundles.MIN_BUNDLE_EDGES, join);
+    EdgeBundles bundles = makeBundles();
+
+    assertEquals(2, bundles.getBundleCount());
+    for (int b = 0; b < bundles.getBundleCount(); b++) {
+      int[] members = bundles.getMembers(b);
+      Arrays.sort(members);
+      int[] expected = new int[branches.length];
+      for (int i = 0; i < branches.length; i++) {
+        expected[i] = idOf(branches[i]);
+      }
+      Arrays.sort(expected);
+      assertArrayEquals(expected, members);
+      if (bundles.isFanOut(b)) {
+        assertEquals(idOf(head), bundles.getHub(b));
+      } else {
+        assertEquals(idOf(join), bundles.getHub(b));
+      }
+    }
+    for (Node branch : branches) {
+      assertTrue(bundles.isBundled(idOf(head), idOf(branch)));
+      assertTrue(bundles.isBundled(idOf(branch), idOf(join)));
+    }
+  }
+
+  @Test
+  public void fanInExcludesFanOutEdgesTest() {
+    // join has enough parents, but one edge is already part of the head's fan out
+    Node join = new Node("join");
+    Node[] branches = addForkJoin(EdgeBundles.MIN_BUNDLE_EDGES - 1, join);
+    head.addChildNode(join);
+    EdgeBundles bundles = makeBundles();
+
+    assertEquals(1, bundles.getBundleCount());
+    assertTrue(bundles.isFanOut(0));
+    assertTrue(bundles.isBundled(idOf(head), idOf(join)));
+    assertFalse(bundles.isBundled(idOf(branches[0]), idOf(join)));
+  }
+
+  @Test
+  public void isForPointsTest() {
+    GuiPoint[] points = new GuiPoint[1];
+    EdgeBundles bundles = new EdgeBundles(new CompactGraph(head, nodesById), points);
+
+    assertTrue(bundles.isForPoints(points));
+    assertFalse(bundles.isForPoints(new GuiPoint[1]));
+  }
+}
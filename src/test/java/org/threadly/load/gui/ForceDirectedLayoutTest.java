@@ -0,0 +1,124 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.PriorityScheduler;
+
+@SuppressWarnings("javadoc")
+public class ForceDirectedLayoutTest {
+  private PriorityScheduler scheduler;
+
+  @Before
+  public void setup() {
+    scheduler = new PriorityScheduler(4);
+  }
+
+  @After
+  public void cleanup() {
+    scheduler.shutdownNow();
+    scheduler = null;
+  }
+
+  private static CompactGraph makeGraph(int depth, int stepsPerBranch) {
+    Node head = new SyntheticGraphGenerator(depth, 4, stepsPerBranch, .5, 0, 0).makeNodeGraph();
+    head.cleanGraph();
+    return new CompactGraph(head);
+  }
+
+  private static double distance(ForceDirectedLayout layout, int id1, int id2) {
+    double dx = layout.getX(id1) - layout.getX(id2);
+    double dy = layout.getY(id1) - layout.getY(id2);
+    return Math.sqrt((dx * dx) + (dy * dy));
+  }
+
+  @Test
+  public void emptyGraphTest() {
+    CompactGraph graph = new CompactGraph();
+    ForceDirectedLayout layout = new ForceDirectedLayout(graph, new LayeredLayout(graph));
+    layout.iterate();
+
+    assertTrue(layout.isConverged());
+  }
+
+  @Test
+  public void seededFromLayersTest() {
+    CompactGraph graph = makeGraph(2, 2);
+    LayeredLayout seed = new LayeredLayout(graph);
+    ForceDirectedLayout layout = new ForceDirectedLayout(graph, seed);
+
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      assertEquals(seed.getLayer(id), layout.getX(id), 0);
+    }
+  }
+
+  @Test
+  public void convergesTest() {
+    CompactGraph graph = makeGraph(2, 3);
+    ForceDirectedLayout layout = new ForceDirectedLayout(graph, new LayeredLayout(graph));
+    while (! layout.isConverged()) {
+      layout.iterate();
+    }
+
+    assertTrue(layout.getIterationCount() <= ForceDirectedLayout.MAX_ITERATIONS);
+    double edgeTotal = 0;
+    int edgeCount = 0;
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      assertFalse(Double.isNaN(layout.getX(id)));
+      assertFalse(Double.isNaN(layout.getY(id)));
+      for (int i = 0; i < graph.getChildCount(id); i++) {
+        edgeTotal += distance(layout, id, graph.getChild(id, i));
+        edgeCount++;
+      }
+    }
+    double pairTotal = 0;
+    int pairCount = 0;
+    for (int id1 = 0; id1 < graph.getNodeCount(); id1++) {
+      for (int id2 = id1 + 1; id2 < graph.getNodeCount(); id2++) {
+        pairTotal += distance(layout, id1, id2);
+        pairCount++;
+      }
+    }
+    // connected nodes are pulled together compared to nodes in general
+    assertTrue(edgeTotal / edgeCount < pairTotal / pairCount);
+  }
+
+  @Test
+  public void getPositionsWithinBoundsTest() {
+    CompactGraph graph = makeGraph(2, 3);
+    ForceDirectedLayout layout = new ForceDirectedLayout(graph, new LayeredLayout(graph));
+    for (int i = 0; i < 10; i++) {
+      layout.iterate();
+    }
+    int[] xPositions = new int[graph.getNodeCount()];
+    int[] yPositions = new int[graph.getNodeCount()];
+    layout.getPositions(1000, 500, 50, xPositions, yPositions);
+
+    int maxX = 0;
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      assertTrue(xPositions[id] >= 50 && xPositions[id] <= 950);
+      assertTrue(yPositions[id] >= 50 && yPositions[id] <= 450);
+      maxX = Math.max(maxX, xPositions[id]);
+    }
+    assertEquals(950, maxX);
+  }
+
+  @Test
+  public void parallelMatchesSequentialTest() {
+    // large enough that forces are computed in several parallel chunks
+    CompactGraph graph = makeGraph(3, 200);
+    ForceDirectedLayout sequential = new ForceDirectedLayout(graph, new LayeredLayout(graph));
+    ForceDirectedLayout parallel = new ForceDirectedLayout(graph, new LayeredLayout(graph), scheduler, 4);
+    for (int i = 0; i < 3; i++) {
+      sequential.iterate();
+      parallel.iterate();
+    }
+
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      assertEquals(sequential.getX(id), parallel.getX(id), 0);
+      assertEquals(sequential.getY(id), parallel.getY(id), 0);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class ForkJoinRegionsTest {
+  private Node head;
+  private Node fork;
+  private Node innerFork;
+  private Node join;
+  private Node tail;
+
+  @Before
+  public void setup() {
+    // head -> fork -> { a, innerFork -> { b, c } -> innerJoin } -> join -> tail
+    head = new Node("head");
+    fork = new Node();
+    innerFork = new Node("innerFork");
+    Node innerJoin = new Node();
+    join = new Node();
+    tail = new Node("tail");
+    Node a = new Node("a");
+    Node b = new Node("b");
+    Node c = new Node("c");
+    head.addChildNode(fork);
+    fork.addChildNode(a);
+    fork.addChildNode(innerFork);
+    a.addChildNode(join);
+    innerFork.addChildNode(b);
+    innerFork.addChildNode(c);
+    b.addChildNode(innerJoin);
+    c.addChildNode(innerJoin);
+    innerJoin.addChildNode(join);
+    join.addChildNode(tail);
+  }
+
+  @After
+  public void cleanup() {
+    head = null;
+    fork = null;
+    innerFork = null;
+    join = null;
+    tail = null;
+  }
+
+  private static CompactGraph makeView(ForkJoinRegions regions, Node headNode, List<Node> viewNodesById) {
+    return makeView(regions, headNode, viewNodesById, false);
+  }
+
+  private static CompactGraph makeView(ForkJoinRegions regions, Node headNode, 
+                                       List<Node> viewNodesById, boolean partial) {
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(headNode, nodesById);
+    return regions.makeView(headNode, graph, nodesById, viewNodesById, partial);
+  }
+
+  private static Node findSummary(ForkJoinRegions regions, List<Node> viewNodesById) {
+    for (Node n : viewNodesById) {
+      if (regions.isSummaryNode(n)) {
+        return n;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void smallGraphExpandedTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(100);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+
+    assertEquals(9, view.getNodeCount());
+    assertNull(findSummary(regions, viewNodesById));
+  }
+
+  @Test
+  public void largeGraphCollapsedTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(1);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+
+    // head -> fork -> summary -> join -> tail
+    assertEquals(5, view.getNodeCount());
+    assertEquals(4, view.getEdgeCount());
+    Node summary = findSummary(regions, viewNodesById);
+    assertNotNull(summary);
+    assertEquals("[+4 steps]", summary.getName());
+    int summaryId = viewNodesById.indexOf(summary);
+    assertEquals(1, view.getParentCount(summaryId));
+    assertTrue(viewNodesById.get(view.getParent(summaryId, 0)) == fork);
+    assertTrue(viewNodesById.get(view.getChild(summaryId, 0)) == join);
+  }
+
+  @Test
+  public void expandTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(1);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, head, viewNodesById);
+    assertTrue(regions.toggle(findSummary(regions, viewNodesById)));
+
+    viewNodesById.clear();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+
+    // nested region stays collapsed: head, fork, a, innerFork, summary, innerJoin, join, tail
+    assertEquals(8, view.getNodeCount());
+    Node summary = findSummary(regions, viewNodesById);
+    assertEquals("[+2 steps]", summary.getName());
+    assertTrue(viewNodesById.contains(innerFork));
+  }
+
+  @Test
+  public void collapseForkTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(100);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, head, viewNodesById);
+    assertTrue(regions.toggle(innerFork));
+    assertTrue(regions.isCollapsed(innerFork));
+
+    viewNodesById.clear();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+
+    assertEquals(8, view.getNodeCount());
+    assertEquals("[+2 steps]", findSummary(regions, viewNodesById).getName());
+  }
+
+  @Test
+  public void toggleNonForkTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(100);
+    makeView(regions, head, new ArrayList<Node>());
+
+    assertFalse(regions.toggle(tail));
+  }
+
+  @Test
+  public void summaryNodeRetainedTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(1);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, head, viewNodesById);
+    Node summary = findSummary(regions, viewNodesById);
+
+    viewNodesById.clear();
+    makeView(regions, head, viewNodesById);
+
+    assertTrue(summary == findSummary(regions, viewNodesById));
+  }
+
+  @Test
+  public void newHeadResetsTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(1);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, head, viewNodesById);
+    regions.toggle(findSummary(regions, viewNodesById));
+    Node newHead = new Node("newHead");
+    newHead.addChildNode(head);
+
+    viewNodesById.clear();
+    CompactGraph view = makeView(regions, newHead, viewNodesById);
+
+    assertEquals(6, view.getNodeCount());
+  }
+
+  @Test
+  public void deadEndNotCollapsedTest() {
+    // a branch which never reaches the join leaves the region open
+    innerFork.addChildNode(new Node("deadEnd"));
+    ForkJoinRegions regions = new ForkJoinRegions(1);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+
+    // neither region closes, so both are shown expanded
+    assertEquals(10, view.getNodeCount());
+    assertNull(findSummary(regions, viewNodesById));
+  }
+
+  @Test
+  public void enteredFromOutsideNotCollapsedTest() {
+    // c can be reached without passing through either fork, so only the head forms a region
+    Node outside = new Node("outside");
+    head.addChildNode(outside);
+    outside.addChildNode(innerFork.getChildNodes().get(1));
+    ForkJoinRegions regions = new ForkJoinRegions(1);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+    
+    assertEquals(4, view.getNodeCount());
+    Node summary = findSummary(regions, viewNodesById);
+    assertEquals("[+5 steps]", summary.getName());
+    
+    regions.toggle(summary);
+    viewNodesById.clear();
+    view = makeView(regions, head, viewNodesById);
+
+    assertEquals(10, view.getNodeCount());
+    assertNull(findSummary(regions, viewNodesById));
+  }
+
+  @Test
+  public void noJoinCollapsedTest() {
+    // both branches end without joining
+    Node parallelTail = new Node("parallelTail");
+    tail.addChildNode(parallelTail);
+    tail.addChildNode(new Node("otherTail"));
+    parallelTail.addChildNode(new Node("afterTail"));
+    ForkJoinRegions regions = new ForkJoinRegions(100);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, head, viewNodesById);
+    regions.toggle(tail);
+
+    viewNodesById.clear();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+
+    assertEquals(10, view.getNodeCount());
+    Node summary = findSummary(regions, viewNodesById);
+    assertEquals("[+3 steps]", summary.getName());
+    assertEquals(0, view.getChildCount(viewNodesById.indexOf(summary)));
+  }
+
+  @Test
+  public void syntheticGraphTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(4, 4, 3, 1, 0, 0);
+    Node generatedHead = generator.makeNodeGraph();
+    generatedHead.cleanGraph();
+    ForkJoinRegions regions = new ForkJoinRegions(1);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, generatedHead, viewNodesById);
+
+    Node summary = findSummary(regions, viewNodesById);
+    assertEquals("[+" + generator.getStepCount() + " steps]", summary.getName());
+  }
+
+  @Test
+  public void partialGraphDecidedOnCompleteTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(5);
+    Node buildingHead = new Node("buildingHead");
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, buildingHead, viewNodesById, true);
+    
+    assertNull(findSummary(regions, viewNodesById));
+    
+    // graph grows past the collapse size before the build completes
+    buildingHead.addChildNode(head);
+    viewNodesById.clear();
+    makeView(regions, buildingHead, viewNodesById, false);
+
+    assertNotNull(findSummary(regions, viewNodesById));
+  }
+
+  @Test
+  public void completeGraphDecisionKeptTest() {
+    ForkJoinRegions regions = new ForkJoinRegions(5);
+    List<Node> viewNodesById = new ArrayList<Node>();
+    makeView(regions, head, viewNodesById);
+    regions.toggle(findSummary(regions, viewNodesById));
+
+    viewNodesById.clear();
+    CompactGraph view = makeView(regions, head, viewNodesById);
+
+    // outer region stays expanded by the user, only the inner region is collapsed
+    assertEquals(8, view.getNodeCount());
+  }
+}
@@ -0,0 +1,153 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class GraphCacheTest {
+  private static final String[] ARGS = new String[] { "org.example.MissingFactory", "key=value" };
+
+  private File directory;
+  private GraphCache cache;
+  private Node head;
+
+  @Before
+  public void setup() throws IOException {
+    directory = File.createTempFile("graphCache", "");
+    directory.delete();
+    cache = new GraphCache(directory);
+    head = new Node("head");
+    Node fork = new Node();
+    Node join = new Node();
+    head.addChildNode(fork);
+    for (int i = 0; i < 10; i++) {
+      // duplicate names should share a single string once loaded
+      Node step = new Node(i % 2 == 0 ? "even" : "odd");
+      fork.addChildNode(step);
+      step.addChildNode(join);
+    }
+    join.addChildNode(new Node("tail"));
+  }
+
+  @After
+  public void cleanup() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    directory.delete();
+    directory = null;
+    cache = null;
+    head = null;
+  }
+
+  private static void assertSameGraph(Node expected, Node actual) {
+    List<Node> expectedNodes = new ArrayList<Node>();
+    List<Node> actualNodes = new ArrayList<Node>();
+    CompactGraph expectedGraph = new CompactGraph(expected, expectedNodes);
+    CompactGraph actualGraph = new CompactGraph(actual, actualNodes);
+    assertEquals(expectedGraph.getNodeCount(), actualGraph.getNodeCount());
+    assertEquals(expectedGraph.getEdgeCount(), actualGraph.getEdgeCount());
+    for (int id = 0; id < expectedGraph.getNodeCount(); id++) {
+      assertEquals(expectedGraph.getName(id), actualGraph.getName(id));
+      assertEquals(expectedGraph.isJoinNode(id), actualGraph.isJoinNode(id));
+      assertEquals(expectedGraph.getChildCount(id), actualGraph.getChildCount(id));
+      for (int i = 0; i < expectedGraph.getChildCount(id); i++) {
+        assertEquals(expectedGraph.getChild(id, i), actualGraph.getChild(id, i));
+      }
+      assertEquals(expectedNodes.get(id).getParentNodes().size(),
+                   actualNodes.get(id).getParentNodes().size());
+    }
+  }
+
+  @Test
+  public void writeAndReadTest() throws IOException {
+    File file = new File(directory, "test.graph");
+    directory.mkdirs();
+    GraphCache.write(head, file);
+    Node loaded = GraphCache.read(file);
+
+    assertSameGraph(head, loaded);
+  }
+
+  @Test
+  public void readSharesNamesTest() throws IOException {
+    File file = new File(directory, "test.graph");
+    directory.mkdirs();
+    GraphCache.write(head, file);
+    Node loaded = GraphCache.read(file);
+
+    List<Node> steps = loaded.getChildNodes().get(0).getChildNodes();
+    assertTrue(steps.get(0).getName() == steps.get(2).getName());
+    assertTrue(steps.get(1).getName() == steps.get(3).getName());
+  }
+
+  @Test
+  public void storeAndLoadTest() throws IOException {
+    assertNull(cache.load(ARGS));
+
+    cache.store(ARGS, head);
+    Node loaded = cache.load(ARGS);
+
+    assertNotNull(loaded);
+    assertSameGraph(head, loaded);
+  }
+
+  @Test
+  public void differentArgsMissTest() throws IOException {
+    cache.store(ARGS, head);
+
+    assertNull(cache.load(new String[] { ARGS[0], "key=otherValue" }));
+  }
+
+  @Test
+  public void makeKeyTest() {
+    String key = GraphCache.makeKey(ARGS);
+
+    assertEquals(key, GraphCache.makeKey(ARGS.clone()));
+    assertFalse(key.equals(GraphCache.makeKey(new String[] { ARGS[0] })));
+    // argument boundaries are part of the key
+    assertFalse(GraphCache.makeKey(new String[] { "ab", "c" })
+                  .equals(GraphCache.makeKey(new String[] { "a", "bc" })));
+  }
+
+  @Test
+  public void truncatedFileIgnoredTest() throws IOException {
+    cache.store(ARGS, head);
+    File file = cache.getCacheFile(ARGS);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(raf.length() - 3);
+    } finally {
+      raf.close();
+    }
+
+    assertNull(cache.load(ARGS));
+  }
+
+  @Test (expected = IOException.class)
+  public void readInvalidFileFail() throws IOException {
+    directory.mkdirs();
+    File file = new File(directory, "invalid.graph");
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20 });
+    } finally {
+      out.close();
+    }
+
+    GraphCache.read(file);
+  }
+}
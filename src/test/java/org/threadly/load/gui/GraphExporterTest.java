@@ -0,0 +1,109 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+import org.threadly.load.gui.AmbushGraph.LayoutMode;
+
+@SuppressWarnings("javadoc")
+public class GraphExporterTest {
+  private static final int X_SIZE = 640;
+  private static final int Y_SIZE = 480;
+
+  private Node head;
+
+  @Before
+  public void setup() {
+    head = new Node("head");
+    Node child1 = new Node("child<1>");
+    Node child2 = new Node("child&2");
+    Node join = new Node();
+    head.addChildNode(child1);
+    head.addChildNode(child2);
+    child1.addChildNode(join);
+    child2.addChildNode(join);
+  }
+
+  @After
+  public void cleanup() {
+    head = null;
+  }
+
+  private static int countOccurrences(String text, String search) {
+    int count = 0;
+    int index = 0;
+    while ((index = text.indexOf(search, index)) >= 0) {
+      count++;
+      index += search.length();
+    }
+    return count;
+  }
+
+  @Test
+  public void writeSvgTest() throws IOException {
+    GraphExporter exporter = new GraphExporter(head, X_SIZE, Y_SIZE);
+    StringWriter out = new StringWriter();
+    exporter.writeSvg(out);
+    String svg = out.toString();
+
+    assertTrue(svg.startsWith("<?xml"));
+    assertTrue(svg.contains("width=\"" + X_SIZE + "\""));
+    assertTrue(svg.trim().endsWith("</svg>"));
+    assertEquals(4, countOccurrences(svg, "<circle "));
+    assertEquals(4, countOccurrences(svg, "<line "));
+    assertTrue(svg.contains("child&lt;1&gt;"));
+    assertTrue(svg.contains("child&amp;2"));
+    assertFalse(svg.contains("child<1>"));
+  }
+
+  @Test
+  public void renderImageTest() {
+    GraphExporter exporter = new GraphExporter(head, X_SIZE, Y_SIZE);
+    BufferedImage image = exporter.renderImage();
+
+    assertEquals(X_SIZE, image.getWidth());
+    assertEquals(Y_SIZE, image.getHeight());
+  }
+
+  @Test
+  public void writePngTest() throws IOException {
+    File file = File.createTempFile("graph", ".png");
+    try {
+      new GraphExporter(head, X_SIZE, Y_SIZE).writePng(file);
+      BufferedImage image = ImageIO.read(file);
+
+      assertEquals(X_SIZE, image.getWidth());
+      assertEquals(Y_SIZE, image.getHeight());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void forceDirectedLayoutTest() throws IOException {
+    GraphExporter exporter = new GraphExporter(head, X_SIZE, Y_SIZE, LayoutMode.FORCE_DIRECTED);
+    StringWriter out = new StringWriter();
+    exporter.writeSvg(out);
+
+    assertEquals(4, exporter.dataSet.points.length);
+    for (GuiPoint point : exporter.dataSet.points) {
+      assertTrue(point.getX() >= 0 && point.getX() <= X_SIZE);
+      assertTrue(point.getY() >= 0 && point.getY() <= Y_SIZE);
+    }
+    assertEquals(4, countOccurrences(out.toString(), "<circle "));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void softGridLayoutFail() {
+    new GraphExporter(head, X_SIZE, Y_SIZE, LayoutMode.SOFT_GRID);
+  }
+}
@@ -0,0 +1,133 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class GraphMetricsTest {
+  private GraphMetrics metrics;
+
+  @Before
+  public void setup() {
+    metrics = new GraphMetrics(new StepEventBuffer(2));
+  }
+
+  @After
+  public void cleanup() {
+    metrics.unregister();
+    metrics = null;
+  }
+
+  @Test
+  public void paintFinishedTest() {
+    metrics.paintFinished(false, 4000000);
+    metrics.paintFinished(false, 2000000);
+    metrics.paintFinished(true, 8000000);
+
+    assertEquals(2, metrics.getPaintCount());
+    assertEquals(1, metrics.getPreviewPaintCount());
+    assertEquals(2, metrics.getLastFrameMillis(), 0);
+    assertEquals(4, metrics.getMaxFrameMillis(), 0);
+    assertTrue(metrics.getAverageFrameMillis() < 4);
+    assertTrue(metrics.getAverageFrameMillis() > 2);
+  }
+
+  @Test
+  public void resetTest() {
+    metrics.paintFinished(false, 4000000);
+    metrics.reset();
+
+    assertEquals(0, metrics.getMaxFrameMillis(), 0);
+    assertEquals(1, metrics.getPaintCount());
+  }
+
+  @Test
+  public void redrawTest() {
+    metrics.redrawRequested();
+    metrics.redrawRequested();
+    metrics.redrawn();
+
+    assertEquals(2, metrics.getRedrawRequestCount());
+    assertEquals(1, metrics.getRedrawCount());
+  }
+
+  @Test
+  public void hitTestFinishedTest() {
+    metrics.hitTestFinished(1000000);
+
+    assertEquals(1, metrics.getHitTestCount());
+    assertEquals(1, metrics.getAverageHitTestMillis(), 0);
+  }
+
+  @Test
+  public void layoutFinishedTest() {
+    Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    phases.put("layering", 10L);
+    phases.put("ordering", 20L);
+    metrics.layoutFinished(30, phases);
+
+    assertEquals(1, metrics.getLayoutCount());
+    assertEquals(30, metrics.getLastLayoutMillis());
+    assertEquals(phases, metrics.getLastLayoutPhaseMillis());
+  }
+
+  @Test
+  public void droppedStepEventCountTest() {
+    StepEventBuffer buffer = new StepEventBuffer(2);
+    metrics = new GraphMetrics(buffer);
+    Node node = new Node("node");
+    for (int i = 0; i < 3; i++) {
+      buffer.offer(node, (byte)1);
+    }
+
+    assertEquals(1, metrics.getDroppedStepEventCount());
+  }
+
+  @Test
+  public void makeOverlayLinesTest() {
+    Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    phases.put("layering", 10L);
+    metrics.layoutFinished(12, phases);
+    metrics.nodesPainted(5, 100);
+    String[] lines = metrics.makeOverlayLines();
+
+    boolean foundNodes = false;
+    boolean foundLayout = false;
+    for (String line : lines) {
+      foundNodes |= line.equals("Nodes: 5 visible of 100");
+      foundLayout |= line.equals("Layout: 12ms (layering 10ms)");
+    }
+    assertTrue(foundNodes);
+    assertTrue(foundLayout);
+  }
+
+  @Test
+  public void registerTest() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    metrics.register();
+    ObjectName name = metrics.getRegisteredName();
+    Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    phases.put("layering", 10L);
+    metrics.layoutFinished(10, phases);
+
+    assertNotNull(name);
+    assertTrue(server.isRegistered(name));
+    assertEquals(1L, server.getAttribute(name, "LayoutCount"));
+    assertEquals(1, ((TabularData)server.getAttribute(name, "LastLayoutPhaseMillis")).size());
+
+    metrics.unregister();
+
+    assertNull(metrics.getRegisteredName());
+    assertFalse(server.isRegistered(name));
+  }
+}
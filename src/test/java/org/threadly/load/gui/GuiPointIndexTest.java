@@ -0,0 +1,93 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.swt.graphics.Point;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+@SuppressWarnings("javadoc")
+public class GuiPointIndexTest {
+  private static final int X_SIZE = 1024;
+  private static final int Y_SIZE = 768;
+  private static final int TOLLERANCE = 25;
+  private static final Point ORIGIN = new Point(0, 0);
+  
+  private GuiPoint[] points;
+  private GuiPointIndex index;
+  
+  @Before
+  public void setup() {
+    points = new GuiPoint[3];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = new GuiPoint(0, new Point(X_SIZE, Y_SIZE), null, 1, 1);
+      points[i].setPosition(100 * (i + 1), 100 * (i + 1));
+    }
+    Node head = new Node("head");
+    Node tail = new Node("tail");
+    head.addChildNode(new Node("middle"));
+    head.getChildNodes().get(0).addChildNode(tail);
+    index = new GuiPointIndex(new Point(X_SIZE, Y_SIZE), new CompactGraph(head), points);
+  }
+  
+  @After
+  public void cleanup() {
+    points = null;
+    index = null;
+  }
+  
+  @Test
+  public void getClosestPointTest() {
+    assertTrue(points[0] == index.getClosestPoint(1, ORIGIN, 105, 95, TOLLERANCE));
+    assertTrue(points[1] == index.getClosestPoint(1, ORIGIN, 210, 190, TOLLERANCE));
+  }
+  
+  @Test
+  public void getClosestPointOutsideTolleranceTest() {
+    assertNull(index.getClosestPoint(1, ORIGIN, 150, 150, TOLLERANCE));
+    assertNull(index.getClosestPoint(1, ORIGIN, 100, 100 + TOLLERANCE + 1, TOLLERANCE));
+  }
+  
+  @Test
+  public void getClosestPointZoomedTest() {
+    // at 2x zoom point 1 is at 400,400 in absolute coordinates
+    Point origin = new Point(300, 300);
+    assertTrue(points[1] == index.getClosestPoint(2, origin, 100, 100, TOLLERANCE));
+    assertNull(index.getClosestPoint(2, origin, 0, 0, TOLLERANCE));
+  }
+  
+  @Test
+  public void setPositionUpdatesIndexTest() {
+    points[0].setPosition(800, 100);
+    
+    assertNull(index.getClosestPoint(1, ORIGIN, 100, 100, TOLLERANCE));
+    assertTrue(points[0] == index.getClosestPoint(1, ORIGIN, 800, 100, TOLLERANCE));
+  }
+  
+  @Test
+  public void findPointsTest() {
+    int[] result = index.findPoints(0, 0, 250, 250);
+    assertEquals(2, result.length);
+    assertTrue(result[0] != result[1]);
+    for (int id : result) {
+      assertTrue(id == 0 || id == 1);
+    }
+  }
+  
+  @Test
+  public void findLongEdgesTest() {
+    assertEquals(0, index.findLongEdges(0, 0, X_SIZE, Y_SIZE).length);
+    
+    points[2].setPosition(X_SIZE - 10, Y_SIZE - 10);
+    
+    assertTrue(index.isLongEdge(1));
+    assertFalse(index.isLongEdge(0));
+    int[] result = index.findLongEdges(500, 500, 600, 600);
+    assertEquals(2, result.length);
+    assertEquals(1, result[0]);
+    assertEquals(2, result[1]);
+    assertEquals(0, index.findLongEdges(0, 600, 100, 700).length);
+  }
+}
@@ -0,0 +1,165 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.PriorityScheduler;
+
+@SuppressWarnings("javadoc")
+public class LayeredLayoutTest {
+  private PriorityScheduler scheduler;
+
+  @Before
+  public void setup() {
+    scheduler = new PriorityScheduler(4);
+  }
+
+  @After
+  public void cleanup() {
+    scheduler.shutdownNow();
+    scheduler = null;
+  }
+
+  private static int countCrossings(CompactGraph graph, LayeredLayout layout) {
+    List<int[]> edges = new ArrayList<int[]>();
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      for (int i = 0; i < graph.getChildCount(id); i++) {
+        int child = graph.getChild(id, i);
+        if (layout.getLayer(child) == layout.getLayer(id) + 1) {
+          edges.add(new int[] { id, child });
+        }
+      }
+    }
+    int crossings = 0;
+    for (int i = 0; i < edges.size(); i++) {
+      for (int j = i + 1; j < edges.size(); j++) {
+        int[] e1 = edges.get(i);
+        int[] e2 = edges.get(j);
+        if (layout.getLayer(e1[0]) == layout.getLayer(e2[0])) {
+          int sourceOrder = layout.getPosition(e1[0]) - layout.getPosition(e2[0]);
+          int targetOrder = layout.getPosition(e1[1]) - layout.getPosition(e2[1]);
+          if ((sourceOrder < 0 && targetOrder > 0) || (sourceOrder > 0 && targetOrder < 0)) {
+            crossings++;
+          }
+        }
+      }
+    }
+    return crossings;
+  }
+
+  @Test
+  public void emptyGraphTest() {
+    LayeredLayout layout = new LayeredLayout(new CompactGraph());
+    layout.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+
+    assertEquals(0, layout.getLayerCount());
+  }
+
+  @Test
+  public void longestPathLayerTest() {
+    Node head = new Node("head");
+    Node a = new Node("a");
+    Node b = new Node("b");
+    Node tail = new Node("tail");
+    head.addChildNode(a);
+    a.addChildNode(b);
+    b.addChildNode(tail);
+    head.addChildNode(tail);
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(head, nodesById);
+    LayeredLayout layout = new LayeredLayout(graph);
+
+    assertEquals(4, layout.getLayerCount());
+    assertEquals(1, layout.getLayer(nodesById.indexOf(head)));
+    assertEquals(2, layout.getLayer(nodesById.indexOf(a)));
+    assertEquals(3, layout.getLayer(nodesById.indexOf(b)));
+    // tail must be after its deepest parent, not its shallowest
+    assertEquals(4, layout.getLayer(nodesById.indexOf(tail)));
+    for (int l = 1; l <= layout.getLayerCount(); l++) {
+      assertEquals(1, layout.getLayerSize(l));
+    }
+  }
+
+  @Test
+  public void positionsUniqueWithinLayerTest() {
+    Node head = new Node("head");
+    for (int i = 0; i < 5; i++) {
+      Node child = new Node("child" + i);
+      head.addChildNode(child);
+      child.addChildNode(new Node("grandchild" + i));
+    }
+    CompactGraph graph = new CompactGraph(head);
+    LayeredLayout layout = new LayeredLayout(graph);
+    layout.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+
+    assertEquals(3, layout.getLayerCount());
+    for (int l = 1; l <= layout.getLayerCount(); l++) {
+      boolean[] used = new boolean[layout.getLayerSize(l) + 1];
+      for (int id = 0; id < graph.getNodeCount(); id++) {
+        if (layout.getLayer(id) == l) {
+          int position = layout.getPosition(id);
+          assertTrue(position >= 1 && position <= layout.getLayerSize(l));
+          assertFalse(used[position]);
+          used[position] = true;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void orderLayersRemovesCrossingTest() {
+    Node head = new Node("head");
+    Node a = new Node("a");
+    Node b = new Node("b");
+    Node p = new Node("p");
+    Node q = new Node("q");
+    head.addChildNode(a);
+    head.addChildNode(b);
+    a.addChildNode(p);
+    a.addChildNode(q);
+    b.addChildNode(p);
+    CompactGraph graph = new CompactGraph(head);
+    LayeredLayout layout = new LayeredLayout(graph);
+
+    assertEquals(1, countCrossings(graph, layout));
+
+    layout.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+
+    assertEquals(0, countCrossings(graph, layout));
+  }
+
+  @Test
+  public void parallelMatchesSequentialTest() {
+    // wide enough that layers are split into several parallel chunks
+    Node head = new Node("head");
+    Node join = new Node();
+    List<Node> firstLayer = new ArrayList<Node>();
+    for (int i = 0; i < 20000; i++) {
+      Node child = new Node("child" + i);
+      head.addChildNode(child);
+      firstLayer.add(child);
+    }
+    for (int i = 0; i < firstLayer.size(); i++) {
+      Node grandchild = new Node("grandchild" + i);
+      // cross the edges so ordering has work to do
+      firstLayer.get(firstLayer.size() - 1 - i).addChildNode(grandchild);
+      firstLayer.get((i * 7) % firstLayer.size()).addChildNode(grandchild);
+      grandchild.addChildNode(join);
+    }
+    CompactGraph graph = new CompactGraph(head);
+    LayeredLayout sequential = new LayeredLayout(graph);
+    sequential.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+    LayeredLayout parallel = new LayeredLayout(graph, scheduler, 4);
+    parallel.orderLayers(LayeredLayout.DEFAULT_SWEEP_COUNT);
+
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      assertEquals(sequential.getLayer(id), parallel.getLayer(id));
+      assertEquals(sequential.getPosition(id), parallel.getPosition(id));
+    }
+  }
+}
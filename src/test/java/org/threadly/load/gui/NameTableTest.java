@@ -0,0 +1,115 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.PriorityScheduler;
+import org.threadly.load.ExecutableScript.ExecutionItem;
+import org.threadly.load.ScriptGraphBuilder;
+import org.threadly.util.StringUtils;
+
+@SuppressWarnings("javadoc")
+public class NameTableTest {
+  private static final String LONG_NAME = StringUtils.makeRandomString(64);
+
+  private PriorityScheduler scheduler;
+  private NameTable table;
+
+  @Before
+  public void setup() {
+    scheduler = new PriorityScheduler(4);
+    table = new NameTable();
+  }
+
+  @After
+  public void cleanup() {
+    scheduler.shutdownNow();
+    scheduler = null;
+    table = null;
+  }
+
+  @Test
+  public void internSameNameTest() {
+    String name = table.intern(new String("step"));
+
+    assertSame(name, table.intern(new String("step")));
+    assertEquals(1, table.size());
+    assertEquals("step", name);
+  }
+
+  @Test
+  public void internDistinctNamesTest() {
+    String name1 = table.intern("step1");
+    String name2 = table.intern("step2");
+
+    assertEquals(2, table.size());
+    assertEquals("step1", name1);
+    assertEquals("step2", name2);
+  }
+
+  @Test
+  public void nonLatinNameTest() {
+    String name = LONG_NAME + "\u4E2D";
+
+    assertSame(table.intern(name), table.intern(new String(name)));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void internNullFail() {
+    table.intern(null);
+  }
+
+  @Test
+  public void concurrentInternTest() throws Exception {
+    List<Future<String[]>> futures = new ArrayList<Future<String[]>>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(scheduler.submit(new Callable<String[]>() {
+        @Override
+        public String[] call() {
+          String[] names = new String[500];
+          for (int i = 0; i < names.length; i++) {
+            names[i] = table.intern(new String((i % 2 == 0 ? "step" : LONG_NAME) + i));
+          }
+          return names;
+        }
+      }));
+    }
+    String[] expected = futures.get(0).get();
+    for (Future<String[]> f : futures) {
+      String[] names = f.get();
+      for (int i = 0; i < names.length; i++) {
+        assertSame(expected[i], names[i]);
+      }
+    }
+
+    assertEquals(expected.length, table.size());
+  }
+
+  @Test
+  public void builderSharesNamesTest() {
+    List<ExecutionItem> items = new ArrayList<ExecutionItem>();
+    for (int i = 0; i < 10; i++) {
+      items.add(SyntheticGraphGenerator.makeItem(new String(LONG_NAME), null));
+    }
+    Node head = ScriptGraphBuilder.makeGraph(SyntheticGraphGenerator.makeChildItems(false, items));
+    CompactGraph graph = new CompactGraph(head);
+
+    String name = null;
+    for (int id = 1; id < graph.getNodeCount(); id++) {
+      if (! graph.isJoinNode(id)) {
+        if (name == null) {
+          name = graph.getName(id);
+        }
+        assertSame(name, graph.getName(id));
+      }
+    }
+    assertEquals(LONG_NAME, name);
+  }
+}
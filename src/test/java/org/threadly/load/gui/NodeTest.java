@@ -2,6 +2,15 @@ package org.threadly.load.gui;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,6 +20,206 @@ import org.threadly.util.StringUtils;
 public class NodeTest {
   private static final String TEST_NODE_NAME = StringUtils.makeRandomString(5);
   
+  /**
+   * The rules {@link Node#cleanGraph()} applied when it cleaned the graph recursively, restarting 
+   * the inspection of a node's children any time that node changed.  Clean counts are tracked in 
+   * the provided map since the node's own count is private.
+   */
+  private static void recursiveClean(Node node, Map<Node, Integer> cleanCounts) {
+    if (Integer.valueOf(node.getModificationCount()).equals(cleanCounts.get(node))) {
+      return;
+    }
+    List<Node> children = node.getChildNodes();
+    List<Node> parents = node.getParentNodes();
+    if (! node.isJoinNode()) {
+      if (parents.size() == 1) {
+        Node parentNode = parents.get(0);
+        if (parentNode.isJoinNode() && parentNode.getChildNodes().size() < 2) {
+          for (Node n : parentNode.getParentNodes()) {
+            n.removeChildNode(parentNode);
+            n.addChildNode(node);
+          }
+          parentNode.deleteFromGraph();
+        }
+      }
+    } else {
+      while (true) {
+        if (children.isEmpty()) {
+          node.deleteFromGraph();
+          cleanCounts.put(node, node.getModificationCount());
+          return;
+        } else if (parents.size() == 1) {
+          Node parentNode = parents.get(0);
+          for (Node childNode : children) {
+            parentNode.addChildNode(childNode);
+          }
+          parentNode.removeChildNode(node);
+          cleanCounts.put(node, node.getModificationCount());
+          recursiveClean(parentNode, cleanCounts);
+          return;
+        }
+        boolean modifiedNodes = false;
+        List<Node> originalNodes;
+        int startChangeCount;
+        do {
+          startChangeCount = node.getModificationCount();
+          boolean allChildrenAreJoinNodes = ! children.isEmpty();
+          for (Node n : children) {
+            if (! n.isJoinNode()) {
+              allChildrenAreJoinNodes = false;
+              break;
+            }
+          }
+          if (allChildrenAreJoinNodes) {
+            originalNodes = new ArrayList<Node>(children);
+            for (Node childNode: originalNodes) {
+              if (childNode.getParentNodes().size() == 1) {
+                for (Node childsChild : childNode.getChildNodes()) {
+                  node.addChildNode(childsChild);
+                }
+                modifiedNodes = node.removeChildNode(childNode) || 
+                                  modifiedNodes || ! childNode.getChildNodes().isEmpty();
+              }
+            }
+          } else {
+            originalNodes = null;
+          }
+        } while (originalNodes != null && startChangeCount != node.getModificationCount());
+        if (! modifiedNodes) {
+          break;
+        }
+      }
+    }
+    cleanCounts.put(node, node.getModificationCount());
+    tillConsistent: while (true) {
+      int startChangeCount = node.getModificationCount();
+      for (Node childNode : children) {
+        recursiveClean(childNode, cleanCounts);
+        if (startChangeCount != node.getModificationCount()) {
+          continue tillConsistent;
+        }
+      }
+      break;
+    }
+    cleanCounts.put(node, node.getModificationCount());
+  }
+  
+  // every node connected to the head, in an order which only depends on the graph's structure
+  private static List<Node> collectNodes(Node head) {
+    List<Node> result = new ArrayList<Node>();
+    Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    ArrayDeque<Node> queue = new ArrayDeque<Node>();
+    seen.add(head);
+    queue.add(head);
+    while (! queue.isEmpty()) {
+      Node node = queue.poll();
+      result.add(node);
+      for (Node n : node.getChildNodes()) {
+        if (seen.add(n)) {
+          queue.add(n);
+        }
+      }
+      for (Node n : node.getParentNodes()) {
+        if (seen.add(n)) {
+          queue.add(n);
+        }
+      }
+    }
+    return result;
+  }
+  
+  private static List<Integer> indexes(List<Node> nodes, Map<Node, Integer> nodeIndexes) {
+    List<Integer> result = new ArrayList<Integer>(nodes.size());
+    for (Node n : nodes) {
+      result.add(nodeIndexes.get(n));
+    }
+    return result;
+  }
+  
+  private static Map<Node, Integer> indexNodes(List<Node> nodes) {
+    Map<Node, Integer> result = new IdentityHashMap<Node, Integer>();
+    for (int i = 0; i < nodes.size(); i++) {
+      result.put(nodes.get(i), i);
+    }
+    return result;
+  }
+  
+  /**
+   * Cleans one copy of a graph with {@link Node#cleanGraph()} and another with the recursive 
+   * rules, and verifies every node left in the graph has the same children and parents in the 
+   * same order.
+   */
+  private static void verifyCleanMatchesRecursive(Node head, Node copyHead) {
+    List<Node> nodes = collectNodes(head);
+    List<Node> copyNodes = collectNodes(copyHead);
+    assertEquals(nodes.size(), copyNodes.size());
+    Map<Node, Integer> nodeIndexes = indexNodes(nodes);
+    Map<Node, Integer> copyNodeIndexes = indexNodes(copyNodes);
+    
+    head.cleanGraph();
+    recursiveClean(copyHead, new IdentityHashMap<Node, Integer>());
+    
+    List<Node> cleanedNodes = collectNodes(head);
+    assertEquals(collectNodes(copyHead).size(), cleanedNodes.size());
+    for (Node node : cleanedNodes) {
+      Node copyNode = copyNodes.get(nodeIndexes.get(node));
+      assertEquals(indexes(copyNode.getChildNodes(), copyNodeIndexes), 
+                   indexes(node.getChildNodes(), nodeIndexes));
+      assertEquals(indexes(copyNode.getParentNodes(), copyNodeIndexes), 
+                   indexes(node.getParentNodes(), nodeIndexes));
+    }
+  }
+  
+  /**
+   * Adds a diamond of two or three branches which fork and join again.  Forks may be join nodes 
+   * or steps, branches may start or end with extra join nodes, and may contain a nested diamond.
+   */
+  private static Node addDiamond(Node previous, Random random, int depth) {
+    Node fork = random.nextBoolean() ? new Node() : new Node("fork");
+    previous.addChildNode(fork);
+    Node join = new Node();
+    int branches = 2 + random.nextInt(2);
+    for (int b = 0; b < branches; b++) {
+      Node branch = fork;
+      if (random.nextBoolean()) {
+        Node branchJoin = new Node();
+        branch.addChildNode(branchJoin);
+        branch = branchJoin;
+      }
+      Node step = new Node("step" + b);
+      branch.addChildNode(step);
+      branch = step;
+      if (depth > 1 && random.nextBoolean()) {
+        branch = addDiamond(branch, random, depth - 1);
+      }
+      if (random.nextBoolean()) {
+        Node branchJoin = new Node();
+        branch.addChildNode(branchJoin);
+        branch = branchJoin;
+      }
+      branch.addChildNode(join);
+    }
+    if (random.nextInt(4) == 0) {
+      // a branch without any steps
+      fork.addChildNode(join);
+    }
+    return join;
+  }
+  
+  private static Node makeDiamondGraph(long seed) {
+    Random random = new Random(seed);
+    Node head = new Node("start");
+    Node current = head;
+    int diamonds = 1 + random.nextInt(3);
+    for (int i = 0; i < diamonds; i++) {
+      current = addDiamond(current, random, 3);
+    }
+    if (random.nextBoolean()) {
+      current.addChildNode(new Node("end"));
+    }
+    return head;
+  }
+  
   private Node joinNode;
   private Node node;
   
@@ -32,6 +241,19 @@ public class NodeTest {
     assertFalse(node.isJoinNode());
   }
   
+  @Test
+  public void getModificationCountTest() {
+    int startCount = node.getModificationCount();
+    node.addChildNode(joinNode);
+    
+    assertTrue(startCount != node.getModificationCount());
+    
+    int addedCount = node.getModificationCount();
+    node.addChildNode(joinNode);  // already a child, no change
+    
+    assertEquals(addedCount, node.getModificationCount());
+  }
+  
   @Test
   public void getNameTest() {
     assertTrue(joinNode.getName().isEmpty());
@@ -45,10 +267,137 @@ public class NodeTest {
     assertTrue(joinNode.getParentNodes().contains(node));
   }
   
+  @Test
+  public void moveChildNodesTest() {
+    Node child1 = new Node("child1");
+    Node child2 = new Node("child2");
+    joinNode.addChildNode(child1);
+    joinNode.addChildNode(child2);
+    joinNode.moveChildNodes(node);
+    
+    assertTrue(joinNode.getChildNodes().isEmpty());
+    assertEquals(2, node.getChildNodes().size());
+    assertSame(child1, node.getChildNodes().get(0));
+    assertSame(child2, node.getChildNodes().get(1));
+    assertEquals(1, child1.getParentNodes().size());
+    assertSame(node, child1.getParentNodes().get(0));
+  }
+  
+  @Test
+  public void moveChildNodesWideTest() {
+    int childCount = 100000;
+    Node[] children = new Node[childCount];
+    for (int i = 0; i < childCount; i++) {
+      children[i] = new Node("child" + i);
+    }
+    joinNode.addDistinctChildNodes(children, 0, childCount);
+    int modificationCount = node.getModificationCount();
+    joinNode.moveChildNodes(node);
+    
+    assertTrue(joinNode.getChildNodes().isEmpty());
+    assertTrue(node.getModificationCount() != modificationCount);
+    List<Node> movedChildren = node.getChildNodes();
+    assertEquals(childCount, movedChildren.size());
+    for (int i = 0; i < childCount; i++) {
+      assertSame(children[i], movedChildren.get(i));
+      assertEquals(1, children[i].getParentNodes().size());
+      assertSame(node, children[i].getParentNodes().get(0));
+    }
+  }
+  
   @Test
   public void deleteFromGraphTest() {
     node.addChildNode(joinNode);
     joinNode.deleteFromGraph();
     assertFalse(node.getChildNodes().contains(joinNode));
   }
+  
+  @Test
+  public void cleanGraphRemovesTailJoinNodeTest() {
+    node.addChildNode(joinNode);
+    node.cleanGraph();
+    assertTrue(node.getChildNodes().isEmpty());
+  }
+  
+  @Test
+  public void cleanGraphCollapsesSingleParentJoinNodeTest() {
+    Node child1 = new Node("child1");
+    Node child2 = new Node("child2");
+    node.addChildNode(joinNode);
+    joinNode.addChildNode(child1);
+    joinNode.addChildNode(child2);
+    node.cleanGraph();
+    
+    assertEquals(2, node.getChildNodes().size());
+    assertTrue(node.getChildNodes().contains(child1));
+    assertTrue(node.getChildNodes().contains(child2));
+  }
+  
+  @Test
+  public void cleanGraphLongChainTest() {
+    int chainLength = 100000;
+    Node current = node;
+    for (int i = 0; i < chainLength; i++) {
+      Node join = new Node();
+      current.addChildNode(join);
+      Node next = new Node(Integer.toString(i));
+      join.addChildNode(next);
+      current = next;
+    }
+    node.cleanGraph();
+    
+    int count = 0;
+    current = node;
+    while (! current.getChildNodes().isEmpty()) {
+      assertEquals(1, current.getChildNodes().size());
+      current = current.getChildNodes().get(0);
+      assertFalse(current.isJoinNode());
+      count++;
+    }
+    assertEquals(chainLength, count);
+  }
+  
+  @Test
+  public void cleanGraphWideForkTest() {
+    int branchCount = 50000;
+    Node fork = new Node("fork");
+    node.addChildNode(fork);
+    Node[] branches = new Node[branchCount];
+    for (int i = 0; i < branchCount; i++) {
+      branches[i] = new Node();
+      branches[i].addChildNode(new Node("a" + i));
+      branches[i].addChildNode(new Node("b" + i));
+    }
+    fork.addDistinctChildNodes(branches, 0, branchCount);
+    node.cleanGraph();
+    
+    List<Node> children = fork.getChildNodes();
+    assertEquals(branchCount * 2, children.size());
+    for (int i = 0; i < branchCount; i++) {
+      assertEquals("a" + i, children.get(i * 2).getName());
+      assertEquals("b" + i, children.get(i * 2 + 1).getName());
+    }
+  }
+  
+  @Test
+  public void cleanGraphMatchesRecursiveForkJoinTest() {
+    for (int depth = 1; depth <= 4; depth++) {
+      for (int fanOut = 1; fanOut <= 3; fanOut++) {
+        for (int stepsPerBranch = 0; stepsPerBranch <= 2; stepsPerBranch++) {
+          for (int seed = 0; seed < 5; seed++) {
+            SyntheticGraphGenerator generator = 
+                new SyntheticGraphGenerator(depth, fanOut, stepsPerBranch, .5, 0, seed);
+            verifyCleanMatchesRecursive(generator.makeNodeGraph(), generator.makeNodeGraph());
+          }
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void cleanGraphMatchesRecursiveDiamondTest() {
+    for (int seed = 0; seed < 200; seed++) {
+      verifyCleanMatchesRecursive(makeDiamondGraph(seed), makeDiamondGraph(seed));
+    }
+  }
 }
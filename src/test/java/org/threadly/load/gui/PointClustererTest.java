@@ -0,0 +1,114 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.swt.graphics.Point;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.PriorityScheduler;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+
+@SuppressWarnings("javadoc")
+public class PointClustererTest {
+  private static final Point BOUNDS = new Point(1000, 1000);
+
+  private PriorityScheduler scheduler;
+  private CompactGraph graph;
+
+  @Before
+  public void setup() {
+    scheduler = new PriorityScheduler(4);
+    // head -> parent -> { child1, child2 }
+    Node head = new Node("head");
+    Node parent = new Node("parent");
+    head.addChildNode(parent);
+    parent.addChildNode(new Node("child1"));
+    parent.addChildNode(new Node("child2"));
+    graph = new CompactGraph(head);
+  }
+
+  @After
+  public void cleanup() {
+    scheduler.shutdownNow();
+    scheduler = null;
+    graph = null;
+  }
+
+  private static int initialY(int id) {
+    return (id * 97) % BOUNDS.y;
+  }
+
+  private static GuiPoint[] makePoints(int count) {
+    GuiPoint[] points = new GuiPoint[count];
+    for (int id = 0; id < points.length; id++) {
+      points[id] = new GuiPoint(0, BOUNDS, new Point(id * 10, initialY(id)));
+    }
+    return points;
+  }
+
+  private static int distanceToParent(GuiPoint[] points, int id) {
+    return Math.abs(points[id].getY() - points[1].getY());
+  }
+
+  @Test
+  public void zeroIterationsTest() {
+    GuiPoint[] points = makePoints(graph.getNodeCount());
+    new PointClusterer(graph, points, null).cluster(0);
+
+    for (int id = 0; id < points.length; id++) {
+      assertEquals(initialY(id), points[id].getY());
+    }
+  }
+
+  @Test
+  public void moreIterationsClusterTighterTest() {
+    GuiPoint[] onePass = makePoints(graph.getNodeCount());
+    new PointClusterer(graph, onePass, null).cluster(1);
+    GuiPoint[] threePasses = makePoints(graph.getNodeCount());
+    new PointClusterer(graph, threePasses, null).cluster(3);
+
+    for (int id = 2; id < onePass.length; id++) {
+      assertTrue(distanceToParent(onePass, id) < initialY(id) - initialY(1));
+      assertTrue(distanceToParent(threePasses, id) < distanceToParent(onePass, id));
+    }
+  }
+
+  @Test
+  public void keptPositionsNotMovedTest() {
+    GuiPoint[] points = makePoints(graph.getNodeCount());
+    boolean[] keptPositions = new boolean[points.length];
+    keptPositions[2] = true;
+    new PointClusterer(graph, points, keptPositions).cluster(3);
+
+    assertEquals(initialY(2), points[2].getY());
+    assertTrue(points[3].getY() != initialY(3));
+  }
+
+  @Test
+  public void parallelMatchesSequentialTest() {
+    // wide enough that frontiers are split into several parallel chunks
+    Node head = new Node("head");
+    Node join = new Node();
+    Node[] firstLayer = new Node[20000];
+    for (int i = 0; i < firstLayer.length; i++) {
+      firstLayer[i] = new Node("child" + i);
+      head.addChildNode(firstLayer[i]);
+    }
+    for (int i = 0; i < firstLayer.length; i++) {
+      Node grandchild = new Node("grandchild" + i);
+      firstLayer[firstLayer.length - 1 - i].addChildNode(grandchild);
+      firstLayer[(i * 7) % firstLayer.length].addChildNode(grandchild);
+      grandchild.addChildNode(join);
+    }
+    CompactGraph wideGraph = new CompactGraph(head);
+    GuiPoint[] sequential = makePoints(wideGraph.getNodeCount());
+    new PointClusterer(wideGraph, sequential, null).cluster(3);
+    GuiPoint[] parallel = makePoints(wideGraph.getNodeCount());
+    new PointClusterer(wideGraph, parallel, null, scheduler, 4).cluster(3);
+
+    for (int id = 0; id < sequential.length; id++) {
+      assertEquals(sequential[id].getY(), parallel[id].getY());
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.SameThreadSubmitterExecutor;
+import org.threadly.load.gui.AmbushGraph.GraphDataSet;
+import org.threadly.load.gui.AmbushGraph.GuiPoint;
+import org.threadly.load.gui.PointPlacer.Placement;
+import org.threadly.load.gui.PointPlacer.ProgressListener;
+
+@SuppressWarnings("javadoc")
+public class PointPlacerTest {
+  private static final int X_SIZE = 1024;
+  private static final int Y_SIZE = 768;
+  private PointPlacer placer;
+  private TestPlacement placement;
+
+  @Before
+  public void setup() {
+    placer = new PointPlacer(SameThreadSubmitterExecutor.instance(), 1, AmbushGraph.POINT_COLOR_COUNT);
+    placement = new TestPlacement();
+  }
+
+  private static Node makeForkJoin() {
+    Node head = new Node("head");
+    Node join = new Node("join");
+    for (int i = 0; i < 3; i++) {
+      Node branch = new Node("branch" + i);
+      head.addChildNode(branch);
+      branch.addChildNode(join);
+    }
+    return head;
+  }
+
+  private static int[] getModificationCounts(List<Node> nodesById) {
+    int[] result = new int[nodesById.size()];
+    for (int id = 0; id < result.length; id++) {
+      result[id] = nodesById.get(id).getModificationCount();
+    }
+    return result;
+  }
+
+  @Test
+  public void placeLayeredTest() {
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(makeForkJoin(), nodesById);
+    GraphDataSet dataSet = placer.placeLayered(placement, new GraphDataSet(X_SIZE, Y_SIZE), graph,
+                                               nodesById, getModificationCounts(nodesById));
+
+    assertNotNull(dataSet);
+    assertEquals(graph.getNodeCount(), dataSet.points.length);
+    assertEquals(graph.getNodeCount(), placement.addedCount);
+    for (Node node : nodesById) {
+      assertNotNull(dataSet.guiNodeMap.get(node));
+    }
+  }
+
+  @Test
+  public void placeLayeredCancelledTest() {
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(makeForkJoin(), nodesById);
+    placement.cancelled = true;
+
+    assertNull(placer.placeLayered(placement, new GraphDataSet(X_SIZE, Y_SIZE), graph,
+                                   nodesById, getModificationCounts(nodesById)));
+  }
+
+  @Test
+  public void placeForceDirectedTest() {
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(makeForkJoin(), nodesById);
+    GraphDataSet dataSet = new GraphDataSet(X_SIZE, Y_SIZE);
+    ForceDirectedLayout forceLayout =
+        placer.placeForceDirected(placement, dataSet, graph, nodesById,
+                                  getModificationCounts(nodesById), new Random(0));
+
+    assertNotNull(forceLayout);
+    assertEquals(0, dataSet.clusterIterations);
+    assertEquals(graph.getNodeCount(), dataSet.points.length);
+  }
+
+  @Test
+  public void placeCachedWithoutCacheTest() {
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(makeForkJoin(), nodesById);
+
+    assertNull(placer.placeCached(placement, new GraphDataSet(X_SIZE, Y_SIZE), graph, nodesById,
+                                  getModificationCounts(nodesById), null, 0));
+  }
+
+  @Test
+  public void placeIncrementallyKeepsPositionsTest() {
+    Node head = makeForkJoin();
+    List<Node> nodesById = new ArrayList<Node>();
+    CompactGraph graph = new CompactGraph(head, nodesById);
+    GraphDataSet previous = new GraphDataSet(X_SIZE, Y_SIZE);
+    PointPlacer.setLayeredData(previous, graph, nodesById, getModificationCounts(nodesById),
+                               new LayeredLayout(graph));
+    Node tail = new Node("tail");
+    nodesById.get(nodesById.size() - 1).addChildNode(tail);
+    List<Node> newNodesById = new ArrayList<Node>();
+    CompactGraph newGraph = new CompactGraph(head, newNodesById);
+    GuiPoint[] previousPoints = new GuiPoint[newGraph.getNodeCount()];
+    for (int id = 0; id < previousPoints.length; id++) {
+      previousPoints[id] = previous.guiNodeMap.get(newNodesById.get(id));
+    }
+    GraphDataSet dataSet =
+        placer.placeIncrementally(placement, new GraphDataSet(X_SIZE, Y_SIZE), newGraph, newNodesById,
+                                  getModificationCounts(newNodesById), previousPoints, new Random(0));
+
+    assertNotNull(dataSet);
+    assertEquals(1, placement.addedCount);
+    for (Node node : nodesById) {
+      GuiPoint previousPoint = previous.guiNodeMap.get(node);
+      GuiPoint point = dataSet.guiNodeMap.get(node);
+      assertEquals(previousPoint.getX(), point.getX());
+      assertEquals(previousPoint.getY(), point.getY());
+    }
+    assertNotNull(dataSet.guiNodeMap.get(tail));
+  }
+
+  private static class TestPlacement implements Placement, ProgressListener {
+    private boolean cancelled = false;
+    private int addedCount = 0;
+
+    @Override
+    public ProgressListener getProgress() {
+      return this;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public void setPhase(String phase) {
+      // ignored
+    }
+
+    @Override
+    public void nodeAdded() {
+      addedCount++;
+    }
+  }
+}
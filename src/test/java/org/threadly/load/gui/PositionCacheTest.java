@@ -0,0 +1,155 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.eclipse.swt.graphics.Point;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.load.gui.AmbushGraph.LayoutMode;
+
+@SuppressWarnings("javadoc")
+public class PositionCacheTest {
+  private static final long KEY = 0x1234567890ABCDEFL;
+  private static final Point BOUNDS = new Point(1000, 500);
+
+  private File directory;
+  private PositionCache cache;
+  private int[] colors;
+  private int[] xPositions;
+  private int[] yPositions;
+
+  @Before
+  public void setup() throws IOException {
+    directory = File.createTempFile("positionCache", "");
+    directory.delete();
+    cache = new PositionCache(directory);
+    colors = new int[] { 0, 5, 63, 12 };
+    xPositions = new int[] { 10, 200, 400, 990 };
+    yPositions = new int[] { 250, 20, 480, 250 };
+  }
+
+  @After
+  public void cleanup() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    directory.delete();
+    directory = null;
+    cache = null;
+  }
+
+  @Test
+  public void missingEntryTest() {
+    int[] loadedColors = new int[colors.length];
+    
+    assertFalse(cache.load(KEY, BOUNDS, loadedColors, new int[colors.length], new int[colors.length]));
+    assertArrayEquals(new int[colors.length], loadedColors);
+  }
+
+  @Test
+  public void storeAndLoadTest() throws IOException {
+    cache.store(KEY, BOUNDS, colors, xPositions, yPositions);
+    int[] loadedColors = new int[colors.length];
+    int[] loadedX = new int[colors.length];
+    int[] loadedY = new int[colors.length];
+
+    assertTrue(cache.load(KEY, BOUNDS, loadedColors, loadedX, loadedY));
+    assertArrayEquals(colors, loadedColors);
+    assertArrayEquals(xPositions, loadedX);
+    assertArrayEquals(yPositions, loadedY);
+    // temp files should not be left behind
+    assertEquals(1, directory.listFiles().length);
+  }
+
+  @Test
+  public void storeReplacesTest() throws IOException {
+    cache.store(KEY, BOUNDS, colors, xPositions, yPositions);
+    cache.store(KEY, BOUNDS, colors, yPositions, xPositions);
+    int[] loadedX = new int[colors.length];
+    int[] loadedY = new int[colors.length];
+
+    assertTrue(cache.load(KEY, BOUNDS, new int[colors.length], loadedX, loadedY));
+    assertArrayEquals(yPositions, loadedX);
+    assertArrayEquals(xPositions, loadedY);
+  }
+
+  @Test
+  public void differentKeyTest() throws IOException {
+    cache.store(KEY, BOUNDS, colors, xPositions, yPositions);
+
+    assertFalse(cache.load(KEY + 1, BOUNDS, new int[colors.length], 
+                           new int[colors.length], new int[colors.length]));
+  }
+
+  @Test
+  public void nodeCountMismatchTest() throws IOException {
+    cache.store(KEY, BOUNDS, colors, xPositions, yPositions);
+    int[] loadedX = new int[colors.length + 1];
+
+    assertFalse(cache.load(KEY, BOUNDS, new int[loadedX.length], loadedX, new int[loadedX.length]));
+    assertArrayEquals(new int[loadedX.length], loadedX);
+  }
+
+  @Test
+  public void scaledToBoundsTest() throws IOException {
+    cache.store(KEY, BOUNDS, colors, xPositions, yPositions);
+    int[] loadedX = new int[colors.length];
+    int[] loadedY = new int[colors.length];
+
+    assertTrue(cache.load(KEY, new Point(BOUNDS.x * 2, BOUNDS.y / 2), 
+                          new int[colors.length], loadedX, loadedY));
+    for (int i = 0; i < colors.length; i++) {
+      assertEquals(xPositions[i] * 2, loadedX[i]);
+      assertEquals(yPositions[i] / 2, loadedY[i]);
+    }
+  }
+
+  @Test
+  public void corruptEntryIgnoredTest() throws IOException {
+    directory.mkdirs();
+    FileOutputStream out = new FileOutputStream(cache.getCacheFile(KEY));
+    try {
+      out.write(new byte[] { 1, 2, 3 });
+    } finally {
+      out.close();
+    }
+
+    assertFalse(cache.load(KEY, BOUNDS, new int[colors.length], 
+                           new int[colors.length], new int[colors.length]));
+  }
+
+  @Test
+  public void truncatedEntryIgnoredTest() throws IOException {
+    cache.store(KEY, BOUNDS, colors, xPositions, yPositions);
+    RandomAccessFile file = new RandomAccessFile(cache.getCacheFile(KEY), "rw");
+    try {
+      file.setLength(file.length() - 4);
+    } finally {
+      file.close();
+    }
+    int[] loadedX = new int[colors.length];
+
+    assertFalse(cache.load(KEY, BOUNDS, new int[colors.length], loadedX, new int[colors.length]));
+    assertArrayEquals(new int[colors.length], loadedX);
+  }
+  
+  @Test
+  public void positionKeyTest() {
+    long layeredKey = AmbushGraph.makePositionKey(KEY, LayoutMode.LAYERED);
+    
+    assertEquals(layeredKey, AmbushGraph.makePositionKey(KEY, LayoutMode.LAYERED));
+    assertTrue(layeredKey != AmbushGraph.makePositionKey(KEY, LayoutMode.FORCE_DIRECTED));
+    assertTrue(layeredKey != AmbushGraph.makePositionKey(KEY + 1, LayoutMode.LAYERED));
+    // keys from before layouts were versioned must not be reused
+    assertTrue(layeredKey != CompactGraph.mixHash(KEY, LayoutMode.LAYERED.name().hashCode()));
+  }
+}
@@ -0,0 +1,154 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class StepEventBufferTest {
+  private StepEventBuffer buffer;
+  private List<Node> handledNodes;
+  private List<Byte> handledStates;
+  private StepEventBuffer.EventHandler handler;
+
+  @Before
+  public void setup() {
+    buffer = new StepEventBuffer(8);
+    handledNodes = new ArrayList<Node>();
+    handledStates = new ArrayList<Byte>();
+    handler = new StepEventBuffer.EventHandler() {
+      @Override
+      public void handleEvent(Node node, byte state) {
+        handledNodes.add(node);
+        handledStates.add(state);
+      }
+    };
+  }
+
+  @After
+  public void cleanup() {
+    buffer = null;
+    handledNodes = null;
+    handledStates = null;
+    handler = null;
+  }
+
+  @Test
+  public void drainEmptyTest() {
+    assertFalse(buffer.hasEvents());
+    assertEquals(0, buffer.drain(handler, 10));
+  }
+
+  @Test
+  public void offerAndDrainInOrderTest() {
+    Node node1 = new Node("node1");
+    Node node2 = new Node("node2");
+    assertTrue(buffer.offer(node1, (byte)1));
+    assertTrue(buffer.offer(node2, (byte)2));
+    assertTrue(buffer.offer(node1, (byte)3));
+
+    assertTrue(buffer.hasEvents());
+    assertEquals(3, buffer.drain(handler, 10));
+    assertFalse(buffer.hasEvents());
+    assertTrue(node1 == handledNodes.get(0));
+    assertTrue(node2 == handledNodes.get(1));
+    assertTrue(node1 == handledNodes.get(2));
+    assertEquals(1, (byte)handledStates.get(0));
+    assertEquals(2, (byte)handledStates.get(1));
+    assertEquals(3, (byte)handledStates.get(2));
+  }
+
+  @Test
+  public void drainLimitedBatchTest() {
+    Node node = new Node("node");
+    for (int i = 0; i < 5; i++) {
+      buffer.offer(node, (byte)i);
+    }
+
+    assertEquals(2, buffer.drain(handler, 2));
+    assertTrue(buffer.hasEvents());
+    assertEquals(3, buffer.drain(handler, 10));
+    assertEquals(5, handledStates.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, (byte)handledStates.get(i));
+    }
+  }
+
+  @Test
+  public void fullBufferDropsTest() {
+    Node node = new Node("node");
+    for (int i = 0; i < 8; i++) {
+      assertTrue(buffer.offer(node, (byte)1));
+    }
+
+    assertFalse(buffer.offer(node, (byte)1));
+    assertEquals(1, buffer.getDroppedCount());
+
+    buffer.drain(handler, 1);
+    // space freed by draining can be reused
+    assertTrue(buffer.offer(node, (byte)1));
+    assertEquals(8, buffer.drain(handler, 100));
+  }
+
+  @Test
+  public void concurrentProducersTest() throws InterruptedException {
+    final int producerCount = 4;
+    final int eventsPerProducer = 20000;
+    final StepEventBuffer concurrentBuffer = new StepEventBuffer(1024);
+    final Node[] producerNodes = new Node[producerCount];
+    final AtomicInteger[] lastState = new AtomicInteger[producerCount];
+    Thread[] producers = new Thread[producerCount];
+    for (int i = 0; i < producerCount; i++) {
+      producerNodes[i] = new Node("producer" + i);
+      lastState[i] = new AtomicInteger(-1);
+      final Node node = producerNodes[i];
+      producers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int e = 0; e < eventsPerProducer; e++) {
+            while (! concurrentBuffer.offer(node, (byte)(e % 100))) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      producers[i].start();
+    }
+    final AtomicInteger received = new AtomicInteger();
+    final AtomicInteger outOfOrder = new AtomicInteger();
+    StepEventBuffer.EventHandler countingHandler = new StepEventBuffer.EventHandler() {
+      @Override
+      public void handleEvent(Node node, byte state) {
+        for (int i = 0; i < producerCount; i++) {
+          if (producerNodes[i] == node) {
+            // each producer's events must arrive in the order it offered them
+            int expected = (lastState[i].get() + 1) % 100;
+            if (state != expected) {
+              outOfOrder.incrementAndGet();
+            }
+            lastState[i].set(state);
+          }
+        }
+        received.incrementAndGet();
+      }
+    };
+    while (received.get() < producerCount * eventsPerProducer) {
+      if (concurrentBuffer.drain(countingHandler, 256) == 0) {
+        Thread.yield();
+      }
+    }
+    for (Thread t : producers) {
+      t.join();
+    }
+
+    assertEquals(producerCount * eventsPerProducer, received.get());
+    assertEquals(0, outOfOrder.get());
+    assertFalse(concurrentBuffer.hasEvents());
+  }
+}
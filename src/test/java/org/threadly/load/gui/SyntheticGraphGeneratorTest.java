@@ -0,0 +1,88 @@
+package org.threadly.load.gui;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.threadly.load.ScriptGraphBuilder;
+
+@SuppressWarnings("javadoc")
+public class SyntheticGraphGeneratorTest {
+  private static int countNamedNodes(CompactGraph graph) {
+    int result = 0;
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      if (! graph.isJoinNode(id)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void getStepCountTest() {
+    assertEquals(3 * 5, new SyntheticGraphGenerator(1, 3, 5, .5, 0, 0).getStepCount());
+    assertEquals((1 + 3 + 9) * 3 * 2, new SyntheticGraphGenerator(3, 3, 2, .5, 0, 0).getStepCount());
+  }
+
+  @Test
+  public void makeChildItemsTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 3, 2, .5, 0, 0);
+    CompactGraph graph = new CompactGraph(ScriptGraphBuilder.makeGraph(generator.makeChildItems()));
+
+    // the start node is also named
+    assertEquals(generator.getStepCount() + 1, countNamedNodes(graph));
+  }
+
+  @Test
+  public void makeNodeGraphTest() {
+    SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3, 3, 2, .5, 0, 0);
+    Node head = generator.makeNodeGraph();
+    head.cleanGraph();
+    CompactGraph graph = new CompactGraph(head);
+
+    assertEquals(generator.getStepCount() + 1, countNamedNodes(graph));
+  }
+
+  @Test
+  public void nameLengthTest() {
+    int nameLength = 30;
+    CompactGraph graph =
+        new CompactGraph(new SyntheticGraphGenerator(2, 2, 2, .5, nameLength, 0).makeNodeGraph());
+    for (int id = 1; id < graph.getNodeCount(); id++) {
+      if (! graph.isJoinNode(id)) {
+        assertEquals(nameLength, graph.getName(id).length());
+      }
+    }
+  }
+
+  @Test
+  public void sameSeedSameGraphTest() {
+    CompactGraph graph1 =
+        new CompactGraph(new SyntheticGraphGenerator(3, 4, 2, .5, 10, 42).makeNodeGraph());
+    CompactGraph graph2 =
+        new CompactGraph(new SyntheticGraphGenerator(3, 4, 2, .5, 10, 42).makeNodeGraph());
+
+    assertEquals(graph1.getNodeCount(), graph2.getNodeCount());
+    assertEquals(graph1.getEdgeCount(), graph2.getEdgeCount());
+    for (int id = 0; id < graph1.getNodeCount(); id++) {
+      assertEquals(graph1.getName(id), graph2.getName(id));
+    }
+  }
+
+  @Test
+  public void joinDensityTest() {
+    // with no parallel groups the graph is a single chain
+    CompactGraph sequential =
+        new CompactGraph(new SyntheticGraphGenerator(3, 3, 2, 0, 0, 0).makeNodeGraph());
+    for (int id = 0; id < sequential.getNodeCount(); id++) {
+      assertTrue(sequential.getChildCount(id) <= 1);
+    }
+    CompactGraph parallel =
+        new CompactGraph(new SyntheticGraphGenerator(3, 3, 2, 1, 0, 0).makeNodeGraph());
+    assertTrue(parallel.getEdgeCount() > sequential.getEdgeCount());
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void invalidJoinDensityFail() {
+    new SyntheticGraphGenerator(1, 1, 1, 1.5, 0, 0);
+  }
+}